@@ -125,6 +125,7 @@ public final class NeoMain {
 		if (controller.getLocalNodeData().getBlockDb().getBlockCount() == 0) {
 			LOG.info("DB is empty, addiing genesis block STARTED");
 			controller.getLocalNodeData().getBlockDb().put(true, GenesisBlockUtil.GENESIS_BLOCK);
+			controller.getLocalNodeData().updateBlockchainVersion();
 			LOG.info("DB is empty, addiing genesis block SUCCESS");
 		}
 
@@ -149,6 +150,7 @@ public final class NeoMain {
 			if (arg.equals("/decapitate")) {
 				LOG.info("STARTED decapitate");
 				controller.getLocalNodeData().getBlockDb().deleteHighestBlock();
+				controller.getLocalNodeData().updateBlockchainVersion();
 				LOG.info("SUCCESS decapitate");
 			}
 			if (arg.equals("/rpc")) {
@@ -173,6 +175,7 @@ public final class NeoMain {
 
 		controller.startNodesInConfigFiles();
 		controller.startThreadPool();
+		controller.startInboundServer();
 
 		if (!GraphicsEnvironment.isHeadless()) {
 			final JFrame frame = new JFrame("NEO Main");
@@ -9,8 +9,10 @@ import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import neo.model.CommandEnum;
 import neo.model.util.MapUtil;
 import neo.network.model.LocalNodeData;
+import neo.network.model.MessageMetrics;
 import neo.network.model.RemoteNodeData;
 
 /**
@@ -51,6 +53,33 @@ public final class ApiCallModel extends AbstractRefreshingModel {
 		}
 	}
 
+	/**
+	 * add stats about the messages sent and recieved, for each command.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 */
+	private void addMessageMetricsStats(final LocalNodeData localNodeData) {
+		final MessageMetrics messageMetrics = localNodeData.getMessageMetrics();
+		for (final CommandEnum commandEnum : CommandEnum.values()) {
+			final long messagesIn = messageMetrics.getMessagesIn(commandEnum);
+			final long messagesOut = messageMetrics.getMessagesOut(commandEnum);
+			if ((messagesIn != 0) || (messagesOut != 0)) {
+				final String prefix = "metrics-" + commandEnum.getName() + "-";
+				addNameAndValue(prefix + MessageMetrics.MESSAGES_IN, messagesIn);
+				addNameAndValue(prefix + MessageMetrics.BYTES_IN, messageMetrics.getBytesIn(commandEnum));
+				addNameAndValue(prefix + MessageMetrics.MESSAGES_OUT, messagesOut);
+				addNameAndValue(prefix + MessageMetrics.BYTES_OUT, messageMetrics.getBytesOut(commandEnum));
+				if (messagesIn != 0) {
+					addNameAndValue(prefix + "avg-decode-micros",
+							messageMetrics.getDecodeNanos(commandEnum) / (messagesIn * 1000));
+					addNameAndValue(prefix + "avg-handler-micros",
+							messageMetrics.getHandlerNanos(commandEnum) / (messagesIn * 1000));
+				}
+			}
+		}
+	}
+
 	/**
 	 * adds the name and value to the stats list, formatting the value as an
 	 * integer.
@@ -131,6 +160,7 @@ public final class ApiCallModel extends AbstractRefreshingModel {
 				statsValueList.clear();
 
 				addApiCallStats();
+				addMessageMetricsStats(localNodeData);
 
 				printToFile("ApiCallModel.txt");
 
@@ -39,7 +39,7 @@ public final class RemotePeerDataModel extends AbstractRefreshingModel {
 	@Override
 	public int getColumnCount() {
 		synchronized (RemotePeerDataModel.this) {
-			return 5;
+			return 9;
 		}
 	}
 
@@ -58,6 +58,14 @@ public final class RemotePeerDataModel extends AbstractRefreshingModel {
 			case 4:
 				return "Block Height";
 			case 5:
+				return "Messages In";
+			case 6:
+				return "Bytes In";
+			case 7:
+				return "Messages Out";
+			case 8:
+				return "Bytes Out";
+			case 9:
 				return "Index";
 			}
 		}
@@ -101,6 +109,14 @@ public final class RemotePeerDataModel extends AbstractRefreshingModel {
 					}
 					return blockHeight;
 				case 5:
+					return remoteNodeData.getMessageMetrics().getTotalMessagesIn();
+				case 6:
+					return remoteNodeData.getMessageMetrics().getTotalBytesIn();
+				case 7:
+					return remoteNodeData.getMessageMetrics().getTotalMessagesOut();
+				case 8:
+					return remoteNodeData.getMessageMetrics().getTotalBytesOut();
+				case 9:
 					return rowIndex + 1;
 				}
 			}
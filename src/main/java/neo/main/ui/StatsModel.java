@@ -159,8 +159,9 @@ public final class StatsModel extends AbstractRefreshingModel {
 			addNameAndValue(LAST_BLOCK_HEIGHT_CHANGE, localNodeData.getHighestBlockTime());
 		}
 
-		if (!localNodeData.getVerifiedHeaderPoolMap().isEmpty()) {
-			addNameAndValue(MAX_HEADER_HEIGHT, localNodeData.getVerifiedHeaderPoolMap().lastKey());
+		final long headerChainTipIndex = localNodeData.getHeaderChain().getTipIndex();
+		if (headerChainTipIndex > blockHeight) {
+			addNameAndValue(MAX_HEADER_HEIGHT, headerChainTipIndex);
 		} else {
 			if (highestBlock != null) {
 				addNameAndValue(MAX_HEADER_HEIGHT, highestBlock.getIndexAsLong());
@@ -62,6 +62,23 @@ public final class CoinReference implements ToJsonObject, ByteArraySerializable,
 		this.prevIndex = prevIndex;
 	}
 
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CoinReference)) {
+			return false;
+		}
+		final CoinReference that = (CoinReference) obj;
+		return prevHash.equals(that.prevHash) && prevIndex.equals(that.prevIndex);
+	}
+
+	@Override
+	public int hashCode() {
+		return (prevHash.hashCode() * 31) + prevIndex.hashCode();
+	}
+
 	@Override
 	public byte[] toByteArray() {
 		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
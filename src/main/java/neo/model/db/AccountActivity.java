@@ -0,0 +1,333 @@
+package neo.model.db;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import neo.model.ByteArraySerializable;
+import neo.model.bytes.UInt160;
+import neo.model.bytes.UInt256;
+import neo.model.core.Block;
+import neo.model.core.CoinReference;
+import neo.model.core.Transaction;
+import neo.model.core.TransactionOutput;
+import neo.model.util.MapUtil;
+import neo.model.util.ModelUtil;
+
+/**
+ * the NEO and GAS activity of an account over a range of blocks: the value in
+ * and out, the number of transactions, and the first and last timestamps.
+ * <p>
+ * activity is additive, so the activity of a range of blocks is the activity of
+ * smaller ranges added together. This lets the block database keep the activity
+ * of fixed buckets of blocks, updated as blocks are put, instead of replaying
+ * every block in a range.
+ *
+ * @author coranos
+ *
+ */
+public final class AccountActivity implements ByteArraySerializable {
+
+	/**
+	 * the number of long values in the serialized activity.
+	 */
+	private static final int LONG_COUNT = 8;
+
+	/**
+	 * adds the activity of each account in the block to the map.
+	 *
+	 * @param blockDb
+	 *            the block database to use, to look up the outputs the inputs
+	 *            spend.
+	 * @param block
+	 *            the block to use.
+	 * @param activityByAccount
+	 *            the activity of each account, to add to.
+	 */
+	public static void addBlock(final BlockDb blockDb, final Block block,
+			final Map<UInt160, AccountActivity> activityByAccount) {
+		final long timestamp = block.timestamp.asLong();
+		for (final Transaction transaction : block.getTransactionList()) {
+			final Map<UInt160, Map<UInt256, Long>> addressAssetMap = getAddressAssetMap(blockDb, transaction);
+			for (final UInt160 account : addressAssetMap.keySet()) {
+				activityByAccount.computeIfAbsent(account, key -> new AccountActivity())
+						.addTransaction(addressAssetMap.get(account), timestamp);
+			}
+		}
+	}
+
+	/**
+	 * returns the address asset map, the NEO and GAS value each account sent in
+	 * the transaction, minus the value it recieved.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param transaction
+	 *            the transaction to use.
+	 * @return the address asset map.
+	 */
+	public static Map<UInt160, Map<UInt256, Long>> getAddressAssetMap(final BlockDb blockDb,
+			final Transaction transaction) {
+		final Map<UInt160, Map<UInt256, Long>> friendAssetMap = new TreeMap<>();
+
+		for (final CoinReference cr : transaction.inputs) {
+			final UInt256 prevHashReversed = cr.prevHash.reverse();
+			final Transaction tiTx = blockDb.getTransactionWithHash(prevHashReversed);
+
+			if (tiTx == null) {
+				throw new RuntimeException("no transaction with prevHash:" + prevHashReversed);
+			}
+
+			final TransactionOutput ti = tiTx.outputs.get(cr.prevIndex.asInt());
+			final UInt160 input = ti.scriptHash;
+			if ((ti.assetId.equals(ModelUtil.NEO_HASH)) || (ti.assetId.equals(ModelUtil.GAS_HASH))) {
+				MapUtil.increment(friendAssetMap, input, ti.assetId, ti.value.value, TreeMap.class);
+			}
+		}
+
+		for (final TransactionOutput to : transaction.outputs) {
+			final UInt160 output = to.scriptHash;
+			if ((to.assetId.equals(ModelUtil.NEO_HASH)) || (to.assetId.equals(ModelUtil.GAS_HASH))) {
+				MapUtil.increment(friendAssetMap, output, to.assetId, -to.value.value, TreeMap.class);
+			}
+		}
+		return friendAssetMap;
+	}
+
+	/**
+	 * replays the blocks from the first index up to, but not including, the last
+	 * index, and returns the activity of each account.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param fromIndex
+	 *            the index of the first block.
+	 * @param toIndex
+	 *            the index after the last block.
+	 * @return the activity of each account.
+	 */
+	public static Map<UInt160, AccountActivity> replay(final BlockDb blockDb, final long fromIndex,
+			final long toIndex) {
+		final Map<UInt160, AccountActivity> activityByAccount = new TreeMap<>();
+		for (long index = fromIndex; index < toIndex; index++) {
+			addBlock(blockDb, blockDb.getFullBlockFromHeight(index), activityByAccount);
+		}
+		return activityByAccount;
+	}
+
+	/**
+	 * the NEO recieved.
+	 */
+	private long neoIn;
+
+	/**
+	 * the NEO sent.
+	 */
+	private long neoOut;
+
+	/**
+	 * the GAS recieved.
+	 */
+	private long gasIn;
+
+	/**
+	 * the GAS sent.
+	 */
+	private long gasOut;
+
+	/**
+	 * the number of transactions with NEO.
+	 */
+	private long neoTx;
+
+	/**
+	 * the number of transactions with GAS.
+	 */
+	private long gasTx;
+
+	/**
+	 * the timestamp of the first transaction, or zero if there are none.
+	 */
+	private long firstTs;
+
+	/**
+	 * the timestamp of the last transaction, or zero if there are none.
+	 */
+	private long lastTs;
+
+	/**
+	 * the constructor, for no activity.
+	 */
+	public AccountActivity() {
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param bb
+	 *            the ByteBuffer to read.
+	 */
+	public AccountActivity(final ByteBuffer bb) {
+		neoIn = bb.getLong();
+		neoOut = bb.getLong();
+		gasIn = bb.getLong();
+		gasOut = bb.getLong();
+		neoTx = bb.getLong();
+		gasTx = bb.getLong();
+		firstTs = bb.getLong();
+		lastTs = bb.getLong();
+	}
+
+	/**
+	 * adds the other activity to this activity.
+	 *
+	 * @param other
+	 *            the activity to add.
+	 */
+	public void add(final AccountActivity other) {
+		neoIn += other.neoIn;
+		neoOut += other.neoOut;
+		gasIn += other.gasIn;
+		gasOut += other.gasOut;
+		neoTx += other.neoTx;
+		gasTx += other.gasTx;
+		addTimestamps(other.firstTs, other.lastTs);
+	}
+
+	/**
+	 * widens the first and last timestamps to include the given timestamps.
+	 *
+	 * @param otherFirstTs
+	 *            the first timestamp to include, or zero if there is none.
+	 * @param otherLastTs
+	 *            the last timestamp to include, or zero if there is none.
+	 */
+	private void addTimestamps(final long otherFirstTs, final long otherLastTs) {
+		if (otherFirstTs == 0) {
+			return;
+		}
+		if ((firstTs == 0) || (otherFirstTs < firstTs)) {
+			firstTs = otherFirstTs;
+		}
+		if (otherLastTs > lastTs) {
+			lastTs = otherLastTs;
+		}
+	}
+
+	/**
+	 * adds one transaction to this activity.
+	 *
+	 * @param assetValueMap
+	 *            the NEO and GAS value the account sent in the transaction, minus
+	 *            the value it recieved.
+	 * @param timestamp
+	 *            the timestamp of the transaction's block.
+	 */
+	public void addTransaction(final Map<UInt256, Long> assetValueMap, final long timestamp) {
+		addTimestamps(timestamp, timestamp);
+		if (assetValueMap.containsKey(ModelUtil.NEO_HASH)) {
+			neoTx++;
+			final long value = assetValueMap.get(ModelUtil.NEO_HASH);
+			if (value < 0) {
+				neoIn -= value;
+			} else {
+				neoOut += value;
+			}
+		}
+		if (assetValueMap.containsKey(ModelUtil.GAS_HASH)) {
+			gasTx++;
+			final long value = assetValueMap.get(ModelUtil.GAS_HASH);
+			if (value < 0) {
+				gasIn -= value;
+			} else {
+				gasOut += value;
+			}
+		}
+	}
+
+	/**
+	 * return the timestamp of the first transaction, or zero if there are none.
+	 *
+	 * @return the timestamp of the first transaction.
+	 */
+	public long getFirstTs() {
+		return firstTs;
+	}
+
+	/**
+	 * return the GAS recieved.
+	 *
+	 * @return the GAS recieved.
+	 */
+	public long getGasIn() {
+		return gasIn;
+	}
+
+	/**
+	 * return the GAS sent.
+	 *
+	 * @return the GAS sent.
+	 */
+	public long getGasOut() {
+		return gasOut;
+	}
+
+	/**
+	 * return the number of transactions with GAS.
+	 *
+	 * @return the number of transactions with GAS.
+	 */
+	public long getGasTx() {
+		return gasTx;
+	}
+
+	/**
+	 * return the timestamp of the last transaction, or zero if there are none.
+	 *
+	 * @return the timestamp of the last transaction.
+	 */
+	public long getLastTs() {
+		return lastTs;
+	}
+
+	/**
+	 * return the NEO recieved.
+	 *
+	 * @return the NEO recieved.
+	 */
+	public long getNeoIn() {
+		return neoIn;
+	}
+
+	/**
+	 * return the NEO sent.
+	 *
+	 * @return the NEO sent.
+	 */
+	public long getNeoOut() {
+		return neoOut;
+	}
+
+	/**
+	 * return the number of transactions with NEO.
+	 *
+	 * @return the number of transactions with NEO.
+	 */
+	public long getNeoTx() {
+		return neoTx;
+	}
+
+	@Override
+	public byte[] toByteArray() {
+		final ByteBuffer bb = ByteBuffer.allocate(LONG_COUNT * Long.BYTES);
+		bb.putLong(neoIn);
+		bb.putLong(neoOut);
+		bb.putLong(gasIn);
+		bb.putLong(gasOut);
+		bb.putLong(neoTx);
+		bb.putLong(gasTx);
+		bb.putLong(firstTs);
+		bb.putLong(lastTs);
+		return bb.array();
+	}
+}
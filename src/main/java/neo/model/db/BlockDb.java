@@ -2,6 +2,9 @@ package neo.model.db;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import neo.model.bytes.Fixed8;
 import neo.model.bytes.UInt160;
@@ -43,6 +46,42 @@ public interface BlockDb {
 	 */
 	void deleteHighestBlock();
 
+	/**
+	 * calls the consumer with the map of assetid and value of each account, one
+	 * account at a time, so all the accounts are not held in memory.
+	 *
+	 * @param consumer
+	 *            the consumer to call with each account, and it's map of assetid
+	 *            and value.
+	 */
+	void forEachAccountAssetValue(BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer);
+
+	/**
+	 * return the NEO and GAS activity of each account, in the blocks from the
+	 * first index up to, but not including, the last index.
+	 *
+	 * @param fromIndex
+	 *            the index of the first block.
+	 * @param toIndex
+	 *            the index after the last block.
+	 * @return the activity of each account.
+	 */
+	Map<UInt160, AccountActivity> getAccountActivity(long fromIndex, long toIndex);
+
+	/**
+	 * return a function that returns the NEO and GAS activity of one account, in
+	 * the blocks from the first index up to, but not including, the last index,
+	 * so the activity can be looked up as each account is needed, rather than
+	 * held in memory for all accounts.
+	 *
+	 * @param fromIndex
+	 *            the index of the first block.
+	 * @param toIndex
+	 *            the index after the last block.
+	 * @return the function that returns the activity of an account.
+	 */
+	Function<UInt160, AccountActivity> getAccountActivityLookup(long fromIndex, long toIndex);
+
 	/**
 	 * return a map of account, assetid, and value for all accounts.
 	 *
@@ -84,6 +123,16 @@ public interface BlockDb {
 	 */
 	Long getBlockIndexFromTransactionHash(UInt256 hash);
 
+	/**
+	 * return the claim records of the NEO outputs the account spent, whose GAS
+	 * has not been claimed yet.
+	 *
+	 * @param account
+	 *            the account to use.
+	 * @return the unclaimed claim records.
+	 */
+	List<ClaimRecord> getClaimableList(UInt160 account);
+
 	/**
 	 * return the filze size of the database.
 	 *
@@ -134,6 +183,46 @@ public interface BlockDb {
 	 */
 	Block getHeaderOfBlockWithMaxIndex();
 
+	/**
+	 * return the block with the given hash, serialized as it is sent in a "block"
+	 * message, or null if there is no block with the given hash.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized block with the given hash.
+	 */
+	byte[] getRawBlockFromHash(UInt256 hash);
+
+	/**
+	 * return the block at the given height, serialized as it is sent in a
+	 * "block" message, or null if there is no block at the given height.
+	 *
+	 * @param blockHeight
+	 *            the block height to use.
+	 * @return the serialized block at the given height.
+	 */
+	byte[] getRawBlockFromHeight(long blockHeight);
+
+	/**
+	 * return the header of the block at the given height, serialized as it is sent
+	 * in a "headers" message, or null if there is no block at the given height.
+	 *
+	 * @param blockHeight
+	 *            the block height to use.
+	 * @return the serialized header of the block at the given height.
+	 */
+	byte[] getRawHeaderFromHeight(long blockHeight);
+
+	/**
+	 * return the transaction with the given hash, serialized as it is sent in a
+	 * "tx" message, or null if there is no transaction with the given hash.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized transaction with the given hash.
+	 */
+	byte[] getRawTransactionFromHash(UInt256 hash);
+
 	/**
 	 * gets the contract states.
 	 *
@@ -189,6 +278,17 @@ public interface BlockDb {
 	 */
 	void put(boolean forceSynch, Block... blocks);
 
+	/**
+	 * starts building, on the executor, the indexes that do not cover the blocks
+	 * already in the database, such as an index added since the database was
+	 * made. Until an index has caught up, the values it holds are computed from
+	 * the blocks.
+	 *
+	 * @param executor
+	 *            the executor to use.
+	 */
+	void startIndexBackfill(Executor executor);
+
 	/**
 	 * validates the database.
 	 */
@@ -0,0 +1,396 @@
+package neo.model.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import neo.model.ByteArraySerializable;
+import neo.model.bytes.Fixed8;
+import neo.model.bytes.UInt160;
+import neo.model.core.Block;
+import neo.model.core.ClaimExclusiveData;
+import neo.model.core.CoinReference;
+import neo.model.core.Transaction;
+import neo.model.core.TransactionOutput;
+import neo.model.core.TransactionType;
+import neo.model.util.ModelUtil;
+
+/**
+ * a spent NEO output, and the GAS it can claim: the heights of the block that
+ * created it and the block that spent it, the system fees in between, and the
+ * generated plus system fee GAS, computed once when it is spent.
+ * <p>
+ * the block database keeps a record for each spent NEO output, and marks it
+ * claimed when a claim transaction claims it, so the claimable GAS of an
+ * account is read from the index instead of replaying it's transactions.
+ *
+ * @author coranos
+ *
+ */
+public final class ClaimRecord implements ByteArraySerializable {
+
+	/**
+	 * gas generation amount.
+	 */
+	private static final long[] GENERATION_AMOUNT = new long[] { 8, 7, 6, 5, 4, 3, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+			1, 1, 1, 1 };
+
+	/**
+	 * gas generation length.
+	 */
+	private static final long GENERATION_LENGTH = 22;
+
+	/**
+	 * gas generation decrement interval.
+	 */
+	private static final long DECREMENT_INTERVAL = 2000000;
+
+	/**
+	 * the number of long values in the serialized record.
+	 */
+	private static final int LONG_COUNT = 5;
+
+	/**
+	 * calculates the GAS generated per NEO between the start and end heights.
+	 *
+	 * @param startHeight
+	 *            the height of the block that created the output.
+	 * @param endHeight
+	 *            the height of the block that spent the output.
+	 * @return the GAS generated per NEO.
+	 */
+	public static long calculateGenerated(final long startHeight, final long endHeight) {
+		long amount = 0;
+		long ustart = startHeight / DECREMENT_INTERVAL;
+		if (ustart < GENERATION_LENGTH) {
+			long istart = startHeight % DECREMENT_INTERVAL;
+			long uend = endHeight / DECREMENT_INTERVAL;
+			long iend = endHeight % DECREMENT_INTERVAL;
+			if (uend >= GENERATION_LENGTH) {
+				uend = GENERATION_LENGTH;
+				iend = 0;
+			}
+			if (iend == 0) {
+				uend = uend - 1;
+				iend = DECREMENT_INTERVAL;
+			}
+			while (ustart < uend) {
+				amount += (DECREMENT_INTERVAL - istart) * GENERATION_AMOUNT[(int) ustart];
+				ustart += 1;
+				istart = 0;
+			}
+
+			amount += (iend - istart) * GENERATION_AMOUNT[(int) ustart];
+		}
+		return amount;
+	}
+
+	/**
+	 * calculates the system fee for the given blocks, by reading every block.
+	 *
+	 * @param systemFeeMap
+	 *            the map of system fees by transaction type.
+	 * @param blockDb
+	 *            the block database.
+	 * @param startBlockIx
+	 *            the start block index.
+	 * @param endBlockIx
+	 *            the end block index, inclusive.
+	 * @return the system fee.
+	 */
+	public static long computeSysFee(final Map<TransactionType, Fixed8> systemFeeMap, final BlockDb blockDb,
+			final long startBlockIx, final long endBlockIx) {
+		long sysFee = 0;
+		for (long blockIx = startBlockIx; blockIx <= endBlockIx; blockIx++) {
+			sysFee += getSystemFee(systemFeeMap, blockDb.getFullBlockFromHeight(blockIx));
+		}
+		return sysFee;
+	}
+
+	/**
+	 * return the records whose GAS has not been claimed.
+	 *
+	 * @param recordList
+	 *            the records to use.
+	 * @return the unclaimed records.
+	 */
+	public static List<ClaimRecord> getClaimableList(final List<ClaimRecord> recordList) {
+		final List<ClaimRecord> claimableList = new ArrayList<>();
+		for (final ClaimRecord record : recordList) {
+			if (!record.isClaimed()) {
+				claimableList.add(record);
+			}
+		}
+		return claimableList;
+	}
+
+	/**
+	 * return the coin references claimed by the transaction, or an empty list if
+	 * it is not a claim transaction.
+	 *
+	 * @param transaction
+	 *            the transaction to use.
+	 * @return the claimed coin references.
+	 */
+	public static List<CoinReference> getClaimedList(final Transaction transaction) {
+		if (transaction.type != TransactionType.CLAIM_TRANSACTION) {
+			return new ArrayList<>();
+		}
+		return ((ClaimExclusiveData) transaction.exclusiveData).claims;
+	}
+
+	/**
+	 * return the output the coin reference points to.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param cr
+	 *            the coin reference to use.
+	 * @return the output.
+	 */
+	public static TransactionOutput getOutput(final BlockDb blockDb, final CoinReference cr) {
+		final Transaction tiTx = blockDb.getTransactionWithHash(cr.prevHash.reverse());
+		if (tiTx == null) {
+			throw new RuntimeException("no transaction with prevHash:" + cr.prevHash.reverse());
+		}
+		return tiTx.outputs.get(cr.prevIndex.asInt());
+	}
+
+	/**
+	 * return the height of the block that created the output the coin reference
+	 * points to.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param cr
+	 *            the coin reference to use.
+	 * @return the height of the block.
+	 */
+	public static long getStartHeight(final BlockDb blockDb, final CoinReference cr) {
+		return blockDb.getBlockIndexFromTransactionHash(cr.prevHash.reverse());
+	}
+
+	/**
+	 * return the system fee of the transactions in the block.
+	 *
+	 * @param systemFeeMap
+	 *            the map of system fees by transaction type.
+	 * @param block
+	 *            the block to use.
+	 * @return the system fee.
+	 */
+	public static long getSystemFee(final Map<TransactionType, Fixed8> systemFeeMap, final Block block) {
+		long sysFee = 0;
+		for (final Transaction tx : block.getTransactionList()) {
+			sysFee += systemFeeMap.get(tx.type).value;
+		}
+		return sysFee;
+	}
+
+	/**
+	 * replays the account's transactions and returns the records of the NEO
+	 * outputs it spent, with the claimed ones marked. This is for block databases
+	 * without a claim index; it only sees claim transactions that are in the
+	 * account's transaction list.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param account
+	 *            the account to use.
+	 * @param systemFeeMap
+	 *            the map of system fees by transaction type.
+	 * @return the claim records, in coin reference order.
+	 */
+	public static List<ClaimRecord> replay(final BlockDb blockDb, final UInt160 account,
+			final Map<TransactionType, Fixed8> systemFeeMap) {
+		final Map<ByteBuffer, ClaimRecord> recordMap = new TreeMap<>();
+		final Set<ByteBuffer> claimedSet = new TreeSet<>();
+		for (final Transaction transaction : blockDb.getTransactionWithAccountList(account)) {
+			final long end = blockDb.getBlockIndexFromTransactionHash(transaction.getHash());
+			for (final CoinReference cr : transaction.inputs) {
+				final TransactionOutput output = getOutput(blockDb, cr);
+				if (output.assetId.equals(ModelUtil.NEO_HASH) && output.scriptHash.equals(account)) {
+					final long start = getStartHeight(blockDb, cr);
+					final long sysFee = computeSysFee(systemFeeMap, blockDb, start, end);
+					recordMap.put(ByteBuffer.wrap(cr.toByteArray()),
+							new ClaimRecord(cr, output.value.value, start, end, sysFee));
+				}
+			}
+			for (final CoinReference cr : getClaimedList(transaction)) {
+				claimedSet.add(ByteBuffer.wrap(cr.toByteArray()));
+			}
+		}
+		for (final ByteBuffer key : claimedSet) {
+			if (recordMap.containsKey(key)) {
+				recordMap.get(key).setClaimed(true);
+			}
+		}
+		return new ArrayList<>(recordMap.values());
+	}
+
+	/**
+	 * the coin reference of the spent output.
+	 */
+	private final CoinReference coinReference;
+
+	/**
+	 * the value of the spent output.
+	 */
+	private final long value;
+
+	/**
+	 * the height of the block that created the output.
+	 */
+	private final long start;
+
+	/**
+	 * the height of the block that spent the output.
+	 */
+	private final long end;
+
+	/**
+	 * the system fees from the start to the end height.
+	 */
+	private final long sysFee;
+
+	/**
+	 * the generated plus system fee GAS the output can claim.
+	 */
+	private final long claim;
+
+	/**
+	 * if true, a claim transaction has claimed the GAS.
+	 */
+	private boolean claimed;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param bb
+	 *            the ByteBuffer to read.
+	 */
+	public ClaimRecord(final ByteBuffer bb) {
+		coinReference = new CoinReference(bb);
+		value = bb.getLong();
+		start = bb.getLong();
+		end = bb.getLong();
+		sysFee = bb.getLong();
+		claim = bb.getLong();
+		claimed = bb.get() != 0;
+	}
+
+	/**
+	 * the constructor, for an unclaimed output that was just spent.
+	 *
+	 * @param coinReference
+	 *            the coin reference of the spent output.
+	 * @param value
+	 *            the value of the spent output.
+	 * @param start
+	 *            the height of the block that created the output.
+	 * @param end
+	 *            the height of the block that spent the output.
+	 * @param sysFee
+	 *            the system fees from the start to the end height.
+	 */
+	public ClaimRecord(final CoinReference coinReference, final long value, final long start, final long end,
+			final long sysFee) {
+		this.coinReference = coinReference;
+		this.value = value;
+		this.start = start;
+		this.end = end;
+		this.sysFee = sysFee;
+		claim = ModelUtil.toRoundedLong(value) * (calculateGenerated(start, end) + sysFee);
+	}
+
+	/**
+	 * return the generated plus system fee GAS the output can claim.
+	 *
+	 * @return the claimable GAS.
+	 */
+	public long getClaim() {
+		return claim;
+	}
+
+	/**
+	 * return the coin reference of the spent output.
+	 *
+	 * @return the coin reference.
+	 */
+	public CoinReference getCoinReference() {
+		return coinReference;
+	}
+
+	/**
+	 * return the height of the block that spent the output.
+	 *
+	 * @return the end height.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * return the height of the block that created the output.
+	 *
+	 * @return the start height.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * return the system fees from the start to the end height.
+	 *
+	 * @return the system fees.
+	 */
+	public long getSysFee() {
+		return sysFee;
+	}
+
+	/**
+	 * return the value of the spent output.
+	 *
+	 * @return the value.
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * return true if a claim transaction has claimed the GAS.
+	 *
+	 * @return true if claimed.
+	 */
+	public boolean isClaimed() {
+		return claimed;
+	}
+
+	/**
+	 * sets the claimed flag.
+	 *
+	 * @param claimed
+	 *            true if a claim transaction has claimed the GAS.
+	 */
+	public void setClaimed(final boolean claimed) {
+		this.claimed = claimed;
+	}
+
+	@Override
+	public byte[] toByteArray() {
+		final byte[] crBa = coinReference.toByteArray();
+		final ByteBuffer bb = ByteBuffer.allocate(crBa.length + (LONG_COUNT * Long.BYTES) + 1);
+		bb.put(crBa);
+		bb.putLong(value);
+		bb.putLong(start);
+		bb.putLong(end);
+		bb.putLong(sysFee);
+		bb.putLong(claim);
+		bb.put((byte) (claimed ? 1 : 0));
+		return bb.array();
+	}
+}
@@ -2,6 +2,9 @@ package neo.model.db;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.json.JSONObject;
 
@@ -56,6 +59,27 @@ public final class PerformanceMonitoringBlockDb implements BlockDb {
 		}
 	}
 
+	@Override
+	public void forEachAccountAssetValue(final BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.forEachAccountAssetValue")) {
+			delegate.forEachAccountAssetValue(consumer);
+		}
+	}
+
+	@Override
+	public Map<UInt160, AccountActivity> getAccountActivity(final long fromIndex, final long toIndex) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getAccountActivity")) {
+			return delegate.getAccountActivity(fromIndex, toIndex);
+		}
+	}
+
+	@Override
+	public Function<UInt160, AccountActivity> getAccountActivityLookup(final long fromIndex, final long toIndex) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getAccountActivityLookup")) {
+			return delegate.getAccountActivityLookup(fromIndex, toIndex);
+		}
+	}
+
 	@Override
 	public Map<UInt160, Map<UInt256, Fixed8>> getAccountAssetValueMap() {
 		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getAccountAssetValueMap")) {
@@ -89,6 +113,13 @@ public final class PerformanceMonitoringBlockDb implements BlockDb {
 		}
 	}
 
+	@Override
+	public List<ClaimRecord> getClaimableList(final UInt160 account) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getClaimableList")) {
+			return delegate.getClaimableList(account);
+		}
+	}
+
 	@Override
 	public long getFileSize() {
 		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getFileSize")) {
@@ -131,6 +162,34 @@ public final class PerformanceMonitoringBlockDb implements BlockDb {
 		}
 	}
 
+	@Override
+	public byte[] getRawBlockFromHash(final UInt256 hash) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getRawBlockFromHash")) {
+			return delegate.getRawBlockFromHash(hash);
+		}
+	}
+
+	@Override
+	public byte[] getRawBlockFromHeight(final long blockHeight) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getRawBlockFromHeight")) {
+			return delegate.getRawBlockFromHeight(blockHeight);
+		}
+	}
+
+	@Override
+	public byte[] getRawHeaderFromHeight(final long blockHeight) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getRawHeaderFromHeight")) {
+			return delegate.getRawHeaderFromHeight(blockHeight);
+		}
+	}
+
+	@Override
+	public byte[] getRawTransactionFromHash(final UInt256 hash) {
+		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getRawTransactionFromHash")) {
+			return delegate.getRawTransactionFromHash(hash);
+		}
+	}
+
 	@Override
 	public <K, V> Map<K, V> getStates(final Class<K> keyClass, final Class<V> valueClass) {
 		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.getStates")) {
@@ -169,6 +228,11 @@ public final class PerformanceMonitoringBlockDb implements BlockDb {
 		}
 	}
 
+	@Override
+	public void startIndexBackfill(final Executor executor) {
+		delegate.startIndexBackfill(executor);
+	}
+
 	@Override
 	public void validate() {
 		try (PerformanceMonitor m = new PerformanceMonitor("BlockDb.validate")) {
@@ -6,6 +6,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -110,6 +113,21 @@ public final class ReadCacheBlockDBImpl implements BlockDb {
 		delegate.deleteHighestBlock();
 	}
 
+	@Override
+	public void forEachAccountAssetValue(final BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer) {
+		delegate.forEachAccountAssetValue(consumer);
+	}
+
+	@Override
+	public Map<UInt160, AccountActivity> getAccountActivity(final long fromIndex, final long toIndex) {
+		return delegate.getAccountActivity(fromIndex, toIndex);
+	}
+
+	@Override
+	public Function<UInt160, AccountActivity> getAccountActivityLookup(final long fromIndex, final long toIndex) {
+		return delegate.getAccountActivityLookup(fromIndex, toIndex);
+	}
+
 	@Override
 	public Map<UInt160, Map<UInt256, Fixed8>> getAccountAssetValueMap() {
 		return delegate.getAccountAssetValueMap();
@@ -142,6 +160,11 @@ public final class ReadCacheBlockDBImpl implements BlockDb {
 		return delegate.getBlockIndexFromTransactionHash(hash);
 	}
 
+	@Override
+	public List<ClaimRecord> getClaimableList(final UInt160 account) {
+		return delegate.getClaimableList(account);
+	}
+
 	/**
 	 * return the cached block count.
 	 *
@@ -181,6 +204,26 @@ public final class ReadCacheBlockDBImpl implements BlockDb {
 		return delegate.getHeaderOfBlockWithMaxIndex();
 	}
 
+	@Override
+	public byte[] getRawBlockFromHash(final UInt256 hash) {
+		return delegate.getRawBlockFromHash(hash);
+	}
+
+	@Override
+	public byte[] getRawBlockFromHeight(final long blockHeight) {
+		return delegate.getRawBlockFromHeight(blockHeight);
+	}
+
+	@Override
+	public byte[] getRawHeaderFromHeight(final long blockHeight) {
+		return delegate.getRawHeaderFromHeight(blockHeight);
+	}
+
+	@Override
+	public byte[] getRawTransactionFromHash(final UInt256 hash) {
+		return delegate.getRawTransactionFromHash(hash);
+	}
+
 	@Override
 	public <K, V> Map<K, V> getStates(final Class<K> keyClass, final Class<V> valueClass) {
 		return delegate.getStates(keyClass, valueClass);
@@ -220,6 +263,11 @@ public final class ReadCacheBlockDBImpl implements BlockDb {
 		this.cachedBlockCount = cachedBlockCount;
 	}
 
+	@Override
+	public void startIndexBackfill(final Executor executor) {
+		delegate.startIndexBackfill(executor);
+	}
+
 	@Override
 	public void validate() {
 		delegate.validate();
@@ -10,6 +10,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -39,8 +42,11 @@ import neo.model.core.Block;
 import neo.model.core.CoinReference;
 import neo.model.core.Transaction;
 import neo.model.core.TransactionOutput;
+import neo.model.core.TransactionType;
 import neo.model.core.Witness;
+import neo.model.db.AccountActivity;
 import neo.model.db.BlockDb;
+import neo.model.db.ClaimRecord;
 import neo.model.util.BlockUtil;
 import neo.model.util.ConfigurationUtil;
 import neo.model.util.GenesisBlockUtil;
@@ -93,6 +99,11 @@ public final class BlockDbH2Impl implements BlockDb {
 	 */
 	private final File fileSizeDir;
 
+	/**
+	 * the map of system fees by transaction type.
+	 */
+	private final Map<TransactionType, Fixed8> systemFeeMap;
+
 	/**
 	 * the constructor.
 	 *
@@ -108,6 +119,7 @@ public final class BlockDbH2Impl implements BlockDb {
 		}
 
 		fileSizeDir = new File(config.getString(ConfigurationUtil.FILE_SIZE_DIR));
+		systemFeeMap = ConfigurationUtil.getTransactionSystemFeeMap(config);
 
 		ds = new JdbcDataSource();
 		ds.setUrl(config.getString(ConfigurationUtil.URL));
@@ -248,6 +260,26 @@ public final class BlockDbH2Impl implements BlockDb {
 		}
 	}
 
+	@Override
+	public void forEachAccountAssetValue(final BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer) {
+		getAccountAssetValueMap().forEach(consumer);
+	}
+
+	/**
+	 * return the activity of each account, by replaying the blocks. The H2
+	 * database does not keep the bucketed activity index.
+	 */
+	@Override
+	public Map<UInt160, AccountActivity> getAccountActivity(final long fromIndex, final long toIndex) {
+		return AccountActivity.replay(this, fromIndex, toIndex);
+	}
+
+	@Override
+	public Function<UInt160, AccountActivity> getAccountActivityLookup(final long fromIndex, final long toIndex) {
+		final Map<UInt160, AccountActivity> activityByAccount = getAccountActivity(fromIndex, toIndex);
+		return account -> activityByAccount.getOrDefault(account, new AccountActivity());
+	}
+
 	@Override
 	public Map<UInt160, Map<UInt256, Fixed8>> getAccountAssetValueMap() {
 		final JdbcTemplate jdbcOperations = new JdbcTemplate(ds);
@@ -381,6 +413,15 @@ public final class BlockDbH2Impl implements BlockDb {
 		return t.queryForObject(sql, new Object[] { hash.toByteArray() }, Long.class);
 	}
 
+	/**
+	 * return the claim records of the account, replayed from it's transactions,
+	 * as this database does not keep the claim index.
+	 */
+	@Override
+	public List<ClaimRecord> getClaimableList(final UInt160 account) {
+		return ClaimRecord.getClaimableList(ClaimRecord.replay(this, account, systemFeeMap));
+	}
+
 	/**
 	 * return the file size.
 	 *
@@ -434,6 +475,75 @@ public final class BlockDbH2Impl implements BlockDb {
 		return block;
 	}
 
+	/**
+	 * return the serialized block with the given hash. The H2 tables store blocks
+	 * broken up into rows, so the block is rebuilt and re-serialized.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized block with the given hash.
+	 */
+	@Override
+	public byte[] getRawBlockFromHash(final UInt256 hash) {
+		final Block block = getBlock(hash, true);
+		if (block == null) {
+			return null;
+		}
+		return block.toByteArray();
+	}
+
+	/**
+	 * return the serialized block at the given height. The H2 tables store blocks
+	 * broken up into rows, so the block is rebuilt and re-serialized.
+	 *
+	 * @param blockHeight
+	 *            the block height to use.
+	 * @return the serialized block at the given height.
+	 */
+	@Override
+	public byte[] getRawBlockFromHeight(final long blockHeight) {
+		final Block block = getBlock(blockHeight, true);
+		if (block == null) {
+			return null;
+		}
+		return block.toByteArray();
+	}
+
+	/**
+	 * return the serialized header of the block at the given height. The H2 tables
+	 * store blocks broken up into rows, so the header is rebuilt and re-serialized.
+	 *
+	 * @param blockHeight
+	 *            the block height to use.
+	 * @return the serialized header of the block at the given height.
+	 */
+	@Override
+	public byte[] getRawHeaderFromHeight(final long blockHeight) {
+		final Block block = getBlock(blockHeight, false);
+		if (block == null) {
+			return null;
+		}
+		return block.toHeaderByteArray();
+	}
+
+	/**
+	 * return the serialized transaction with the given hash. The H2 tables store
+	 * transactions broken up into rows, so the transaction is rebuilt and
+	 * re-serialized.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized transaction with the given hash.
+	 */
+	@Override
+	public byte[] getRawTransactionFromHash(final UInt256 hash) {
+		final Transaction transaction = getTransactionWithHash(hash);
+		if (transaction == null) {
+			return null;
+		}
+		return transaction.toByteArray();
+	}
+
 	/**
 	 * return a map of the objects, divided into their transactions indexes.
 	 *
@@ -699,6 +809,10 @@ public final class BlockDbH2Impl implements BlockDb {
 		}
 	}
 
+	@Override
+	public void startIndexBackfill(final Executor executor) {
+	}
+
 	@Override
 	public void validate() {
 		LOG.info("STARTED validate");
@@ -7,15 +7,22 @@ import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.NotImplementedException;
 import org.json.JSONObject;
+import org.mapdb.Atomic;
 import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
@@ -31,7 +38,10 @@ import neo.model.core.Block;
 import neo.model.core.CoinReference;
 import neo.model.core.Transaction;
 import neo.model.core.TransactionOutput;
+import neo.model.core.TransactionType;
+import neo.model.db.AccountActivity;
 import neo.model.db.BlockDb;
+import neo.model.db.ClaimRecord;
 import neo.model.util.ConfigurationUtil;
 import neo.model.util.GenesisBlockUtil;
 import neo.model.util.ModelUtil;
@@ -50,6 +60,13 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	 */
 	private static final int ALLOCATION_INCREMENT_SIZE = 1024 * 1024;
 
+	/**
+	 * the number of blocks added to the claim index between commits, when
+	 * building it from the blocks already in the database. Blocks can not be put
+	 * while a batch is added, so it is kept small.
+	 */
+	private static final int CLAIM_BACKFILL_COMMIT_INTERVAL = 1000;
+
 	/**
 	 * the logger.
 	 */
@@ -105,6 +122,52 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	 */
 	private static final String MAX_BLOCK_INDEX = "maxBlockIndex";
 
+	/**
+	 * the account activity, keyed by bucket and account.
+	 */
+	private static final String ACCOUNT_ACTIVITY_BY_BUCKET = "accountActivityByBucket";
+
+	/**
+	 * the number of blocks in an account activity bucket.
+	 */
+	private static final String ACCOUNT_ACTIVITY_BUCKET_SIZE = "accountActivityBucketSize";
+
+	/**
+	 * the index of the first block in the account activity buckets, or -1 if no
+	 * blocks have been added.
+	 */
+	private static final String ACCOUNT_ACTIVITY_START_INDEX = "accountActivityStartIndex";
+
+	/**
+	 * the account activity buckets that are incomplete because a block in them
+	 * was deleted.
+	 */
+	private static final String ACCOUNT_ACTIVITY_INVALID_BUCKETS = "accountActivityInvalidBuckets";
+
+	/**
+	 * the claim records of spent NEO outputs, keyed by account and coin
+	 * reference.
+	 */
+	private static final String CLAIM_BY_ACCOUNT_AND_COIN = "claimByAccountAndCoin";
+
+	/**
+	 * the index of the first block in the claim index, or -1 if no blocks have
+	 * been added. The index is only complete if it starts at the genesis block.
+	 */
+	private static final String CLAIM_START_INDEX = "claimStartIndex";
+
+	/**
+	 * the index of the next block to add to the claim index, when building it
+	 * from the blocks already in the database.
+	 */
+	private static final String CLAIM_BACKFILL_INDEX = "claimBackfillIndex";
+
+	/**
+	 * the total system fee of every block up to and including a block, keyed by
+	 * block index.
+	 */
+	private static final String SYSTEM_FEE_TOTAL_BY_INDEX = "systemFeeTotalByIndex";
+
 	/**
 	 * the database.
 	 */
@@ -120,6 +183,22 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	 */
 	private boolean closed = false;
 
+	/**
+	 * held while the database is written and committed, so the claim index can
+	 * be built from the blocks already in the database while blocks are put.
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * the number of blocks in an account activity bucket.
+	 */
+	private final long accountActivityBucketSize;
+
+	/**
+	 * the map of system fees by transaction type.
+	 */
+	private final Map<TransactionType, Fixed8> systemFeeMap;
+
 	/**
 	 * the constructor.
 	 *
@@ -133,6 +212,120 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		dbFile.getParentFile().mkdirs();
 		db = DBMaker.fileDB(dbFile).transactionEnable().closeOnJvmShutdown().fileMmapEnableIfSupported()
 				.fileMmapPreclearDisable().allocateIncrement(ALLOCATION_INCREMENT_SIZE).make();
+		accountActivityBucketSize = db
+				.atomicLong(ACCOUNT_ACTIVITY_BUCKET_SIZE, config.getLong(ConfigurationUtil.ACCOUNT_ACTIVITY_BUCKET_SIZE))
+				.createOrOpen().get();
+		systemFeeMap = ConfigurationUtil.getTransactionSystemFeeMap(config);
+	}
+
+	/**
+	 * adds the activity in the account activity bucket to the map.
+	 *
+	 * @param bucket
+	 *            the bucket to use.
+	 * @param activityByAccount
+	 *            the activity of each account, to add to.
+	 */
+	private void addAccountActivityBucket(final long bucket, final Map<UInt160, AccountActivity> activityByAccount) {
+		final Map<byte[], byte[]> bucketMap = getAccountActivityByBucketMap().prefixSubMap(getAccountActivityKey(bucket, null));
+		for (final Map.Entry<byte[], byte[]> entry : bucketMap.entrySet()) {
+			final UInt160 account = new UInt160(Arrays.copyOfRange(entry.getKey(), Long.BYTES, entry.getKey().length));
+			final AccountActivity activity = new AccountActivity(ByteBuffer.wrap(entry.getValue()));
+			activityByAccount.computeIfAbsent(account, key -> new AccountActivity()).add(activity);
+		}
+	}
+
+	/**
+	 * adds the block to the claim index: the running system fee total, a claim
+	 * record for each NEO output it spends, with it's GAS computed now, and the
+	 * claimed flag of each output it claims.
+	 *
+	 * @param block
+	 *            the block to use.
+	 */
+	private void addClaims(final Block block) {
+		final long blockIndex = block.getIndexAsLong();
+		final long sysFeeTotal = getSystemFeeTotal(blockIndex - 1) + ClaimRecord.getSystemFee(systemFeeMap, block);
+		getSystemFeeTotalByIndexMap().put(blockIndex, sysFeeTotal);
+		final BTreeMap<byte[], byte[]> claimMap = getClaimByAccountAndCoinMap();
+		for (final Transaction transaction : block.getTransactionList()) {
+			for (final CoinReference cr : transaction.inputs) {
+				final TransactionOutput output = ClaimRecord.getOutput(this, cr);
+				if (output.assetId.equals(ModelUtil.NEO_HASH)) {
+					final long start = ClaimRecord.getStartHeight(this, cr);
+					final long sysFee = sysFeeTotal - getSystemFeeTotal(start - 1);
+					final ClaimRecord record = new ClaimRecord(cr, output.value.value, start, blockIndex, sysFee);
+					claimMap.put(getClaimKey(output.scriptHash, cr), record.toByteArray());
+				}
+			}
+			for (final CoinReference cr : ClaimRecord.getClaimedList(transaction)) {
+				setClaimed(claimMap, cr, true);
+			}
+		}
+	}
+
+	/**
+	 * adds the next batch of blocks to the claim index, and commits them with the
+	 * index of the block after them. Once the claim index has caught up with the
+	 * highest block, it is marked as starting at the genesis block.
+	 *
+	 * @return true if the claim index has caught up, or can not be built.
+	 */
+	private boolean backfillClaimBatch() {
+		final Atomic.Long backfillIndex = getClaimBackfillIndex();
+		final long fromIndex = backfillIndex.get();
+		if (fromIndex == 0) {
+			getClaimByAccountAndCoinMap().clear();
+			getSystemFeeTotalByIndexMap().clear();
+		}
+		final long maxBlockIndex = getMaxBlockIndex();
+		final long toIndex = Math.min(maxBlockIndex, (fromIndex + CLAIM_BACKFILL_COMMIT_INTERVAL) - 1);
+		for (long blockIndex = fromIndex; blockIndex <= toIndex; blockIndex++) {
+			final Block block = getFullBlockFromHeight(blockIndex);
+			if (block == null) {
+				LOG.error("FAILURE backfillClaims, no block at index {}", blockIndex);
+				db.rollback();
+				return true;
+			}
+			addClaims(block);
+		}
+		backfillIndex.set(toIndex + 1);
+		final boolean caughtUp = toIndex >= maxBlockIndex;
+		if (caughtUp) {
+			getClaimStartIndex().set(0);
+		}
+		db.commit();
+		LOG.info("INTERIM backfillClaims, {} of {} blocks", toIndex + 1, maxBlockIndex + 1);
+		return caughtUp;
+	}
+
+	/**
+	 * builds the claim index from the blocks already in the database, one batch
+	 * at a time, so blocks can be put between batches. Each batch is committed
+	 * with the index of the next block, so if this is interrupted it carries on
+	 * from there the next time.
+	 */
+	private void backfillClaims() {
+		LOG.info("STARTED backfillClaims");
+		boolean done = false;
+		while (!done) {
+			synchronized (writeLock) {
+				synchronized (this) {
+					if (closed) {
+						LOG.info("INTERRUPTED backfillClaims, database closed");
+						return;
+					}
+				}
+				try {
+					done = backfillClaimBatch();
+				} catch (final RuntimeException e) {
+					LOG.error("FAILURE backfillClaims", e);
+					db.rollback();
+					return;
+				}
+			}
+		}
+		LOG.info("SUCCESS backfillClaims");
 	}
 
 	/**
@@ -150,7 +343,9 @@ public final class BlockDbMapDbImpl implements BlockDb {
 			closed = true;
 		}
 		LOG.debug("STARTED shutdown");
-		db.close();
+		synchronized (writeLock) {
+			db.close();
+		}
 		LOG.debug("SUCCESS shutdown");
 	}
 
@@ -207,29 +402,33 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	@Override
 	public void deleteHighestBlock() {
 		LOG.info("STARTED deleteHighestBlock");
-		try {
-			long blockHeight = getHeaderOfBlockWithMaxIndex().getIndexAsLong();
-			Block blockHeader = getBlock(blockHeight, false);
-			while (blockHeader == null) {
-				LOG.error("INTERIM INFO deleteHighestBlock height:{} block is null, decrementing by 1 and retrying");
-				blockHeight--;
-				blockHeader = getBlock(blockHeight, false);
-			}
-			LOG.info("INTERIM INFO deleteHighestBlock height:{};hash:{};timestamp:{};", blockHeight, blockHeader.hash,
-					blockHeader.getTimestamp());
-			final Block fullBlock = getBlock(blockHeight, true);
-			deleteBlockAtHeight(blockHeight);
+		synchronized (writeLock) {
 			try {
-				updateAssetAndValueByAccountMap(fullBlock, true);
+				long blockHeight = getHeaderOfBlockWithMaxIndex().getIndexAsLong();
+				Block blockHeader = getBlock(blockHeight, false);
+				while (blockHeader == null) {
+					LOG.error("INTERIM INFO deleteHighestBlock height:{} block is null, decrementing by 1 and retrying");
+					blockHeight--;
+					blockHeader = getBlock(blockHeight, false);
+				}
+				LOG.info("INTERIM INFO deleteHighestBlock height:{};hash:{};timestamp:{};", blockHeight, blockHeader.hash,
+						blockHeader.getTimestamp());
+				final Block fullBlock = getBlock(blockHeight, true);
+				deleteBlockAtHeight(blockHeight);
+				try {
+					updateAssetAndValueByAccountMap(fullBlock, true);
+				} catch (final Exception e) {
+					throw new RuntimeException("deleteHighestBlock: error updating assets for block " + blockHeader.hash,
+							e);
+				}
+				invalidateAccountActivityBucket(blockHeight / accountActivityBucketSize);
+				revertClaims(fullBlock);
+				setBlockIndex(blockHeight - 1);
+				db.commit();
 			} catch (final Exception e) {
-				throw new RuntimeException("deleteHighestBlock: error updating assets for block " + blockHeader.hash,
-						e);
+				LOG.error("FAILURE deleteHighestBlock", e);
+				db.rollback();
 			}
-			setBlockIndex(blockHeight - 1);
-			db.commit();
-		} catch (final Exception e) {
-			LOG.error("FAILURE deleteHighestBlock", e);
-			db.rollback();
 		}
 		LOG.info("SUCCESS deleteHighestBlock");
 	}
@@ -252,6 +451,102 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		return getAssetValueMapFromByteArray(assetAndValueByAccountMap.get(accountBa));
 	}
 
+	@Override
+	public void forEachAccountAssetValue(final BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer) {
+		final Map<byte[], byte[]> assetAndValueByAccountMap = getAssetAndValueByAccountMap();
+		for (final Map.Entry<byte[], byte[]> entry : assetAndValueByAccountMap.entrySet()) {
+			consumer.accept(new UInt160(entry.getKey()), getAssetValueMapFromByteArray(entry.getValue()));
+		}
+	}
+
+	/**
+	 * return the activity of each account. Buckets of blocks wholly in the range
+	 * are read from the account activity index, and only the blocks at the edges
+	 * of the range, or in buckets that are not indexed, are replayed.
+	 */
+	@Override
+	public Map<UInt160, AccountActivity> getAccountActivity(final long fromIndex, final long toIndex) {
+		final Map<UInt160, AccountActivity> activityByAccount = new TreeMap<>();
+		for (final long bucket : replayAccountActivityEdges(fromIndex, toIndex, activityByAccount)) {
+			addAccountActivityBucket(bucket, activityByAccount);
+		}
+		return activityByAccount;
+	}
+
+	/**
+	 * return a function that returns the activity of one account. The blocks at
+	 * the edges of the range are replayed up front, and each account's activity
+	 * in the buckets wholly in the range is read from the account activity index
+	 * when the function is called.
+	 */
+	@Override
+	public Function<UInt160, AccountActivity> getAccountActivityLookup(final long fromIndex, final long toIndex) {
+		final Map<UInt160, AccountActivity> edgeActivityByAccount = new TreeMap<>();
+		final List<Long> bucketList = replayAccountActivityEdges(fromIndex, toIndex, edgeActivityByAccount);
+		final BTreeMap<byte[], byte[]> map = getAccountActivityByBucketMap();
+		return account -> {
+			final AccountActivity activity = new AccountActivity();
+			final AccountActivity edgeActivity = edgeActivityByAccount.get(account);
+			if (edgeActivity != null) {
+				activity.add(edgeActivity);
+			}
+			for (final long bucket : bucketList) {
+				final byte[] activityBa = map.get(getAccountActivityKey(bucket, account));
+				if (activityBa != null) {
+					activity.add(new AccountActivity(ByteBuffer.wrap(activityBa)));
+				}
+			}
+			return activity;
+		};
+	}
+
+	/**
+	 * return the key of an account in an account activity bucket, the bucket
+	 * followed by the account, or only the bucket if the account is null.
+	 *
+	 * @param bucket
+	 *            the bucket to use.
+	 * @param account
+	 *            the account to use, or null for the key prefix of the bucket.
+	 * @return the key.
+	 */
+	private byte[] getAccountActivityKey(final long bucket, final UInt160 account) {
+		if (account == null) {
+			return ByteBuffer.allocate(Long.BYTES).putLong(bucket).array();
+		}
+		final byte[] accountBa = account.toByteArray();
+		return ByteBuffer.allocate(Long.BYTES + accountBa.length).putLong(bucket).put(accountBa).array();
+	}
+
+	/**
+	 * return the account activity map.
+	 *
+	 * @return the account activity map.
+	 */
+	private BTreeMap<byte[], byte[]> getAccountActivityByBucketMap() {
+		return db.treeMap(ACCOUNT_ACTIVITY_BY_BUCKET, Serializer.BYTE_ARRAY, Serializer.BYTE_ARRAY).createOrOpen();
+	}
+
+	/**
+	 * return the set of account activity buckets that are incomplete because a
+	 * block in them was deleted.
+	 *
+	 * @return the set of invalid buckets.
+	 */
+	private Set<Long> getAccountActivityInvalidBucketSet() {
+		return db.hashSet(ACCOUNT_ACTIVITY_INVALID_BUCKETS, Serializer.LONG).createOrOpen();
+	}
+
+	/**
+	 * return the index of the first block in the account activity buckets, or -1
+	 * if no blocks have been added.
+	 *
+	 * @return the account activity start index.
+	 */
+	private Atomic.Long getAccountActivityStartIndex() {
+		return db.atomicLong(ACCOUNT_ACTIVITY_START_INDEX, -1).createOrOpen();
+	}
+
 	@Override
 	public Map<UInt160, Map<UInt256, Fixed8>> getAccountAssetValueMap() {
 		LOG.info("getAccountAssetValueMap STARTED");
@@ -535,6 +830,66 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	 *
 	 * @return the file size.
 	 */
+	/**
+	 * return the claim records of the account from the claim index, or, if the
+	 * index does not start at the genesis block, replayed from the account's
+	 * transactions.
+	 */
+	@Override
+	public List<ClaimRecord> getClaimableList(final UInt160 account) {
+		if (getClaimStartIndex().get() != 0) {
+			return ClaimRecord.getClaimableList(ClaimRecord.replay(this, account, systemFeeMap));
+		}
+		final List<ClaimRecord> recordList = new ArrayList<>();
+		for (final byte[] value : getClaimByAccountAndCoinMap().prefixSubMap(account.toByteArray()).values()) {
+			recordList.add(new ClaimRecord(ByteBuffer.wrap(value)));
+		}
+		return ClaimRecord.getClaimableList(recordList);
+	}
+
+	/**
+	 * return the claim record map.
+	 *
+	 * @return the claim record map.
+	 */
+	private BTreeMap<byte[], byte[]> getClaimByAccountAndCoinMap() {
+		return db.treeMap(CLAIM_BY_ACCOUNT_AND_COIN, Serializer.BYTE_ARRAY, Serializer.BYTE_ARRAY).createOrOpen();
+	}
+
+	/**
+	 * return the key of a claim record, the account followed by the coin
+	 * reference.
+	 *
+	 * @param account
+	 *            the account that owned the output.
+	 * @param cr
+	 *            the coin reference of the output.
+	 * @return the key.
+	 */
+	private byte[] getClaimKey(final UInt160 account, final CoinReference cr) {
+		return ArrayUtils.addAll(account.toByteArray(), cr.toByteArray());
+	}
+
+	/**
+	 * return the index of the next block to add to the claim index, when building
+	 * it from the blocks already in the database.
+	 *
+	 * @return the claim backfill index.
+	 */
+	private Atomic.Long getClaimBackfillIndex() {
+		return db.atomicLong(CLAIM_BACKFILL_INDEX, 0).createOrOpen();
+	}
+
+	/**
+	 * return the index of the first block in the claim index, or -1 if no blocks
+	 * have been added.
+	 *
+	 * @return the claim start index.
+	 */
+	private Atomic.Long getClaimStartIndex() {
+		return db.atomicLong(CLAIM_START_INDEX, -1).createOrOpen();
+	}
+
 	@Override
 	public long getFileSize() {
 		return FileUtils.sizeOfDirectory(fileSizeDir);
@@ -580,12 +935,131 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		return retval;
 	}
 
+	/**
+	 * return the block with the given hash, serialized as it is sent in a "block"
+	 * message. The block is assembled from the stored header and transaction bytes,
+	 * so nothing is decoded or re-encoded.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized block with the given hash.
+	 */
+	@Override
+	public byte[] getRawBlockFromHash(final UInt256 hash) {
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+		}
+		final Long blockIndex = getBlockIndexByHashMap().get(hash.toByteArray());
+		if (blockIndex == null) {
+			return null;
+		}
+		return getRawBlockFromHeight(blockIndex);
+	}
+
+	/**
+	 * return the block at the given height, serialized as it is sent in a "block"
+	 * message. The block is assembled from the stored header and transaction
+	 * bytes, so nothing is decoded or re-encoded.
+	 *
+	 * @param blockIndex
+	 *            the block height to use.
+	 * @return the serialized block at the given height.
+	 */
+	@Override
+	public byte[] getRawBlockFromHeight(final long blockIndex) {
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+		}
+		final byte[] headerBa = getBlockHeaderByIndexMap().get(blockIndex);
+		if (headerBa == null) {
+			return null;
+		}
+
+		final BTreeMap<Long, byte[]> txKeyListMap = getByteArrayByBlockIndexMap(TRANSACTION_KEYS_BY_BLOCK_INDEX);
+		final List<byte[]> txKeyBaList = getByteArrayList(txKeyListMap, blockIndex);
+		final BTreeMap<byte[], byte[]> txMap = getTransactionsByKeyMap();
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		// the stored header ends with a zero transaction count, replace it with the
+		// real count.
+		NetworkUtil.write(bout, headerBa, 0, headerBa.length - 1);
+		NetworkUtil.writeVarInt(bout, txKeyBaList.size());
+		for (final byte[] txKey : txKeyBaList) {
+			final byte[] data = txMap.get(txKey);
+			NetworkUtil.write(bout, data, 0, data.length);
+		}
+		return bout.toByteArray();
+	}
+
+	/**
+	 * return the stored header bytes of the block at the given height, which are
+	 * already serialized as they are sent in a "headers" message.
+	 *
+	 * @param blockHeight
+	 *            the block height to use.
+	 * @return the serialized header of the block at the given height.
+	 */
+	@Override
+	public byte[] getRawHeaderFromHeight(final long blockHeight) {
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+		}
+		return getBlockHeaderByIndexMap().get(blockHeight);
+	}
+
+	/**
+	 * return the stored bytes of the transaction with the given hash, which are
+	 * already serialized as they are sent in a "tx" message.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the serialized transaction with the given hash.
+	 */
+	@Override
+	public byte[] getRawTransactionFromHash(final UInt256 hash) {
+		final byte[] txKey = getTransactionKeyByTransactionHashMap().get(hash.toByteArray());
+		if (txKey == null) {
+			return null;
+		}
+		return getTransactionsByKeyMap().get(txKey);
+	}
+
 	@Override
 	public <K, V> Map<K, V> getStates(final Class<K> keyClass, final Class<V> valueClass) {
 		// TODO: implement this.
 		throw new NotImplementedException("getStates");
 	}
 
+	/**
+	 * return the total system fee of every block up to and including the block,
+	 * or zero if the index is before the genesis block.
+	 *
+	 * @param blockIndex
+	 *            the block index to use.
+	 * @return the total system fee.
+	 */
+	private long getSystemFeeTotal(final long blockIndex) {
+		if (blockIndex < 0) {
+			return 0;
+		}
+		return getSystemFeeTotalByIndexMap().get(blockIndex);
+	}
+
+	/**
+	 * return the system fee total map.
+	 *
+	 * @return the system fee total map.
+	 */
+	private BTreeMap<Long, Long> getSystemFeeTotalByIndexMap() {
+		return db.treeMap(SYSTEM_FEE_TOTAL_BY_INDEX, Serializer.LONG, Serializer.LONG).createOrOpen();
+	}
+
 	/**
 	 * return the map of transactions by account and index.
 	 *
@@ -709,7 +1183,10 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		final BTreeMap<byte[], byte[]> transactionByAccountAndIndexMap = getTransactionByAccountAndIndexMap();
 		final BTreeMap<byte[], Long> transactionByAccountMaxIndexMap = getTransactionByAccountMaxIndexMap();
 		final byte[] accountBa = account.toByteArray();
-		final long maxIndex = transactionByAccountMaxIndexMap.get(accountBa);
+		final Long maxIndex = transactionByAccountMaxIndexMap.get(accountBa);
+		if (maxIndex == null) {
+			return transactionList;
+		}
 		for (long ix = 0; ix < maxIndex; ix++) {
 			final byte[] accountKeyBa = getAccountKey(accountBa, ix);
 			final byte[] ba = transactionByAccountAndIndexMap.get(accountKeyBa);
@@ -765,6 +1242,37 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		return assetIdTxoMap;
 	}
 
+	/**
+	 * removes the account activity bucket, and marks it invalid, so the blocks in
+	 * it are replayed. This is for when a block in the bucket is deleted, as the
+	 * first and last timestamps can't be taken back out of the bucket.
+	 *
+	 * @param bucket
+	 *            the bucket to invalidate.
+	 */
+	private void invalidateAccountActivityBucket(final long bucket) {
+		getAccountActivityInvalidBucketSet().add(bucket);
+		getAccountActivityByBucketMap().prefixSubMap(getAccountActivityKey(bucket, null)).clear();
+	}
+
+	/**
+	 * return true if every block in the account activity bucket has been added to
+	 * it.
+	 *
+	 * @param bucket
+	 *            the bucket to use.
+	 * @return true if the bucket is complete.
+	 */
+	private boolean isAccountActivityBucketComplete(final long bucket) {
+		final long startIndex = getAccountActivityStartIndex().get();
+		final long firstIndex = bucket * accountActivityBucketSize;
+		final long lastIndex = (firstIndex + accountActivityBucketSize) - 1;
+		if ((startIndex < 0) || (firstIndex < startIndex) || (lastIndex > getMaxBlockIndex())) {
+			return false;
+		}
+		return !getAccountActivityInvalidBucketSet().contains(bucket);
+	}
+
 	@Override
 	public void put(final boolean forceSynch, final Block... blocks) {
 		synchronized (this) {
@@ -776,84 +1284,148 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("STARTED put, {} blocks", NumberFormat.getIntegerInstance().format(blocks.length));
 		}
-		try {
-			final BTreeMap<byte[], Long> blockIndexByHashMap = getBlockIndexByHashMap();
-			final BTreeMap<Long, byte[]> blockHeaderByIndexMap = getBlockHeaderByIndexMap();
-
-			for (final Block block : blocks) {
-				synchronized (this) {
-					if (closed) {
-						db.rollback();
-						return;
+		synchronized (writeLock) {
+			try {
+				final BTreeMap<byte[], Long> blockIndexByHashMap = getBlockIndexByHashMap();
+				final BTreeMap<Long, byte[]> blockHeaderByIndexMap = getBlockHeaderByIndexMap();
+
+				for (final Block block : blocks) {
+					synchronized (this) {
+						if (closed) {
+							db.rollback();
+							return;
+						}
+					}
+					final long blockIndex = block.getIndexAsLong();
+					final long maxBlockIndex = getMaxBlockIndex();
+					final boolean duplicateBlock;
+					if ((blockIndex <= maxBlockIndex) && (blockIndex != 0) && (maxBlockIndex != 0)) {
+						duplicateBlock = true;
+					} else {
+						duplicateBlock = false;
 					}
-				}
-				final long blockIndex = block.getIndexAsLong();
-				final long maxBlockIndex = getMaxBlockIndex();
-				final boolean duplicateBlock;
-				if ((blockIndex <= maxBlockIndex) && (blockIndex != 0) && (maxBlockIndex != 0)) {
-					duplicateBlock = true;
-				} else {
-					duplicateBlock = false;
-				}
 
-				if (duplicateBlock) {
-					LOG.error("duplicate block,blockIndex:{};maxBlockIndex:{};hash:{};", blockIndex, maxBlockIndex,
-							block.hash);
-				} else {
-					final byte[] prevHashBa = block.prevHash.toByteArray();
-					ArrayUtils.reverse(prevHashBa);
+					if (duplicateBlock) {
+						LOG.error("duplicate block,blockIndex:{};maxBlockIndex:{};hash:{};", blockIndex, maxBlockIndex,
+								block.hash);
+					} else {
+						final byte[] prevHashBa = block.prevHash.toByteArray();
+						ArrayUtils.reverse(prevHashBa);
 
-					blockIndexByHashMap.put(block.hash.toByteArray(), blockIndex);
-					blockHeaderByIndexMap.put(blockIndex, block.toHeaderByteArray());
+						blockIndexByHashMap.put(block.hash.toByteArray(), blockIndex);
+						blockHeaderByIndexMap.put(blockIndex, block.toHeaderByteArray());
 
-					int transactionIndex = 0;
+						int transactionIndex = 0;
 
-					final Map<Long, List<byte[]>> txKeyByBlockIxMap = new TreeMap<>();
-					final Map<ByteBuffer, byte[]> txByKeyMap = new TreeMap<>();
-					final Map<ByteBuffer, byte[]> txKeyByTxHashMap = new TreeMap<>();
+						final Map<Long, List<byte[]>> txKeyByBlockIxMap = new TreeMap<>();
+						final Map<ByteBuffer, byte[]> txByKeyMap = new TreeMap<>();
+						final Map<ByteBuffer, byte[]> txKeyByTxHashMap = new TreeMap<>();
 
-					txKeyByBlockIxMap.put(blockIndex, new ArrayList<>());
+						txKeyByBlockIxMap.put(blockIndex, new ArrayList<>());
 
-					for (final Transaction transaction : block.getTransactionList()) {
-						final byte[] transactionBaseBa = transaction.toByteArray();
-						final byte[] transactionKeyBa = getTransactionKey(blockIndex, transactionIndex);
+						for (final Transaction transaction : block.getTransactionList()) {
+							final byte[] transactionBaseBa = transaction.toByteArray();
+							final byte[] transactionKeyBa = getTransactionKey(blockIndex, transactionIndex);
 
-						putList(txKeyByBlockIxMap, blockIndex, transactionKeyBa);
+							putList(txKeyByBlockIxMap, blockIndex, transactionKeyBa);
 
-						final ByteBuffer transactionKeyBb = ByteBuffer.wrap(transactionKeyBa);
-						txByKeyMap.put(transactionKeyBb, transactionBaseBa);
+							final ByteBuffer transactionKeyBb = ByteBuffer.wrap(transactionKeyBa);
+							txByKeyMap.put(transactionKeyBb, transactionBaseBa);
 
-						txKeyByTxHashMap.put(ByteBuffer.wrap(transaction.getHash().toByteArray()), transactionKeyBa);
+							txKeyByTxHashMap.put(ByteBuffer.wrap(transaction.getHash().toByteArray()), transactionKeyBa);
 
-						transactionIndex++;
-					}
+							transactionIndex++;
+						}
 
-					putWithByteBufferKey(TRANSACTION_KEY_BY_HASH, txKeyByTxHashMap);
-					putWithByteBufferKey(TRANSACTION_BY_KEY, txByKeyMap);
+						putWithByteBufferKey(TRANSACTION_KEY_BY_HASH, txKeyByTxHashMap);
+						putWithByteBufferKey(TRANSACTION_BY_KEY, txByKeyMap);
 
-					putWithLongKey(TRANSACTION_KEYS_BY_BLOCK_INDEX, toByteBufferValue(txKeyByBlockIxMap));
+						putWithLongKey(TRANSACTION_KEYS_BY_BLOCK_INDEX, toByteBufferValue(txKeyByBlockIxMap));
 
-					try {
-						updateAssetAndValueByAccountMap(block, false);
-					} catch (final Exception e) {
-						throw new RuntimeException("put: error updating assets for block " + block.hash, e);
+						try {
+							updateAssetAndValueByAccountMap(block, false);
+						} catch (final Exception e) {
+							throw new RuntimeException("put: error updating assets for block " + block.hash, e);
+						}
+						updateAccountActivity(block);
+						updateClaims(block);
+						updateMaxBlockIndex(blockIndex);
 					}
-					updateMaxBlockIndex(blockIndex);
 				}
-			}
 
-			db.commit();
-		} catch (final Exception e) {
-			LOG.error("FAILURE put, {} blocks", NumberFormat.getIntegerInstance().format(blocks.length));
-			LOG.error("FAILURE put", e);
-			db.rollback();
-			throw new RuntimeException(e);
+				db.commit();
+			} catch (final Exception e) {
+				LOG.error("FAILURE put, {} blocks", NumberFormat.getIntegerInstance().format(blocks.length));
+				LOG.error("FAILURE put", e);
+				db.rollback();
+				throw new RuntimeException(e);
+			}
 		}
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("SUCCESS put, {} blocks", NumberFormat.getIntegerInstance().format(blocks.length));
 		}
 	}
 
+	/**
+	 * replays the blocks in the range that are not in a complete account activity
+	 * bucket, adding their activity to the map, and returns the buckets wholly in
+	 * the range that can be read from the account activity index.
+	 *
+	 * @param fromIndex
+	 *            the index of the first block.
+	 * @param toIndex
+	 *            the index after the last block.
+	 * @param activityByAccount
+	 *            the activity of each account, to add the replayed blocks to.
+	 * @return the complete buckets in the range.
+	 */
+	private List<Long> replayAccountActivityEdges(final long fromIndex, final long toIndex,
+			final Map<UInt160, AccountActivity> activityByAccount) {
+		final List<Long> bucketList = new ArrayList<>();
+		long index = fromIndex;
+		while (index < toIndex) {
+			final long bucket = index / accountActivityBucketSize;
+			if (((index % accountActivityBucketSize) == 0) && ((index + accountActivityBucketSize) <= toIndex)
+					&& isAccountActivityBucketComplete(bucket)) {
+				bucketList.add(bucket);
+				index += accountActivityBucketSize;
+			} else {
+				AccountActivity.addBlock(this, getFullBlockFromHeight(index), activityByAccount);
+				index++;
+			}
+		}
+		return bucketList;
+	}
+
+	/**
+	 * takes the block's claim records back out of the claim index: the outputs it
+	 * spent are removed, and the outputs it claimed are marked unclaimed. If the
+	 * claim index is being built and has passed the block, it is moved back.
+	 *
+	 * @param block
+	 *            the block to use.
+	 */
+	private void revertClaims(final Block block) {
+		if (getClaimStartIndex().get() != 0) {
+			final Atomic.Long backfillIndex = getClaimBackfillIndex();
+			if (backfillIndex.get() <= block.getIndexAsLong()) {
+				return;
+			}
+			backfillIndex.set(block.getIndexAsLong());
+		}
+		final BTreeMap<byte[], byte[]> claimMap = getClaimByAccountAndCoinMap();
+		for (final Transaction transaction : block.getTransactionList()) {
+			for (final CoinReference cr : ClaimRecord.getClaimedList(transaction)) {
+				setClaimed(claimMap, cr, false);
+			}
+			for (final CoinReference cr : transaction.inputs) {
+				final TransactionOutput output = ClaimRecord.getOutput(this, cr);
+				claimMap.remove(getClaimKey(output.scriptHash, cr));
+			}
+		}
+		getSystemFeeTotalByIndexMap().remove(block.getIndexAsLong());
+	}
+
 	/**
 	 * puts the asset value map into the account map.
 	 *
@@ -926,6 +1498,29 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		}
 	}
 
+	/**
+	 * sets the claimed flag of the claim record of the output, if it has one.
+	 *
+	 * @param claimMap
+	 *            the claim record map.
+	 * @param cr
+	 *            the coin reference of the output.
+	 * @param claimed
+	 *            true if a claim transaction has claimed the GAS.
+	 */
+	private void setClaimed(final BTreeMap<byte[], byte[]> claimMap, final CoinReference cr, final boolean claimed) {
+		final TransactionOutput output = ClaimRecord.getOutput(this, cr);
+		final byte[] key = getClaimKey(output.scriptHash, cr);
+		final byte[] value = claimMap.get(key);
+		if (value == null) {
+			LOG.error("no claim record for claimed output:{}", cr);
+			return;
+		}
+		final ClaimRecord record = new ClaimRecord(ByteBuffer.wrap(value));
+		record.setClaimed(claimed);
+		claimMap.put(key, record.toByteArray());
+	}
+
 	/**
 	 * sets the blockindex to be the given block index.
 	 *
@@ -954,6 +1549,57 @@ public final class BlockDbMapDbImpl implements BlockDb {
 		return destMap;
 	}
 
+	/**
+	 * adds the block's account activity to it's bucket. The first block added
+	 * sets the start of the index, so buckets before it, from before the index
+	 * existed, are replayed instead.
+	 *
+	 * @param block
+	 *            the block to use.
+	 */
+	private void updateAccountActivity(final Block block) {
+		final long blockIndex = block.getIndexAsLong();
+		final long bucket = blockIndex / accountActivityBucketSize;
+		final Atomic.Long startIndex = getAccountActivityStartIndex();
+		if (startIndex.get() < 0) {
+			startIndex.set(blockIndex);
+		}
+		if (getAccountActivityInvalidBucketSet().contains(bucket)) {
+			return;
+		}
+		final Map<UInt160, AccountActivity> blockActivity = new TreeMap<>();
+		AccountActivity.addBlock(this, block, blockActivity);
+		final BTreeMap<byte[], byte[]> map = getAccountActivityByBucketMap();
+		for (final UInt160 account : blockActivity.keySet()) {
+			final byte[] key = getAccountActivityKey(bucket, account);
+			final AccountActivity activity = blockActivity.get(account);
+			final byte[] oldValue = map.get(key);
+			if (oldValue != null) {
+				activity.add(new AccountActivity(ByteBuffer.wrap(oldValue)));
+			}
+			map.put(key, activity.toByteArray());
+		}
+	}
+
+	/**
+	 * adds the block to the claim index, if the index starts at the genesis
+	 * block. The first block added sets the start of the index, and the index is
+	 * only kept if that is the genesis block, as claims need the whole chain.
+	 *
+	 * @param block
+	 *            the block to use.
+	 */
+	private void updateClaims(final Block block) {
+		final Atomic.Long startIndex = getClaimStartIndex();
+		if (startIndex.get() < 0) {
+			startIndex.set(block.getIndexAsLong());
+		}
+		if (startIndex.get() != 0) {
+			return;
+		}
+		addClaims(block);
+	}
+
 	/**
 	 * updates the asset and value by account map.
 	 *
@@ -1157,121 +1803,135 @@ public final class BlockDbMapDbImpl implements BlockDb {
 	}
 
 	@Override
-	public void validate() {
-		LOG.info("STARTED validate");
+	public void startIndexBackfill(final Executor executor) {
+		if ((getClaimStartIndex().get() == 0) || !getBlockHeaderByIndexMap().containsKey(0L)) {
+			return;
+		}
 		try {
-			final Block block0 = getBlock(0, false);
-			if (!block0.hash.equals(GenesisBlockUtil.GENESIS_HASH)) {
-				throw new RuntimeException(
-						"height 0 block hash \"" + block0.hash.toHexString() + "\" does not match genesis block hash \""
-								+ GenesisBlockUtil.GENESIS_HASH.toHexString() + "\".");
-			}
-
-			long lastInfoMs = System.currentTimeMillis();
-
-			long blockHeight = 0;
-			long lastGoodBlockIndex = -1;
-			final long maxBlockCount = getBlockCount();
+			executor.execute(this::backfillClaims);
+		} catch (final RejectedExecutionException e) {
+			LOG.error("FAILURE backfillClaims, executor full, claims are computed from the blocks", e);
+		}
+	}
 
-			boolean blockHeightNoLongerValid = false;
+	@Override
+	public void validate() {
+		LOG.info("STARTED validate");
+		synchronized (writeLock) {
+			try {
+				final Block block0 = getBlock(0, false);
+				if (!block0.hash.equals(GenesisBlockUtil.GENESIS_HASH)) {
+					throw new RuntimeException(
+							"height 0 block hash \"" + block0.hash.toHexString() + "\" does not match genesis block hash \""
+									+ GenesisBlockUtil.GENESIS_HASH.toHexString() + "\".");
+				}
 
-			final String maxBlockCountStr;
-			if (LOG.isDebugEnabled() || LOG.isErrorEnabled()) {
-				maxBlockCountStr = NumberFormat.getIntegerInstance().format(maxBlockCount);
-			} else {
-				maxBlockCountStr = null;
-			}
+				long lastInfoMs = System.currentTimeMillis();
 
-			LOG.info("INTERIM validate, clear account list STARTED");
-			final BTreeMap<byte[], byte[]> assetAndValueByAccountMap = getAssetAndValueByAccountMap();
-			assetAndValueByAccountMap.clear();
-			LOG.info("INTERIM validate, clear account list SUCCESS");
+				long blockHeight = 0;
+				long lastGoodBlockIndex = -1;
+				final long maxBlockCount = getBlockCount();
 
-			LOG.info("INTERIM validate, clear transaction output state STARTED");
-			getTransactionByAccountAndIndexMap().clear();
-			getTransactionByAccountMaxIndexMap().clear();
-			LOG.info("INTERIM validate, clear  transaction output state SUCCESS");
+				boolean blockHeightNoLongerValid = false;
 
-			while (blockHeight < maxBlockCount) {
-				final String blockHeightStr;
+				final String maxBlockCountStr;
 				if (LOG.isDebugEnabled() || LOG.isErrorEnabled()) {
-					blockHeightStr = NumberFormat.getIntegerInstance().format(blockHeight);
+					maxBlockCountStr = NumberFormat.getIntegerInstance().format(maxBlockCount);
 				} else {
-					blockHeightStr = null;
+					maxBlockCountStr = null;
 				}
 
-				LOG.debug("INTERIM DEBUG validate {} of {} STARTED ", blockHeightStr, maxBlockCountStr);
-				final Block block = getBlock(blockHeight, true);
-				if (block == null) {
-					LOG.error("INTERIM validate {} of {} FAILURE, block not found in blockchain.", blockHeightStr,
-							maxBlockCountStr);
-					blockHeightNoLongerValid = true;
-				} else if ((blockHeight != 0) && (!containsBlockWithHash(block.prevHash))) {
-					LOG.error("INTERIM validate {} of {} FAILURE, prevHash {} not found in blockchain.", blockHeightStr,
-							maxBlockCountStr, block.prevHash.toHexString());
-					deleteBlockAtHeight(blockHeight);
-					blockHeightNoLongerValid = true;
-				} else if (block.getIndexAsLong() != blockHeight) {
-					LOG.error("INTERIM validate {} of {} FAILURE, indexAsLong {} does not match blockchain.",
-							blockHeightStr, maxBlockCountStr, block.getIndexAsLong());
-					deleteBlockAtHeight(blockHeight);
-					blockHeightNoLongerValid = true;
-				} else if (blockHeightNoLongerValid) {
-					LOG.error("INTERIM validate {} of {} FAILURE, block height tainted.", blockHeightStr,
-							maxBlockCountStr, block.getIndexAsLong());
-					deleteBlockAtHeight(blockHeight);
-				} else {
-					if (System.currentTimeMillis() > (lastInfoMs + 30000)) {
-						final String numberOfAccountsStr = NumberFormat.getIntegerInstance()
-								.format(assetAndValueByAccountMap.size());
-						LOG.info("INTERIM INFO  validate {} of {} SUCCESS, number of accounts:{}; date:{}",
-								blockHeightStr, maxBlockCountStr, numberOfAccountsStr, block.getTimestamp());
-						lastInfoMs = System.currentTimeMillis();
+				LOG.info("INTERIM validate, clear account list STARTED");
+				final BTreeMap<byte[], byte[]> assetAndValueByAccountMap = getAssetAndValueByAccountMap();
+				assetAndValueByAccountMap.clear();
+				LOG.info("INTERIM validate, clear account list SUCCESS");
+
+				LOG.info("INTERIM validate, clear transaction output state STARTED");
+				getTransactionByAccountAndIndexMap().clear();
+				getTransactionByAccountMaxIndexMap().clear();
+				LOG.info("INTERIM validate, clear  transaction output state SUCCESS");
+
+				while (blockHeight < maxBlockCount) {
+					final String blockHeightStr;
+					if (LOG.isDebugEnabled() || LOG.isErrorEnabled()) {
+						blockHeightStr = NumberFormat.getIntegerInstance().format(blockHeight);
 					} else {
-						LOG.debug("INTERIM DEBUG validate {} of {} SUCCESS.", blockHeightStr, maxBlockCountStr);
+						blockHeightStr = null;
 					}
 
-					final long blockIndex = block.getIndexAsLong();
-					int transactionIndex = 0;
-					final Map<ByteBuffer, byte[]> txKeyByTxHashMap = new TreeMap<>();
-					for (final Transaction transaction : block.getTransactionList()) {
-						final byte[] transactionKeyBa = getTransactionKey(blockIndex, transactionIndex);
-						txKeyByTxHashMap.put(ByteBuffer.wrap(transaction.getHash().toByteArray()), transactionKeyBa);
-						transactionIndex++;
-					}
-					putWithByteBufferKey(TRANSACTION_KEY_BY_HASH, txKeyByTxHashMap);
+					LOG.debug("INTERIM DEBUG validate {} of {} STARTED ", blockHeightStr, maxBlockCountStr);
+					final Block block = getBlock(blockHeight, true);
+					if (block == null) {
+						LOG.error("INTERIM validate {} of {} FAILURE, block not found in blockchain.", blockHeightStr,
+								maxBlockCountStr);
+						blockHeightNoLongerValid = true;
+					} else if ((blockHeight != 0) && (!containsBlockWithHash(block.prevHash))) {
+						LOG.error("INTERIM validate {} of {} FAILURE, prevHash {} not found in blockchain.", blockHeightStr,
+								maxBlockCountStr, block.prevHash.toHexString());
+						deleteBlockAtHeight(blockHeight);
+						blockHeightNoLongerValid = true;
+					} else if (block.getIndexAsLong() != blockHeight) {
+						LOG.error("INTERIM validate {} of {} FAILURE, indexAsLong {} does not match blockchain.",
+								blockHeightStr, maxBlockCountStr, block.getIndexAsLong());
+						deleteBlockAtHeight(blockHeight);
+						blockHeightNoLongerValid = true;
+					} else if (blockHeightNoLongerValid) {
+						LOG.error("INTERIM validate {} of {} FAILURE, block height tainted.", blockHeightStr,
+								maxBlockCountStr, block.getIndexAsLong());
+						deleteBlockAtHeight(blockHeight);
+					} else {
+						if (System.currentTimeMillis() > (lastInfoMs + 30000)) {
+							final String numberOfAccountsStr = NumberFormat.getIntegerInstance()
+									.format(assetAndValueByAccountMap.size());
+							LOG.info("INTERIM INFO  validate {} of {} SUCCESS, number of accounts:{}; date:{}",
+									blockHeightStr, maxBlockCountStr, numberOfAccountsStr, block.getTimestamp());
+							lastInfoMs = System.currentTimeMillis();
+						} else {
+							LOG.debug("INTERIM DEBUG validate {} of {} SUCCESS.", blockHeightStr, maxBlockCountStr);
+						}
 
-					try {
-						updateAssetAndValueByAccountMap(block, false);
-					} catch (final Exception e) {
-						throw new RuntimeException("validate: error updating assets for block ["
-								+ block.getIndexAsLong() + "]" + block.hash, e);
+						final long blockIndex = block.getIndexAsLong();
+						int transactionIndex = 0;
+						final Map<ByteBuffer, byte[]> txKeyByTxHashMap = new TreeMap<>();
+						for (final Transaction transaction : block.getTransactionList()) {
+							final byte[] transactionKeyBa = getTransactionKey(blockIndex, transactionIndex);
+							txKeyByTxHashMap.put(ByteBuffer.wrap(transaction.getHash().toByteArray()), transactionKeyBa);
+							transactionIndex++;
+						}
+						putWithByteBufferKey(TRANSACTION_KEY_BY_HASH, txKeyByTxHashMap);
+
+						try {
+							updateAssetAndValueByAccountMap(block, false);
+						} catch (final Exception e) {
+							throw new RuntimeException("validate: error updating assets for block ["
+									+ block.getIndexAsLong() + "]" + block.hash, e);
+						}
+
+						lastGoodBlockIndex = block.getIndexAsLong();
 					}
 
-					lastGoodBlockIndex = block.getIndexAsLong();
-				}
+					final boolean forceSynch = (lastGoodBlockIndex % BLOCK_FORCE_SYNCH_INTERVAL) == 0;
+					if (forceSynch) {
+						LOG.info("INTERIM validate, partial commit STARTED index {}", lastGoodBlockIndex);
+						commitValidation(lastGoodBlockIndex);
+						LOG.info("INTERIM validate, partial commit SUCCESS index {}", lastGoodBlockIndex);
+					}
 
-				final boolean forceSynch = (lastGoodBlockIndex % BLOCK_FORCE_SYNCH_INTERVAL) == 0;
-				if (forceSynch) {
-					LOG.info("INTERIM validate, partial commit STARTED index {}", lastGoodBlockIndex);
-					commitValidation(lastGoodBlockIndex);
-					LOG.info("INTERIM validate, partial commit SUCCESS index {}", lastGoodBlockIndex);
+					blockHeight++;
 				}
 
-				blockHeight++;
-			}
-
-			LOG.info("INTERIM validate, commit STARTED index {}", lastGoodBlockIndex);
-			commitValidation(lastGoodBlockIndex);
-			LOG.info("INTERIM validate, commit SUCCESS index {}", lastGoodBlockIndex);
+				LOG.info("INTERIM validate, commit STARTED index {}", lastGoodBlockIndex);
+				commitValidation(lastGoodBlockIndex);
+				LOG.info("INTERIM validate, commit SUCCESS index {}", lastGoodBlockIndex);
 
-			LOG.info("SUCCESS validate");
-		} catch (
+				LOG.info("SUCCESS validate");
+			} catch (
 
-		final Exception e) {
-			LOG.error("FAILURE validate", e);
-			db.rollback();
-			throw new RuntimeException(e);
+			final Exception e) {
+				LOG.error("FAILURE validate", e);
+				db.rollback();
+				throw new RuntimeException(e);
+			}
 		}
 	}
 }
@@ -3,6 +3,7 @@ package neo.model.network;
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -60,6 +61,15 @@ public final class GetBlocksPayload implements Payload, ToJsonObject, ByteArrayS
 		}
 	}
 
+	/**
+	 * return the start hashes.
+	 *
+	 * @return the start hashes.
+	 */
+	public List<UInt256> getHashStartList() {
+		return Collections.unmodifiableList(hashStartList);
+	}
+
 	@Override
 	public byte[] toByteArray() {
 		final ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -22,6 +22,11 @@ import neo.model.util.NetworkUtil;
  */
 public final class HeadersPayload implements Payload, ToJsonObject, ByteArraySerializable {
 
+	/**
+	 * the max number of headers in a headers payload.
+	 */
+	public static final int MAX_HEADERS = 2000;
+
 	/**
 	 * the list of headers.
 	 */
@@ -1,10 +1,11 @@
 package neo.model.network;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.ArrayUtils;
@@ -14,12 +15,10 @@ import org.slf4j.LoggerFactory;
 
 import neo.model.CommandEnum;
 import neo.model.bytes.UInt32;
-import neo.model.core.Block;
 import neo.model.core.Transaction;
 import neo.model.network.exception.MessageFormatException;
 import neo.model.util.InputStreamUtil;
 import neo.model.util.ModelUtil;
-import neo.model.util.NetworkUtil;
 import neo.model.util.SHA256HashUtil;
 
 /**
@@ -35,6 +34,16 @@ public final class Message {
 	 */
 	private static final String LOWERCASE_ALPHABET = "[a-z]+";
 
+	/**
+	 * the size of the message header, in bytes.
+	 */
+	public static final int HEADER_SIZE = 24;
+
+	/**
+	 * the size of the command in the message header, in bytes.
+	 */
+	private static final int COMMAND_SIZE = 12;
+
 	/**
 	 * the logger.
 	 */
@@ -80,6 +89,11 @@ public final class Message {
 	 */
 	public final CommandEnum commandEnum;
 
+	/**
+	 * the time taken to checksum and decode the payload, in nanoseconds.
+	 */
+	private final long decodeNanos;
+
 	/**
 	 * the constructor.
 	 *
@@ -98,7 +112,9 @@ public final class Message {
 		final UInt32 checksum = ModelUtil.getUInt32(bb);
 		LOG.trace("interim[1] inSocket checksum:{}", checksum);
 		payloadBa = ModelUtil.getFixedLengthByteArray(bb, length, false);
+		final long decodeStartNanos = System.nanoTime();
 		payload = createPayload();
+		decodeNanos = System.nanoTime() - decodeStartNanos;
 		commandEnum = CommandEnum.fromName(command);
 	}
 
@@ -116,7 +132,9 @@ public final class Message {
 		this.magic = magic;
 		this.command = command.getName();
 		this.payloadBa = payloadBa;
+		final long decodeStartNanos = System.nanoTime();
 		payload = createPayload();
+		decodeNanos = System.nanoTime() - decodeStartNanos;
 		commandEnum = CommandEnum.fromName(this.command);
 	}
 
@@ -131,7 +149,7 @@ public final class Message {
 	 *             if an error occurs.
 	 */
 	public Message(final long readTimeOut, final InputStream in) throws IOException {
-		final byte[] headerBa = new byte[24];
+		final byte[] headerBa = new byte[HEADER_SIZE];
 		InputStreamUtil.readUntilFull(readTimeOut, in, headerBa);
 		final ByteBuffer headerBb = ByteBuffer.wrap(headerBa);
 		final UInt32 magicObj = ModelUtil.getUInt32(headerBb);
@@ -170,6 +188,7 @@ public final class Message {
 			}
 			InputStreamUtil.readUntilFull(readTimeOut, in, payloadBa);
 		}
+		final long decodeStartNanos = System.nanoTime();
 		final UInt32 calcChecksum = calculateChecksum(payloadBa);
 		LOG.trace("interim[3] inSocket checksum:{}", checksum);
 
@@ -181,6 +200,7 @@ public final class Message {
 		final ByteBuffer payloadBb = ByteBuffer.wrap(payloadBa);
 		this.payloadBa = ModelUtil.getFixedLengthByteArray(payloadBb, length, false);
 		payload = createPayload();
+		decodeNanos = System.nanoTime() - decodeStartNanos;
 	}
 
 	/**
@@ -231,10 +251,10 @@ public final class Message {
 				payload = null;
 				break;
 			case "getdata":
-				payload = null;
+				payload = new InvPayload(ByteBuffer.wrap(payloadBa));
 				break;
 			case "getblocks":
-				payload = null;
+				payload = new GetBlocksPayload(ByteBuffer.wrap(payloadBa));
 				break;
 			case "mempool":
 				payload = null;
@@ -243,13 +263,14 @@ public final class Message {
 				payload = null;
 				break;
 			case "getheaders":
-				payload = null;
+				payload = new GetBlocksPayload(ByteBuffer.wrap(payloadBa));
 				break;
 			case "consensus":
 				payload = null;
 				break;
 			case "block":
-				payload = new Block(ByteBuffer.wrap(payloadBa));
+				// blocks are parsed by the block ingest pipeline, not the socket thread.
+				payload = null;
 				break;
 			case "tx":
 				payload = new Transaction(ByteBuffer.wrap(payloadBa));
@@ -270,6 +291,15 @@ public final class Message {
 		}
 	}
 
+	/**
+	 * return the time taken to checksum and decode the payload, in nanoseconds.
+	 *
+	 * @return the time taken to checksum and decode the payload, in nanoseconds.
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
 	/**
 	 * return the payload.
 	 *
@@ -293,6 +323,15 @@ public final class Message {
 		return payloadBa;
 	}
 
+	/**
+	 * return the size of the message, including the header, in bytes.
+	 *
+	 * @return the size of the message, in bytes.
+	 */
+	public int getSize() {
+		return HEADER_SIZE + payloadBa.length;
+	}
+
 	/**
 	 * return the message as a byte array.
 	 *
@@ -303,39 +342,35 @@ public final class Message {
 	 *             if an error occurs.
 	 */
 	public byte[] toByteArray() throws IOException, UnsupportedEncodingException {
-		final byte[] magicBa = NetworkUtil.getIntByteArray(magic);
-		ArrayUtils.reverse(magicBa);
-		final UInt32 magicObj = new UInt32(magicBa);
-		final byte[] checksum = calculateChecksum(payloadBa).toByteArray();
-		ArrayUtils.reverse(checksum);
-		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		bout.write(magicObj.getBytesCopy());
-		NetworkUtil.writeString(bout, 12, command);
+		final ByteBuffer bb = ByteBuffer.allocate(getSize());
+		writeTo(bb);
+		return bb.array();
+	}
 
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("createMessage magic+command {}", Hex.encodeHexString(bout.toByteArray()));
-		}
-		final byte[] lengthBa = NetworkUtil.getIntByteArray(payloadBa.length);
-		ArrayUtils.reverse(lengthBa);
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("createMessage lengthBa {}", Hex.encodeHexString(lengthBa));
-		}
-		bout.write(lengthBa);
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("createMessage magic+command+length {}", Hex.encodeHexString(bout.toByteArray()));
-			LOG.trace("createMessage checksum {}", Hex.encodeHexString(checksum));
-		}
-		bout.write(checksum);
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("createMessage magic+command+length+checksum {}", Hex.encodeHexString(bout.toByteArray()));
+	/**
+	 * writes the message, including the header, into the byte buffer, without
+	 * any intermediate byte arrays for the header.
+	 *
+	 * @param bb
+	 *            the byte buffer to write to, which must have at least
+	 *            {@link #getSize()} bytes remaining.
+	 */
+	public void writeTo(final ByteBuffer bb) {
+		final ByteOrder order = bb.order();
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt((int) magic);
+		final byte[] commandBa = command.getBytes(StandardCharsets.UTF_8);
+		bb.put(commandBa);
+		for (int ix = commandBa.length; ix < COMMAND_SIZE; ix++) {
+			bb.put((byte) 0);
 		}
-		bout.write(payloadBa);
+		bb.putInt(payloadBa.length);
+		bb.put(SHA256HashUtil.getDoubleSHA256Hash(payloadBa), 0, UInt32.SIZE);
+		bb.put(payloadBa);
+		bb.order(order);
 		if (LOG.isTraceEnabled()) {
-			LOG.trace("createMessage payloadBa {}", Hex.encodeHexString(payloadBa));
-			LOG.trace("createMessage magic+command+length+checksum+payload {}",
-					Hex.encodeHexString(bout.toByteArray()));
+			LOG.trace("writeTo command:{}; size:{};", command, getSize());
 		}
-		return bout.toByteArray();
 	}
 
 	@Override
@@ -1,6 +1,13 @@
 package neo.model.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+import neo.model.bytes.UInt256;
 import neo.model.bytes.UInt32;
+import neo.model.core.Transaction;
 
 /**
  * block utilities.
@@ -23,6 +30,42 @@ public final class BlockUtil {
 		return indexBa;
 	}
 
+	/**
+	 * return the merkle root of the transactions, in the same byte order as a
+	 * block's merkle root. Each level of the tree hashes pairs of hashes, and an
+	 * odd hash at the end of a level is paired with itself.
+	 *
+	 * @param transactionList
+	 *            the transactions to use.
+	 * @return the merkle root, or null if there are no transactions.
+	 */
+	public static UInt256 getMerkleRoot(final List<Transaction> transactionList) {
+		if (transactionList.isEmpty()) {
+			return null;
+		}
+		List<byte[]> hashList = new ArrayList<>();
+		for (final Transaction transaction : transactionList) {
+			hashList.add(transaction.getHash().getBytesCopy());
+		}
+		while (hashList.size() > 1) {
+			final List<byte[]> parentHashList = new ArrayList<>();
+			for (int ix = 0; ix < hashList.size(); ix += 2) {
+				final byte[] left = hashList.get(ix);
+				final byte[] right;
+				if ((ix + 1) < hashList.size()) {
+					right = hashList.get(ix + 1);
+				} else {
+					right = left;
+				}
+				parentHashList.add(SHA256HashUtil.getDoubleSHA256Hash(ArrayUtils.addAll(left, right)));
+			}
+			hashList = parentHashList;
+		}
+		final byte[] merkleRootBa = hashList.get(0);
+		ArrayUtils.reverse(merkleRootBa);
+		return new UInt256(merkleRootBa);
+	}
+
 	/**
 	 * the constructor.
 	 */
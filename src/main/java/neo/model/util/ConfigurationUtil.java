@@ -2,11 +2,19 @@ package neo.model.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.io.FileUtils;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.bytes.Fixed8;
+import neo.model.core.TransactionType;
 
 /**
  * a utility class to handle saving and loading the configuration files.
@@ -16,6 +24,11 @@ import org.json.JSONObject;
  */
 public final class ConfigurationUtil {
 
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigurationUtil.class);
+
 	/**
 	 * the data file name section.
 	 */
@@ -76,6 +89,11 @@ public final class ConfigurationUtil {
 	 */
 	public static final String FILE_SIZE_DIR = "file-size-dir";
 
+	/**
+	 * the JSON key, "account-activity-bucket-size".
+	 */
+	public static final String ACCOUNT_ACTIVITY_BUCKET_SIZE = "account-activity-bucket-size";
+
 	/**
 	 * the JSON key, "socket-factory-impl".
 	 */
@@ -111,11 +129,6 @@ public final class ConfigurationUtil {
 	 */
 	public static final String NONCE = "nonce";
 
-	/**
-	 * the JSON key, "thread-pool-count".
-	 */
-	public static final String THREAD_POOL_COUNT = "thread-pool-count";
-
 	/**
 	 * the JSON key, "active-thread-count".
 	 */
@@ -126,6 +139,16 @@ public final class ConfigurationUtil {
 	 */
 	public static final String SEED_NODE_FILE = "seed-node-file";
 
+	/**
+	 * the JSON key, "timer-wheel".
+	 */
+	public static final String TIMER_WHEEL = "timer-wheel";
+
+	/**
+	 * the JSON key, "min-delay".
+	 */
+	public static final String MIN_DELAY = "min-delay";
+
 	/**
 	 * the JSON key, "timers".
 	 */
@@ -151,11 +174,91 @@ public final class ConfigurationUtil {
 	 */
 	public static final String DISABLE = "disable";
 
+	/**
+	 * the JSON key, "server".
+	 */
+	public static final String SERVER = "server";
+
+	/**
+	 * the JSON key, "inventory".
+	 */
+	public static final String INVENTORY = "inventory";
+
+	/**
+	 * the JSON key, "known".
+	 */
+	public static final String KNOWN = "known";
+
+	/**
+	 * the JSON key, "requested".
+	 */
+	public static final String REQUESTED = "requested";
+
+	/**
+	 * the JSON key, "known-inventory".
+	 */
+	public static final String KNOWN_INVENTORY = "known-inventory";
+
+	/**
+	 * the JSON key, "mempool".
+	 */
+	public static final String MEMPOOL = "mempool";
+
+	/**
+	 * the JSON key, "block-pool".
+	 */
+	public static final String BLOCK_POOL = "block-pool";
+
+	/**
+	 * the JSON key, "block-ingest".
+	 */
+	public static final String BLOCK_INGEST = "block-ingest";
+
+	/**
+	 * the JSON key, "message-metrics".
+	 */
+	public static final String MESSAGE_METRICS = "message-metrics";
+
+	/**
+	 * the JSON key, "write-buffer".
+	 */
+	public static final String WRITE_BUFFER = "write-buffer";
+
+	/**
+	 * the JSON key, "inbound".
+	 */
+	public static final String INBOUND = "inbound";
+
+	/**
+	 * the JSON key, "max-connections".
+	 */
+	public static final String MAX_CONNECTIONS = "max-connections";
+
+	/**
+	 * the JSON key, "address-book".
+	 */
+	public static final String ADDRESS_BOOK = "address-book";
+
+	/**
+	 * the JSON key, "executors".
+	 */
+	public static final String EXECUTORS = "executors";
+
+	/**
+	 * the JSON key, "peer-score".
+	 */
+	public static final String PEER_SCORE = "peer-score";
+
 	/**
 	 * the name of the config file.
 	 */
 	private static final File CONFIG_FILE = new File("config.json");
 
+	/**
+	 * the JSON key, "network-height".
+	 */
+	public static final String NETWORK_HEIGHT = "network-height";
+
 	/**
 	 * the JSON key, "network-name".
 	 */
@@ -180,6 +283,31 @@ public final class ConfigurationUtil {
 		}
 	}
 
+	/**
+	 * return the map of system fees to transaction types.
+	 *
+	 * @param json
+	 *            the json to use, with a system fee section.
+	 * @return the map of system fees to transaction types.
+	 */
+	public static Map<TransactionType, Fixed8> getTransactionSystemFeeMap(final JSONObject json) {
+		final Map<TransactionType, Fixed8> transactionSystemFeeMap = new EnumMap<>(TransactionType.class);
+		final JSONObject transactionSystemFeeJson = json.getJSONObject(SYSTEM_FEE);
+		for (final String key : transactionSystemFeeJson.keySet()) {
+			final long value = transactionSystemFeeJson.getLong(key);
+			final TransactionType txType = TransactionType.valueOf(key);
+			transactionSystemFeeMap.put(txType, ModelUtil.getFixed8(BigInteger.valueOf(value)));
+		}
+		for (final TransactionType txType : TransactionType.values()) {
+			if (!transactionSystemFeeMap.containsKey(txType)) {
+				LOG.error("TransactionType {} has no SystemFee in the configuration, setting SystemFee to zero",
+						txType);
+				transactionSystemFeeMap.put(txType, ModelUtil.FIXED8_ZERO);
+			}
+		}
+		return transactionSystemFeeMap;
+	}
+
 	/**
 	 * the constructor.
 	 */
@@ -0,0 +1,256 @@
+package neo.model.util.threadpool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * the executors the node runs it's work on, one per kind of work, so long
+ * running work can't starve short work.
+ * <p>
+ * the "io" executor runs the long lived peer loops, one thread per peer, so it
+ * does not queue. It can use virtual threads, on a JVM that has them.
+ * <p>
+ * the "cpu" executor runs CPU bound work, such as decoding and checking blocks.
+ * It is a work stealing pool, with one thread per processor by default.
+ * <p>
+ * the "storage" executor runs work that writes to the block database, on a few
+ * threads.
+ * <p>
+ * the "rpc" executor runs the RPC server's request handlers, on a fixed number
+ * of threads, so a burst of RPC calls can't starve the peers.
+ * <p>
+ * each executor is a MeteredExecutor, so it is bounded and measured.
+ *
+ * @author coranos
+ *
+ */
+public final class ExecutorPools {
+
+	/**
+	 * the JSON key, "io".
+	 */
+	public static final String IO = "io";
+
+	/**
+	 * the JSON key, "cpu".
+	 */
+	public static final String CPU = "cpu";
+
+	/**
+	 * the JSON key, "storage".
+	 */
+	public static final String STORAGE = "storage";
+
+	/**
+	 * the JSON key, "rpc".
+	 */
+	public static final String RPC = "rpc";
+
+	/**
+	 * the JSON key, "threads".
+	 */
+	public static final String THREADS = "threads";
+
+	/**
+	 * the JSON key, "max-queued".
+	 */
+	public static final String MAX_QUEUED = "max-queued";
+
+	/**
+	 * the JSON key, "virtual-threads".
+	 */
+	public static final String VIRTUAL_THREADS = "virtual-threads";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(ExecutorPools.class);
+
+	/**
+	 * return a new executor service for the CPU executor, a work stealing pool.
+	 *
+	 * @param config
+	 *            the configuration to use. If the thread count is zero, there is
+	 *            one thread per processor.
+	 * @return the new executor service.
+	 */
+	private static ExecutorService newCpuExecutorService(final JSONObject config) {
+		int threads = config.getInt(THREADS);
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/**
+	 * return a new executor service for the I/O executor, which starts a thread
+	 * per task.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 * @return the new executor service.
+	 */
+	private static ExecutorService newIoExecutorService(final JSONObject config) {
+		if (config.getBoolean(VIRTUAL_THREADS)) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (final NoSuchMethodException e) {
+				LOG.warn("virtual threads are not supported by this JVM, using platform threads for \"{}\"", IO);
+			} catch (final IllegalAccessException | InvocationTargetException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return Executors.newCachedThreadPool(newThreadFactory(IO));
+	}
+
+	/**
+	 * return a new executor service with a fixed number of threads.
+	 *
+	 * @param name
+	 *            the name of the threads.
+	 * @param config
+	 *            the configuration to use.
+	 * @return the new executor service.
+	 */
+	private static ExecutorService newFixedExecutorService(final String name, final JSONObject config) {
+		final int threads = Math.max(1, config.getInt(THREADS));
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				newThreadFactory(name));
+	}
+
+	/**
+	 * return a new thread factory, that makes numbered daemon threads.
+	 *
+	 * @param name
+	 *            the name of the threads.
+	 * @return the new thread factory.
+	 */
+	private static ThreadFactory newThreadFactory(final String name) {
+		final AtomicInteger threadNbr = new AtomicInteger();
+		return runnable -> {
+			final Thread thread = new Thread(runnable, name + '-' + threadNbr.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * the executor for long lived peer I/O.
+	 */
+	private final MeteredExecutor ioExecutor;
+
+	/**
+	 * the executor for CPU bound work.
+	 */
+	private final MeteredExecutor cpuExecutor;
+
+	/**
+	 * the executor for block database work.
+	 */
+	private final MeteredExecutor storageExecutor;
+
+	/**
+	 * the executor for RPC request handlers.
+	 */
+	private final MeteredExecutor rpcExecutor;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public ExecutorPools(final JSONObject config) {
+		final JSONObject ioJson = config.getJSONObject(IO);
+		final JSONObject cpuJson = config.getJSONObject(CPU);
+		final JSONObject storageJson = config.getJSONObject(STORAGE);
+		final JSONObject rpcJson = config.getJSONObject(RPC);
+		ioExecutor = new MeteredExecutor(IO, newIoExecutorService(ioJson), ioJson.getInt(MAX_QUEUED));
+		cpuExecutor = new MeteredExecutor(CPU, newCpuExecutorService(cpuJson), cpuJson.getInt(MAX_QUEUED));
+		storageExecutor = new MeteredExecutor(STORAGE, newFixedExecutorService(STORAGE, storageJson),
+				storageJson.getInt(MAX_QUEUED));
+		rpcExecutor = new MeteredExecutor(RPC, newFixedExecutorService(RPC, rpcJson), rpcJson.getInt(MAX_QUEUED));
+	}
+
+	/**
+	 * return the executor for CPU bound work.
+	 *
+	 * @return the executor for CPU bound work.
+	 */
+	public MeteredExecutor getCpuExecutor() {
+		return cpuExecutor;
+	}
+
+	/**
+	 * return all the executors.
+	 *
+	 * @return all the executors.
+	 */
+	public List<MeteredExecutor> getExecutorList() {
+		return Arrays.asList(ioExecutor, cpuExecutor, storageExecutor, rpcExecutor);
+	}
+
+	/**
+	 * return the executor for long lived peer I/O.
+	 *
+	 * @return the executor for long lived peer I/O.
+	 */
+	public MeteredExecutor getIoExecutor() {
+		return ioExecutor;
+	}
+
+	/**
+	 * return the executor for RPC request handlers.
+	 *
+	 * @return the executor for RPC request handlers.
+	 */
+	public MeteredExecutor getRpcExecutor() {
+		return rpcExecutor;
+	}
+
+	/**
+	 * return the executor for block database work.
+	 *
+	 * @return the executor for block database work.
+	 */
+	public MeteredExecutor getStorageExecutor() {
+		return storageExecutor;
+	}
+
+	/**
+	 * stops the executors, peer I/O and RPC first, as they submit work to the
+	 * others.
+	 */
+	public void stop() {
+		ioExecutor.stop();
+		rpcExecutor.stop();
+		cpuExecutor.stop();
+		storageExecutor.stop();
+	}
+
+	/**
+	 * return the statistics of all the executors.
+	 *
+	 * @return the statistics.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		for (final MeteredExecutor executor : getExecutorList()) {
+			json.put(executor.getName(), executor.toJSONObject());
+		}
+		return json;
+	}
+}
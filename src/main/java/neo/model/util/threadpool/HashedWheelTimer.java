@@ -0,0 +1,408 @@
+package neo.model.util.threadpool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.JsonUtil;
+
+/**
+ * a hashed timing wheel, which runs tasks when they are due.
+ * <p>
+ * the wheel is an array of buckets, one per tick. A task is put in the bucket
+ * for the tick it is due on, with the number of times the wheel must go round
+ * before it is due. Each tick, the worker thread only looks at one bucket, so
+ * scheduling and cancelling are O(1), and thousands of timers cost no more per
+ * tick than a few.
+ * <p>
+ * tasks run on the worker thread, so they should not block. The time between
+ * when a task was due and when it ran is recorded as the scheduling lag.
+ *
+ * @author coranos
+ *
+ */
+public final class HashedWheelTimer {
+
+	/**
+	 * the JSON key, "tick-duration".
+	 */
+	public static final String TICK_DURATION = "tick-duration";
+
+	/**
+	 * the JSON key, "ticks-per-wheel".
+	 */
+	public static final String TICKS_PER_WHEEL = "ticks-per-wheel";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	/**
+	 * the duration of one tick, in milliseconds.
+	 */
+	private final long tickMs;
+
+	/**
+	 * the mask used to turn a tick into a bucket index.
+	 */
+	private final int mask;
+
+	/**
+	 * the buckets, only accessed by the worker thread.
+	 */
+	private final List<List<WheelTimeout>> buckets;
+
+	/**
+	 * the timeouts that have been scheduled, but not yet put in a bucket.
+	 */
+	private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * the worker thread.
+	 */
+	private final Thread workerThread;
+
+	/**
+	 * the number of tasks scheduled.
+	 */
+	private final AtomicLong scheduledCount = new AtomicLong();
+
+	/**
+	 * the number of tasks run.
+	 */
+	private final AtomicLong firedCount = new AtomicLong();
+
+	/**
+	 * the total scheduling lag of all tasks run, in milliseconds.
+	 */
+	private final AtomicLong totalLagMs = new AtomicLong();
+
+	/**
+	 * the max scheduling lag of any task run, in milliseconds.
+	 */
+	private final AtomicLong maxLagMs = new AtomicLong();
+
+	/**
+	 * the time the wheel started, in milliseconds.
+	 */
+	private volatile long startTimeMs;
+
+	/**
+	 * the number of ticks since the wheel started.
+	 */
+	private long tick;
+
+	/**
+	 * if true, stop.
+	 */
+	private volatile boolean stop = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public HashedWheelTimer(final JSONObject config) {
+		this(JsonUtil.getTime(config, TICK_DURATION), config.getInt(TICKS_PER_WHEEL));
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param tickMs
+	 *            the duration of one tick, in milliseconds.
+	 * @param ticksPerWheel
+	 *            the number of ticks per wheel, rounded up to a power of two.
+	 */
+	public HashedWheelTimer(final long tickMs, final int ticksPerWheel) {
+		if (tickMs <= 0) {
+			throw new RuntimeException("tickMs must be greater than zero, was " + tickMs);
+		}
+		if (ticksPerWheel <= 0) {
+			throw new RuntimeException("ticksPerWheel must be greater than zero, was " + ticksPerWheel);
+		}
+		this.tickMs = tickMs;
+		int wheelSize = 1;
+		while (wheelSize < ticksPerWheel) {
+			wheelSize <<= 1;
+		}
+		mask = wheelSize - 1;
+		buckets = new ArrayList<>(wheelSize);
+		for (int bucketIx = 0; bucketIx < wheelSize; bucketIx++) {
+			buckets.add(new ArrayList<>());
+		}
+		workerThread = new Thread(this::run, "Timer Wheel Thread");
+		workerThread.setDaemon(true);
+	}
+
+	/**
+	 * runs the expired timeouts in the bucket, and counts down the rounds of the
+	 * others.
+	 *
+	 * @param bucket
+	 *            the bucket to use.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	private void expireTimeouts(final List<WheelTimeout> bucket, final long now) {
+		final List<WheelTimeout> expiredList = new ArrayList<>();
+		final Iterator<WheelTimeout> timeoutIt = bucket.iterator();
+		while (timeoutIt.hasNext()) {
+			final WheelTimeout timeout = timeoutIt.next();
+			if (timeout.cancelled) {
+				timeoutIt.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				timeoutIt.remove();
+				expiredList.add(timeout);
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+		for (final WheelTimeout timeout : expiredList) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			timeout.expired = true;
+			final long lagMs = Math.max(0, now - timeout.deadlineMs);
+			firedCount.incrementAndGet();
+			totalLagMs.addAndGet(lagMs);
+			maxLagMs.accumulateAndGet(lagMs, Math::max);
+			try {
+				timeout.task.run();
+			} catch (final RuntimeException e) {
+				LOG.error("FAILURE expireTimeouts, task threw an exception", e);
+			}
+		}
+	}
+
+	/**
+	 * return the average scheduling lag, in milliseconds.
+	 *
+	 * @return the average scheduling lag, in milliseconds.
+	 */
+	public long getAverageLagMs() {
+		final long fired = firedCount.get();
+		if (fired == 0) {
+			return 0;
+		}
+		return totalLagMs.get() / fired;
+	}
+
+	/**
+	 * return the number of tasks run.
+	 *
+	 * @return the number of tasks run.
+	 */
+	public long getFiredCount() {
+		return firedCount.get();
+	}
+
+	/**
+	 * return the max scheduling lag, in milliseconds.
+	 *
+	 * @return the max scheduling lag, in milliseconds.
+	 */
+	public long getMaxLagMs() {
+		return maxLagMs.get();
+	}
+
+	/**
+	 * return the number of tasks scheduled.
+	 *
+	 * @return the number of tasks scheduled.
+	 */
+	public long getScheduledCount() {
+		return scheduledCount.get();
+	}
+
+	/**
+	 * return the duration of one tick, in milliseconds.
+	 *
+	 * @return the duration of one tick, in milliseconds.
+	 */
+	public long getTickMs() {
+		return tickMs;
+	}
+
+	/**
+	 * the worker thread's loop.
+	 */
+	private void run() {
+		LOG.debug("STARTED timer wheel");
+		while (!stop) {
+			final long now = waitForNextTick();
+			if (stop) {
+				break;
+			}
+			transferPendingTimeouts();
+			expireTimeouts(buckets.get((int) (tick & mask)), now);
+			tick++;
+		}
+		LOG.debug("SUCCESS timer wheel");
+	}
+
+	/**
+	 * schedules the task to run after the delay.
+	 *
+	 * @param task
+	 *            the task to run.
+	 * @param delayMs
+	 *            the delay, in milliseconds.
+	 * @return the timeout, which can be used to cancel the task.
+	 */
+	public WheelTimeout schedule(final Runnable task, final long delayMs) {
+		final WheelTimeout timeout = new WheelTimeout(task, System.currentTimeMillis() + Math.max(0, delayMs));
+		scheduledCount.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * starts the worker thread.
+	 */
+	public void start() {
+		startTimeMs = System.currentTimeMillis();
+		workerThread.start();
+	}
+
+	/**
+	 * stops the worker thread, and waits for it to stop.
+	 */
+	public void stop() {
+		stop = true;
+		workerThread.interrupt();
+		try {
+			workerThread.join();
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * puts the pending timeouts in the buckets for the tick they are due on. A
+	 * timeout that is already overdue goes in the current bucket.
+	 */
+	private void transferPendingTimeouts() {
+		WheelTimeout timeout = pendingTimeouts.poll();
+		while (timeout != null) {
+			if (!timeout.cancelled) {
+				final long calculatedTick = Math.max(0, timeout.deadlineMs - startTimeMs) / tickMs;
+				final long dueTick = Math.max(calculatedTick, tick);
+				timeout.remainingRounds = (dueTick - tick) / buckets.size();
+				buckets.get((int) (dueTick & mask)).add(timeout);
+			}
+			timeout = pendingTimeouts.poll();
+		}
+	}
+
+	/**
+	 * sleeps until the end of the current tick.
+	 *
+	 * @return the current time, in milliseconds.
+	 */
+	private long waitForNextTick() {
+		final long deadlineMs = startTimeMs + ((tick + 1) * tickMs);
+		long now = System.currentTimeMillis();
+		while (!stop && (now < deadlineMs)) {
+			try {
+				Thread.sleep(deadlineMs - now);
+			} catch (final InterruptedException e) {
+				LOG.debug("interrupted", e);
+			}
+			now = System.currentTimeMillis();
+		}
+		return now;
+	}
+
+	/**
+	 * a task scheduled on the wheel.
+	 *
+	 * @author coranos
+	 *
+	 */
+	public static final class WheelTimeout {
+
+		/**
+		 * the task to run.
+		 */
+		private final Runnable task;
+
+		/**
+		 * the time the task is due, in milliseconds.
+		 */
+		private final long deadlineMs;
+
+		/**
+		 * the number of times the wheel must go round before the task is due, only
+		 * accessed by the worker thread.
+		 */
+		private long remainingRounds;
+
+		/**
+		 * true if the task was cancelled.
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * true if the task was run.
+		 */
+		private volatile boolean expired;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param task
+		 *            the task to run.
+		 * @param deadlineMs
+		 *            the time the task is due, in milliseconds.
+		 */
+		private WheelTimeout(final Runnable task, final long deadlineMs) {
+			this.task = task;
+			this.deadlineMs = deadlineMs;
+		}
+
+		/**
+		 * cancels the task, if it has not already run. The worker thread removes it
+		 * from the wheel when it next visits the task's bucket.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * return the time the task is due, in milliseconds.
+		 *
+		 * @return the time the task is due, in milliseconds.
+		 */
+		public long getDeadlineMs() {
+			return deadlineMs;
+		}
+
+		/**
+		 * return true if the task was cancelled.
+		 *
+		 * @return true if the task was cancelled.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * return true if the task was run.
+		 *
+		 * @return true if the task was run.
+		 */
+		public boolean isExpired() {
+			return expired;
+		}
+	}
+}
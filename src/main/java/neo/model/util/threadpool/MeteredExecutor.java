@@ -0,0 +1,393 @@
+package neo.model.util.threadpool;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * an executor that bounds and measures the tasks run on another executor.
+ * <p>
+ * the number of tasks queued or running is bounded. When it is full, execute()
+ * waits for a task to finish, which pushes back on the submitting thread, and
+ * tryExecute() returns false. Tasks submitted from one of the executor's own
+ * tasks are bounded too, but never wait, since a task waiting on it's own
+ * executor could wait forever; when the executor is full, they run on the
+ * submitting thread instead.
+ * <p>
+ * the queue depth, active count, and the time tasks wait and run are measured.
+ * Tasks that are a StopRunnable are stopped when the executor is stopped.
+ *
+ * @author coranos
+ *
+ */
+public final class MeteredExecutor implements Executor {
+
+	/**
+	 * the JSON key, "queue-depth".
+	 */
+	public static final String QUEUE_DEPTH = "queue-depth";
+
+	/**
+	 * the JSON key, "active".
+	 */
+	public static final String ACTIVE = "active";
+
+	/**
+	 * the JSON key, "count".
+	 */
+	public static final String COUNT = "count";
+
+	/**
+	 * the JSON key, "rejected".
+	 */
+	public static final String REJECTED = "rejected";
+
+	/**
+	 * the JSON key, "caller-runs".
+	 */
+	public static final String CALLER_RUNS = "caller-runs";
+
+	/**
+	 * the JSON key, "average-wait-micros".
+	 */
+	public static final String AVERAGE_WAIT_MICROS = "average-wait-micros";
+
+	/**
+	 * the JSON key, "average-run-micros".
+	 */
+	public static final String AVERAGE_RUN_MICROS = "average-run-micros";
+
+	/**
+	 * the time to wait for running tasks to stop, in milliseconds.
+	 */
+	private static final long STOP_TIMEOUT_MS = 60000;
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(MeteredExecutor.class);
+
+	/**
+	 * the executor whose task is running on the current thread.
+	 */
+	private static final ThreadLocal<MeteredExecutor> CURRENT_EXECUTOR = new ThreadLocal<>();
+
+	/**
+	 * the name of the executor.
+	 */
+	private final String name;
+
+	/**
+	 * the executor the tasks run on.
+	 */
+	private final ExecutorService delegate;
+
+	/**
+	 * the permits for tasks queued or running.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * the number of tasks waiting to run.
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	/**
+	 * the number of tasks running.
+	 */
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	/**
+	 * the number of tasks run.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * the number of tasks rejected.
+	 */
+	private final LongAdder rejectedCount = new LongAdder();
+
+	/**
+	 * the number of tasks run on the submitting thread, because they were
+	 * submitted from one of the executor's own tasks while it was full.
+	 */
+	private final LongAdder callerRunsCount = new LongAdder();
+
+	/**
+	 * the total time tasks waited to run, in nanoseconds.
+	 */
+	private final LongAdder waitNanos = new LongAdder();
+
+	/**
+	 * the total time tasks ran, in nanoseconds.
+	 */
+	private final LongAdder runNanos = new LongAdder();
+
+	/**
+	 * the running tasks that can be stopped.
+	 */
+	private final Set<StopRunnable> runningStopRunnableSet = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * if true, the executor is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param name
+	 *            the name of the executor.
+	 * @param delegate
+	 *            the executor the tasks run on.
+	 * @param maxQueued
+	 *            the max number of tasks queued or running.
+	 */
+	public MeteredExecutor(final String name, final ExecutorService delegate, final int maxQueued) {
+		this.name = name;
+		this.delegate = delegate;
+		permits = new Semaphore(maxQueued);
+	}
+
+	/**
+	 * runs the task, waiting if the executor is full. If called from one of the
+	 * executor's own tasks, runs the task on the calling thread if the executor
+	 * is full.
+	 *
+	 * @param task
+	 *            the task to run.
+	 */
+	@Override
+	public void execute(final Runnable task) {
+		if (stopped) {
+			throw new IllegalStateException("executor \"" + name + "\" is stopped");
+		}
+		if (CURRENT_EXECUTOR.get() == this) {
+			if (permits.tryAcquire()) {
+				submit(task);
+			} else {
+				callerRunsCount.increment();
+				task.run();
+			}
+			return;
+		}
+		try {
+			permits.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejectedCount.increment();
+			throw new RejectedExecutionException("interrupted waiting for executor \"" + name + "\"", e);
+		}
+		submit(task);
+	}
+
+	/**
+	 * return the number of tasks running.
+	 *
+	 * @return the number of tasks running.
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * return the average time tasks ran, in microseconds.
+	 *
+	 * @return the average time tasks ran.
+	 */
+	public long getAverageRunMicros() {
+		final long taskCount = count.sum();
+		if (taskCount == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMicros(runNanos.sum() / taskCount);
+	}
+
+	/**
+	 * return the average time tasks waited to run, in microseconds.
+	 *
+	 * @return the average time tasks waited to run.
+	 */
+	public long getAverageWaitMicros() {
+		final long taskCount = count.sum();
+		if (taskCount == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / taskCount);
+	}
+
+	/**
+	 * return the number of tasks run on the submitting thread, because the
+	 * executor was full.
+	 *
+	 * @return the number of tasks run on the submitting thread.
+	 */
+	public long getCallerRunsCount() {
+		return callerRunsCount.sum();
+	}
+
+	/**
+	 * return the number of tasks run.
+	 *
+	 * @return the number of tasks run.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * return the name of the executor.
+	 *
+	 * @return the name of the executor.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * return the number of tasks waiting to run.
+	 *
+	 * @return the number of tasks waiting to run.
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * return the number of tasks rejected.
+	 *
+	 * @return the number of tasks rejected.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * runs the task, and records it's statistics.
+	 *
+	 * @param task
+	 *            the task to run.
+	 * @param submitNanos
+	 *            the time the task was submitted, in nanoseconds.
+	 */
+	private void run(final Runnable task, final long submitNanos) {
+		final long startNanos = System.nanoTime();
+		queueDepth.decrementAndGet();
+		activeCount.incrementAndGet();
+		waitNanos.add(startNanos - submitNanos);
+		final MeteredExecutor previousExecutor = CURRENT_EXECUTOR.get();
+		CURRENT_EXECUTOR.set(this);
+		if (task instanceof StopRunnable) {
+			runningStopRunnableSet.add((StopRunnable) task);
+			if (stopped) {
+				// stopped after the task was submitted, but before it started.
+				((StopRunnable) task).stop();
+			}
+		}
+		try {
+			task.run();
+		} catch (final RuntimeException e) {
+			LOG.error("error in executor \"{}\"", name, e);
+		} finally {
+			if (task instanceof StopRunnable) {
+				runningStopRunnableSet.remove(task);
+			}
+			CURRENT_EXECUTOR.set(previousExecutor);
+			activeCount.decrementAndGet();
+			runNanos.add(System.nanoTime() - startNanos);
+			count.increment();
+			permits.release();
+		}
+	}
+
+	/**
+	 * stops the executor. Running tasks that are a StopRunnable are stopped, and
+	 * the running tasks are waited for.
+	 */
+	public void stop() {
+		LOG.debug("STARTED stop executor \"{}\"", name);
+		stopped = true;
+		for (final StopRunnable task : runningStopRunnableSet) {
+			task.stop();
+		}
+		delegate.shutdown();
+		try {
+			if (!delegate.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				LOG.error("FAILURE stop executor \"{}\", {} tasks still running", name, activeCount.get());
+				delegate.shutdownNow();
+				return;
+			}
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		LOG.debug("SUCCESS stop executor \"{}\"", name);
+	}
+
+	/**
+	 * submits the task to the executor the tasks run on. The task holds a
+	 * permit, which is released when it finishes.
+	 *
+	 * @param task
+	 *            the task to submit.
+	 */
+	private void submit(final Runnable task) {
+		queueDepth.incrementAndGet();
+		final long submitNanos = System.nanoTime();
+		try {
+			delegate.execute(() -> run(task, submitNanos));
+		} catch (final RejectedExecutionException e) {
+			queueDepth.decrementAndGet();
+			rejectedCount.increment();
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * return the statistics of the executor.
+	 *
+	 * @return the statistics.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		json.put(QUEUE_DEPTH, getQueueDepth());
+		json.put(ACTIVE, getActiveCount());
+		json.put(COUNT, getCount());
+		json.put(REJECTED, getRejectedCount());
+		json.put(CALLER_RUNS, getCallerRunsCount());
+		json.put(AVERAGE_WAIT_MICROS, getAverageWaitMicros());
+		json.put(AVERAGE_RUN_MICROS, getAverageRunMicros());
+		return json;
+	}
+
+	/**
+	 * runs the task if the executor is not full.
+	 *
+	 * @param task
+	 *            the task to run.
+	 * @return true if the task was submitted, false if the executor was full or
+	 *         stopped.
+	 */
+	public boolean tryExecute(final Runnable task) {
+		if (stopped || !permits.tryAcquire()) {
+			rejectedCount.increment();
+			return false;
+		}
+		try {
+			submit(task);
+		} catch (final RejectedExecutionException e) {
+			return false;
+		}
+		return true;
+	}
+}
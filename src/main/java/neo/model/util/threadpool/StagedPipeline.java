@@ -0,0 +1,585 @@
+package neo.model.util.threadpool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a pipeline of stages, each with it's own queue, whose workers run as tasks on
+ * the stage's executor.
+ * <p>
+ * items are passed from stage to stage. When an item is queued for a stage, a
+ * worker task is started on the stage's executor, unless the stage already has
+ * it's max number of workers running. A worker runs until the stage's queue is
+ * empty, so the workers don't hold threads while the pipeline is idle, and
+ * stages can share an executor with other work.
+ * <p>
+ * every stage but the last can have many workers, so items can finish a stage
+ * out of order. The last stage has one worker, and runs items in the order
+ * they were submitted, so it can write them in order. If a stage returns
+ * false, the item is dropped, but still passes through the later stages
+ * (without being processed), so the last stage does not wait for it.
+ * <p>
+ * if a stage's executor rejects a worker, the worker runs on the thread that
+ * queued the item, so an item is never left in a queue with no worker to run
+ * it.
+ * <p>
+ * the number of items in the pipeline is bounded, so submit() blocks when the
+ * pipeline is full, which pushes back on the submitting thread.
+ *
+ * @author coranos
+ *
+ * @param <T>
+ *            the type of item.
+ */
+public final class StagedPipeline<T> {
+
+	/**
+	 * the JSON key, "queue-depth".
+	 */
+	public static final String QUEUE_DEPTH = "queue-depth";
+
+	/**
+	 * the JSON key, "count".
+	 */
+	public static final String COUNT = "count";
+
+	/**
+	 * the JSON key, "dropped".
+	 */
+	public static final String DROPPED = "dropped";
+
+	/**
+	 * the JSON key, "average-micros".
+	 */
+	public static final String AVERAGE_MICROS = "average-micros";
+
+	/**
+	 * the JSON key, "max-micros".
+	 */
+	public static final String MAX_MICROS = "max-micros";
+
+	/**
+	 * the JSON key, "in-flight".
+	 */
+	public static final String IN_FLIGHT = "in-flight";
+
+	/**
+	 * the time to wait for a permit, or for workers to stop, before checking
+	 * again.
+	 */
+	private static final long POLL_MS = 100;
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(StagedPipeline.class);
+
+	/**
+	 * the name of the pipeline.
+	 */
+	private final String name;
+
+	/**
+	 * the stages.
+	 */
+	private final List<Stage<T>> stageList;
+
+	/**
+	 * the permits for items in the pipeline.
+	 */
+	private final Semaphore inFlightPermits;
+
+	/**
+	 * the max number of items in the pipeline.
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * the sequence number of the next item submitted.
+	 */
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	/**
+	 * the items that finished the stage before the last stage out of order,
+	 * waiting for the items submitted before them. Only used by the last stage's
+	 * worker.
+	 */
+	private final PriorityQueue<Item<T>> reorderQueue = new PriorityQueue<>(
+			(item1, item2) -> Long.compare(item1.sequence, item2.sequence));
+
+	/**
+	 * the sequence number of the next item the last stage runs. Only used by the
+	 * last stage's worker.
+	 */
+	private long expectedSequence = 0;
+
+	/**
+	 * if true, the pipeline is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param name
+	 *            the name of the pipeline.
+	 * @param maxInFlight
+	 *            the max number of items in the pipeline.
+	 * @param stageList
+	 *            the stages, in order. The worker count of the last stage is
+	 *            ignored, it always has one worker.
+	 */
+	public StagedPipeline(final String name, final int maxInFlight, final List<Stage<T>> stageList) {
+		if (stageList.isEmpty()) {
+			throw new IllegalArgumentException("pipeline \"" + name + "\" has no stages");
+		}
+		this.name = name;
+		this.maxInFlight = maxInFlight;
+		this.stageList = Collections.unmodifiableList(new ArrayList<>(stageList));
+		inFlightPermits = new Semaphore(maxInFlight);
+		final int lastStageIx = stageList.size() - 1;
+		for (int stageIx = 0; stageIx < lastStageIx; stageIx++) {
+			stageList.get(stageIx).nextStage = stageList.get(stageIx + 1);
+		}
+		stageList.get(lastStageIx).maxWorkers = 1;
+	}
+
+	/**
+	 * queues the item for the stage, and starts a worker if the stage has fewer
+	 * than it's max number of workers running. If the executor rejects the
+	 * worker, it runs on this thread.
+	 *
+	 * @param stage
+	 *            the stage to use.
+	 * @param item
+	 *            the item to queue.
+	 */
+	private void enqueue(final Stage<T> stage, final Item<T> item) {
+		stage.queue.add(item);
+		if (tryStartWorker(stage)) {
+			try {
+				stage.executor.execute(() -> runWorker(stage));
+			} catch (final RejectedExecutionException | IllegalStateException e) {
+				LOG.debug("pipeline \"{}\" stage \"{}\" executor rejected a worker, running it here", name,
+						stage.name, e);
+				runWorker(stage);
+			}
+		}
+	}
+
+	/**
+	 * return the number of items in the pipeline.
+	 *
+	 * @return the number of items in the pipeline.
+	 */
+	public int getInFlight() {
+		return maxInFlight - inFlightPermits.availablePermits();
+	}
+
+	/**
+	 * return the stages.
+	 *
+	 * @return the stages.
+	 */
+	public List<Stage<T>> getStageList() {
+		return stageList;
+	}
+
+	/**
+	 * processes the item in the stage, if it has not been dropped, and records
+	 * the stage's statistics.
+	 *
+	 * @param stage
+	 *            the stage to use.
+	 * @param item
+	 *            the item to process.
+	 */
+	private void process(final Stage<T> stage, final Item<T> item) {
+		if (item.value == null) {
+			return;
+		}
+		final long startNanos = System.nanoTime();
+		boolean keep;
+		try {
+			keep = stage.processor.test(item.value);
+		} catch (final RuntimeException e) {
+			LOG.error("error in pipeline \"{}\" stage \"{}\"", name, stage.name, e);
+			keep = false;
+		}
+		stage.recordNanos(System.nanoTime() - startNanos);
+		if (!keep) {
+			item.value = null;
+			stage.dropped.increment();
+		}
+	}
+
+	/**
+	 * runs the item in the stage. In the last stage, the item waits until the
+	 * items submitted before it have run, otherwise it is passed to the next
+	 * stage.
+	 *
+	 * @param stage
+	 *            the stage to use.
+	 * @param item
+	 *            the item to run.
+	 */
+	private void runItem(final Stage<T> stage, final Item<T> item) {
+		if (stage.nextStage != null) {
+			process(stage, item);
+			enqueue(stage.nextStage, item);
+			return;
+		}
+		reorderQueue.add(item);
+		while (!reorderQueue.isEmpty() && (reorderQueue.peek().sequence == expectedSequence)) {
+			process(stage, reorderQueue.poll());
+			inFlightPermits.release();
+			expectedSequence++;
+		}
+	}
+
+	/**
+	 * runs a stage's worker, which runs the items in the stage's queue until it
+	 * is empty, or the pipeline is stopped.
+	 *
+	 * @param stage
+	 *            the stage to use.
+	 */
+	private void runWorker(final Stage<T> stage) {
+		while (true) {
+			final Item<T> item;
+			if (stopped) {
+				item = null;
+			} else {
+				item = stage.queue.poll();
+			}
+			if (item != null) {
+				runItem(stage, item);
+			} else {
+				stage.workerCount.decrementAndGet();
+				// an item may have been queued after the poll, but before the worker
+				// count was decremented, when no new worker was started for it.
+				if (stopped || stage.queue.isEmpty() || !tryStartWorker(stage)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * stops the pipeline, and waits for the running workers to stop. Items still
+	 * in the pipeline are discarded. The workers are not interrupted, as a stage
+	 * may be writing to the block database, they stop after their current item.
+	 */
+	public void stop() {
+		stopped = true;
+		LOG.debug("STARTED stop pipeline \"{}\"", name);
+		for (final Stage<T> stage : stageList) {
+			while (stage.workerCount.get() > 0) {
+				try {
+					Thread.sleep(POLL_MS);
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		LOG.debug("SUCCESS stop pipeline \"{}\"", name);
+	}
+
+	/**
+	 * submits the item to the first stage, waiting if the pipeline is full.
+	 *
+	 * @param value
+	 *            the item to submit.
+	 * @return true if the item was submitted, false if the pipeline was stopped.
+	 */
+	public boolean submit(final T value) {
+		try {
+			while (!inFlightPermits.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS)) {
+				if (stopped) {
+					return false;
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (stopped) {
+			inFlightPermits.release();
+			return false;
+		}
+		enqueue(stageList.get(0), new Item<>(nextSequence.getAndIncrement(), value));
+		return true;
+	}
+
+	/**
+	 * increments the stage's worker count, if it is under the max.
+	 *
+	 * @param stage
+	 *            the stage to use.
+	 * @return true if the worker count was incremented, and a worker should run.
+	 */
+	private boolean tryStartWorker(final Stage<T> stage) {
+		while (true) {
+			final int workerCount = stage.workerCount.get();
+			if (workerCount >= stage.maxWorkers) {
+				return false;
+			}
+			if (stage.workerCount.compareAndSet(workerCount, workerCount + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * return the statistics of the pipeline, and each of it's stages.
+	 *
+	 * @return the statistics.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		json.put(IN_FLIGHT, getInFlight());
+		for (final Stage<T> stage : stageList) {
+			json.put(stage.name, stage.toJSONObject());
+		}
+		return json;
+	}
+
+	/**
+	 * an item in the pipeline.
+	 *
+	 * @author coranos
+	 *
+	 * @param <T>
+	 *            the type of item.
+	 */
+	private static final class Item<T> {
+
+		/**
+		 * the order in which the item was submitted.
+		 */
+		private final long sequence;
+
+		/**
+		 * the item, or null if it was dropped.
+		 */
+		private T value;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param sequence
+		 *            the order in which the item was submitted.
+		 * @param value
+		 *            the item.
+		 */
+		private Item(final long sequence, final T value) {
+			this.sequence = sequence;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * a stage in the pipeline.
+	 *
+	 * @author coranos
+	 *
+	 * @param <T>
+	 *            the type of item.
+	 */
+	public static final class Stage<T> {
+
+		/**
+		 * the name of the stage.
+		 */
+		private final String name;
+
+		/**
+		 * the max number of workers running at a time.
+		 */
+		private int maxWorkers;
+
+		/**
+		 * the executor the workers run on.
+		 */
+		private final Executor executor;
+
+		/**
+		 * processes an item, and returns false if the item should be dropped.
+		 */
+		private final Predicate<T> processor;
+
+		/**
+		 * the items waiting for this stage.
+		 */
+		private final Queue<Item<T>> queue = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * the next stage, or null if this is the last stage.
+		 */
+		private Stage<T> nextStage;
+
+		/**
+		 * the number of workers running.
+		 */
+		private final AtomicInteger workerCount = new AtomicInteger();
+
+		/**
+		 * the number of items processed.
+		 */
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * the number of items dropped.
+		 */
+		private final LongAdder dropped = new LongAdder();
+
+		/**
+		 * the total time spent processing items, in nanoseconds.
+		 */
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * the max time spent processing an item, in nanoseconds.
+		 */
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * the constructor, for a stage whose workers run on the common fork join
+		 * pool.
+		 *
+		 * @param name
+		 *            the name of the stage.
+		 * @param maxWorkers
+		 *            the max number of workers running at a time.
+		 * @param processor
+		 *            processes an item, and returns false if the item should be
+		 *            dropped.
+		 */
+		public Stage(final String name, final int maxWorkers, final Predicate<T> processor) {
+			this(name, maxWorkers, ForkJoinPool.commonPool(), processor);
+		}
+
+		/**
+		 * the constructor.
+		 *
+		 * @param name
+		 *            the name of the stage.
+		 * @param maxWorkers
+		 *            the max number of workers running at a time.
+		 * @param executor
+		 *            the executor the workers run on.
+		 * @param processor
+		 *            processes an item, and returns false if the item should be
+		 *            dropped.
+		 */
+		public Stage(final String name, final int maxWorkers, final Executor executor,
+				final Predicate<T> processor) {
+			this.name = name;
+			this.maxWorkers = Math.max(1, maxWorkers);
+			this.executor = executor;
+			this.processor = processor;
+		}
+
+		/**
+		 * return the average time spent processing an item, in microseconds.
+		 *
+		 * @return the average time spent processing an item.
+		 */
+		public long getAverageMicros() {
+			final long itemCount = count.sum();
+			if (itemCount == 0) {
+				return 0;
+			}
+			return TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / itemCount);
+		}
+
+		/**
+		 * return the number of items processed.
+		 *
+		 * @return the number of items processed.
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * return the number of items dropped.
+		 *
+		 * @return the number of items dropped.
+		 */
+		public long getDropped() {
+			return dropped.sum();
+		}
+
+		/**
+		 * return the max time spent processing an item, in microseconds.
+		 *
+		 * @return the max time spent processing an item.
+		 */
+		public long getMaxMicros() {
+			return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+		}
+
+		/**
+		 * return the name of the stage.
+		 *
+		 * @return the name of the stage.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * return the number of items waiting for this stage.
+		 *
+		 * @return the number of items waiting for this stage.
+		 */
+		public int getQueueDepth() {
+			return queue.size();
+		}
+
+		/**
+		 * records the time spent processing an item.
+		 *
+		 * @param nanos
+		 *            the time, in nanoseconds.
+		 */
+		private void recordNanos(final long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		/**
+		 * return the statistics of the stage.
+		 *
+		 * @return the statistics.
+		 */
+		public JSONObject toJSONObject() {
+			final JSONObject json = new JSONObject();
+			json.put(QUEUE_DEPTH, getQueueDepth());
+			json.put(COUNT, getCount());
+			json.put(DROPPED, getDropped());
+			json.put(AVERAGE_MICROS, getAverageMicros());
+			json.put(MAX_MICROS, getMaxMicros());
+			return json;
+		}
+	}
+}
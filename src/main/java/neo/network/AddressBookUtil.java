@@ -0,0 +1,80 @@
+package neo.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.network.model.AddressBook;
+import neo.network.model.LocalNodeData;
+
+/**
+ * the utility for saving and loading the address book.
+ *
+ * @author coranos
+ *
+ */
+public final class AddressBookUtil {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(AddressBookUtil.class);
+
+	/**
+	 * loads the address book from the address book file.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @return the TCP addresses and ports in the address book file.
+	 */
+	public static List<String> load(final LocalNodeData localNodeData) {
+		final AddressBook addressBook = localNodeData.getAddressBook();
+		final File file = addressBook.getFile();
+		if (!file.exists()) {
+			return new ArrayList<>();
+		}
+		final List<String> addressList;
+		try {
+			final JSONObject json = new JSONObject(FileUtils.readFileToString(file, Charset.defaultCharset()));
+			addressList = addressBook.load(json, System.currentTimeMillis());
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		LOG.debug("loaded {} addresses from {}", addressList.size(), file);
+		return addressList;
+	}
+
+	/**
+	 * saves the address book to the address book file.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 */
+	public static void save(final LocalNodeData localNodeData) {
+		final AddressBook addressBook = localNodeData.getAddressBook();
+		if (addressBook.size() == 0) {
+			return;
+		}
+		try {
+			FileUtils.writeStringToFile(addressBook.getFile(), addressBook.toJSONObject().toString(2),
+					Charset.defaultCharset());
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		LOG.debug("saved {} addresses to {}", addressBook.size(), addressBook.getFile());
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private AddressBookUtil() {
+
+	}
+}
@@ -0,0 +1,253 @@
+package neo.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.bytes.UInt256;
+import neo.model.core.Block;
+import neo.model.util.BlockUtil;
+import neo.model.util.MapUtil;
+import neo.model.util.threadpool.ExecutorPools;
+import neo.model.util.threadpool.StagedPipeline;
+import neo.model.util.threadpool.StagedPipeline.Stage;
+import neo.network.model.LocalNodeData;
+import neo.network.model.RemoteNodeData;
+
+/**
+ * the pipeline that blocks recieved from peers go through, before they are put
+ * in the blockchain.
+ * <p>
+ * blocks are parsed, then their merkle root is checked, by as many workers as
+ * are configured for each stage, on the CPU executor, off the peer's socket
+ * thread. They are then added to the unverified block pool, and any blocks that
+ * now connect to the chain are put in the block database, by one worker on the
+ * storage executor, in the order they were recieved.
+ *
+ * @author coranos
+ *
+ */
+public final class BlockIngestPipeline {
+
+	/**
+	 * the JSON key, "parse-threads".
+	 */
+	public static final String PARSE_THREADS = "parse-threads";
+
+	/**
+	 * the JSON key, "check-threads".
+	 */
+	public static final String CHECK_THREADS = "check-threads";
+
+	/**
+	 * the JSON key, "max-in-flight".
+	 */
+	public static final String MAX_IN_FLIGHT = "max-in-flight";
+
+	/**
+	 * the name of the pipeline.
+	 */
+	private static final String BLOCK_INGEST = "block-ingest";
+
+	/**
+	 * the API call key for blocks that did not reserialize to the bytes they were
+	 * parsed from.
+	 */
+	private static final String BLOCK_PARSE_MISMATCH = "block-parse-mismatch";
+
+	/**
+	 * the API call key for blocks whose merkle root did not match their
+	 * transactions.
+	 */
+	private static final String BLOCK_MERKLE_MISMATCH = "block-merkle-mismatch";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(BlockIngestPipeline.class);
+
+	/**
+	 * the local node data.
+	 */
+	private final LocalNodeData localNodeData;
+
+	/**
+	 * the stage that puts blocks in the block database.
+	 */
+	private final Stage<IngestedBlock> persistStage;
+
+	/**
+	 * the pipeline.
+	 */
+	private final StagedPipeline<IngestedBlock> pipeline;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public BlockIngestPipeline(final LocalNodeData localNodeData, final JSONObject config) {
+		this.localNodeData = localNodeData;
+		final ExecutorPools executorPools = localNodeData.getExecutorPools();
+		final Stage<IngestedBlock> parseStage = new Stage<>("parse", config.getInt(PARSE_THREADS),
+				executorPools.getCpuExecutor(), this::parse);
+		final Stage<IngestedBlock> checkStage = new Stage<>("check", config.getInt(CHECK_THREADS),
+				executorPools.getCpuExecutor(), this::check);
+		persistStage = new Stage<>("persist", 1, executorPools.getStorageExecutor(), this::persist);
+		pipeline = new StagedPipeline<>(BLOCK_INGEST, config.getInt(MAX_IN_FLIGHT),
+				Arrays.asList(parseStage, checkStage, persistStage));
+	}
+
+	/**
+	 * checks the block's merkle root matches it's transactions.
+	 *
+	 * @param ingestedBlock
+	 *            the block to check.
+	 * @return true if the merkle root matches.
+	 */
+	private boolean check(final IngestedBlock ingestedBlock) {
+		final Block block = ingestedBlock.block;
+		final UInt256 merkleRoot = BlockUtil.getMerkleRoot(block.getTransactionList());
+		if (!block.merkleRoot.equals(merkleRoot)) {
+			LOG.error("check block {} merkle root {} does not match transactions {}", block.hash, block.merkleRoot,
+					merkleRoot);
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, BLOCK_MERKLE_MISMATCH);
+			ingestedBlock.remoteNodeData.getPeerStats().invalidMessage();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * return the stages of the pipeline.
+	 *
+	 * @return the stages of the pipeline.
+	 */
+	public List<Stage<IngestedBlock>> getStageList() {
+		return pipeline.getStageList();
+	}
+
+	/**
+	 * parses the block, and checks it reserializes to the bytes it was parsed
+	 * from.
+	 *
+	 * @param ingestedBlock
+	 *            the block to parse.
+	 * @return true if the block was parsed.
+	 */
+	private boolean parse(final IngestedBlock ingestedBlock) {
+		final RemoteNodeData remoteNodeData = ingestedBlock.remoteNodeData;
+		final Block block;
+		try {
+			block = new Block(ByteBuffer.wrap(ingestedBlock.payloadBa));
+		} catch (final RuntimeException e) {
+			LOG.error("parse error in block payload: {}", Hex.encodeHexString(ingestedBlock.payloadBa), e);
+			remoteNodeData.getPeerStats().invalidMessage();
+			return false;
+		}
+		if (!Arrays.equals(ingestedBlock.payloadBa, block.toByteArray())) {
+			LOG.error("parse newBlock: {}", block);
+			LOG.error("parse expected: {}", Hex.encodeHexString(ingestedBlock.payloadBa));
+			LOG.error("parse actual  : {}", Hex.encodeHexString(block.toByteArray()));
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, BLOCK_PARSE_MISMATCH);
+			remoteNodeData.getPeerStats().invalidMessage();
+			return false;
+		}
+		ingestedBlock.block = block;
+		remoteNodeData.getPeerStats().blockDelivered();
+		InventoryUtil.inventoryReceived(localNodeData, remoteNodeData, block.hash);
+		return true;
+	}
+
+	/**
+	 * adds the block to the unverified block pool, and, if no more blocks are
+	 * waiting, puts the blocks that now connect to the chain in the block
+	 * database, so a burst of blocks is put in one batch.
+	 *
+	 * @param ingestedBlock
+	 *            the block to persist.
+	 * @return true if the block was added to the unverified block pool.
+	 */
+	private boolean persist(final IngestedBlock ingestedBlock) {
+		final boolean added = LocalNodeDataSynchronizedUtil.addUnverifiedBlock(localNodeData,
+				ingestedBlock.remoteNodeData, ingestedBlock.block, ingestedBlock.payloadBa.length);
+		if (persistStage.getQueueDepth() == 0) {
+			LocalNodeDataSynchronizedUtil.verifyUnverifiedBlocks(localNodeData);
+		}
+		return added;
+	}
+
+	/**
+	 * stops the pipeline.
+	 */
+	public void stop() {
+		pipeline.stop();
+	}
+
+	/**
+	 * submits a block payload, waiting if the pipeline is full.
+	 *
+	 * @param remoteNodeData
+	 *            the peer that sent the block.
+	 * @param payloadBa
+	 *            the block payload.
+	 * @return true if the block was submitted, false if the pipeline was stopped.
+	 */
+	public boolean submit(final RemoteNodeData remoteNodeData, final byte[] payloadBa) {
+		return pipeline.submit(new IngestedBlock(remoteNodeData, payloadBa));
+	}
+
+	/**
+	 * return the statistics of the pipeline.
+	 *
+	 * @return the statistics of the pipeline.
+	 */
+	public JSONObject toJSONObject() {
+		return pipeline.toJSONObject();
+	}
+
+	/**
+	 * a block in the pipeline.
+	 *
+	 * @author coranos
+	 *
+	 */
+	public static final class IngestedBlock {
+
+		/**
+		 * the peer that sent the block.
+		 */
+		private final RemoteNodeData remoteNodeData;
+
+		/**
+		 * the block payload.
+		 */
+		private final byte[] payloadBa;
+
+		/**
+		 * the block, once it is parsed.
+		 */
+		private Block block;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param remoteNodeData
+		 *            the peer that sent the block.
+		 * @param payloadBa
+		 *            the block payload.
+		 */
+		private IngestedBlock(final RemoteNodeData remoteNodeData, final byte[] payloadBa) {
+			this.remoteNodeData = remoteNodeData;
+			this.payloadBa = payloadBa;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package neo.network;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.CommandEnum;
+import neo.model.bytes.UInt256;
+import neo.model.core.Block;
+import neo.model.core.Transaction;
+import neo.model.db.BlockDb;
+import neo.model.network.GetBlocksPayload;
+import neo.model.network.HeadersPayload;
+import neo.model.network.InvPayload;
+import neo.model.network.InventoryType;
+import neo.model.network.Message;
+import neo.model.util.MapUtil;
+import neo.model.util.NetworkUtil;
+import neo.network.model.LocalNodeData;
+import neo.network.model.RemoteNodeData;
+
+/**
+ * the utility for serving blocks, headers and transactions to peers.
+ * <p>
+ * blocks and headers are sent as the bytes stored in the block database, so
+ * serving a peer that is syncing from us does not decode and re-encode every
+ * block.
+ *
+ * @author coranos
+ *
+ */
+public final class BlockServeUtil {
+
+	/**
+	 * the API call key for requested inventory we do not have.
+	 */
+	private static final String SERVE_NOT_FOUND = "serve-not-found";
+
+	/**
+	 * the API call key for blocks served.
+	 */
+	private static final String SERVE_BLOCK = "serve-block";
+
+	/**
+	 * the API call key for transactions served.
+	 */
+	private static final String SERVE_TX = "serve-tx";
+
+	/**
+	 * the API call key for headers served.
+	 */
+	private static final String SERVE_HEADERS = "serve-headers";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(BlockServeUtil.class);
+
+	/**
+	 * return the height of the first start hash that is in the block database, or
+	 * null if none of them are.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param payload
+	 *            the payload to use.
+	 * @return the height of the first known start hash.
+	 */
+	private static Long getStartHeight(final BlockDb blockDb, final GetBlocksPayload payload) {
+		for (final UInt256 hashStart : payload.getHashStartList()) {
+			final Block header = blockDb.getHeaderOfBlockFromHash(hashStart);
+			if (header != null) {
+				return header.getIndexAsLong();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * return the height of the stop hash, or the max long value if the stop hash
+	 * is zero or is not in the block database.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param payload
+	 *            the payload to use.
+	 * @return the height of the stop hash.
+	 */
+	private static long getStopHeight(final BlockDb blockDb, final GetBlocksPayload payload) {
+		if (payload.hashStop.equals(new UInt256(new byte[UInt256.SIZE]))) {
+			return Long.MAX_VALUE;
+		}
+		final Block header = blockDb.getHeaderOfBlockFromHash(payload.hashStop);
+		if (header == null) {
+			return Long.MAX_VALUE;
+		}
+		return header.getIndexAsLong();
+	}
+
+	/**
+	 * sends the requested blocks and transactions that we have. Blocks come from
+	 * the block database, transactions from the memory pool.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param remoteNodeData
+	 *            the remote node data to use.
+	 * @param payload
+	 *            the payload of the "getdata" message.
+	 */
+	public static void sendData(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData,
+			final InvPayload payload) {
+		final InventoryType type = payload.getType();
+		for (final UInt256 hash : payload.getHashes()) {
+			final byte[] ba;
+			final CommandEnum command;
+			if (type.equals(InventoryType.BLOCK)) {
+				ba = localNodeData.getBlockDb().getRawBlockFromHash(hash);
+				command = CommandEnum.BLOCK;
+			} else if (type.equals(InventoryType.TRANSACTION)) {
+				final Transaction transaction = localNodeData.getMemoryPool().getTransaction(hash);
+				if (transaction == null) {
+					ba = null;
+				} else {
+					ba = transaction.toByteArray();
+				}
+				command = CommandEnum.TX;
+			} else {
+				ba = null;
+				command = null;
+			}
+			if (ba == null) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, SERVE_NOT_FOUND);
+				continue;
+			}
+			remoteNodeData.getKnownInventory().add(hash);
+			remoteNodeData.send(new Message(localNodeData.getMagic(), command, ba));
+			if (command.equals(CommandEnum.BLOCK)) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, SERVE_BLOCK);
+			} else {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, SERVE_TX);
+			}
+		}
+	}
+
+	/**
+	 * sends the headers after the first start hash we have, up to the stop hash or
+	 * the max number of headers in a headers payload.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param remoteNodeData
+	 *            the remote node data to use.
+	 * @param payload
+	 *            the payload of the "getheaders" message.
+	 */
+	public static void sendHeaders(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData,
+			final GetBlocksPayload payload) {
+		final BlockDb blockDb = localNodeData.getBlockDb();
+		final Long startHeight = getStartHeight(blockDb, payload);
+		if (startHeight == null) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, SERVE_NOT_FOUND);
+			return;
+		}
+		final long stopHeight = Math.min(getStopHeight(blockDb, payload), startHeight + HeadersPayload.MAX_HEADERS);
+
+		final List<byte[]> headerBaList = new ArrayList<>();
+		for (long height = startHeight + 1; height <= stopHeight; height++) {
+			final byte[] headerBa = blockDb.getRawHeaderFromHeight(height);
+			if (headerBa == null) {
+				break;
+			}
+			headerBaList.add(headerBa);
+		}
+		if (headerBaList.isEmpty()) {
+			return;
+		}
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		NetworkUtil.writeVarInt(bout, headerBaList.size());
+		for (final byte[] headerBa : headerBaList) {
+			NetworkUtil.write(bout, headerBa, 0, headerBa.length);
+		}
+		LOG.debug("sendHeaders to {} from {} count {}", remoteNodeData.getHostAddress(), startHeight + 1,
+				headerBaList.size());
+		remoteNodeData.send(new Message(localNodeData.getMagic(), CommandEnum.HEADERS, bout.toByteArray()));
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, SERVE_HEADERS, headerBaList.size());
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private BlockServeUtil() {
+
+	}
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import neo.network.model.LocalNodeData;
+import neo.network.model.NetworkHeight;
 import neo.rpc.client.CityOfZionUtil;
 import neo.rpc.client.RpcClientUtil;
 
@@ -21,12 +22,18 @@ public final class CityOfZionBlockUtil {
 	private static final Logger LOG = LoggerFactory.getLogger(CityOfZionBlockUtil.class);
 
 	/**
-	 * intialize the block has height from the CityOfZion servers.
+	 * cross checks the block height derived from the peers against the
+	 * CityOfZion servers, if the cross check is enabled. The CityOfZion height is
+	 * only recorded, it is not used as the block height.
 	 *
 	 * @param localNodeData
 	 *            the local node data to use.
 	 */
 	public static void refreshCityOfZionBlockHeight(final LocalNodeData localNodeData) {
+		final NetworkHeight networkHeight = localNodeData.getNetworkHeight();
+		if (!networkHeight.isCityOfZionCrossCheck()) {
+			return;
+		}
 		try {
 			final String rpcNode = CityOfZionUtil.getMainNetRpcNode();
 			if (rpcNode == null) {
@@ -35,8 +42,10 @@ public final class CityOfZionBlockUtil {
 			final Integer blockchainHeight = RpcClientUtil.getBlockCount(localNodeData.getRpcClientTimeoutMillis(),
 					rpcNode, true);
 			if (blockchainHeight != null) {
-				if (blockchainHeight > localNodeData.getBlockchainBlockHeight()) {
-					localNodeData.setBlockchainBlockHeight(blockchainHeight);
+				final long validatedHeight = Math.max(0, localNodeData.getHeaderChain().getTipIndex());
+				if (!networkHeight.setCrossCheckHeight(blockchainHeight, validatedHeight)) {
+					LOG.warn("CityOfZion block height {} does not match the block height {} from {} peers",
+							blockchainHeight, networkHeight.getHeight(validatedHeight), networkHeight.getPeerCount());
 				}
 			}
 		} catch (final Exception e) {
@@ -0,0 +1,179 @@
+package neo.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.bytes.UInt256;
+import neo.model.db.BlockDb;
+import neo.model.network.InventoryType;
+import neo.model.util.MapUtil;
+import neo.network.model.LocalNodeData;
+import neo.network.model.RemoteNodeData;
+
+/**
+ * the utility for deciding which announced inventory to request, so each block
+ * or transaction is only downloaded once, from one peer at a time.
+ *
+ * @author coranos
+ *
+ */
+public final class InventoryUtil {
+
+	/**
+	 * the API call key for inventory that was already known.
+	 */
+	private static final String DUPLICATE_IN_INV_KNOWN = "duplicate-in-inv-known";
+
+	/**
+	 * the API call key for inventory that was already stored.
+	 */
+	private static final String DUPLICATE_IN_INV_STORED = "duplicate-in-inv-stored";
+
+	/**
+	 * the API call key for inventory that was already requested from another
+	 * peer.
+	 */
+	private static final String DUPLICATE_IN_INV_REQUESTED = "duplicate-in-inv-requested";
+
+	/**
+	 * the API call key for inventory that was not announced, because the peer
+	 * already has it.
+	 */
+	private static final String DUPLICATE_OUT_INV_KNOWN = "duplicate-out-inv-known";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(InventoryUtil.class);
+
+	/**
+	 * records that the remote node announced the given hashes, and returns the
+	 * hashes that are not already known, stored, or requested. The returned hashes
+	 * are marked as requested, so no other peer will be asked for them until the
+	 * request expires or the inventory is recieved.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param remoteNodeData
+	 *            the remote node that announced the hashes.
+	 * @param type
+	 *            the inventory type.
+	 * @param hashes
+	 *            the announced hashes.
+	 * @return the hashes to request from the remote node.
+	 */
+	public static UInt256[] claimUnknownHashes(final LocalNodeData localNodeData,
+			final RemoteNodeData remoteNodeData, final InventoryType type, final List<UInt256> hashes) {
+		final List<UInt256> unknownHashes = new ArrayList<>();
+		for (final UInt256 hash : hashes) {
+			remoteNodeData.getKnownInventory().add(hash);
+			if (localNodeData.getKnownInventory().contains(hash)) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, DUPLICATE_IN_INV_KNOWN);
+			} else if (isStored(localNodeData, type, hash)) {
+				localNodeData.getKnownInventory().add(hash);
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, DUPLICATE_IN_INV_STORED);
+			} else if (!localNodeData.getRequestedInventory().addIfAbsent(hash)) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, DUPLICATE_IN_INV_REQUESTED);
+			} else {
+				unknownHashes.add(hash);
+			}
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("claimUnknownHashes {} type:{}; announced:{}; unknown:{};", remoteNodeData.getHostAddress(),
+					type, hashes.size(), unknownHashes.size());
+		}
+		return unknownHashes.toArray(new UInt256[0]);
+	}
+
+	/**
+	 * returns the hashes the remote node is not known to have, and records that
+	 * it now has them, so inventory is announced to each peer once, and never
+	 * announced back to the peer that sent it.
+	 *
+	 * @param remoteNodeData
+	 *            the remote node to announce the hashes to.
+	 * @param hashes
+	 *            the hashes to announce.
+	 * @return the hashes to announce to the remote node.
+	 */
+	public static UInt256[] claimUnannouncedHashes(final RemoteNodeData remoteNodeData, final UInt256... hashes) {
+		final List<UInt256> unannouncedHashes = new ArrayList<>();
+		for (final UInt256 hash : hashes) {
+			if (remoteNodeData.getKnownInventory().add(hash)) {
+				unannouncedHashes.add(hash);
+			} else {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, DUPLICATE_OUT_INV_KNOWN);
+			}
+		}
+		return unannouncedHashes.toArray(new UInt256[0]);
+	}
+
+	/**
+	 * marks the hash as requested, if it is not already requested.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param hash
+	 *            the hash to request.
+	 * @return true if the hash was not already requested from another peer.
+	 */
+	public static boolean claimRequest(final LocalNodeData localNodeData, final UInt256 hash) {
+		return localNodeData.getRequestedInventory().addIfAbsent(hash);
+	}
+
+	/**
+	 * records that the inventory with the given hash was recieved from the remote
+	 * node, so it is no longer in flight, and will not be requested again.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param remoteNodeData
+	 *            the remote node that sent the inventory.
+	 * @param hash
+	 *            the hash of the inventory.
+	 * @return true if the inventory was not already known.
+	 */
+	public static boolean inventoryReceived(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData,
+			final UInt256 hash) {
+		remoteNodeData.getKnownInventory().add(hash);
+		localNodeData.getRequestedInventory().remove(hash);
+		return localNodeData.getKnownInventory().add(hash);
+	}
+
+	/**
+	 * return true if the inventory is already in the block database, or the
+	 * memory pool.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param type
+	 *            the inventory type.
+	 * @param hash
+	 *            the hash to use.
+	 * @return true if the inventory is already in the block database, or the
+	 *         memory pool.
+	 */
+	private static boolean isStored(final LocalNodeData localNodeData, final InventoryType type,
+			final UInt256 hash) {
+		final BlockDb blockDb = localNodeData.getBlockDb();
+		switch (type) {
+		case BLOCK:
+			return blockDb.containsBlockWithHash(hash);
+		case TRANSACTION:
+			return localNodeData.getMemoryPool().contains(hash)
+					|| (blockDb.getBlockIndexFromTransactionHash(hash) != null);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private InventoryUtil() {
+
+	}
+}
@@ -2,18 +2,18 @@ package neo.network;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.EnumMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.json.JSONArray;
@@ -21,29 +21,37 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import neo.model.CommandEnum;
 import neo.model.IndexedSet;
 import neo.model.bytes.Fixed8;
 import neo.model.bytes.UInt256;
-import neo.model.core.Block;
 import neo.model.core.Header;
+import neo.model.core.Transaction;
 import neo.model.core.TransactionType;
 import neo.model.db.BlockDb;
 import neo.model.network.AddrPayload;
+import neo.model.network.GetBlocksPayload;
 import neo.model.network.HeadersPayload;
 import neo.model.network.InvPayload;
+import neo.model.network.InventoryType;
 import neo.model.network.Message;
 import neo.model.network.NetworkAddressWithTime;
 import neo.model.network.VersionPayload;
 import neo.model.util.ConfigurationUtil;
 import neo.model.util.JsonUtil;
 import neo.model.util.MapUtil;
-import neo.model.util.ModelUtil;
-import neo.model.util.threadpool.ThreadPool;
+import neo.model.util.threadpool.HashedWheelTimer;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.network.model.AddressBook;
 import neo.network.model.LocalNodeData;
 import neo.network.model.NodeConnectionPhaseEnum;
 import neo.network.model.RemoteNodeData;
 import neo.network.model.TimerData;
+import neo.network.model.TimerTypeEnum;
 import neo.network.model.socket.SocketFactory;
+import neo.network.model.socket.SocketWrapper;
+import neo.rpc.server.RpcRateLimiter;
+import neo.rpc.server.RpcResponseCache;
 
 /**
  * the local controller node.
@@ -74,9 +82,9 @@ public class LocalControllerNode {
 	private static final String IN_HEADERS_ALL_DUPLICATES = "in-headers-all-duplicates";
 
 	/**
-	 * the JSON key, "duplicate-in-header".
+	 * the JSON key, "in-inv-all-known".
 	 */
-	private static final String DUPLICATE_IN_HEADER = "duplicate-in-header";
+	private static final String IN_INV_ALL_KNOWN = "in-inv-all-known";
 
 	/**
 	 * the logger.
@@ -95,9 +103,14 @@ public class LocalControllerNode {
 			RemoteNodeData.getIndexCollector());
 
 	/**
-	 * the thread pool.
+	 * the executor the peer loops run on.
 	 */
-	private final ThreadPool threadPool;
+	private final MeteredExecutor ioExecutor;
+
+	/**
+	 * the pipeline that puts blocks recieved from peers in the blockchain.
+	 */
+	private final BlockIngestPipeline blockIngestPipeline;
 
 	/**
 	 * the local node data.
@@ -124,15 +137,35 @@ public class LocalControllerNode {
 	 */
 	private final Thread coreRpcServerThread;
 
+	/**
+	 * the inbound connection runnable class.
+	 */
+	private final LocalControllerNodeInboundRunnable inboundRunnable;
+
+	/**
+	 * the inbound connection thread.
+	 */
+	private final Thread inboundThread;
+
 	/**
 	 * the remote node config.
 	 */
 	private final JSONObject remoteNodeConfig;
 
+	/**
+	 * the timer wheel, which schedules timed requests.
+	 */
+	private final HashedWheelTimer timerWheel;
+
+	/**
+	 * the min time between runs of a timer's action, in milliseconds.
+	 */
+	private final long timerMinDelayMs;
+
 	/**
 	 * stopped flag.
 	 */
-	private boolean stopped = false;
+	private volatile boolean stopped = false;
 
 	/**
 	 * the constructor.
@@ -172,7 +205,10 @@ public class LocalControllerNode {
 		final File seedNodeFile = new File(localJson.getString(ConfigurationUtil.SEED_NODE_FILE));
 		final File goodNodeFile = new File(localJson.getString(ConfigurationUtil.GOOD_NODE_FILE));
 
-		final Map<TransactionType, Fixed8> transactionSystemFeeMap = getTransactionSystemFeeMap(localJson);
+		final Map<TransactionType, Fixed8> transactionSystemFeeMap = ConfigurationUtil
+				.getTransactionSystemFeeMap(localJson);
+		// the block database precomputes the GAS of claims, so it needs the system fees.
+		blockDbJson.put(ConfigurationUtil.SYSTEM_FEE, localJson.getJSONObject(ConfigurationUtil.SYSTEM_FEE));
 
 		final JSONObject importExportJson = localJson.getJSONObject(ConfigurationUtil.IMPORT_EXPORT);
 		final String chainExportDataFileName = importExportJson.getString(ConfigurationUtil.DATA_FILE_NAME);
@@ -181,15 +217,46 @@ public class LocalControllerNode {
 		localNodeData = new LocalNodeData(magic, activeThreadCount, rpcClientTimeoutMillis, rpcServerTimeoutMillis,
 				blockDbImplClass, timersMap, nonce, tcpPort, seedNodeFile, goodNodeFile, socketFactoryClass,
 				blockDbJson, rpcDisabledCalls, rpcPort, networkName, transactionSystemFeeMap, chainExportDataFileName,
-				chainExportStatsFileName);
-		LocalNodeDataSynchronizedUtil.refreshCityOfZionBlockHeight(localNodeData);
-
-		threadPool = new ThreadPool(localJson.getInt(ConfigurationUtil.THREAD_POOL_COUNT));
+				chainExportStatsFileName, localJson);
+		blockIngestPipeline = new BlockIngestPipeline(localNodeData,
+				localJson.getJSONObject(ConfigurationUtil.BLOCK_INGEST));
+
+		ioExecutor = localNodeData.getExecutorPools().getIoExecutor();
+		final JSONObject timerWheelJson = localJson.getJSONObject(ConfigurationUtil.TIMER_WHEEL);
+		timerWheel = new HashedWheelTimer(timerWheelJson);
+		timerMinDelayMs = JsonUtil.getTime(timerWheelJson, ConfigurationUtil.MIN_DELAY);
 		refreshRunnable = new LocalControllerNodeRefreshRunnable(this);
 		refreshThread = new Thread(refreshRunnable, "Refresh Thread");
 
-		coreRpcRunnable = new LocalControllerNodeCoreRpcRunnable(this);
+		coreRpcRunnable = new LocalControllerNodeCoreRpcRunnable(this,
+				localJson.getJSONObject(ConfigurationUtil.RPC).getJSONObject(ConfigurationUtil.SERVER));
 		coreRpcServerThread = new Thread(coreRpcRunnable, "Core RPC Thread");
+
+		final JSONObject inboundJson = localJson.getJSONObject(ConfigurationUtil.INBOUND);
+		inboundRunnable = new LocalControllerNodeInboundRunnable(this,
+				inboundJson.getInt(ConfigurationUtil.MAX_CONNECTIONS));
+		inboundThread = new Thread(inboundRunnable, "Inbound Thread");
+	}
+
+	/**
+	 * runs a peer that connected to us. Inbound peers are not added to the peer
+	 * data set, as they are connected from an ephemeral port, so we can't
+	 * reconnect to them after they close.
+	 *
+	 * @param data
+	 *            the peer's data.
+	 * @param socket
+	 *            the socket the peer connected to us on.
+	 */
+	public void addInboundPeer(final RemoteNodeData data, final SocketWrapper socket) {
+		if (stopped || !ioExecutor.tryExecute(new RemoteNodeControllerRunnable(this, data, socket))) {
+			inboundRunnable.onConnectionClose();
+			try {
+				socket.close();
+			} catch (final Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
 	}
 
 	/**
@@ -236,7 +303,11 @@ public class LocalControllerNode {
 		synchronized (peerDataSet) {
 			if (peerDataSet.containsIndex(RemoteNodeData.TCP_ADDRESS_AND_PORT, data)) {
 				LOG.trace("FAILURE addPeerWrapperToPool, peer \"{}\" is a existing peer. ", data);
+			} else if (!localNodeData.getAddressBook().addressSeen(data.getTcpAddressAndPortString(),
+					System.currentTimeMillis())) {
+				LOG.trace("FAILURE addPeerWrapperToPool, address book is full, peer \"{}\". ", data);
 			} else {
+				PeerScoreUtil.restore(localNodeData, data);
 				peerDataSet.add(data);
 			}
 		}
@@ -249,17 +320,34 @@ public class LocalControllerNode {
 	}
 
 	/**
-	 * adds the node to the peer data set.
+	 * adds the node to the peer data set, and it's address to the address book.
 	 *
 	 * @param node
 	 *            the node to add tot he set.
 	 */
 	public void addToPeerDataSet(final RemoteNodeData node) {
+		localNodeData.getAddressBook().addressSeen(node.getTcpAddressAndPortString(), System.currentTimeMillis());
 		synchronized (peerDataSet) {
 			peerDataSet.add(node);
 		}
 	}
 
+	/**
+	 * runs a peer timer's action on the I/O executor, so the requests are not sent
+	 * from the timer wheel's thread.
+	 *
+	 * @param action
+	 *            the action to run.
+	 * @throws RejectedExecutionException
+	 *             if the I/O executor is full or stopped, so the timer tries
+	 *             again later.
+	 */
+	private void executePeerTimerAction(final Runnable action) {
+		if (!ioExecutor.tryExecute(action)) {
+			throw new RejectedExecutionException("I/O executor full, peer timer action not run.");
+		}
+	}
+
 	/**
 	 * returns the class named in blockDbImplClassName , cast to a BlockDb.
 	 *
@@ -278,6 +366,15 @@ public class LocalControllerNode {
 		return blockDbImplClass;
 	}
 
+	/**
+	 * return the pipeline that puts blocks recieved from peers in the blockchain.
+	 *
+	 * @return the block ingest pipeline.
+	 */
+	public BlockIngestPipeline getBlockIngestPipeline() {
+		return blockIngestPipeline;
+	}
+
 	/**
 	 * return the local node data.
 	 *
@@ -287,6 +384,15 @@ public class LocalControllerNode {
 		return localNodeData;
 	}
 
+	/**
+	 * return the timer wheel.
+	 *
+	 * @return the timer wheel.
+	 */
+	public HashedWheelTimer getTimerWheel() {
+		return timerWheel;
+	}
+
 	/**
 	 * return a new, initalized, RemoteNodeData object.
 	 *
@@ -297,6 +403,24 @@ public class LocalControllerNode {
 		return data;
 	}
 
+	/**
+	 * return the RPC rate limiter.
+	 *
+	 * @return the RPC rate limiter.
+	 */
+	public RpcRateLimiter getRpcRateLimiter() {
+		return coreRpcRunnable.getRateLimiter();
+	}
+
+	/**
+	 * return the cache of RPC responses.
+	 *
+	 * @return the cache of RPC responses.
+	 */
+	public RpcResponseCache getRpcResponseCache() {
+		return coreRpcRunnable.getResponseCache();
+	}
+
 	/**
 	 * returns the class named in socketFactoryImplClassName, cast to a
 	 * SocketFactory.
@@ -317,40 +441,52 @@ public class LocalControllerNode {
 	}
 
 	/**
-	 * return the map of system fees to transaction types.
+	 * return true if the peer is one of the highest scoring peers, which are the
+	 * only ones asked for blocks.
 	 *
-	 * @param localJson
-	 *            the local json to use.
-	 * @return the map of system fees to transaction types.
+	 * @param data
+	 *            the remote node data to use.
+	 * @return true if the peer should be asked for blocks.
 	 */
-	private Map<TransactionType, Fixed8> getTransactionSystemFeeMap(final JSONObject localJson) {
-		final Map<TransactionType, Fixed8> transactionSystemFeeMap = new EnumMap<>(TransactionType.class);
-		final JSONObject transactionSystemFeeJson = localJson.getJSONObject(ConfigurationUtil.SYSTEM_FEE);
-		for (final String key : transactionSystemFeeJson.keySet()) {
-			final long value = transactionSystemFeeJson.getLong(key);
-			final TransactionType txType = TransactionType.valueOf(key);
-			transactionSystemFeeMap.put(txType, ModelUtil.getFixed8(BigInteger.valueOf(value)));
-		}
-		for (final TransactionType txType : TransactionType.values()) {
-			if (!transactionSystemFeeMap.containsKey(txType)) {
-				LOG.error("TransactionType {} has no SystemFee in the configuration, setting SystemFee to zero",
-						txType);
-				transactionSystemFeeMap.put(txType, ModelUtil.FIXED8_ZERO);
-			}
+	private boolean isPreferredForBlocks(final RemoteNodeData data) {
+		final List<RemoteNodeData> peerDataList = new ArrayList<>();
+		addPeerDataSetToList(peerDataList);
+		return PeerScoreUtil.isPreferredForBlocks(localNodeData, data, peerDataList);
+	}
+
+	/**
+	 * return true if the peer should be sent timed requests, which is if it is a
+	 * good, acknowledged, active peer with nothing left in it's send queue.
+	 *
+	 * @param data
+	 *            the remote node data to use.
+	 * @return true if the peer should be sent timed requests.
+	 */
+	private boolean isReadyForRequests(final RemoteNodeData data) {
+		switch (data.getConnectionPhase()) {
+		case ACTIVE:
+		case ACKNOWLEDGED:
+			break;
+		default:
+			return false;
 		}
-		return transactionSystemFeeMap;
+		return data.isGoodPeer() && data.isAcknowledgedPeer() && (data.getQueueDepth() == 0);
 	}
 
 	/**
 	 * return true if the blockchain appears to be stalled on the node. this is if
 	 * the remote node block height is 1000 under our current block height, about 6
-	 * hours behind.
+	 * hours behind, and the remote node is not an inbound peer.
 	 *
 	 * @param data
 	 *            the remote node data to use.
 	 * @return true if the blockchain appears to be stalled on the node.
 	 */
 	private boolean isStalledBlockchain(final RemoteNodeData data) {
+		if (data.isInbound()) {
+			// inbound peers are often behind, because they are syncing from us.
+			return false;
+		}
 		if (data.isGoodPeer()) {
 			if (data.isAcknowledgedPeer()) {
 				if (data.getBlockHeight() != null) {
@@ -399,6 +535,34 @@ public class LocalControllerNode {
 		}
 	}
 
+	/**
+	 * adds the saved peers, from the peer score file and the address book file,
+	 * that are not already known.
+	 *
+	 * @param addressList
+	 *            the TCP addresses and ports of the saved peers.
+	 */
+	private void loadSavedPeers(final List<String> addressList) {
+		if (stopped) {
+			return;
+		}
+		try {
+			for (final String addressAndPortStr : addressList) {
+				final int portIx = addressAndPortStr.lastIndexOf(':');
+				final InetAddress address = InetAddress.getByName(addressAndPortStr.substring(0, portIx));
+				final int port = Integer.parseInt(addressAndPortStr.substring(portIx + 1));
+				final RemoteNodeData data = getNewRemoteNodeData();
+				synchronized (RemoteNodeData.class) {
+					data.setConnectionPhase(NodeConnectionPhaseEnum.UNKNOWN);
+				}
+				data.setTcpAddressAndPort(new InetSocketAddress(address, port));
+				addRemoteNodeDataToPool(data);
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * notify the node data change listeners that a data change occurred.
 	 */
@@ -444,10 +608,14 @@ public class LocalControllerNode {
 				}
 				final InetSocketAddress addressAndPort = new InetSocketAddress(address, port);
 				final RemoteNodeData data = new RemoteNodeData(remoteNodeConfig);
+				data.setTcpAddressAndPort(addressAndPort);
+				if (!localNodeData.getAddressBook().addressSeen(data.getTcpAddressAndPortString(),
+						System.currentTimeMillis())) {
+					continue;
+				}
 				synchronized (RemoteNodeData.class) {
 					data.setConnectionPhase(NodeConnectionPhaseEnum.UNKNOWN);
 				}
-				data.setTcpAddressAndPort(addressAndPort);
 				addRemoteNodeDataToPool(data);
 			}
 
@@ -464,7 +632,8 @@ public class LocalControllerNode {
 	}
 
 	/**
-	 * does something on a "block" message.
+	 * does something on a "block" message, by submitting it to the block ingest
+	 * pipeline, which parses and checks it off this thread.
 	 *
 	 * @param peer
 	 *            the peer that sent the message.
@@ -475,20 +644,7 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		final Block newBlock = message.getPayload(Block.class);
-
-		final String expected = new String(Hex.encodeHexString(message.getPayloadByteArray()));
-		final String actual = Hex.encodeHexString(newBlock.toByteArray());
-
-		if (!expected.equals(actual)) {
-			LOG.error("onBlock newBlock: {}", newBlock);
-			LOG.error("onBlock expected: {}", expected);
-			LOG.error("onBlock actual  : {}", actual);
-			return;
-		}
-
-		LocalNodeDataSynchronizedUtil.addUnverifiedBlock(localNodeData, newBlock);
-		// LocalNodeDataSynchronizedUtil.verifyUnverifiedBlocks(localNodeData);
+		blockIngestPipeline.submit(peer.getData(), message.getPayloadByteArray());
 	}
 
 	/**
@@ -545,7 +701,7 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		// TODO: return a list of blocks.
+		BlockServeUtil.sendData(localNodeData, peer.getData(), message.getPayload(InvPayload.class));
 	}
 
 	/**
@@ -560,7 +716,7 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		// TODO: return a list of headers.
+		BlockServeUtil.sendHeaders(localNodeData, peer.getData(), message.getPayload(GetBlocksPayload.class));
 	}
 
 	/**
@@ -577,21 +733,22 @@ public class LocalControllerNode {
 		}
 		final HeadersPayload headersPayload = message.getPayload(HeadersPayload.class);
 		LOG.debug("STARTED onHeaders size:{}", headersPayload.getHeaderList().size());
-		boolean headerChanged = false;
-		for (final Header header : headersPayload.getHeaderList()) {
-			final boolean headerNew = LocalNodeDataSynchronizedUtil.addHeaderIfNew(localNodeData, header);
-			if (headerNew) {
-				headerChanged = true;
-			}
-
-			if (!headerNew) {
-				MapUtil.increment(LocalNodeData.API_CALL_MAP, DUPLICATE_IN_HEADER);
+		final int headersAdded = LocalNodeDataSynchronizedUtil.addHeaders(localNodeData,
+				headersPayload.getHeaderList());
+		final boolean headerChanged = headersAdded > 0;
+		LOG.debug("INTERIM onHeaders headersAdded:{}", headersAdded);
+		if (headersAdded >= 0) {
+			final List<Header> headerList = headersPayload.getHeaderList();
+			if (!headerList.isEmpty()) {
+				localNodeData.getNetworkHeight().peerHeight(peer.getData().getTcpAddressAndPortString(),
+						headerList.get(headerList.size() - 1).getIndexAsLong());
 			}
 		}
-		LOG.debug("INTERIM onHeaders headerChanged:{}", headerChanged);
 		if (headerChanged) {
-			LocalNodeDataSynchronizedUtil.verifyUnverifiedHeaders(localNodeData);
 			notifyNodeDataChangeListeners();
+		} else if (headersAdded < 0) {
+			peer.getData().getPeerStats().invalidMessage();
+			localNodeData.getAddressBook().invalidMessage(peer.getData().getHostAddress(), System.currentTimeMillis());
 		} else {
 			MapUtil.increment(LocalNodeData.API_CALL_MAP, IN_HEADERS_ALL_DUPLICATES);
 			LOG.debug("header message received with {} headers, but all were duplicates.",
@@ -612,19 +769,18 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		// TODO: figure out what to do here.
 		final InvPayload invp = message.getPayload(InvPayload.class);
-		final List<UInt256> hashes = invp.getHashes();
-		switch (invp.getType()) {
-		case BLOCK:
-			break;
-		case CONSENSUS:
-			break;
-		case TRANSACTION:
-			break;
+		if (invp.getType().equals(InventoryType.CONSENSUS)) {
+			// consensus payloads are not processed, so there is no point requesting them.
+			return;
 		}
-
-		MessageUtil.sendGetData(peer.getData(), localNodeData, invp.getType(), hashes.toArray(new UInt256[0]));
+		final UInt256[] hashes = InventoryUtil.claimUnknownHashes(localNodeData, peer.getData(), invp.getType(),
+				invp.getHashes());
+		if (hashes.length == 0) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, IN_INV_ALL_KNOWN);
+			return;
+		}
+		MessageUtil.sendGetData(peer.getData(), localNodeData, invp.getType(), hashes);
 	}
 
 	/**
@@ -639,7 +795,14 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		// TODO: figure out what to do here.
+		final List<UInt256> hashList = localNodeData.getMemoryPool().getHashList();
+		LOG.debug("STARTED onMempool {} size:{}", peer.getData().getHostAddress(), hashList.size());
+		for (int fromIx = 0; fromIx < hashList.size(); fromIx += InvPayload.MAX_HASHES) {
+			final int toIx = Math.min(fromIx + InvPayload.MAX_HASHES, hashList.size());
+			final UInt256[] hashs = hashList.subList(fromIx, toIx).toArray(new UInt256[0]);
+			MessageUtil.sendInv(peer.getData(), localNodeData, InventoryType.TRANSACTION, hashs);
+		}
+		LOG.debug("SUCCESS onMempool");
 	}
 
 	/**
@@ -717,6 +880,7 @@ public class LocalControllerNode {
 
 			LOG.debug("STARTED responseReceived {}", message.commandEnum);
 			TimerUtil.responseReceived(localNodeData.getTimersMap(), message.commandEnum);
+			TimerUtil.responseReceived(peer.getData().getTimersMap(), message.commandEnum);
 			LOG.debug("SUCCESS responseReceived");
 
 		} catch (final Exception e) {
@@ -731,10 +895,13 @@ public class LocalControllerNode {
 	 *            the peer that closed the socket.
 	 */
 	public void onSocketClose(final RemoteNodeControllerRunnable peer) {
+		final RemoteNodeData data = peer.getData();
+		if (data.isInbound()) {
+			inboundRunnable.onConnectionClose();
+		}
 		if (stopped) {
 			return;
 		}
-		final RemoteNodeData data = peer.getData();
 		final String version;
 		synchronized (data) {
 			version = data.getVersion();
@@ -743,6 +910,11 @@ public class LocalControllerNode {
 			LOG.debug("OnSocketClose {} {}", data.getTcpAddressAndPortString(), version);
 		}
 
+		data.stopRecurringTimers();
+		localNodeData.getNetworkHeight().removePeer(data.getTcpAddressAndPortString());
+		if (!data.isInbound() && (version == null)) {
+			localNodeData.getAddressBook().connectFailed(data.getTcpAddressAndPortString());
+		}
 		synchronized (RemoteNodeData.class) {
 			if (version != null) {
 				data.setConnectionPhase(NodeConnectionPhaseEnum.INACTIVE);
@@ -768,7 +940,9 @@ public class LocalControllerNode {
 		if (stopped) {
 			return;
 		}
-		// TODO: process the transaction.
+		final Transaction tx = message.getPayload(Transaction.class);
+		InventoryUtil.inventoryReceived(localNodeData, peer.getData(), tx.getHash());
+		MemoryPoolUtil.addTransaction(localNodeData, tx);
 	}
 
 	/**
@@ -788,7 +962,8 @@ public class LocalControllerNode {
 
 	/**
 	 * when a "version" message is received, update the peer's connection phase to
-	 * be "acknowledged" and set it's version to be the user agent in the payload.
+	 * be "acknowledged", set it's version to be the user agent in the payload,
+	 * and record it's start height in the network height.
 	 *
 	 * @param peer
 	 *            the peer that sent the message.
@@ -800,21 +975,22 @@ public class LocalControllerNode {
 			return;
 		}
 		final RemoteNodeData data = peer.getData();
+		final VersionPayload payload = message.getPayload(VersionPayload.class);
+		final long blockHeight = payload.startHeight.asLong();
 		synchronized (data) {
-			final VersionPayload payload = message.getPayload(VersionPayload.class);
 			data.setVersion(payload.userAgent);
-			final long blockHeight = payload.startHeight.asLong();
 			data.setBlockHeight(blockHeight);
 			data.setLastMessageTimestamp(System.currentTimeMillis());
-
-			if (blockHeight > localNodeData.getBlockchainBlockHeight()) {
-				localNodeData.setBlockchainBlockHeight(blockHeight);
-			}
-
 		}
+		localNodeData.getNetworkHeight().peerHeight(data.getTcpAddressAndPortString(), blockHeight);
 		synchronized (RemoteNodeData.class) {
 			data.setConnectionPhase(NodeConnectionPhaseEnum.ACKNOWLEDGED);
 		}
+		if (!data.isInbound()) {
+			localNodeData.getAddressBook().connectSucceeded(data.getTcpAddressAndPortString(),
+					System.currentTimeMillis());
+		}
+		startPeerTimers(data);
 
 		final boolean stalledBlockchain = isStalledBlockchain(data);
 		if (stalledBlockchain) {
@@ -840,8 +1016,10 @@ public class LocalControllerNode {
 	}
 
 	/**
-	 * change all unknown and inactive remote nodes to the pool, and put them in the
-	 * "try-start" phase.
+	 * change the unknown, inactive and refused remote nodes that the address book
+	 * selects to the pool, and put them in the "try-start" phase. Evicted peers
+	 * are skipped, and the address book skips banned peers and peers whose
+	 * backoff has not passed.
 	 *
 	 * @return true if any new peers were added to the pool.
 	 * @throws Exception
@@ -857,28 +1035,68 @@ public class LocalControllerNode {
 			peerDataList.addAll(peerDataSet);
 		}
 
+		final long now = System.currentTimeMillis();
+		final Map<String, RemoteNodeData> candidateMap = new TreeMap<>();
 		for (final RemoteNodeData data : peerDataList) {
 			LOG.trace("refreshThread[1] {} runPeers node with phase {}", data.getTcpAddressAndPortString(),
 					data.getConnectionPhase());
-			if ((data.getConnectionPhase() == NodeConnectionPhaseEnum.UNKNOWN)
-					|| (data.getConnectionPhase() == NodeConnectionPhaseEnum.INACTIVE)) {
-				synchronized (this) {
-					LOG.trace("refreshThread[2] {} runPeers node with phase {}", data.getTcpAddressAndPortString(),
-							data.getConnectionPhase());
-					synchronized (RemoteNodeData.class) {
-						data.setConnectionPhase(NodeConnectionPhaseEnum.TRY_START);
-					}
+			if (data.getPeerStats().isEvicted(now)) {
+				continue;
+			}
+			switch (data.getConnectionPhase()) {
+			case UNKNOWN:
+			case INACTIVE:
+			case REFUSED:
+				candidateMap.put(data.getTcpAddressAndPortString(), data);
+				break;
+			default:
+			}
+		}
 
-					final RemoteNodeControllerRunnable r = new RemoteNodeControllerRunnable(this, data);
+		final AddressBook addressBook = localNodeData.getAddressBook();
+		for (final String address : addressBook.select(candidateMap.keySet(), now)) {
+			final RemoteNodeData data = candidateMap.get(address);
+			synchronized (this) {
+				LOG.trace("refreshThread[2] {} runPeers node with phase {}", address, data.getConnectionPhase());
+				final NodeConnectionPhaseEnum previousPhase;
+				synchronized (RemoteNodeData.class) {
+					previousPhase = data.getConnectionPhase();
+					data.setConnectionPhase(NodeConnectionPhaseEnum.TRY_START);
+				}
 
-					threadPool.execute(r);
-					anyChanged = true;
+				final RemoteNodeControllerRunnable r = new RemoteNodeControllerRunnable(this, data);
+
+				if (!ioExecutor.tryExecute(r)) {
+					// the I/O executor is full, try again on the next refresh.
+					synchronized (RemoteNodeData.class) {
+						data.setConnectionPhase(previousPhase);
+					}
+					LOG.debug("runPeers I/O executor full, not connecting to {}", address);
+					break;
 				}
+				addressBook.connectAttempted(address, now);
+				anyChanged = true;
 			}
 		}
 		return anyChanged;
 	}
 
+	/**
+	 * saves the address book to the address book file.
+	 */
+	private void saveAddressBook() {
+		AddressBookUtil.save(localNodeData);
+	}
+
+	/**
+	 * saves the statistics of the measured peers to the peer score file.
+	 */
+	private void savePeerScores() {
+		final List<RemoteNodeData> peerDataList = new ArrayList<>();
+		addPeerDataSetToList(peerDataList);
+		PeerScoreUtil.save(localNodeData, peerDataList);
+	}
+
 	/**
 	 * starts the core RPC server.
 	 */
@@ -896,6 +1114,23 @@ public class LocalControllerNode {
 		}
 	}
 
+	/**
+	 * starts accepting inbound peer connections.
+	 */
+	public void startInboundServer() {
+		if (stopped) {
+			return;
+		}
+		inboundThread.start();
+		while (!inboundRunnable.isStarted() && inboundThread.isAlive()) {
+			try {
+				Thread.sleep(100);
+			} catch (final InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	/**
 	 * loads the node files.
 	 */
@@ -904,22 +1139,89 @@ public class LocalControllerNode {
 			return;
 		}
 		synchronized (this) {
+			final List<String> peerScoreAddressList = PeerScoreUtil.load(localNodeData);
+			final List<String> addressBookAddressList = AddressBookUtil.load(localNodeData);
 			loadNodeFile(localNodeData.getSeedNodeFile());
 			loadNodeFile(localNodeData.getGoodNodeFile());
+			loadSavedPeers(peerScoreAddressList);
+			loadSavedPeers(addressBookAddressList);
 		}
 		notifyNodeDataChangeListeners();
 	}
 
 	/**
-	 * starts the refresh thread.
+	 * starts the refresh thread, and the timer wheel with the local node's timers.
 	 */
 	public void startRefreshThread() {
 		if (stopped) {
 			return;
 		}
+		timerWheel.start();
+		startLocalTimer(TimerTypeEnum.VERIFY, "blocks",
+				() -> LocalNodeDataSynchronizedUtil.verifyUnverifiedBlocks(localNodeData));
+		startLocalTimer(TimerTypeEnum.REFRESH, "block-file-size",
+				() -> LocalNodeDataSynchronizedUtil.refreshBlockFileSize(localNodeData));
+		startLocalTimer(TimerTypeEnum.REFRESH, "block-height-city-of-zion",
+				() -> LocalNodeDataSynchronizedUtil.refreshCityOfZionBlockHeight(localNodeData));
+		startLocalTimer(TimerTypeEnum.REFRESH, "peer-scores", this::savePeerScores);
+		startLocalTimer(TimerTypeEnum.REFRESH, "address-book", this::saveAddressBook);
 		refreshThread.start();
 	}
 
+	/**
+	 * starts a local node timer, whose action runs on the refresh thread.
+	 *
+	 * @param timerType
+	 *            the timer type.
+	 * @param subtype
+	 *            the timer subtype.
+	 * @param action
+	 *            the action to run.
+	 */
+	private void startLocalTimer(final TimerTypeEnum timerType, final String subtype, final Runnable action) {
+		final TimerData timerData = TimerUtil.getTimerData(localNodeData.getTimersMap(), timerType, subtype);
+		new RecurringTimer(timerType.getName() + "-" + subtype, timerWheel, timerData, timerMinDelayMs,
+				() -> !stopped, refreshRunnable, action).start();
+	}
+
+	/**
+	 * starts the timers that send requests to the peer. The requests are only
+	 * sent while the peer is a good, acknowledged peer with nothing left in it's
+	 * send queue, and are sent from the I/O executor.
+	 *
+	 * @param data
+	 *            the peer's data.
+	 */
+	private void startPeerTimers(final RemoteNodeData data) {
+		final Map<String, TimerData> timersMap = data.getTimersMap();
+		final TimerData getAddrTimerData = TimerUtil.getTimerData(timersMap, CommandEnum.GETADDR, null);
+		final TimerData getBlocksTimerData = TimerUtil.getTimerData(timersMap, CommandEnum.GETDATA,
+				InventoryType.BLOCK.name().toLowerCase());
+		final TimerData getHeadersTimerData = TimerUtil.getTimerData(timersMap, CommandEnum.GETHEADERS, null);
+		final String label = data.getHostAddress() + " ";
+		final RecurringTimer getAddrTimer = new RecurringTimer(label + CommandEnum.GETADDR.getName(), timerWheel,
+				getAddrTimerData, timerMinDelayMs, () -> !stopped, this::executePeerTimerAction, () -> {
+					if (isReadyForRequests(data)) {
+						LocalNodeDataSynchronizedUtil.requestAddresses(localNodeData, data);
+						getAddrTimerData.requestSent();
+					}
+				});
+		final RecurringTimer getBlocksTimer = new RecurringTimer(label + CommandEnum.GETDATA.getName(), timerWheel,
+				getBlocksTimerData, timerMinDelayMs, () -> !stopped, this::executePeerTimerAction, () -> {
+					if (isReadyForRequests(data) && isPreferredForBlocks(data)) {
+						LocalNodeDataSynchronizedUtil.requestBlocks(localNodeData, data);
+					}
+				});
+		final RecurringTimer getHeadersTimer = new RecurringTimer(label + CommandEnum.GETHEADERS.getName(),
+				timerWheel, getHeadersTimerData, timerMinDelayMs, () -> !stopped, this::executePeerTimerAction, () -> {
+					if (isReadyForRequests(data)) {
+						LocalNodeDataSynchronizedUtil.requestHeaders(localNodeData, data);
+						getHeadersTimerData.requestSent();
+					}
+				});
+		data.startRecurringTimers(Arrays.asList(getAddrTimer, getBlocksTimer, getHeadersTimer));
+	}
+
 	/**
 	 * adds all the "unknown" remote nodes to the thread pool.
 	 *
@@ -962,13 +1264,23 @@ public class LocalControllerNode {
 		stopped = true;
 		removePeerChangeListeners();
 		stopCoreRpcServer();
+		inboundRunnable.stop();
+		try {
+			inboundThread.join();
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		}
 		refreshRunnable.setStop(true);
 		try {
 			refreshThread.join();
 		} catch (final InterruptedException e) {
 			throw new RuntimeException(e);
 		}
-		threadPool.stop();
+		timerWheel.stop();
+		blockIngestPipeline.stop();
+		localNodeData.getExecutorPools().stop();
+		savePeerScores();
+		saveAddressBook();
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("SUCCESS stop");
 		}
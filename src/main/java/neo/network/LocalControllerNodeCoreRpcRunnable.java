@@ -1,15 +1,27 @@
 package neo.network;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import fi.iki.elonen.NanoHTTPD;
-import fi.iki.elonen.NanoHTTPD.IHTTPSession;
-import neo.model.util.InputStreamUtil;
+import neo.rpc.server.CityOfZionCommandEnum;
+import neo.rpc.server.JsonStreamWriter;
+import neo.rpc.server.JsonStreamable;
+import neo.rpc.server.RpcBatchUtil;
+import neo.rpc.server.RpcEventHub;
+import neo.rpc.server.RpcHttpRequest;
+import neo.rpc.server.RpcHttpResponse;
+import neo.rpc.server.RpcHttpServer;
+import neo.rpc.server.RpcMetricsUtil;
+import neo.rpc.server.RpcRateLimiter;
+import neo.rpc.server.RpcRawUtil;
+import neo.rpc.server.RpcResponseCache;
+import neo.rpc.server.RpcResponseCache.CachedResponse;
 import neo.rpc.server.RpcServerUtil;
 
 /**
@@ -26,49 +38,39 @@ public final class LocalControllerNodeCoreRpcRunnable implements Runnable {
 	private static final Logger LOG = LoggerFactory.getLogger(LocalControllerNodeCoreRpcRunnable.class);
 
 	/**
-	 * proesses the request from the given session.
-	 *
-	 * @param controller
-	 *            the controller to use.
-	 * @param session
-	 *            the session to use.
-	 * @return the response.
+	 * the JSON key, "response-cache".
 	 */
-	private static String processRequest(final LocalControllerNode controller, final IHTTPSession session) {
-		try {
-			final long readTimeOut = controller.getLocalNodeData().getRpcClientTimeoutMillis();
-			final InputStream in = session.getInputStream();
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("host:{};headers:{}", session.getRemoteHostName(), session.getHeaders());
-			}
-			final int contentLength = Integer.valueOf(session.getHeaders().get("content-length"));
-			final byte[] ba = new byte[contentLength];
-			InputStreamUtil.readUntilFull(readTimeOut, in, ba);
-			final String requestStr = new String(ba);
+	public static final String RESPONSE_CACHE = "response-cache";
 
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("host:{};request:{}", session.getRemoteHostName(), requestStr);
-			}
-			final JSONObject response = RpcServerUtil.process(controller, session.getUri(), requestStr);
-			final String responseStr = response.toString();
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("host:{};response:{}", session.getRemoteHostName(), responseStr);
-			}
-			return responseStr;
-		} catch (final IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
+	/**
+	 * the response tag for an error.
+	 */
+	private static final String ERROR = "error";
+
+	/**
+	 * the core RPC URI.
+	 */
+	private static final String CORE_RPC_URI = "/";
+
+	/**
+	 * the rate limiter cost key of an event subscription.
+	 */
+	private static final String EVENTS = "events";
+
+	/**
+	 * the rate limiter cost key of a request for the metrics.
+	 */
+	private static final String METRICS = "metrics";
 
 	/**
 	 * if true, stop running.
 	 */
-	private final boolean stopped = false;
+	private volatile boolean stopped = false;
 
 	/**
 	 * if true, socket has started listening.
 	 */
-	private boolean started = false;
+	private volatile boolean started = false;
 
 	/**
 	 * the local controller node.
@@ -76,24 +78,53 @@ public final class LocalControllerNodeCoreRpcRunnable implements Runnable {
 	private final LocalControllerNode localControllerNode;
 
 	/**
-	 * the server socket.
+	 * the configuration of the server.
+	 */
+	private final JSONObject config;
+
+	/**
+	 * the server.
 	 */
-	private final NanoHTTPD httpServer;
+	private final RpcHttpServer httpServer;
+
+	/**
+	 * the cache of responses to calls for blocks and transactions.
+	 */
+	private final RpcResponseCache responseCache;
 
 	/**
 	 * the constructor.
 	 *
 	 * @param localControllerNode
 	 *            the local controller node to use.
+	 * @param config
+	 *            the configuration of the server.
 	 */
-	public LocalControllerNodeCoreRpcRunnable(final LocalControllerNode localControllerNode) {
+	public LocalControllerNodeCoreRpcRunnable(final LocalControllerNode localControllerNode,
+			final JSONObject config) {
 		this.localControllerNode = localControllerNode;
-		httpServer = new NanoHTTPD(localControllerNode.getLocalNodeData().getRpcPort()) {
-			@Override
-			public Response serve(final IHTTPSession session) {
-				return newFixedLengthResponse(processRequest(localControllerNode, session));
-			}
-		};
+		this.config = config;
+		responseCache = new RpcResponseCache(config.getJSONObject(RESPONSE_CACHE));
+		httpServer = new RpcHttpServer(localControllerNode.getLocalNodeData().getRpcPort(), config,
+				localControllerNode.getLocalNodeData().getExecutorPools().getRpcExecutor(), this::processRequest);
+	}
+
+	/**
+	 * return the server.
+	 *
+	 * @return the server.
+	 */
+	public RpcHttpServer getHttpServer() {
+		return httpServer;
+	}
+
+	/**
+	 * return the cache of responses to calls for blocks and transactions.
+	 *
+	 * @return the response cache.
+	 */
+	public RpcResponseCache getResponseCache() {
+		return responseCache;
 	}
 
 	/**
@@ -114,15 +145,192 @@ public final class LocalControllerNodeCoreRpcRunnable implements Runnable {
 		return stopped;
 	}
 
+	/**
+	 * return the method of a JSON-RPC request, or null if it is not a request with
+	 * a method.
+	 *
+	 * @param request
+	 *            the request, an element of a batch or a JSON object.
+	 * @return the method.
+	 */
+	private static String getMethod(final Object request) {
+		if (!(request instanceof JSONObject)) {
+			return null;
+		}
+		return ((JSONObject) request).optString(RpcServerUtil.METHOD, null);
+	}
+
+	/**
+	 * return the rate limiter, which admits and queues each client's requests.
+	 *
+	 * @return the rate limiter.
+	 */
+	public RpcRateLimiter getRateLimiter() {
+		return httpServer.getRateLimiter();
+	}
+
+	/**
+	 * processes the request through the response cache. If the response is not
+	 * cached, the processor is run, and it's response is cached unless it is an
+	 * error. If the request's "If-None-Match" matches the ETag, the response is
+	 * 304 with no body.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @param key
+	 *            the cache key.
+	 * @param id
+	 *            the JSON-RPC id of the request, or null for no id.
+	 * @param processor
+	 *            makes the response.
+	 * @return the response.
+	 */
+	private RpcHttpResponse processCached(final RpcHttpRequest request, final String key, final Object id,
+			final Supplier<JSONObject> processor) {
+		final long blockchainVersion = localControllerNode.getLocalNodeData().getBlockchainVersion();
+		CachedResponse cachedResponse = responseCache.get(key, blockchainVersion);
+		if (cachedResponse == null) {
+			final JSONObject response = processor.get();
+			if (response.has(ERROR)) {
+				return RpcHttpResponse.json(response);
+			}
+			cachedResponse = responseCache.put(key, response, blockchainVersion);
+		}
+		if (cachedResponse.getEtag().equals(request.getHeader(RpcHttpRequest.IF_NONE_MATCH))) {
+			return new RpcHttpResponse(RpcHttpResponse.NOT_MODIFIED, RpcHttpResponse.APPLICATION_JSON, new byte[0])
+					.addHeader(RpcHttpResponse.ETAG, cachedResponse.getEtag());
+		}
+		return new RpcHttpResponse(RpcHttpResponse.OK, RpcHttpResponse.APPLICATION_JSON, cachedResponse.getBody(id))
+				.addHeader(RpcHttpResponse.ETAG, cachedResponse.getEtag());
+	}
+
+	/**
+	 * processes a core RPC request, through the response cache if it is
+	 * cacheable.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @param requestJson
+	 *            the JSON-RPC request object.
+	 * @return the response.
+	 */
+	private RpcHttpResponse processCoreRpc(final RpcHttpRequest request, final JSONObject requestJson) {
+		final String key = RpcResponseCache.getCoreRpcKey(requestJson);
+		if (key == null) {
+			return toHttpResponse(request, RpcServerUtil.processCoreRpcStreamed(localControllerNode, requestJson));
+		}
+		return processCached(request, key, requestJson.opt(RpcServerUtil.ID),
+				() -> RpcServerUtil.processCoreRpc(localControllerNode, requestJson));
+	}
+
+	/**
+	 * takes the cost of the request from the client's token bucket, and runs the
+	 * processor if there were enough tokens.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @param cost
+	 *            the cost of the request.
+	 * @param processor
+	 *            makes the response.
+	 * @return the response, or a 429 response if the client is rate limited.
+	 */
+	private RpcHttpResponse processLimited(final RpcHttpRequest request, final int cost,
+			final Supplier<RpcHttpResponse> processor) {
+		final RpcRateLimiter rateLimiter = httpServer.getRateLimiter();
+		final RpcHttpResponse limited = rateLimiter.tryAcquire(rateLimiter.getClientKey(request), cost);
+		if (limited != null) {
+			return limited;
+		}
+		return processor.get();
+	}
+
+	/**
+	 * proesses the request. A JSON array sent to the core RPC URI is a batch, a
+	 * request to a raw URI is sent stored bytes, a request to the events URI
+	 * subscribes to server sent events, and a request to the metrics URI is sent
+	 * the metrics. Core RPC and City of Zion calls are timed.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @return the response.
+	 */
+	private RpcHttpResponse processRequest(final RpcHttpRequest request) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("host:{};headers:{}", request.getRemoteAddress(), request.getHeaderMap());
+		}
+		final String uri = request.getUri();
+		final String requestStr = request.getBodyString();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("host:{};request:{}", request.getRemoteAddress(), requestStr);
+		}
+		final RpcRateLimiter rateLimiter = httpServer.getRateLimiter();
+		final RpcHttpResponse response;
+		if (uri.equals(CORE_RPC_URI) && RpcBatchUtil.isBatch(requestStr)) {
+			final JSONArray requestArray = new JSONArray(requestStr);
+			int cost = 0;
+			for (final Object requestElt : requestArray) {
+				cost += rateLimiter.getCost(getMethod(requestElt));
+			}
+			response = processLimited(request, cost, () -> RpcHttpResponse.json(
+					RpcBatchUtil.process(localControllerNode, requestArray, httpServer.getExecutor(), config)));
+		} else if (uri.equals(CORE_RPC_URI)) {
+			final JSONObject requestJson = new JSONObject(requestStr);
+			response = processLimited(request, rateLimiter.getCost(getMethod(requestJson)),
+					() -> RpcMetricsUtil.timed(RpcMetricsUtil.getCoreRpcName(requestJson),
+						() -> processCoreRpc(request, requestJson)));
+		} else if (RpcRawUtil.isRaw(uri)) {
+			response = processLimited(request, rateLimiter.getCost(RpcRawUtil.getCostKey(uri)),
+					() -> RpcRawUtil.process(localControllerNode.getLocalNodeData().getBlockDb(), request,
+							config.getInt(RpcRawUtil.MAX_RAW_BLOCKS)));
+		} else if (uri.equals(RpcEventHub.EVENTS_URI)) {
+			response = processLimited(request, rateLimiter.getCost(EVENTS),
+					() -> localControllerNode.getLocalNodeData().getEventHub().subscribe(request));
+		} else if (uri.equals(RpcMetricsUtil.METRICS_URI)) {
+			response = processLimited(request, rateLimiter.getCost(METRICS),
+					() -> RpcMetricsUtil.process(localControllerNode));
+		} else {
+			final String command = CityOfZionCommandEnum.getCommandStartingWith(uri).name();
+			response = processLimited(request, rateLimiter.getCost(command), () -> RpcMetricsUtil
+					.timed(RpcMetricsUtil.getCityOfZionName(uri), () -> processUri(request, uri, requestStr)));
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("host:{};response:{}", request.getRemoteAddress(),
+					new String(response.getBody(), StandardCharsets.UTF_8));
+		}
+		return response;
+	}
+
+	/**
+	 * processes a City of Zion request, through the response cache if it is
+	 * cacheable.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @param uri
+	 *            the uri of the request.
+	 * @param requestStr
+	 *            the body of the request.
+	 * @return the response.
+	 */
+	private RpcHttpResponse processUri(final RpcHttpRequest request, final String uri, final String requestStr) {
+		final String key = RpcResponseCache.getUriKey(uri);
+		if (key == null) {
+			return toHttpResponse(request, RpcServerUtil.processStreamed(localControllerNode, uri, requestStr));
+		}
+		return processCached(request, key, null, () -> RpcServerUtil.process(localControllerNode, uri, requestStr));
+	}
+
 	@Override
 	public void run() {
 		try {
-			final long timeout = localControllerNode.getLocalNodeData().getRpcClientTimeoutMillis();
-			httpServer.start((int) timeout);
-			started = true;
+			httpServer.open();
 		} catch (final IOException e) {
 			throw new RuntimeException(e);
 		}
+		started = true;
+		httpServer.run();
+		stopped = true;
 	}
 
 	/**
@@ -131,4 +339,30 @@ public final class LocalControllerNodeCoreRpcRunnable implements Runnable {
 	public void stop() {
 		httpServer.stop();
 	}
+
+	/**
+	 * return the response as an HTTP response. A streamed response is written as
+	 * it is sent, except to HTTP/1.0 clients, which can't take a chunked body.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param response
+	 *            the response, a JSONObject or a JsonStreamable.
+	 * @return the HTTP response.
+	 */
+	private RpcHttpResponse toHttpResponse(final RpcHttpRequest request, final Object response) {
+		if (!(response instanceof JsonStreamable)) {
+			return RpcHttpResponse.json(response);
+		}
+		final JsonStreamable streamable = (JsonStreamable) response;
+		if (request.getVersion().equals(RpcHttpRequest.HTTP_1_0)) {
+			return new RpcHttpResponse(RpcHttpResponse.OK, RpcHttpResponse.APPLICATION_JSON,
+					JsonStreamWriter.toByteArray(streamable));
+		}
+		return RpcHttpResponse.stream(out -> {
+			final JsonStreamWriter writer = new JsonStreamWriter(out);
+			streamable.writeTo(writer);
+			writer.flush();
+		});
+	}
 }
@@ -0,0 +1,222 @@
+package neo.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.MapUtil;
+import neo.network.model.LocalNodeData;
+import neo.network.model.NodeConnectionPhaseEnum;
+import neo.network.model.RemoteNodeData;
+import neo.network.model.socket.SocketWrapperImpl;
+
+/**
+ * the Runnable responsible for accepting inbound peer connections on the local
+ * node's TCP port. Once the max number of inbound connections are open, new
+ * connections are closed as soon as they are accepted.
+ *
+ * @author coranos
+ *
+ */
+public final class LocalControllerNodeInboundRunnable implements Runnable {
+
+	/**
+	 * the API call key for inbound connections accepted.
+	 */
+	private static final String INBOUND_ACCEPTED = "inbound-accepted";
+
+	/**
+	 * the API call key for inbound connections rejected because the max number of
+	 * inbound connections were open.
+	 */
+	private static final String INBOUND_REJECTED = "inbound-rejected";
+
+	/**
+	 * the API call key for inbound connections rejected because the IP address
+	 * is banned.
+	 */
+	private static final String INBOUND_BANNED = "inbound-banned";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(LocalControllerNodeInboundRunnable.class);
+
+	/**
+	 * the local controller node.
+	 */
+	private final LocalControllerNode localControllerNode;
+
+	/**
+	 * the max number of inbound connections.
+	 */
+	private final int maxConnections;
+
+	/**
+	 * the number of open inbound connections.
+	 */
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	/**
+	 * the server socket, or null if not listening.
+	 */
+	private volatile ServerSocketChannel serverSocketChannel;
+
+	/**
+	 * if true, socket has started listening.
+	 */
+	private volatile boolean started = false;
+
+	/**
+	 * if true, stop running.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param localControllerNode
+	 *            the local controller node to use.
+	 * @param maxConnections
+	 *            the max number of inbound connections.
+	 */
+	public LocalControllerNodeInboundRunnable(final LocalControllerNode localControllerNode,
+			final int maxConnections) {
+		this.localControllerNode = localControllerNode;
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * accepts the connection if there is room for it and the IP address is not
+	 * banned, otherwise closes it. If it fails before the connection is handed
+	 * to the controller, it's place is given back.
+	 *
+	 * @param socketChannel
+	 *            the accepted socket.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	private void accept(final SocketChannel socketChannel) throws IOException {
+		final InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+		if (localControllerNode.getLocalNodeData().getAddressBook()
+				.isBanned(remoteAddress.getAddress().getHostAddress(), System.currentTimeMillis())) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, INBOUND_BANNED);
+			LOG.debug("rejected inbound connection from {}, banned.", remoteAddress);
+			socketChannel.close();
+			return;
+		}
+		if (connectionCount.incrementAndGet() > maxConnections) {
+			connectionCount.decrementAndGet();
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, INBOUND_REJECTED);
+			LOG.debug("rejected inbound connection from {}, {} connections open.",
+					socketChannel.getRemoteAddress(), maxConnections);
+			socketChannel.close();
+			return;
+		}
+		final RemoteNodeData data;
+		try {
+			data = localControllerNode.getNewRemoteNodeData();
+			data.setTcpAddressAndPort(remoteAddress);
+			data.setInbound(true);
+			synchronized (RemoteNodeData.class) {
+				data.setConnectionPhase(NodeConnectionPhaseEnum.TRY_START);
+			}
+		} catch (final RuntimeException e) {
+			connectionCount.decrementAndGet();
+			throw e;
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, INBOUND_ACCEPTED);
+		LOG.debug("accepted inbound connection from {}", data.getTcpAddressAndPortString());
+		localControllerNode.addInboundPeer(data, new SocketWrapperImpl(socketChannel));
+	}
+
+	/**
+	 * closes the socket of a connection that could not be accepted.
+	 *
+	 * @param socketChannel
+	 *            the socket to close.
+	 */
+	private void close(final SocketChannel socketChannel) {
+		try {
+			socketChannel.close();
+		} catch (final IOException e) {
+			LOG.trace("error closing inbound connection", e);
+		}
+	}
+
+	/**
+	 * return the number of open inbound connections.
+	 *
+	 * @return the number of open inbound connections.
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * return true if server is up and ready for connections.
+	 *
+	 * @return true if server is up and ready for connections.
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * called when an inbound connection closes, to make room for another.
+	 */
+	public void onConnectionClose() {
+		connectionCount.decrementAndGet();
+	}
+
+	@Override
+	public void run() {
+		final int tcpPort = localControllerNode.getLocalNodeData().getTcpPort();
+		LOG.debug("STARTED LocalControllerNodeInboundRunnable port:{}; maxConnections:{};", tcpPort, maxConnections);
+		try (ServerSocketChannel ssc = ServerSocketChannel.open()) {
+			ssc.bind(new InetSocketAddress(tcpPort));
+			serverSocketChannel = ssc;
+			started = true;
+			while (!stopped) {
+				final SocketChannel socketChannel;
+				try {
+					socketChannel = ssc.accept();
+				} catch (final ClosedChannelException e) {
+					LOG.trace("ClosedChannelException, stopping.", e);
+					break;
+				}
+				try {
+					accept(socketChannel);
+				} catch (final IOException | RuntimeException e) {
+					LOG.debug("error accepting inbound connection, closing it.", e);
+					close(socketChannel);
+				}
+			}
+		} catch (final IOException e) {
+			LOG.error("FAILURE LocalControllerNodeInboundRunnable port:{}", tcpPort, e);
+			return;
+		}
+		LOG.debug("SUCCESS LocalControllerNodeInboundRunnable");
+	}
+
+	/**
+	 * stop the server.
+	 */
+	public void stop() {
+		stopped = true;
+		final ServerSocketChannel ssc = serverSocketChannel;
+		if (ssc != null) {
+			try {
+				ssc.close();
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -4,30 +4,76 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import neo.model.CommandEnum;
-import neo.model.network.InventoryType;
+import neo.model.util.threadpool.ExecutorPools;
+import neo.model.util.threadpool.HashedWheelTimer;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.model.util.threadpool.StagedPipeline;
+import neo.model.util.threadpool.StagedPipeline.Stage;
 import neo.network.model.LocalNodeData;
 import neo.network.model.NodeConnectionPhaseEnum;
 import neo.network.model.RemoteNodeData;
-import neo.network.model.TimerTypeEnum;
 
 /**
  * the controller that controls node refreshing.
+ * <p>
+ * timed requests are scheduled on the local controller node's timer wheel.
+ * Node level timer actions, which may be slow, are run on this thread, between
+ * refreshes of the peer list.
  *
  * @author coranos
  *
  */
-public final class LocalControllerNodeRefreshRunnable implements Runnable {
+public final class LocalControllerNodeRefreshRunnable implements Runnable, Executor {
 
 	/**
 	 * max time to wait between refreshing.
 	 */
 	private static final int REFRESH_THREAD_MAX_MS = 1000;
 
+	/**
+	 * the API call key for the average timer wheel scheduling lag.
+	 */
+	private static final String TIMER_WHEEL_LAG_AVERAGE_MS = "timer-wheel-lag-average-ms";
+
+	/**
+	 * the API call key for the max timer wheel scheduling lag.
+	 */
+	private static final String TIMER_WHEEL_LAG_MAX_MS = "timer-wheel-lag-max-ms";
+
+	/**
+	 * the API call key for the number of timer wheel tasks run.
+	 */
+	private static final String TIMER_WHEEL_FIRED = "timer-wheel-fired";
+
+	/**
+	 * the API call key prefix for the block ingest pipeline stats.
+	 */
+	private static final String BLOCK_INGEST = "block-ingest";
+
+	/**
+	 * the prefix of the API call keys for the RPC response cache stats.
+	 */
+	private static final String RPC_CACHE = "rpc-cache";
+
+	/**
+	 * the prefix of the API call keys for the RPC rate limiter stats.
+	 */
+	private static final String RPC_RATE_LIMIT = "rpc-rate-limit";
+
+	/**
+	 * the API call key prefix for the executor stats.
+	 */
+	private static final String EXECUTOR = "executor";
+
 	/**
 	 * the logger.
 	 */
@@ -36,13 +82,18 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 	/**
 	 * if true, stop.
 	 */
-	private boolean stop = false;
+	private volatile boolean stop = false;
 
 	/**
 	 * the local controller node.
 	 */
 	private final LocalControllerNode localControllerNode;
 
+	/**
+	 * the tasks to run on this thread.
+	 */
+	private final BlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>();
+
 	/**
 	 * the constructor.
 	 *
@@ -53,22 +104,72 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 		this.localControllerNode = localControllerNode;
 	}
 
+	@Override
+	public void execute(final Runnable task) {
+		taskQueue.add(task);
+	}
+
 	/**
-	 * returns true if the command is ready to be sent to the remote node, based on
-	 * the timer.
-	 *
-	 * @param data
-	 *            the data to look at.
-	 * @param command
-	 *            the command to look at.
-	 * @return true if the command is ready to be sent to the remote node, based on
-	 *         the timer.
-	 */
-	public boolean isReadyForSend(final RemoteNodeData data, final CommandEnum command) {
-		LOG.debug("STARTED isReadyForSend \"{}\"", command);
-		final boolean ready = TimerUtil.getTimerData(data.getTimersMap(), command, null).isReadyForSend();
-		LOG.debug("SUCCESS isReadyForSend \"{}\" {}", command, ready);
-		return ready;
+	 * copies the block ingest pipeline's queue depth and latency of each stage
+	 * into the API call map.
+	 */
+	private void refreshBlockIngestStats() {
+		for (final Stage<?> stage : localControllerNode.getBlockIngestPipeline().getStageList()) {
+			final String prefix = BLOCK_INGEST + '-' + stage.getName() + '-';
+			LocalNodeData.API_CALL_MAP.put(prefix + StagedPipeline.QUEUE_DEPTH, (long) stage.getQueueDepth());
+			LocalNodeData.API_CALL_MAP.put(prefix + StagedPipeline.COUNT, stage.getCount());
+			LocalNodeData.API_CALL_MAP.put(prefix + StagedPipeline.AVERAGE_MICROS, stage.getAverageMicros());
+			LocalNodeData.API_CALL_MAP.put(prefix + StagedPipeline.MAX_MICROS, stage.getMaxMicros());
+		}
+	}
+
+	/**
+	 * copies the queue depth, active count, and wait and run times of each
+	 * executor into the API call map.
+	 */
+	private void refreshExecutorStats() {
+		final ExecutorPools executorPools = localControllerNode.getLocalNodeData().getExecutorPools();
+		for (final MeteredExecutor executor : executorPools.getExecutorList()) {
+			final String prefix = EXECUTOR + '-' + executor.getName() + '-';
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.QUEUE_DEPTH, (long) executor.getQueueDepth());
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.ACTIVE, (long) executor.getActiveCount());
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.COUNT, executor.getCount());
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.REJECTED, executor.getRejectedCount());
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.AVERAGE_WAIT_MICROS,
+					executor.getAverageWaitMicros());
+			LocalNodeData.API_CALL_MAP.put(prefix + MeteredExecutor.AVERAGE_RUN_MICROS,
+					executor.getAverageRunMicros());
+		}
+	}
+
+	/**
+	 * copies the RPC response cache's stats into the API call map.
+	 */
+	private void refreshRpcResponseCacheStats() {
+		final JSONObject stats = localControllerNode.getRpcResponseCache().toJSONObject();
+		for (final String key : stats.keySet()) {
+			LocalNodeData.API_CALL_MAP.put(RPC_CACHE + '-' + key, stats.getLong(key));
+		}
+	}
+
+	/**
+	 * copies the RPC rate limiter's state into the API call map.
+	 */
+	private void refreshRpcRateLimiterStats() {
+		final JSONObject stats = localControllerNode.getRpcRateLimiter().toJSONObject();
+		for (final String key : stats.keySet()) {
+			LocalNodeData.API_CALL_MAP.put(RPC_RATE_LIMIT + '-' + key, stats.getLong(key));
+		}
+	}
+
+	/**
+	 * copies the timer wheel's scheduling stats into the API call map.
+	 */
+	private void refreshTimerWheelStats() {
+		final HashedWheelTimer timerWheel = localControllerNode.getTimerWheel();
+		LocalNodeData.API_CALL_MAP.put(TIMER_WHEEL_FIRED, timerWheel.getFiredCount());
+		LocalNodeData.API_CALL_MAP.put(TIMER_WHEEL_LAG_AVERAGE_MS, timerWheel.getAverageLagMs());
+		LocalNodeData.API_CALL_MAP.put(TIMER_WHEEL_LAG_MAX_MS, timerWheel.getMaxLagMs());
 	}
 
 	/**
@@ -94,7 +195,6 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 	@Override
 	public void run() {
 		final LocalNodeData localNodeData = localControllerNode.getLocalNodeData();
-		final long prevSleepTime = 0;
 		try {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("STARTED refreshThread");
@@ -104,11 +204,13 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 				if (LOG.isTraceEnabled()) {
 					LOG.trace("INTERIM refreshThread");
 				}
-				final List<RemoteNodeData> allPeerDataList = new ArrayList<>();
+				final List<RemoteNodeData> shuffledPeerDataList = new ArrayList<>();
 				final List<RemoteNodeData> activePeerDataList = new ArrayList<>();
-				localControllerNode.addPeerDataSetToList(allPeerDataList);
+				localControllerNode.addPeerDataSetToList(shuffledPeerDataList);
 
-				Collections.shuffle(allPeerDataList);
+				// shuffle first, so peers with the same score are tried in random order.
+				Collections.shuffle(shuffledPeerDataList);
+				final List<RemoteNodeData> allPeerDataList = PeerScoreUtil.rankPeers(shuffledPeerDataList);
 				activePeerDataList.addAll(allPeerDataList);
 				retainOnlyActiveAndAcknowledgedPeers(activePeerDataList);
 
@@ -118,33 +220,15 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 
 				if (!activePeerDataList.isEmpty()) {
 					if (activePeerDataList.size() == localNodeData.getActiveThreadCount()) {
-						activePeerDataList.remove(0).setGoodPeer(false);
+						PeerScoreUtil.dropLowestScoringPeer(localNodeData, activePeerDataList);
 					}
 				}
 
-				for (final RemoteNodeData data : activePeerDataList) {
-					LOG.trace("refreshThread {} isGoodPeer:{}, isAcknowledgedPeer {}, getQueueDepth {}",
-							data.getTcpAddressAndPortString(), data.isGoodPeer(), data.isAcknowledgedPeer(),
-							data.getQueueDepth());
-					if (data.isGoodPeer()) {
-						if (data.isAcknowledgedPeer()) {
-							if (data.getQueueDepth() == 0) {
-								if (isReadyForSend(data, CommandEnum.GETADDR)) {
-									LocalNodeDataSynchronizedUtil.requestAddresses(localNodeData, data);
-								}
-								if (TimerUtil.getTimerData(data.getTimersMap(), CommandEnum.GETDATA,
-										InventoryType.BLOCK.name().toLowerCase()).isReadyForSend()) {
-									LocalNodeDataSynchronizedUtil.requestBlocks(localNodeData, data);
-								}
-								if (isReadyForSend(data, CommandEnum.GETHEADERS)) {
-									LocalNodeDataSynchronizedUtil.requestHeaders(localNodeData, data);
-									sent(data, CommandEnum.GETHEADERS);
-								}
-							}
-						}
-					}
-				}
+				final long now = System.currentTimeMillis();
 				for (final RemoteNodeData data : allPeerDataList) {
+					if (data.getPeerStats().isEvicted(now)) {
+						continue;
+					}
 					boolean retry = false;
 					if (data.getConnectionPhase().equals(NodeConnectionPhaseEnum.UNKNOWN)) {
 						retry = true;
@@ -173,37 +257,13 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 					}
 				}
 
-				if (TimerUtil.getTimerData(localNodeData.getTimersMap(), TimerTypeEnum.VERIFY, "headers")
-						.isReadyForSend()) {
-					LocalNodeDataSynchronizedUtil.verifyUnverifiedHeaders(localNodeData);
-				}
-				if (TimerUtil.getTimerData(localNodeData.getTimersMap(), TimerTypeEnum.VERIFY, "blocks")
-						.isReadyForSend()) {
-					LocalNodeDataSynchronizedUtil.verifyUnverifiedBlocks(localNodeData);
-				}
-				if (TimerUtil.getTimerData(localNodeData.getTimersMap(), TimerTypeEnum.REFRESH, "block-file-size")
-						.isReadyForSend()) {
-					LocalNodeDataSynchronizedUtil.refreshBlockFileSize(localNodeData);
-				}
-				if (TimerUtil
-						.getTimerData(localNodeData.getTimersMap(), TimerTypeEnum.REFRESH, "block-height-city-of-zion")
-						.isReadyForSend()) {
-					LocalNodeDataSynchronizedUtil.refreshCityOfZionBlockHeight(localNodeData);
-				}
+				refreshTimerWheelStats();
+				refreshBlockIngestStats();
+				refreshExecutorStats();
+				refreshRpcResponseCacheStats();
+				refreshRpcRateLimiterStats();
 				localControllerNode.notifyNodeDataChangeListeners();
-				final long currTime = System.currentTimeMillis();
-				final long sleepMs = Math.min(currTime - prevSleepTime, REFRESH_THREAD_MAX_MS);
-				try {
-					if (LOG.isDebugEnabled()) {
-						LOG.debug("STARTED refreshThread sleep for {} ms", sleepMs);
-					}
-					Thread.sleep(sleepMs);
-					if (LOG.isDebugEnabled()) {
-						LOG.debug("SUCCESS refreshThread sleep for {} ms", sleepMs);
-					}
-				} catch (final InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+				runTasks(REFRESH_THREAD_MAX_MS);
 			}
 		} catch (final Exception e) {
 			LOG.error("FAILURE refreshThread", e);
@@ -215,17 +275,23 @@ public final class LocalControllerNodeRefreshRunnable implements Runnable {
 	}
 
 	/**
-	 * update timers saying message was sent.
+	 * runs the queued tasks, until the time is up.
 	 *
-	 * @param data
-	 *            the remote node data to update.
-	 * @param command
-	 *            the command that was sent.
-	 */
-	private void sent(final RemoteNodeData data, final CommandEnum command) {
-		LOG.debug("STARTED sent \"{}\"", command);
-		TimerUtil.getTimerData(data.getTimersMap(), command, null).requestSent();
-		LOG.debug("SUCCESS sent \"{}\"", command);
+	 * @param maxMs
+	 *            the time to run tasks for, in milliseconds.
+	 * @throws InterruptedException
+	 *             if an error occurs.
+	 */
+	private void runTasks(final long maxMs) throws InterruptedException {
+		final long endTimeMs = System.currentTimeMillis() + maxMs;
+		long remainingMs = maxMs;
+		while (!stop && (remainingMs > 0)) {
+			final Runnable task = taskQueue.poll(remainingMs, TimeUnit.MILLISECONDS);
+			if (task != null) {
+				task.run();
+			}
+			remainingMs = endTimeMs - System.currentTimeMillis();
+		}
 	}
 
 	/**
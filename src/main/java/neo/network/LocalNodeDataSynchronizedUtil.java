@@ -1,27 +1,29 @@
 package neo.network;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import neo.model.bytes.UInt256;
+import neo.model.core.AbstractBlockBase;
 import neo.model.core.Block;
 import neo.model.core.Header;
 import neo.model.network.InvPayload;
 import neo.model.network.InventoryType;
 import neo.model.util.GenesisBlockUtil;
+import neo.network.model.HeaderChain;
 import neo.network.model.LocalNodeData;
+import neo.network.model.OrphanBlockPool;
 import neo.network.model.RemoteNodeData;
 
 /**
  * the local node data utility methods that require synchronization.
+ * <p>
+ * the header chain and block pool lock themselves, so peer threads add to
+ * them without locking the local node data. Only moving blocks out of the
+ * block pool is synchronized, on the pool.
  *
  * @author coranos
  *
@@ -34,128 +36,60 @@ public final class LocalNodeDataSynchronizedUtil {
 	private static final Logger LOG = LoggerFactory.getLogger(LocalNodeDataSynchronizedUtil.class);
 
 	/**
-	 * add the header if it is new.
+	 * adds a batch of headers to the header chain. If the highest block in the
+	 * blockchain is not in the header chain, the header chain is first reset to
+	 * start at that block.
 	 *
 	 * @param localNodeData
 	 *            the local node data to use.
-	 * @param header
-	 *            the header to add.
-	 * @return true if added, gfalse if not.
+	 * @param headerList
+	 *            the headers to add, in order.
+	 * @return the number of headers added, or -1 if the headers are not a valid
+	 *         chain.
 	 */
-	public static boolean addHeaderIfNew(final LocalNodeData localNodeData, final Header header) {
-		final long headerIndex = header.getIndexAsLong();
-		LOG.trace("STARTED addHeaderIfNew adding header : index:{}; hash:{};", headerIndex, header.hash);
-		boolean headerChanged = false;
-		synchronized (localNodeData) {
-			headerChanged = addHeaderIfNewUnsynchronized(localNodeData, header);
-		}
-		LOG.trace("SUCCESS addHeaderIfNew adding header changed:{}; index:{}; hash:{};", headerChanged, headerIndex,
-				header.hash);
-		return headerChanged;
-	}
-
-	/**
-	 * add the header if it is new, this is the unsynchronized helper method.
-	 *
-	 * @param localNodeData
-	 *            the local node data to use.
-	 * @param header
-	 *            the header to add.
-	 * @return true if added, gfalse if not.
-	 */
-	private static boolean addHeaderIfNewUnsynchronized(final LocalNodeData localNodeData, final Header header) {
-		final long headerIndex = header.getIndexAsLong();
-		LOG.trace("STARTED addHeaderIfNewUnsynchronized adding header : index:{}; hash:{};", headerIndex, header.hash);
+	public static int addHeaders(final LocalNodeData localNodeData, final List<Header> headerList) {
+		final HeaderChain headerChain = localNodeData.getHeaderChain();
+		LOG.debug("STARTED addHeaders size:{}; tip:{};", headerList.size(), headerChain.getTipIndex());
 		final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
-		if (highestBlock != null) {
-			final long maxBlockIndex = highestBlock.getIndexAsLong();
-			// if
-			// ("1b9a78b3c1358af990039a4ba7cbc5c581855aed06955c3cd9aa718acc3a8516".equals(header.hash.toString()))
-			// {
-			// LOG.error("bad 2000190 header,blockIndex:{};maxBlockIndex:{};hash:{};",
-			// headerIndex, maxBlockIndex,
-			// header.hash);
-			// return false;
-			// }
-			if (headerIndex <= maxBlockIndex) {
-				final String message = "FAILURE addHeaderIfNewUnsynchronized[1]"
-						+ " (headerIndex[{}] <= maxBlockIndex[{}]) adding header : index:{}; hash:{};";
-				LOG.trace(message, headerIndex, maxBlockIndex, headerIndex, header.hash);
-				return false;
-			}
+		final AbstractBlockBase anchor;
+		if (highestBlock == null) {
+			anchor = GenesisBlockUtil.GENESIS_BLOCK;
+		} else {
+			anchor = highestBlock;
 		}
-		if (!localNodeData.getUnverifiedBlockPoolSet().isEmpty()) {
-			final long maxBlockIndex = highestBlock.getIndexAsLong();
-			final long numUnverifiedBlockCount = localNodeData.getUnverifiedBlockPoolSet().size();
-			final long maxUnverifiedBlockIndex = localNodeData.getUnverifiedBlockPoolSet().last().getIndexAsLong();
-			final boolean gapsInBlocks = (maxBlockIndex + numUnverifiedBlockCount) <= maxUnverifiedBlockIndex;
-			if (LOG.isTraceEnabled()) {
-				final String message = "INTERIM addHeaderIfNewUnsynchronized[2] "
-						+ " (maxBlockIndex[{}]+numUnverifiedBlockCount[{}] <= maxUnverifiedBlockIndex[{}]), "
-						+ " gaps:{};";
-				LOG.trace(message, maxBlockIndex, numUnverifiedBlockCount, maxUnverifiedBlockIndex, gapsInBlocks);
-			}
-			if (gapsInBlocks) {
-				if (LOG.isTraceEnabled()) {
-					final String message = "INTERIM addHeaderIfNewUnsynchronized[2]"
-							+ " (maxBlockIndex[{}]+numUnverifiedBlockCount[{}] <= maxUnverifiedBlockIndex[{}]),"
-							+ " there are gaps in unverified blocks.";
-					LOG.trace(message, maxBlockIndex, numUnverifiedBlockCount, maxUnverifiedBlockIndex);
-				}
-				if (localNodeData.getBlockDb().containsBlockWithHash(header.hash)) {
-					final String message = "FAILURE addHeaderIfNewUnsynchronized[3]"
-							+ " containsBlockWithHash : index:{}; hash:{}; ";
-					LOG.trace(message, headerIndex, maxUnverifiedBlockIndex, headerIndex, header.hash);
-					return false;
-				}
-			} else {
-				if (headerIndex <= maxUnverifiedBlockIndex) {
-					final String message = "FAILURE addHeaderIfNewUnsynchronized[4]"
-							+ " (headerIndex[{}] <= maxUnverifiedBlockIndex[{}]) adding header : index:{}; hash:{};";
-					LOG.trace(message, headerIndex, maxUnverifiedBlockIndex, headerIndex, header.hash);
-					return false;
-				}
+		synchronized (headerChain) {
+			final UInt256 anchorHash = headerChain.getHash(anchor.getIndexAsLong());
+			if ((anchorHash == null) || !anchorHash.equals(anchor.hash)) {
+				LOG.debug("INTERIM addHeaders reset to index:{}; hash:{};", anchor.getIndexAsLong(), anchor.hash);
+				headerChain.reset(anchor);
 			}
 		}
-		if (localNodeData.getVerifiedHeaderPoolMap().containsKey(headerIndex)) {
-			final String message = "FAILURE addHeaderIfNewUnsynchronized[5]"
-					+ " getVerifiedHeaderPoolMap().containsKey():true; adding header : index:{}; hash:{};";
-			LOG.trace(message, headerIndex, header.hash);
-			return false;
-		}
-		if (localNodeData.getVerifiedHeaderPoolMap().containsKey(headerIndex)) {
-			final String message = "FAILURE addHeaderIfNewUnsynchronized[6]"
-					+ " getVerifiedHeaderPoolMap().containsKey(headerIndex):true; adding header : index:{}; hash:{};";
-			LOG.trace(message, headerIndex, header.hash);
-			return false;
-		}
-
-		if (localNodeData.getUnverifiedHeaderPoolSet().contains(header)) {
-			final String message = "FAILURE addHeaderIfNewUnsynchronized[7]"
-					+ " getUnverifiedHeaderPoolSet().contains(header):true; adding header : index:{}; hash:{};";
-			LOG.trace(message, headerIndex, header.hash);
-			return false;
+		final int added = headerChain.append(headerList);
+		if (added > 0) {
+			localNodeData.updateHighestHeaderTime();
 		}
-
-		localNodeData.getUnverifiedHeaderPoolSet().add(header);
-		localNodeData.updateHighestHeaderTime();
-		LOG.trace("SUCCESS addHeaderIfNewUnsynchronized adding header : index:{}; hash:{};", headerIndex, header.hash);
-		return true;
+		LOG.debug("SUCCESS addHeaders added:{}; tip:{};", added, headerChain.getTipIndex());
+		return added;
 	}
 
 	/**
 	 * add an unverified block ( blocks may come out of order, verification ensures
-	 * the hash is in the correct order).
+	 * the hash is in the correct order). The block counts against the peer's
+	 * quota in the unverified block pool.
 	 *
 	 * @param localNodeData
 	 *            the local node data to use.
+	 * @param remoteNodeData
+	 *            the peer that sent the block.
 	 * @param block
 	 *            the block to add.
+	 * @param size
+	 *            the size of the block, in bytes.
+	 * @return true if the block was added.
 	 */
-	public static void addUnverifiedBlock(final LocalNodeData localNodeData, final Block block) {
-		synchronized (localNodeData) {
-			localNodeData.getUnverifiedBlockPoolSet().add(block);
-		}
+	public static boolean addUnverifiedBlock(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData,
+			final Block block, final int size) {
+		return localNodeData.getUnverifiedBlockPool().add(block, size, remoteNodeData.getHostAddress());
 	}
 
 	/**
@@ -187,46 +121,15 @@ public final class LocalNodeDataSynchronizedUtil {
 	}
 
 	/**
-	 * refreshes the block has height in the local node data from the CityOfZion
-	 * servers.
+	 * cross checks the block height derived from the peers against the
+	 * CityOfZion servers. This does not lock the local node data, as the request
+	 * may be slow, and the network height is thread safe.
 	 *
 	 * @param localNodeData
 	 *            the local node data to update.
 	 */
 	public static void refreshCityOfZionBlockHeight(final LocalNodeData localNodeData) {
-		synchronized (localNodeData) {
-			CityOfZionBlockUtil.refreshCityOfZionBlockHeight(localNodeData);
-		}
-	}
-
-	/**
-	 * remove headers for blocks where the blocks have already been added to the
-	 * verified block data.
-	 *
-	 * @param localNodeData
-	 *            the local node data to update.
-	 * @param blockIndex
-	 *            the max blockindex, all headers not over this index should be
-	 *            removed.
-	 */
-	private static void removeHeadersNotOverBlockIndexUnsynchronized(final LocalNodeData localNodeData,
-			final long blockIndex) {
-		final SortedSet<Header> unverifiedHeaderPoolSet = localNodeData.getUnverifiedHeaderPoolSet();
-		LOG.debug(
-				"STARTED removeHeadersNotOverBlockIndexUnsynchronized"
-						+ " blockIndex:{}; unverifiedHeaderPoolSet.size:{}; ",
-				blockIndex, unverifiedHeaderPoolSet.size());
-		final Iterator<Header> unverifiedHeaderIt = unverifiedHeaderPoolSet.iterator();
-		while (unverifiedHeaderIt.hasNext()) {
-			final Header unverifiedHeader = unverifiedHeaderIt.next();
-			if (unverifiedHeader.getIndexAsLong() <= blockIndex) {
-				unverifiedHeaderIt.remove();
-			}
-		}
-		LOG.debug(
-				"SUCCESS removeHeadersNotOverBlockIndexUnsynchronized"
-						+ " blockIndex:{}; unverifiedHeaderPoolSet.size:{};",
-				blockIndex, unverifiedHeaderPoolSet.size());
+		CityOfZionBlockUtil.refreshCityOfZionBlockHeight(localNodeData);
 	}
 
 	/**
@@ -244,7 +147,9 @@ public final class LocalNodeDataSynchronizedUtil {
 	}
 
 	/**
-	 * request blocks from the remote node.
+	 * request blocks from the remote node, for the hashes in the header chain
+	 * above the highest block. Each hash is claimed by only one peer, so this
+	 * does not lock the local node data.
 	 *
 	 * @param localNodeData
 	 *            the local node data to use.
@@ -252,9 +157,7 @@ public final class LocalNodeDataSynchronizedUtil {
 	 *            the remote node data to use.
 	 */
 	public static void requestBlocks(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData) {
-		synchronized (localNodeData) {
-			requestBlocksUnsynchronized(localNodeData, remoteNodeData);
-		}
+		requestBlocksUnsynchronized(localNodeData, remoteNodeData);
 	}
 
 	/**
@@ -268,30 +171,17 @@ public final class LocalNodeDataSynchronizedUtil {
 	 */
 	private static void requestBlocksUnsynchronized(final LocalNodeData localNodeData,
 			final RemoteNodeData remoteNodeData) {
-		if (!localNodeData.getVerifiedHeaderPoolMap().isEmpty()) {
-			final List<UInt256> hashs = new ArrayList<>();
-
-			final Iterator<Entry<Long, Header>> headerIt = localNodeData.getVerifiedHeaderPoolMap().entrySet()
-					.iterator();
-			while ((hashs.size() < InvPayload.MAX_HASHES) && headerIt.hasNext()) {
-				final Entry<Long, Header> headerElt = headerIt.next();
-				final Header header = headerElt.getValue();
-				final UInt256 hashRaw = header.hash;
-				if (localNodeData.getBlockDb().containsBlockWithHash(hashRaw)) {
-					headerIt.remove();
-				} else {
-					final byte[] ba = hashRaw.getBytesCopy();
-					final UInt256 hash = new UInt256(ba);
-					hashs.add(hash);
-					if (LOG.isDebugEnabled()) {
-						LOG.debug("requestBlocks send {} getblocks {} {}", remoteNodeData.getHostAddress(),
-								header.getIndexAsLong(), hash.toReverseHexString());
-					}
-				}
-			}
-			MessageUtil.sendGetData(remoteNodeData, localNodeData, InventoryType.BLOCK, hashs.toArray(new UInt256[0]));
+		final HeaderChain headerChain = localNodeData.getHeaderChain();
+		final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
+		final long startIndex;
+		if (highestBlock == null) {
+			startIndex = GenesisBlockUtil.GENESIS_BLOCK.getIndexAsLong();
 		} else {
-			if (localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex() == null) {
+			startIndex = highestBlock.getIndexAsLong() + 1;
+		}
+		final long tipIndex = headerChain.getTipIndex();
+		if (startIndex > tipIndex) {
+			if (highestBlock == null) {
 				if (LOG.isDebugEnabled()) {
 					LOG.debug("requestBlocks send {} hash is genesis.", remoteNodeData.getHostAddress());
 				}
@@ -300,6 +190,32 @@ public final class LocalNodeDataSynchronizedUtil {
 			} else {
 				LOG.info("SKIPPING requestBlocks, no hashes.");
 			}
+			return;
+		}
+
+		final List<UInt256> hashs = new ArrayList<>();
+		for (long index = startIndex; (index <= tipIndex) && (hashs.size() < InvPayload.MAX_HASHES); index++) {
+			final UInt256 hash = headerChain.getHash(index);
+			if (hash == null) {
+				break;
+			}
+			if (localNodeData.getUnverifiedBlockPool().contains(hash)) {
+				LOG.trace("requestBlocks skipping {}, already in the unverified block pool.", index);
+			} else if (!InventoryUtil.claimRequest(localNodeData, hash)) {
+				LOG.trace("requestBlocks skipping {}, already requested from another peer.", index);
+			} else {
+				hashs.add(hash);
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("requestBlocks send {} getblocks {} {}", remoteNodeData.getHostAddress(), index,
+							hash.toReverseHexString());
+				}
+			}
+		}
+		if (hashs.isEmpty()) {
+			LOG.debug("SKIPPING requestBlocks, all hashes already requested.");
+		} else {
+			MessageUtil.sendGetData(remoteNodeData, localNodeData, InventoryType.BLOCK,
+					hashs.toArray(new UInt256[0]));
 		}
 	}
 
@@ -312,205 +228,123 @@ public final class LocalNodeDataSynchronizedUtil {
 	 *            the remote node data to use.
 	 */
 	public static void requestHeaders(final LocalNodeData localNodeData, final RemoteNodeData remoteNodeData) {
-		synchronized (localNodeData) {
-			final UInt256 hashRaw;
-			final long index;
-			if (localNodeData.getUnverifiedBlockPoolSet().isEmpty()
-					&& (!localNodeData.getVerifiedHeaderPoolMap().isEmpty())) {
-				final long highestHeaderIndex = localNodeData.getVerifiedHeaderPoolMap().lastKey();
-				final Header highestHeader = localNodeData.getVerifiedHeaderPoolMap().get(highestHeaderIndex);
-				LOG.debug("requestHeaders getVerifiedHeaderPoolMap height:{};hash:{};", highestHeaderIndex,
-						highestHeader.hash);
-				hashRaw = highestHeader.hash;
-				index = highestHeader.getIndexAsLong();
-			} else {
-				final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
-				if (highestBlock != null) {
-					LOG.debug("requestHeaders getHighestBlock height:{};hash:{};", highestBlock.getIndexAsLong(),
-							highestBlock.hash);
-					hashRaw = highestBlock.hash;
-					index = highestBlock.getIndexAsLong();
-				} else {
-					LOG.debug("requestHeaders hash is genesis.");
-					hashRaw = GenesisBlockUtil.GENESIS_HASH;
-					index = GenesisBlockUtil.GENESIS_BLOCK.getIndexAsLong();
-				}
-			}
-			final byte[] ba = hashRaw.getBytesCopy();
-			final UInt256 hash = new UInt256(ba);
-			LOG.debug("requestHeaders index:{};hash:{};", index, hash);
-
-			// fixed bug at height 2000190
-			// final String goodHashStr =
-			// "8cb9fee28a48a45468e3c0a229fd4473288cdd9794c10cac7b8f4681ca404342";
-			// final UInt256 goodHash = new
-			// UInt256(ByteBuffer.wrap(Hex.decode(goodHashStr)));
-			// MessageUtil.sendGetHeaders(remoteNodeData, localNodeData, goodHash);
-
-			MessageUtil.sendGetHeaders(remoteNodeData, localNodeData, hash);
+		final UInt256 hashRaw;
+		final long index;
+		final HeaderChain headerChain = localNodeData.getHeaderChain();
+		final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
+		final long highestBlockIndex;
+		if (highestBlock == null) {
+			highestBlockIndex = GenesisBlockUtil.GENESIS_BLOCK.getIndexAsLong();
+		} else {
+			highestBlockIndex = highestBlock.getIndexAsLong();
 		}
-
+		final long tipIndex = headerChain.getTipIndex();
+		final UInt256 tipHash = headerChain.getTipHash();
+		if ((tipHash != null) && (tipIndex > highestBlockIndex)) {
+			LOG.debug("requestHeaders header chain height:{};hash:{};", tipIndex, tipHash);
+			hashRaw = tipHash;
+			index = tipIndex;
+		} else if (highestBlock != null) {
+			LOG.debug("requestHeaders getHighestBlock height:{};hash:{};", highestBlock.getIndexAsLong(),
+					highestBlock.hash);
+			hashRaw = highestBlock.hash;
+			index = highestBlock.getIndexAsLong();
+		} else {
+			LOG.debug("requestHeaders hash is genesis.");
+			hashRaw = GenesisBlockUtil.GENESIS_HASH;
+			index = GenesisBlockUtil.GENESIS_BLOCK.getIndexAsLong();
+		}
+		final byte[] ba = hashRaw.getBytesCopy();
+		final UInt256 hash = new UInt256(ba);
+		LOG.debug("requestHeaders index:{};hash:{};", index, hash);
+
+		// fixed bug at height 2000190
+		// final String goodHashStr =
+		// "8cb9fee28a48a45468e3c0a229fd4473288cdd9794c10cac7b8f4681ca404342";
+		// final UInt256 goodHash = new
+		// UInt256(ByteBuffer.wrap(Hex.decode(goodHashStr)));
+		// MessageUtil.sendGetHeaders(remoteNodeData, localNodeData, goodHash);
+
+		MessageUtil.sendGetHeaders(remoteNodeData, localNodeData, hash);
 	}
 
 	/**
-	 * verify any unverified blocks, by checking for their prevHash in the
-	 * blockchain.
+	 * verify any unverified blocks, by walking forward from the highest block in
+	 * the blockchain, looking up the block whose prevHash is the hash of the
+	 * previous block in the walk.
+	 * <p>
+	 * the blocks to put are chosen, and removed from the unverified block pool,
+	 * while synchronized on the pool, so only one thread puts each block. The
+	 * blocks are then put in the block database outside of the lock, so a slow put
+	 * does not block peers from adding blocks or headers.
 	 *
 	 * @param localNodeData
 	 *            the local node data to use.
 	 * @return true if any block was added to the chain.
 	 */
 	public static boolean verifyUnverifiedBlocks(final LocalNodeData localNodeData) {
-		synchronized (localNodeData) {
-			boolean anyBlockChanged = false;
-
-			final List<Block> putBlockList = new ArrayList<>();
-			final Set<UInt256> putBlockHashs = new TreeSet<>();
-			for (final Block block : localNodeData.getUnverifiedBlockPoolSet()) {
-				if (localNodeData.getBlockDb().containsBlockWithHash(block.prevHash)
-						|| block.hash.equals(GenesisBlockUtil.GENESIS_HASH) || putBlockHashs.contains(block.prevHash)) {
-					putBlockList.add(block);
-					putBlockHashs.add(block.hash);
+		boolean anyBlockChanged = false;
+		final List<Block> putBlockList = new ArrayList<>();
+		final Block highestBlock;
+		final OrphanBlockPool unverifiedBlockPool = localNodeData.getUnverifiedBlockPool();
+		synchronized (unverifiedBlockPool) {
+			highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
+			Block block;
+			if (highestBlock == null) {
+				block = unverifiedBlockPool.remove(GenesisBlockUtil.GENESIS_HASH);
+			} else {
+				if (unverifiedBlockPool.removeAtOrBelow(highestBlock.getIndexAsLong()) > 0) {
 					anyBlockChanged = true;
-					localNodeData.updateHighestBlockTime();
-					final long blockIndex = block.getIndexAsLong();
-					localNodeData.getVerifiedHeaderPoolMap().remove(blockIndex);
 				}
+				block = unverifiedBlockPool.removeChild(highestBlock.hash);
 			}
-			final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
-			if (!putBlockList.isEmpty()) {
-				final boolean forceSynch;
-
-				final long localBlockHeight;
-				if (highestBlock != null) {
-					localBlockHeight = highestBlock.getIndexAsLong();
-				} else {
-					localBlockHeight = 0;
-				}
-				final long blockchainBlockHeight = localNodeData.getBlockchainBlockHeight();
-				final long localBlockHeightLowerBy = blockchainBlockHeight - localBlockHeight;
-				if (localBlockHeightLowerBy < 10) {
-					forceSynch = true;
-				} else {
-					forceSynch = false;
-				}
-				if (LOG.isDebugEnabled()) {
-					final String msg = "INTERIM put forceSynch={};localBlockHeight:{};blockchainBlockHeight:{};localBlockHeightLowerBy:{};";
-					LOG.debug(msg, forceSynch, localBlockHeight, blockchainBlockHeight, localBlockHeightLowerBy);
-				}
-
-				localNodeData.getBlockDb().put(forceSynch, putBlockList.toArray(new Block[0]));
+			while (block != null) {
+				putBlockList.add(block);
+				anyBlockChanged = true;
+				localNodeData.updateHighestBlockTime();
+				block = unverifiedBlockPool.removeChild(block.hash);
 			}
+		}
+
+		if (!putBlockList.isEmpty()) {
+			final boolean forceSynch;
 
+			final long localBlockHeight;
 			if (highestBlock != null) {
-				final long highestIndex = highestBlock.getIndexAsLong();
-				final Iterator<Block> blockIt = localNodeData.getUnverifiedBlockPoolSet().iterator();
-				while (blockIt.hasNext()) {
-					final Block block = blockIt.next();
-					if (block.getIndexAsLong() <= highestIndex) {
-						blockIt.remove();
-						anyBlockChanged = true;
-					}
-				}
+				localBlockHeight = highestBlock.getIndexAsLong();
+			} else {
+				localBlockHeight = 0;
 			}
-
-			return anyBlockChanged;
-		}
-	}
-
-	/**
-	 * verify any unverified headers, by checking if their block height is less than
-	 * the max block height in the blockchain.
-	 *
-	 * @param localNodeData
-	 *            the local node data to use.
-	 * @return true if any block was added to the chain.
-	 */
-	public static boolean verifyUnverifiedHeaders(final LocalNodeData localNodeData) {
-		synchronized (localNodeData) {
-			LOG.debug("STARTED verifyUnverifiedHeaders");
-			boolean anyHeaderChanged = false;
-			final Block highestBlock = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
-			final UInt256 highestBlockHash;
-			final long highestBlockIndex;
-			if (highestBlock == null) {
-				highestBlockHash = GenesisBlockUtil.GENESIS_HASH;
-				highestBlockIndex = 0;
+			final long blockchainBlockHeight = localNodeData.getBlockchainBlockHeight();
+			final long localBlockHeightLowerBy = blockchainBlockHeight - localBlockHeight;
+			if (localBlockHeightLowerBy < 10) {
+				forceSynch = true;
 			} else {
-				highestBlockHash = highestBlock.hash;
-				highestBlockIndex = highestBlock.getIndexAsLong();
+				forceSynch = false;
+			}
+			if (LOG.isDebugEnabled()) {
+				final String msg = "INTERIM put forceSynch={};localBlockHeight:{};blockchainBlockHeight:{};localBlockHeightLowerBy:{};";
+				LOG.debug(msg, forceSynch, localBlockHeight, blockchainBlockHeight, localBlockHeightLowerBy);
 			}
 
-			removeHeadersNotOverBlockIndexUnsynchronized(localNodeData, highestBlockIndex);
-
-			final Iterator<Header> unverifiedHeaderIt = localNodeData.getUnverifiedHeaderPoolSet().iterator();
-			while (unverifiedHeaderIt.hasNext()) {
-				final Header unverifiedHeader = unverifiedHeaderIt.next();
-				if (LOG.isTraceEnabled()) {
-					LOG.trace(
-							"INTERIM verifyUnverifiedHeaders, unverifiedHeader index:{};hash:{}; VerifiedHeaderPoolMap.isEmpty:{};",
-							unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-							localNodeData.getVerifiedHeaderPoolMap().isEmpty());
-				}
-				if (localNodeData.getVerifiedHeaderPoolMap().isEmpty()) {
-					if (LOG.isTraceEnabled()) {
-						final String message = "INTERIM verifyUnverifiedHeaders[1],"
-								+ " unverifiedHeader index:{};hash:{};prevHash:{}; highestBlock index:{};hash:{};";
-						LOG.trace(message, unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-								unverifiedHeader.prevHash, highestBlockIndex, highestBlockHash);
-					}
-					if (unverifiedHeader.prevHash.equals(highestBlockHash)) {
-						localNodeData.getVerifiedHeaderPoolMap().put(unverifiedHeader.getIndexAsLong(),
-								unverifiedHeader);
-						unverifiedHeaderIt.remove();
-						anyHeaderChanged = true;
-						if (LOG.isTraceEnabled()) {
-							final String message = "SUCCESS verifyUnverifiedHeaders[1],"
-									+ " unverifiedHeader index:{};hash:{};prevHash:{};";
-							LOG.trace(message, unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-									unverifiedHeader.prevHash);
-						}
-					} else {
-						if (LOG.isTraceEnabled()) {
-							final String message = "FAILURE verifyUnverifiedHeaders[2],"
-									+ " unverifiedHeader index:{};hash:{};prevHash:{};highestBlockHash:{};";
-							LOG.trace(message, unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-									unverifiedHeader.prevHash, highestBlockHash);
-						}
-					}
-				} else {
-					final long verifiedHeaderHeight = localNodeData.getVerifiedHeaderPoolMap().lastKey();
-					final Header verifiedHeader = localNodeData.getVerifiedHeaderPoolMap().get(verifiedHeaderHeight);
-
-					if (LOG.isTraceEnabled()) {
-						final String message = "INTERIM verifyUnverifiedHeaders[2],"
-								+ " unverifiedHeader index:{};hash:{};prevHash:{}; verifiedHeader index:{};hash:{};";
-						LOG.trace(message, unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-								unverifiedHeader.prevHash, verifiedHeaderHeight, verifiedHeader.hash);
-					}
-
-					if (unverifiedHeader.prevHash.equals(verifiedHeader.hash)) {
-						localNodeData.getVerifiedHeaderPoolMap().put(unverifiedHeader.getIndexAsLong(),
-								unverifiedHeader);
-						unverifiedHeaderIt.remove();
-						anyHeaderChanged = true;
-						if (LOG.isTraceEnabled()) {
-							LOG.trace("SUCCESS verifyUnverifiedHeaders, unverifiedHeader index:{};hash:{};prevHash:{};",
-									unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-									unverifiedHeader.prevHash);
-						}
-					} else {
-						if (LOG.isTraceEnabled()) {
-							LOG.trace("FAILURE verifyUnverifiedHeaders, unverifiedHeader index:{};hash:{};prevHash:{};",
-									unverifiedHeader.getIndexAsLong(), unverifiedHeader.hash,
-									unverifiedHeader.prevHash);
-						}
-					}
+			final Block[] putBlocks = putBlockList.toArray(new Block[0]);
+			try {
+				localNodeData.getBlockDb().put(forceSynch, putBlocks);
+			} catch (final RuntimeException e) {
+				for (final Block putBlock : putBlockList) {
+					unverifiedBlockPool.add(putBlock, putBlock.toByteArray().length, null);
 				}
+				throw e;
 			}
-			LOG.debug("SUCCESS verifyUnverifiedHeaders, anyHeaderChanged:{};", anyHeaderChanged);
-			return anyHeaderChanged;
+			localNodeData.updateBlockchainVersion();
+			for (final Block putBlock : putBlocks) {
+				localNodeData.getEventHub().publishBlock(localNodeData.getBlockDb(), putBlock);
+			}
+			MemoryPoolUtil.removeBlockTransactions(localNodeData, putBlocks);
+			localNodeData.getHeaderChain().prune(putBlocks[putBlocks.length - 1].getIndexAsLong());
 		}
+
+		return anyBlockChanged;
 	}
 
 	/**
@@ -0,0 +1,149 @@
+package neo.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.bytes.Fixed8;
+import neo.model.core.Block;
+import neo.model.core.CoinReference;
+import neo.model.core.Transaction;
+import neo.model.core.TransactionOutput;
+import neo.model.db.BlockDb;
+import neo.model.util.ModelUtil;
+import neo.network.model.LocalNodeData;
+
+/**
+ * the utility for adding transactions to, and removing transactions from, the
+ * memory pool.
+ *
+ * @author coranos
+ *
+ */
+public final class MemoryPoolUtil {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(MemoryPoolUtil.class);
+
+	/**
+	 * adds the transaction to the memory pool, if it is not already in a block,
+	 * and pushes it to the RPC subscribers for transactions.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param transaction
+	 *            the transaction to add.
+	 * @return true if the transaction was added.
+	 */
+	public static boolean addTransaction(final LocalNodeData localNodeData, final Transaction transaction) {
+		final BlockDb blockDb = localNodeData.getBlockDb();
+		if (isInBlock(blockDb, transaction)) {
+			LOG.trace("addTransaction skipping, already in a block {}", transaction.getHash());
+			return false;
+		}
+		final long networkFee = getNetworkFee(localNodeData, transaction);
+		final boolean added = localNodeData.getMemoryPool().add(transaction, networkFee);
+		if (added) {
+			localNodeData.getEventHub().publishTransaction(transaction);
+		}
+		return added;
+	}
+
+	/**
+	 * return the network fee of the transaction, which is the GAS in the inputs,
+	 * minus the GAS in the outputs, minus the system fee for the transaction type.
+	 * Inputs that cannot be found in the block database count as zero GAS.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param transaction
+	 *            the transaction to use.
+	 * @return the network fee, as a Fixed8 value.
+	 */
+	public static long getNetworkFee(final LocalNodeData localNodeData, final Transaction transaction) {
+		final BlockDb blockDb = localNodeData.getBlockDb();
+		long gasIn = 0;
+		for (final CoinReference input : transaction.inputs) {
+			final TransactionOutput output = getTransactionOutput(blockDb, input);
+			if ((output != null) && output.assetId.equals(ModelUtil.GAS_HASH)) {
+				gasIn += output.value.value;
+			}
+		}
+		long gasOut = 0;
+		for (final TransactionOutput output : transaction.outputs) {
+			if (output.assetId.equals(ModelUtil.GAS_HASH)) {
+				gasOut += output.value.value;
+			}
+		}
+		long systemFee = 0;
+		final Fixed8 systemFeeFixed8 = localNodeData.getTransactionSystemFeeMap().get(transaction.type);
+		if (systemFeeFixed8 != null) {
+			systemFee = systemFeeFixed8.value;
+		}
+		return Math.max(0, gasIn - gasOut - systemFee);
+	}
+
+	/**
+	 * return the transaction output the input refers to, or null if it is not in
+	 * the block database.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param input
+	 *            the input to use.
+	 * @return the transaction output.
+	 */
+	private static TransactionOutput getTransactionOutput(final BlockDb blockDb, final CoinReference input) {
+		try {
+			return ModelUtil.getTransactionOutput(blockDb, input);
+		} catch (final RuntimeException e) {
+			LOG.trace("getTransactionOutput cannot find input {}", input);
+			return null;
+		}
+	}
+
+	/**
+	 * return true if the transaction is already in a block.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param transaction
+	 *            the transaction to use.
+	 * @return true if the transaction is already in a block.
+	 */
+	private static boolean isInBlock(final BlockDb blockDb, final Transaction transaction) {
+		try {
+			return blockDb.getBlockIndexFromTransactionHash(transaction.getHash()) != null;
+		} catch (final RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * removes the transactions in the blocks from the memory pool, along with any
+	 * transactions that spend the same coins.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param blocks
+	 *            the blocks that were put in the block database.
+	 */
+	public static void removeBlockTransactions(final LocalNodeData localNodeData, final Block... blocks) {
+		int removed = 0;
+		for (final Block block : blocks) {
+			removed += localNodeData.getMemoryPool().removeBlockTransactions(block);
+		}
+		if (LOG.isDebugEnabled() && (removed > 0)) {
+			LOG.debug("removeBlockTransactions removed:{}; remaining:{};", removed,
+					localNodeData.getMemoryPool().size());
+		}
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private MemoryPoolUtil() {
+
+	}
+}
@@ -1,5 +1,8 @@
 package neo.network;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,11 +29,90 @@ public final class MessageUtil {
 	 */
 	private static final String DUPLICATE_OUT_BLOCK = "duplicate-out-block";
 
+	/**
+	 * the prefix of the API call keys for merged outbound messages.
+	 */
+	private static final String COALESCED_OUT = "coalesced-out-";
+
 	/**
 	 * the logger.
 	 */
 	private static final Logger LOG = LoggerFactory.getLogger(MessageUtil.class);
 
+	/**
+	 * adds the run of inventory messages to the list, as one message. If the run
+	 * is one message, it is added as is.
+	 *
+	 * @param coalescedList
+	 *            the list to add to.
+	 * @param runMessage
+	 *            the first message in the run, or null if there is no run.
+	 * @param runPayload
+	 *            the payload of the first message in the run.
+	 * @param hashList
+	 *            the hashes of all messages in the run.
+	 */
+	private static void addRun(final List<Message> coalescedList, final Message runMessage,
+			final InvPayload runPayload, final List<UInt256> hashList) {
+		if (runMessage == null) {
+			return;
+		}
+		if (hashList.size() == runPayload.getHashes().size()) {
+			coalescedList.add(runMessage);
+			return;
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, COALESCED_OUT + runMessage.commandEnum.getName());
+		final InvPayload payload = new InvPayload(runPayload.getType(), hashList.toArray(new UInt256[0]));
+		coalescedList.add(new Message(runMessage.magic, runMessage.commandEnum, payload.toByteArray()));
+	}
+
+	/**
+	 * returns the messages, with each run of consecutive "getdata" or "inv"
+	 * messages of the same inventory type merged into as few messages as the max
+	 * hashes per message allows. The order of the messages is kept.
+	 *
+	 * @param messageList
+	 *            the messages to merge.
+	 * @return the merged messages.
+	 */
+	public static List<Message> coalesce(final List<Message> messageList) {
+		final List<Message> coalescedList = new ArrayList<>();
+		final List<UInt256> hashList = new ArrayList<>();
+		Message runMessage = null;
+		InvPayload runPayload = null;
+		for (final Message message : messageList) {
+			final boolean isInventory = CommandEnum.GETDATA.equals(message.commandEnum)
+					|| CommandEnum.INV.equals(message.commandEnum);
+			final InvPayload payload;
+			if (isInventory) {
+				payload = message.getPayload(InvPayload.class);
+			} else {
+				payload = null;
+			}
+			final boolean continuesRun = (runMessage != null) && (payload != null)
+					&& runMessage.commandEnum.equals(message.commandEnum)
+					&& runPayload.getType().equals(payload.getType())
+					&& ((hashList.size() + payload.getHashes().size()) <= InvPayload.MAX_HASHES);
+			if (!continuesRun) {
+				addRun(coalescedList, runMessage, runPayload, hashList);
+				runMessage = null;
+				runPayload = null;
+				hashList.clear();
+			}
+			if (payload == null) {
+				coalescedList.add(message);
+			} else {
+				if (runMessage == null) {
+					runMessage = message;
+					runPayload = payload;
+				}
+				hashList.addAll(payload.getHashes());
+			}
+		}
+		addRun(coalescedList, runMessage, runPayload, hashList);
+		return coalescedList;
+	}
+
 	/**
 	 * send a message to get addresses.
 	 *
@@ -91,6 +173,29 @@ public final class MessageUtil {
 				new GetBlocksPayload(hash, null).toByteArray()));
 	}
 
+	/**
+	 * send a message announcing inventory, skipping any hashes the remote node
+	 * already has.
+	 *
+	 * @param remoteNodeData
+	 *            the remote node data to use.
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param type
+	 *            the inventory type.
+	 * @param hashs
+	 *            the hashes to use.
+	 */
+	public static void sendInv(final RemoteNodeData remoteNodeData, final LocalNodeData localNodeData,
+			final InventoryType type, final UInt256... hashs) {
+		final UInt256[] unannouncedHashs = InventoryUtil.claimUnannouncedHashes(remoteNodeData, hashs);
+		if (unannouncedHashs.length == 0) {
+			return;
+		}
+		remoteNodeData.send(new Message(localNodeData.getMagic(), CommandEnum.INV,
+				new InvPayload(type, unannouncedHashs).toByteArray()));
+	}
+
 	/**
 	 * the constructor.
 	 */
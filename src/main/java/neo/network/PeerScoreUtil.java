@@ -0,0 +1,247 @@
+package neo.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.MapUtil;
+import neo.network.model.LocalNodeData;
+import neo.network.model.PeerScores;
+import neo.network.model.PeerStats;
+import neo.network.model.RemoteNodeData;
+
+/**
+ * the utility for ranking peers by their statistics, choosing which peers to
+ * download blocks from and which to evict, and saving and restoring the
+ * statistics across restarts.
+ *
+ * @author coranos
+ *
+ */
+public final class PeerScoreUtil {
+
+	/**
+	 * the JSON key, "peer-scores".
+	 */
+	private static final String PEER_SCORES = "peer-scores";
+
+	/**
+	 * the JSON key, "address".
+	 */
+	private static final String ADDRESS = "address";
+
+	/**
+	 * the JSON key, "stats".
+	 */
+	private static final String STATS = "stats";
+
+	/**
+	 * the API call key for peers evicted for scoring far under the median.
+	 */
+	private static final String PEER_EVICTED = "peer-evicted";
+
+	/**
+	 * the API call key for peers disconnected for having the lowest score.
+	 */
+	private static final String PEER_DROPPED = "peer-dropped";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(PeerScoreUtil.class);
+
+	/**
+	 * disconnects the lowest scoring peer, to make room for another, and evicts
+	 * it if it has been measured enough and scores far under the median, so it is
+	 * not reconnected to until the eviction time passes.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param activePeerDataList
+	 *            the active peers, ranked by rankPeers(). The dropped peer is
+	 *            removed from the list.
+	 */
+	public static void dropLowestScoringPeer(final LocalNodeData localNodeData,
+			final List<RemoteNodeData> activePeerDataList) {
+		if (activePeerDataList.isEmpty()) {
+			return;
+		}
+		final PeerScores peerScores = localNodeData.getPeerScores();
+		final double medianScore = activePeerDataList.get(activePeerDataList.size() / 2).getPeerStats().getScore();
+		final RemoteNodeData data = activePeerDataList.remove(activePeerDataList.size() - 1);
+		final PeerStats stats = data.getPeerStats();
+		final double score = stats.getScore();
+		if ((stats.getRttSampleCount() >= peerScores.getMinSamples())
+				&& (score < (medianScore * peerScores.getEvictScoreRatio()))) {
+			stats.setEvictedUntilMs(System.currentTimeMillis() + peerScores.getEvictTimeMs());
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, PEER_EVICTED);
+			LOG.debug("evicting peer {} score {} median {}", data.getTcpAddressAndPortString(), score, medianScore);
+		} else {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, PEER_DROPPED);
+			LOG.debug("dropping peer {} score {} median {}", data.getTcpAddressAndPortString(), score, medianScore);
+		}
+		data.setGoodPeer(false);
+	}
+
+	/**
+	 * return true if the peer is one of the highest scoring ready peers, which are
+	 * the only ones asked for blocks.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param data
+	 *            the peer.
+	 * @param peerDataList
+	 *            all the peers.
+	 * @return true if the peer should be asked for blocks.
+	 */
+	public static boolean isPreferredForBlocks(final LocalNodeData localNodeData, final RemoteNodeData data,
+			final List<RemoteNodeData> peerDataList) {
+		final List<RemoteNodeData> readyPeerDataList = new ArrayList<>();
+		for (final RemoteNodeData peerData : peerDataList) {
+			switch (peerData.getConnectionPhase()) {
+			case ACTIVE:
+			case ACKNOWLEDGED:
+				if (peerData.isGoodPeer() && peerData.isAcknowledgedPeer()) {
+					readyPeerDataList.add(peerData);
+				}
+				break;
+			default:
+			}
+		}
+		final List<RemoteNodeData> rankedPeerDataList = rankPeers(readyPeerDataList);
+		final int blockDownloadPeers = localNodeData.getPeerScores().getBlockDownloadPeers();
+		if (rankedPeerDataList.size() > blockDownloadPeers) {
+			rankedPeerDataList.subList(blockDownloadPeers, rankedPeerDataList.size()).clear();
+		}
+		for (final RemoteNodeData rankedPeerData : rankedPeerDataList) {
+			if (rankedPeerData == data) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * loads the saved peer statistics from the peer score file.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @return the TCP addresses and ports of the saved peers, highest score first.
+	 */
+	public static List<String> load(final LocalNodeData localNodeData) {
+		final PeerScores peerScores = localNodeData.getPeerScores();
+		final File file = peerScores.getFile();
+		final List<String> addressList = new ArrayList<>();
+		if (!file.exists()) {
+			return addressList;
+		}
+		try {
+			final JSONObject json = new JSONObject(FileUtils.readFileToString(file, Charset.defaultCharset()));
+			final JSONArray peerScoresJson = json.getJSONArray(PEER_SCORES);
+			for (int ix = 0; ix < peerScoresJson.length(); ix++) {
+				final JSONObject peerScoreJson = peerScoresJson.getJSONObject(ix);
+				final String address = peerScoreJson.getString(ADDRESS);
+				peerScores.getSavedStatsMap().put(address, peerScoreJson.getJSONObject(STATS));
+				addressList.add(address);
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		LOG.debug("loaded {} peer scores from {}", addressList.size(), file);
+		return addressList;
+	}
+
+	/**
+	 * return the peers, highest score first. Scores are read once before sorting,
+	 * as they change while peers are recieving messages.
+	 *
+	 * @param peerDataList
+	 *            the peers to rank.
+	 * @return a new list of the peers, highest score first.
+	 */
+	public static List<RemoteNodeData> rankPeers(final List<RemoteNodeData> peerDataList) {
+		final Map<RemoteNodeData, Double> scoreMap = new IdentityHashMap<>();
+		for (final RemoteNodeData data : peerDataList) {
+			scoreMap.put(data, data.getPeerStats().getScore());
+		}
+		final List<RemoteNodeData> rankedPeerDataList = new ArrayList<>(peerDataList);
+		Collections.sort(rankedPeerDataList, (data1, data2) -> Double.compare(scoreMap.get(data2), scoreMap.get(data1)));
+		return rankedPeerDataList;
+	}
+
+	/**
+	 * restores the peer's saved statistics, if there are any.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param data
+	 *            the peer.
+	 */
+	public static void restore(final LocalNodeData localNodeData, final RemoteNodeData data) {
+		final JSONObject statsJson = localNodeData.getPeerScores().getSavedStatsMap()
+				.get(data.getTcpAddressAndPortString());
+		if (statsJson != null) {
+			data.getPeerStats().load(statsJson);
+		}
+	}
+
+	/**
+	 * saves the statistics of the measured peers to the peer score file, highest
+	 * score first. Saved peers that are no longer in the peer list are kept.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @param peerDataList
+	 *            the peers.
+	 */
+	public static void save(final LocalNodeData localNodeData, final List<RemoteNodeData> peerDataList) {
+		final PeerScores peerScores = localNodeData.getPeerScores();
+		final Map<String, JSONObject> savedStatsMap = peerScores.getSavedStatsMap();
+		for (final RemoteNodeData data : peerDataList) {
+			if (!data.isInbound() && !data.getPeerStats().isEmpty()) {
+				savedStatsMap.put(data.getTcpAddressAndPortString(), data.getPeerStats().toJSONObject());
+			}
+		}
+		if (savedStatsMap.isEmpty()) {
+			return;
+		}
+		final List<String> addressList = new ArrayList<>(savedStatsMap.keySet());
+		Collections.sort(addressList, (address1, address2) -> Double.compare(
+				savedStatsMap.get(address2).getDouble(PeerStats.SCORE),
+				savedStatsMap.get(address1).getDouble(PeerStats.SCORE)));
+		final JSONArray peerScoresJson = new JSONArray();
+		for (final String address : addressList) {
+			final JSONObject peerScoreJson = new JSONObject();
+			peerScoreJson.put(ADDRESS, address);
+			peerScoreJson.put(STATS, savedStatsMap.get(address));
+			peerScoresJson.put(peerScoreJson);
+		}
+		final JSONObject json = new JSONObject();
+		json.put(PEER_SCORES, peerScoresJson);
+		try {
+			FileUtils.writeStringToFile(peerScores.getFile(), json.toString(2), Charset.defaultCharset());
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		LOG.debug("saved {} peer scores to {}", addressList.size(), peerScores.getFile());
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private PeerScoreUtil() {
+
+	}
+}
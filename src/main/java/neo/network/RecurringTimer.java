@@ -0,0 +1,190 @@
+package neo.network;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.threadpool.HashedWheelTimer;
+import neo.model.util.threadpool.HashedWheelTimer.WheelTimeout;
+import neo.network.model.TimerData;
+
+/**
+ * a timer that runs an action each time it's timer data is ready to send.
+ * <p>
+ * rather than polling the timer data, this schedules itself on a timer wheel
+ * for the time the timer data will next be ready, and reschedules itself when a
+ * response is recieved, since that can make the timer ready sooner. The action
+ * runs on the given executor, and the timer is only rescheduled once the action
+ * is done, so slow actions do not pile up or delay the wheel. If the executor
+ * rejects the action, the timer tries again after the min delay.
+ *
+ * @author coranos
+ *
+ */
+public final class RecurringTimer {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(RecurringTimer.class);
+
+	/**
+	 * the label for logging.
+	 */
+	private final String logLabel;
+
+	/**
+	 * the timer wheel to schedule on.
+	 */
+	private final HashedWheelTimer wheel;
+
+	/**
+	 * the timer data that decides when the action is ready.
+	 */
+	private final TimerData timerData;
+
+	/**
+	 * the min time between runs of the action, in milliseconds.
+	 */
+	private final long minDelayMs;
+
+	/**
+	 * returns false when the timer should stop rescheduling itself.
+	 */
+	private final BooleanSupplier active;
+
+	/**
+	 * the executor to run the action on.
+	 */
+	private final Executor executor;
+
+	/**
+	 * the action to run.
+	 */
+	private final Runnable action;
+
+	/**
+	 * the current timeout, or null if stopped.
+	 */
+	private WheelTimeout timeout;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param logLabel
+	 *            the label for logging.
+	 * @param wheel
+	 *            the timer wheel to schedule on.
+	 * @param timerData
+	 *            the timer data that decides when the action is ready.
+	 * @param minDelayMs
+	 *            the min time between runs of the action, in milliseconds.
+	 * @param active
+	 *            returns false when the timer should stop rescheduling itself.
+	 * @param executor
+	 *            the executor to run the action on.
+	 * @param action
+	 *            the action to run.
+	 */
+	public RecurringTimer(final String logLabel, final HashedWheelTimer wheel, final TimerData timerData,
+			final long minDelayMs, final BooleanSupplier active, final Executor executor, final Runnable action) {
+		this.logLabel = logLabel;
+		this.wheel = wheel;
+		this.timerData = timerData;
+		this.minDelayMs = minDelayMs;
+		this.active = active;
+		this.executor = executor;
+		this.action = action;
+	}
+
+	/**
+	 * hands the action to the executor, when the timer is due.
+	 */
+	private void fire() {
+		synchronized (this) {
+			if (timeout == null) {
+				return;
+			}
+		}
+		try {
+			executor.execute(this::runAction);
+		} catch (final RejectedExecutionException e) {
+			LOG.debug("DELAYED {}, {}", logLabel, e.getMessage());
+			synchronized (this) {
+				if (timeout != null) {
+					timeout = wheel.schedule(this::fire, minDelayMs);
+				}
+			}
+		}
+	}
+
+	/**
+	 * runs the action if the timer data is ready, then reschedules.
+	 */
+	private void runAction() {
+		synchronized (this) {
+			if (timeout == null) {
+				return;
+			}
+		}
+		if (!active.getAsBoolean()) {
+			LOG.debug("STOPPING {}, no longer active.", logLabel);
+			stop();
+			return;
+		}
+		try {
+			if (timerData.isReadyForSend()) {
+				action.run();
+			}
+		} catch (final RuntimeException e) {
+			LOG.error("FAILURE " + logLabel, e);
+		}
+		synchronized (this) {
+			if (timeout != null) {
+				final long delayMs = Math.max(minDelayMs, timerData.getDelayUntilReadyMs(System.currentTimeMillis()));
+				timeout = wheel.schedule(this::fire, delayMs);
+			}
+		}
+	}
+
+	/**
+	 * reschedules the timer for when the timer data is next ready, after a
+	 * response was recieved.
+	 */
+	private synchronized void onResponseReceived() {
+		if ((timeout == null) || timeout.isExpired()) {
+			return;
+		}
+		final long delayMs = timerData.getDelayUntilReadyMs(System.currentTimeMillis());
+		final long deadlineMs = System.currentTimeMillis() + delayMs;
+		if (deadlineMs < timeout.getDeadlineMs()) {
+			timeout.cancel();
+			timeout = wheel.schedule(this::fire, delayMs);
+		}
+	}
+
+	/**
+	 * starts the timer, scheduling it for when the timer data is next ready.
+	 */
+	public synchronized void start() {
+		if (timeout != null) {
+			return;
+		}
+		timerData.setResponseListener(this::onResponseReceived);
+		timeout = wheel.schedule(this::fire, timerData.getDelayUntilReadyMs(System.currentTimeMillis()));
+	}
+
+	/**
+	 * stops the timer.
+	 */
+	public synchronized void stop() {
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+		}
+		timerData.setResponseListener(null);
+	}
+}
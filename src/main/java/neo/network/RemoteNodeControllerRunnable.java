@@ -7,7 +7,10 @@ import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +26,7 @@ import neo.model.util.PayloadUtil;
 import neo.model.util.threadpool.StopRunnable;
 import neo.network.model.LocalNodeData;
 import neo.network.model.RemoteNodeData;
+import neo.network.model.WriteBufferPool;
 import neo.network.model.socket.SocketWrapper;
 
 /**
@@ -53,6 +57,12 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 	 */
 	private final RemoteNodeData data;
 
+	/**
+	 * the socket the remote node connected to us on, or null if we connect to the
+	 * remote node.
+	 */
+	private final SocketWrapper acceptedSocket;
+
 	/**
 	 * the constructor.
 	 *
@@ -62,8 +72,25 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 	 *            the remote node data to use.
 	 */
 	public RemoteNodeControllerRunnable(final LocalControllerNode localControllerNode, final RemoteNodeData data) {
+		this(localControllerNode, data, null);
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param localControllerNode
+	 *            the local controlelr node to use.
+	 * @param data
+	 *            the remote node data to use.
+	 * @param acceptedSocket
+	 *            the socket the remote node connected to us on, or null if we
+	 *            connect to the remote node.
+	 */
+	public RemoteNodeControllerRunnable(final LocalControllerNode localControllerNode, final RemoteNodeData data,
+			final SocketWrapper acceptedSocket) {
 		this.localControllerNode = localControllerNode;
 		this.data = data;
+		this.acceptedSocket = acceptedSocket;
 	}
 
 	/**
@@ -75,6 +102,21 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 		return data;
 	}
 
+	/**
+	 * return the accepted socket, or a new socket if we connect to the remote
+	 * node.
+	 *
+	 * @param localNodeData
+	 *            the local node data to use.
+	 * @return the socket.
+	 */
+	private SocketWrapper getSocketWrapper(final LocalNodeData localNodeData) {
+		if (acceptedSocket != null) {
+			return acceptedSocket;
+		}
+		return localNodeData.getSocketFactory().newSocketWrapper();
+	}
+
 	/**
 	 * returns the message, or returns null if there's a SocketTimeoutException.
 	 *
@@ -115,6 +157,7 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 			}
 		} catch (final RuntimeException e) {
 			LOG.trace("RuntimeException from {}, closing peer", data.getHostAddress());
+			data.getPeerStats().invalidMessage();
 			data.setGoodPeer(false);
 			messageRecieved = null;
 			throw e;
@@ -139,11 +182,17 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 		while (messageRecieved != null) {
 			if (messageRecieved.magic != magic) {
 				LOG.debug(" magic was {} expected {} closing peer.", messageRecieved.magic, magic);
+				data.getPeerStats().invalidMessage();
+				localControllerNode.getLocalNodeData().getAddressBook().formatError(data.getHostAddress(),
+						System.currentTimeMillis());
 				data.setGoodPeer(false);
 			} else {
-				MapUtil.increment(LocalNodeData.API_CALL_MAP, RemoteNodeData.IN_BYTES,
-						messageRecieved.getPayloadByteArray().length + 24);
+				final int messageLength = messageRecieved.getSize();
+				final long now = System.currentTimeMillis();
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, RemoteNodeData.IN_BYTES, messageLength);
+				data.getPeerStats().bytesReceived(messageLength, now);
 				if (messageRecieved.commandEnum != null) {
+					data.getPeerStats().responseReceived(messageRecieved.commandEnum, now);
 					final long apiCallCount;
 					final String apiCallRoot = "in-" + messageRecieved.commandEnum.name().toLowerCase();
 					if (messageRecieved.commandEnum.equals(CommandEnum.TX)) {
@@ -163,7 +212,14 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 					LOG.debug("response from {}:{} {}", data.getHostAddress(), messageRecieved.command, apiCallCount);
 				}
 
+				final long handlerStartNanos = System.nanoTime();
 				localControllerNode.onMessage(RemoteNodeControllerRunnable.this, messageRecieved);
+				final long handlerNanos = System.nanoTime() - handlerStartNanos;
+				final long decodeNanos = messageRecieved.getDecodeNanos();
+				localControllerNode.getLocalNodeData().getMessageMetrics().messageReceived(messageRecieved.commandEnum,
+						messageLength, decodeNanos, handlerNanos);
+				data.getMessageMetrics().messageReceived(messageRecieved.commandEnum, messageLength, decodeNanos,
+						handlerNanos);
 			}
 			if (!data.isGoodPeer()) {
 				return;
@@ -196,9 +252,11 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 				PayloadUtil.getVersionPayload(localPort, nonce, startHeight).toByteArray()));
 		data.getSendQueue().add(new Message(magic, CommandEnum.VERACK));
 		try {
-			try (SocketWrapper s = localNodeData.getSocketFactory().newSocketWrapper()) {
+			try (SocketWrapper s = getSocketWrapper(localNodeData)) {
 				s.setSoTimeout(2000);
-				s.connect(data.getTcpAddressAndPort(), 2000);
+				if (acceptedSocket == null) {
+					s.connect(data.getTcpAddressAndPort(), 2000);
+				}
 
 				try (OutputStream out = s.getOutputStream(); InputStream in = s.getInputStream();) {
 					data.setGoodPeer(true);
@@ -244,6 +302,7 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 			} catch (final MessageFormatException e) {
 				LOG.trace("MessageFormatException from {}, closing peer", data.getHostAddress());
 				LOG.trace("MessageFormatException", e);
+				localNodeData.getAddressBook().formatError(data.getHostAddress(), System.currentTimeMillis());
 				data.setGoodPeer(false);
 			} catch (final SocketException e) {
 				if (e.getMessage().equals("Broken pipe (Write failed)")) {
@@ -276,7 +335,10 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 	}
 
 	/**
-	 * send messages.
+	 * send messages. The queued messages are drained, consecutive inventory
+	 * requests are merged, and the messages are serialized into a pooled write
+	 * buffer, which is written to the socket in one call each time it fills.
+	 * Messages larger than the buffer are written on their own.
 	 *
 	 * @param out
 	 *            the output stream to use.
@@ -284,37 +346,50 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 	 *             if an error occurs.
 	 */
 	private void sendMessages(final OutputStream out) throws IOException {
-		Message messageToSend = data.getSendQueue().poll();
-		while (messageToSend != null) {
-			if (!data.isGoodPeer()) {
-				return;
-			}
-			final byte[] outBa = messageToSend.toByteArray();
-			try {
-				out.write(outBa);
-			} catch (final SocketTimeoutException e) {
-				LOG.trace("SocketTimeoutException[3] from {}, closing peer", data.getHostAddress());
-				LOG.trace("SocketTimeoutException[3]", e);
-				data.setGoodPeer(false);
-				return;
-			} catch (final IOException e) {
-				if (e.getMessage().equals("Broken pipe")) {
-					LOG.trace("IOException[2] from {}, \"{}\" closing peer", e.getMessage(), data.getHostAddress());
-					LOG.trace("IOException[2]", e);
-					data.setGoodPeer(false);
+		final List<Message> queuedList = new ArrayList<>();
+		Message queuedMessage = data.getSendQueue().poll();
+		while (queuedMessage != null) {
+			queuedList.add(queuedMessage);
+			queuedMessage = data.getSendQueue().poll();
+		}
+		if (queuedList.isEmpty()) {
+			return;
+		}
+		final LocalNodeData localNodeData = localControllerNode.getLocalNodeData();
+		final WriteBufferPool writeBufferPool = localNodeData.getWriteBufferPool();
+		final ByteBuffer writeBuffer = writeBufferPool.acquire();
+		try {
+			for (final Message messageToSend : MessageUtil.coalesce(queuedList)) {
+				if (!data.isGoodPeer()) {
 					return;
+				}
+				final int messageSize = messageToSend.getSize();
+				if ((messageSize > writeBuffer.remaining()) && !write(out, writeBuffer)) {
+					return;
+				}
+				if (messageSize > writeBuffer.capacity()) {
+					final ByteBuffer largeBuffer = ByteBuffer.allocate(messageSize);
+					messageToSend.writeTo(largeBuffer);
+					if (!write(out, largeBuffer)) {
+						return;
+					}
 				} else {
-					throw new RuntimeException(e);
+					messageToSend.writeTo(writeBuffer);
+				}
+				data.getPeerStats().requestSent(messageToSend, System.currentTimeMillis());
+				localNodeData.getMessageMetrics().messageSent(messageToSend.commandEnum, messageSize);
+				data.getMessageMetrics().messageSent(messageToSend.commandEnum, messageSize);
+				if (messageToSend.commandEnum != null) {
+					final long apiCallCount;
+					apiCallCount = MapUtil.increment(LocalNodeData.API_CALL_MAP,
+							"out-" + messageToSend.commandEnum.name().toLowerCase());
+					MapUtil.increment(LocalNodeData.API_CALL_MAP, RemoteNodeData.OUT_BYTES, messageSize);
+					LOG.debug("request to {}:{} {}", data.getHostAddress(), messageToSend.command, apiCallCount);
 				}
 			}
-			if (messageToSend.commandEnum != null) {
-				final long apiCallCount;
-				apiCallCount = MapUtil.increment(LocalNodeData.API_CALL_MAP,
-						"out-" + messageToSend.commandEnum.name().toLowerCase());
-				MapUtil.increment(LocalNodeData.API_CALL_MAP, RemoteNodeData.OUT_BYTES, outBa.length);
-				LOG.debug("request to {}:{} {}", data.getHostAddress(), messageToSend.command, apiCallCount);
-			}
-			messageToSend = data.getSendQueue().poll();
+			write(out, writeBuffer);
+		} finally {
+			writeBufferPool.release(writeBuffer);
 		}
 	}
 
@@ -327,4 +402,38 @@ public final class RemoteNodeControllerRunnable implements StopRunnable {
 		data.getSendQueue().clear();
 	}
 
+	/**
+	 * writes the bytes in the buffer to the output stream, in one call, and
+	 * clears the buffer.
+	 *
+	 * @param out
+	 *            the output stream to use.
+	 * @param buffer
+	 *            the buffer to write, from zero to it's position.
+	 * @return true if the bytes were written, false if the peer was closed.
+	 */
+	private boolean write(final OutputStream out, final ByteBuffer buffer) {
+		try {
+			if (buffer.position() > 0) {
+				out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			}
+			buffer.clear();
+			return true;
+		} catch (final SocketTimeoutException e) {
+			LOG.trace("SocketTimeoutException[3] from {}, closing peer", data.getHostAddress());
+			LOG.trace("SocketTimeoutException[3]", e);
+			data.setGoodPeer(false);
+			return false;
+		} catch (final IOException e) {
+			if ("Broken pipe".equals(e.getMessage())) {
+				LOG.trace("IOException[2] from {}, \"{}\" closing peer", e.getMessage(), data.getHostAddress());
+				LOG.trace("IOException[2]", e);
+				data.setGoodPeer(false);
+				return false;
+			} else {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,814 @@
+package neo.network.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import neo.model.util.JsonUtil;
+import neo.model.util.MapUtil;
+
+/**
+ * the address book of peers we know about, which decides which peers to try to
+ * connect to.
+ * <p>
+ * for each address, it keeps when it was last seen (in a seed or good node
+ * file, or an "addr" message), when we last tried to connect to it, when we
+ * last completed a handshake with it, and the number of failed attempts since
+ * then. Ban scores are kept by IP address, so a peer can't escape a ban by
+ * reconnecting from another port, and inbound peers can be banned too.
+ * <p>
+ * after a failed attempt the address is not tried again until a backoff time
+ * passes, which doubles with each failure, up to a max. Protocol violations,
+ * such as bad checksums, add to the ban score, and an address whose ban score
+ * reaches the threshold is banned for the ban time.
+ * <p>
+ * when the address book is full, a new address replaces the worst address,
+ * which is a banned address, or the least likely to connect, if the new
+ * address is at least as likely to connect.
+ * <p>
+ * addresses are selected by putting the eligible addresses in buckets by
+ * network group (the first two bytes of an IPv4 address), and taking the better
+ * of two random addresses from each bucket in turn, in random order, so one
+ * network can't fill all our connections, and addresses that succeeded before
+ * are preferred.
+ * <p>
+ * all methods are synchronized on the address book.
+ *
+ * @author coranos
+ *
+ */
+public final class AddressBook {
+
+	/**
+	 * the JSON key, "file".
+	 */
+	public static final String FILE = "file";
+
+	/**
+	 * the JSON key, "base-backoff".
+	 */
+	public static final String BASE_BACKOFF = "base-backoff";
+
+	/**
+	 * the JSON key, "max-backoff".
+	 */
+	public static final String MAX_BACKOFF = "max-backoff";
+
+	/**
+	 * the JSON key, "ban-threshold".
+	 */
+	public static final String BAN_THRESHOLD = "ban-threshold";
+
+	/**
+	 * the JSON key, "ban-time".
+	 */
+	public static final String BAN_TIME = "ban-time";
+
+	/**
+	 * the JSON key, "format-error-score".
+	 */
+	public static final String FORMAT_ERROR_SCORE = "format-error-score";
+
+	/**
+	 * the JSON key, "invalid-message-score".
+	 */
+	public static final String INVALID_MESSAGE_SCORE = "invalid-message-score";
+
+	/**
+	 * the JSON key, "bucket-count".
+	 */
+	public static final String BUCKET_COUNT = "bucket-count";
+
+	/**
+	 * the JSON key, "max-addresses".
+	 */
+	public static final String MAX_ADDRESSES = "max-addresses";
+
+	/**
+	 * the JSON key, "max-connect-attempts".
+	 */
+	public static final String MAX_CONNECT_ATTEMPTS = "max-connect-attempts";
+
+	/**
+	 * the JSON key, "addresses".
+	 */
+	public static final String ADDRESSES = "addresses";
+
+	/**
+	 * the JSON key, "bans".
+	 */
+	public static final String BANS = "bans";
+
+	/**
+	 * the JSON key, "address".
+	 */
+	private static final String ADDRESS = "address";
+
+	/**
+	 * the JSON key, "last-seen".
+	 */
+	private static final String LAST_SEEN = "last-seen";
+
+	/**
+	 * the JSON key, "last-attempt".
+	 */
+	private static final String LAST_ATTEMPT = "last-attempt";
+
+	/**
+	 * the JSON key, "last-success".
+	 */
+	private static final String LAST_SUCCESS = "last-success";
+
+	/**
+	 * the JSON key, "failures".
+	 */
+	private static final String FAILURES = "failures";
+
+	/**
+	 * the JSON key, "ban-score".
+	 */
+	private static final String BAN_SCORE = "ban-score";
+
+	/**
+	 * the JSON key, "banned-until".
+	 */
+	private static final String BANNED_UNTIL = "banned-until";
+
+	/**
+	 * the API call key for addresses banned.
+	 */
+	private static final String ADDRESS_BANNED = "address-book-banned";
+
+	/**
+	 * the API call key for addresses not added because the address book was full.
+	 */
+	private static final String ADDRESS_BOOK_FULL = "address-book-full";
+
+	/**
+	 * the API call key for addresses removed to make room for a new address.
+	 */
+	private static final String ADDRESS_BOOK_EVICTED = "address-book-evicted";
+
+	/**
+	 * the max number of doublings of the backoff time, so the shift can't
+	 * overflow.
+	 */
+	private static final int MAX_BACKOFF_DOUBLINGS = 30;
+
+	/**
+	 * return the IP address of the TCP address and port.
+	 *
+	 * @param addressAndPortStr
+	 *            the TCP address and port, as a string, formatted as
+	 *            "address:port".
+	 * @return the IP address.
+	 */
+	public static String getIp(final String addressAndPortStr) {
+		final int portIx = addressAndPortStr.lastIndexOf(':');
+		if (portIx < 0) {
+			return addressAndPortStr;
+		}
+		return addressAndPortStr.substring(0, portIx);
+	}
+
+	/**
+	 * return the network group of the address, the first two bytes of an IPv4
+	 * address, or the first four bytes of an IPv6 address.
+	 *
+	 * @param addressAndPortStr
+	 *            the TCP address and port, as a string, formatted as
+	 *            "address:port".
+	 * @return the network group of the address.
+	 */
+	public static String getNetworkGroup(final String addressAndPortStr) {
+		final String ipStr = getIp(addressAndPortStr);
+		if (ipStr.indexOf(':') >= 0) {
+			final String[] parts = ipStr.split(":");
+			if (parts.length >= 2) {
+				return parts[0] + ':' + parts[1];
+			}
+			return ipStr;
+		}
+		final String[] parts = ipStr.split("\\.");
+		if (parts.length >= 2) {
+			return parts[0] + '.' + parts[1];
+		}
+		return ipStr;
+	}
+
+	/**
+	 * the file the address book is saved to.
+	 */
+	private final File file;
+
+	/**
+	 * the backoff after the first failed attempt, in milliseconds.
+	 */
+	private final long baseBackoffMs;
+
+	/**
+	 * the max backoff, in milliseconds.
+	 */
+	private final long maxBackoffMs;
+
+	/**
+	 * the ban score at which an address is banned.
+	 */
+	private final int banThreshold;
+
+	/**
+	 * the time an address is banned for, in milliseconds.
+	 */
+	private final long banTimeMs;
+
+	/**
+	 * the ban score added for a message that could not be read, such as a bad
+	 * checksum.
+	 */
+	private final int formatErrorScore;
+
+	/**
+	 * the ban score added for a message that was read, but was invalid.
+	 */
+	private final int invalidMessageScore;
+
+	/**
+	 * the number of buckets addresses are selected from.
+	 */
+	private final int bucketCount;
+
+	/**
+	 * the max number of addresses in the address book, and of IP addresses with
+	 * a ban score.
+	 */
+	private final int maxAddresses;
+
+	/**
+	 * the max number of connection attempts started at a time.
+	 */
+	private final int maxConnectAttempts;
+
+	/**
+	 * the random number generator used to select addresses.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * the entries, by TCP address and port.
+	 */
+	private final Map<String, Entry> entryMap = new TreeMap<>();
+
+	/**
+	 * the ban entries, by IP address.
+	 */
+	private final Map<String, BanEntry> banEntryMap = new TreeMap<>();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public AddressBook(final JSONObject config) {
+		file = new File(config.getString(FILE));
+		baseBackoffMs = JsonUtil.getTime(config, BASE_BACKOFF);
+		maxBackoffMs = JsonUtil.getTime(config, MAX_BACKOFF);
+		banThreshold = config.getInt(BAN_THRESHOLD);
+		banTimeMs = JsonUtil.getTime(config, BAN_TIME);
+		formatErrorScore = config.getInt(FORMAT_ERROR_SCORE);
+		invalidMessageScore = config.getInt(INVALID_MESSAGE_SCORE);
+		bucketCount = config.getInt(BUCKET_COUNT);
+		maxAddresses = config.getInt(MAX_ADDRESSES);
+		maxConnectAttempts = config.getInt(MAX_CONNECT_ATTEMPTS);
+	}
+
+	/**
+	 * adds the address, if it is not already in the address book, and updates
+	 * when it was last seen.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return true if the address is in the address book.
+	 */
+	public synchronized boolean addressSeen(final String address, final long now) {
+		final Entry entry = entryMap.get(address);
+		if (entry != null) {
+			entry.lastSeenMs = Math.max(entry.lastSeenMs, now);
+			return true;
+		}
+		final Entry newEntry = new Entry();
+		newEntry.lastSeenMs = now;
+		return addEntry(address, newEntry, now);
+	}
+
+	/**
+	 * adds the entry, replacing the worst entry if the address book is full.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @param entry
+	 *            the entry to add.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return true if the entry was added.
+	 */
+	private boolean addEntry(final String address, final Entry entry, final long now) {
+		if (entryMap.size() >= maxAddresses) {
+			final String worstAddress = getWorstAddress(now);
+			if ((worstAddress == null)
+					|| (!isBanned(getIp(worstAddress), now) && isMoreLikely(entryMap.get(worstAddress), entry))) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, ADDRESS_BOOK_FULL);
+				return false;
+			}
+			entryMap.remove(worstAddress);
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ADDRESS_BOOK_EVICTED);
+		}
+		entryMap.put(address, entry);
+		return true;
+	}
+
+	/**
+	 * adds to the IP address's ban score, and bans it if the score reaches the
+	 * threshold.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @param score
+	 *            the score to add.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	private void addBanScore(final String ip, final int score, final long now) {
+		final BanEntry banEntry = getOrAddBanEntry(ip, now);
+		banEntry.banScore += score;
+		if (banEntry.banScore >= banThreshold) {
+			banEntry.banScore = 0;
+			banEntry.bannedUntilMs = now + banTimeMs;
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ADDRESS_BANNED);
+		}
+	}
+
+	/**
+	 * records a connection attempt to the address.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void connectAttempted(final String address, final long now) {
+		final Entry entry = entryMap.get(address);
+		if (entry != null) {
+			entry.lastAttemptMs = now;
+		}
+	}
+
+	/**
+	 * records a failed connection attempt to the address, which doubles it's
+	 * backoff.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 */
+	public synchronized void connectFailed(final String address) {
+		final Entry entry = entryMap.get(address);
+		if (entry != null) {
+			entry.failureCount++;
+		}
+	}
+
+	/**
+	 * records a completed handshake with the address, which resets it's backoff.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void connectSucceeded(final String address, final long now) {
+		final Entry entry = entryMap.get(address);
+		if (entry != null) {
+			entry.lastSuccessMs = now;
+			entry.lastSeenMs = Math.max(entry.lastSeenMs, now);
+			entry.failureCount = 0;
+		}
+	}
+
+	/**
+	 * adds the ban score for a message that could not be read, such as a bad
+	 * checksum, to the IP address.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void formatError(final String ip, final long now) {
+		addBanScore(ip, formatErrorScore, now);
+	}
+
+	/**
+	 * return the time to wait after the last attempt before the address is tried
+	 * again, in milliseconds.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @return the backoff time, in milliseconds.
+	 */
+	public synchronized long getBackoffMs(final String address) {
+		final Entry entry = entryMap.get(address);
+		if ((entry == null) || (entry.failureCount == 0)) {
+			return 0;
+		}
+		final int doublings = (int) Math.min(entry.failureCount - 1, MAX_BACKOFF_DOUBLINGS);
+		return Math.min(maxBackoffMs, baseBackoffMs << doublings);
+	}
+
+	/**
+	 * return the ban score of the IP address.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @return the ban score of the IP address.
+	 */
+	public synchronized int getBanScore(final String ip) {
+		final BanEntry banEntry = banEntryMap.get(ip);
+		if (banEntry == null) {
+			return 0;
+		}
+		return banEntry.banScore;
+	}
+
+	/**
+	 * return the file the address book is saved to.
+	 *
+	 * @return the file the address book is saved to.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * return the max number of connection attempts started at a time.
+	 *
+	 * @return the max number of connection attempts started at a time.
+	 */
+	public int getMaxConnectAttempts() {
+		return maxConnectAttempts;
+	}
+
+	/**
+	 * return the ban entry of the IP address, adding it if it is new. If there
+	 * are already the max number of ban entries, the one with the lowest score
+	 * that is not banned, or the ban that ends first, is removed.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return the ban entry.
+	 */
+	private BanEntry getOrAddBanEntry(final String ip, final long now) {
+		BanEntry banEntry = banEntryMap.get(ip);
+		if (banEntry != null) {
+			return banEntry;
+		}
+		if (banEntryMap.size() >= maxAddresses) {
+			String worstIp = null;
+			BanEntry worstBanEntry = null;
+			for (final Map.Entry<String, BanEntry> mapEntry : banEntryMap.entrySet()) {
+				final BanEntry otherBanEntry = mapEntry.getValue();
+				if ((worstBanEntry == null) || otherBanEntry.isLessSevere(worstBanEntry, now)) {
+					worstIp = mapEntry.getKey();
+					worstBanEntry = otherBanEntry;
+				}
+			}
+			banEntryMap.remove(worstIp);
+		}
+		banEntry = new BanEntry();
+		banEntryMap.put(ip, banEntry);
+		return banEntry;
+	}
+
+	/**
+	 * return the address that should be removed first to make room for a new
+	 * address, which is a banned address if there is one, otherwise the address
+	 * least likely to connect.
+	 *
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return the worst address, or null if the address book is empty.
+	 */
+	private String getWorstAddress(final long now) {
+		String worstAddress = null;
+		for (final String address : entryMap.keySet()) {
+			if (isBanned(getIp(address), now)) {
+				return address;
+			}
+			if ((worstAddress == null) || isMoreLikely(entryMap.get(worstAddress), entryMap.get(address))) {
+				worstAddress = address;
+			}
+		}
+		return worstAddress;
+	}
+
+	/**
+	 * adds the ban score for an invalid message to the IP address.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void invalidMessage(final String ip, final long now) {
+		addBanScore(ip, invalidMessageScore, now);
+	}
+
+	/**
+	 * return true if the IP address is banned.
+	 *
+	 * @param ip
+	 *            the IP address.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return true if the IP address is banned.
+	 */
+	public synchronized boolean isBanned(final String ip, final long now) {
+		final BanEntry banEntry = banEntryMap.get(ip);
+		return (banEntry != null) && (banEntry.bannedUntilMs > now);
+	}
+
+	/**
+	 * return true if the address can be tried, which is if it is in the address
+	 * book, it's IP address is not banned, and it's backoff has passed.
+	 *
+	 * @param address
+	 *            the TCP address and port, as a string.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return true if the address can be tried.
+	 */
+	public synchronized boolean isEligible(final String address, final long now) {
+		final Entry entry = entryMap.get(address);
+		if ((entry == null) || isBanned(getIp(address), now)) {
+			return false;
+		}
+		return now >= (entry.lastAttemptMs + getBackoffMs(address));
+	}
+
+	/**
+	 * return true if the first entry is more likely to connect than the second,
+	 * which is if it has fewer failures since it's last success, or the same
+	 * number and a more recent success, or was seen more recently.
+	 *
+	 * @param entry1
+	 *            the first entry.
+	 * @param entry2
+	 *            the second entry.
+	 * @return true if the first entry is more likely to connect.
+	 */
+	private boolean isMoreLikely(final Entry entry1, final Entry entry2) {
+		if (entry1.failureCount != entry2.failureCount) {
+			return entry1.failureCount < entry2.failureCount;
+		}
+		if (entry1.lastSuccessMs != entry2.lastSuccessMs) {
+			return entry1.lastSuccessMs > entry2.lastSuccessMs;
+		}
+		return entry1.lastSeenMs >= entry2.lastSeenMs;
+	}
+
+	/**
+	 * loads the address book from JSON. The bans are loaded first, so when there
+	 * are more addresses than fit, banned addresses are the first replaced.
+	 * Address books saved before bans were kept by IP address have the ban score
+	 * on each address, which is added to the address's IP address.
+	 *
+	 * @param json
+	 *            the JSON to load.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return the addresses loaded.
+	 */
+	public synchronized List<String> load(final JSONObject json, final long now) {
+		final JSONArray bansJson = json.optJSONArray(BANS);
+		if (bansJson != null) {
+			for (int ix = 0; ix < bansJson.length(); ix++) {
+				final JSONObject banJson = bansJson.getJSONObject(ix);
+				loadBan(banJson, banJson.getString(ADDRESS), now);
+			}
+		}
+		final List<String> addressList = new ArrayList<>();
+		final JSONArray addressesJson = json.getJSONArray(ADDRESSES);
+		for (int ix = 0; ix < addressesJson.length(); ix++) {
+			final JSONObject entryJson = addressesJson.getJSONObject(ix);
+			final String address = entryJson.getString(ADDRESS);
+			if (entryJson.has(BAN_SCORE)) {
+				loadBan(entryJson, getIp(address), now);
+			}
+			final Entry entry = new Entry();
+			entry.lastSeenMs = entryJson.getLong(LAST_SEEN);
+			entry.lastAttemptMs = entryJson.getLong(LAST_ATTEMPT);
+			entry.lastSuccessMs = entryJson.getLong(LAST_SUCCESS);
+			entry.failureCount = entryJson.getLong(FAILURES);
+			if (addEntry(address, entry, now)) {
+				addressList.add(address);
+			}
+		}
+		addressList.retainAll(entryMap.keySet());
+		return addressList;
+	}
+
+	/**
+	 * loads a ban entry from JSON, keeping the higher score and later ban end if
+	 * the IP address already has one.
+	 *
+	 * @param banJson
+	 *            the JSON to load.
+	 * @param ip
+	 *            the IP address.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	private void loadBan(final JSONObject banJson, final String ip, final long now) {
+		final int banScore = banJson.getInt(BAN_SCORE);
+		final long bannedUntilMs = banJson.getLong(BANNED_UNTIL);
+		if ((banScore == 0) && (bannedUntilMs <= now)) {
+			return;
+		}
+		final BanEntry banEntry = getOrAddBanEntry(ip, now);
+		banEntry.banScore = Math.max(banEntry.banScore, banScore);
+		banEntry.bannedUntilMs = Math.max(banEntry.bannedUntilMs, bannedUntilMs);
+	}
+
+	/**
+	 * selects up to the max number of connection attempts of the eligible
+	 * addresses, in the order they should be tried.
+	 *
+	 * @param candidates
+	 *            the TCP addresses and ports to select from.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return the selected addresses.
+	 */
+	public synchronized List<String> select(final Collection<String> candidates, final long now) {
+		final List<List<String>> bucketList = new ArrayList<>();
+		final Map<Integer, List<String>> bucketMap = new TreeMap<>();
+		for (final String address : candidates) {
+			if (isEligible(address, now)) {
+				final int bucket = Math.floorMod(getNetworkGroup(address).hashCode(), bucketCount);
+				if (!bucketMap.containsKey(bucket)) {
+					final List<String> bucketAddressList = new ArrayList<>();
+					bucketMap.put(bucket, bucketAddressList);
+					bucketList.add(bucketAddressList);
+				}
+				bucketMap.get(bucket).add(address);
+			}
+		}
+		final List<String> selectedList = new ArrayList<>();
+		while (!bucketList.isEmpty()) {
+			// each round takes one address from every bucket, in random order.
+			Collections.shuffle(bucketList, random);
+			final Iterator<List<String>> bucketIt = bucketList.iterator();
+			while (bucketIt.hasNext()) {
+				if (selectedList.size() >= maxConnectAttempts) {
+					return selectedList;
+				}
+				final List<String> bucketAddressList = bucketIt.next();
+				int addressIx = random.nextInt(bucketAddressList.size());
+				final int otherAddressIx = random.nextInt(bucketAddressList.size());
+				if (isMoreLikely(entryMap.get(bucketAddressList.get(otherAddressIx)),
+						entryMap.get(bucketAddressList.get(addressIx)))) {
+					addressIx = otherAddressIx;
+				}
+				selectedList.add(bucketAddressList.remove(addressIx));
+				if (bucketAddressList.isEmpty()) {
+					bucketIt.remove();
+				}
+			}
+		}
+		return selectedList;
+	}
+
+	/**
+	 * return the number of addresses in the address book.
+	 *
+	 * @return the number of addresses in the address book.
+	 */
+	public synchronized int size() {
+		return entryMap.size();
+	}
+
+	/**
+	 * return the address book as JSON.
+	 *
+	 * @return the address book as JSON.
+	 */
+	public synchronized JSONObject toJSONObject() {
+		final JSONArray addressesJson = new JSONArray();
+		for (final Map.Entry<String, Entry> mapEntry : entryMap.entrySet()) {
+			final Entry entry = mapEntry.getValue();
+			final JSONObject entryJson = new JSONObject();
+			entryJson.put(ADDRESS, mapEntry.getKey());
+			entryJson.put(LAST_SEEN, entry.lastSeenMs);
+			entryJson.put(LAST_ATTEMPT, entry.lastAttemptMs);
+			entryJson.put(LAST_SUCCESS, entry.lastSuccessMs);
+			entryJson.put(FAILURES, entry.failureCount);
+			addressesJson.put(entryJson);
+		}
+		final JSONArray bansJson = new JSONArray();
+		for (final Map.Entry<String, BanEntry> mapEntry : banEntryMap.entrySet()) {
+			final BanEntry banEntry = mapEntry.getValue();
+			final JSONObject banJson = new JSONObject();
+			banJson.put(ADDRESS, mapEntry.getKey());
+			banJson.put(BAN_SCORE, banEntry.banScore);
+			banJson.put(BANNED_UNTIL, banEntry.bannedUntilMs);
+			bansJson.put(banJson);
+		}
+		final JSONObject json = new JSONObject();
+		json.put(ADDRESSES, addressesJson);
+		json.put(BANS, bansJson);
+		return json;
+	}
+
+	/**
+	 * what the address book knows about one address.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class Entry {
+
+		/**
+		 * when the address was last seen, in milliseconds.
+		 */
+		private long lastSeenMs;
+
+		/**
+		 * when we last tried to connect to the address, in milliseconds.
+		 */
+		private long lastAttemptMs;
+
+		/**
+		 * when we last completed a handshake with the address, in milliseconds.
+		 */
+		private long lastSuccessMs;
+
+		/**
+		 * the number of failed attempts since the last success.
+		 */
+		private long failureCount;
+	}
+
+	/**
+	 * the ban score of one IP address.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class BanEntry {
+
+		/**
+		 * the ban score.
+		 */
+		private int banScore;
+
+		/**
+		 * when the ban ends, in milliseconds.
+		 */
+		private long bannedUntilMs;
+
+		/**
+		 * return true if this entry should be removed before the other entry,
+		 * which is if it is not banned and the other is, or neither is banned and
+		 * it has a lower score, or both are banned and it's ban ends first.
+		 *
+		 * @param other
+		 *            the other entry.
+		 * @param now
+		 *            the current time, in milliseconds.
+		 * @return true if this entry should be removed first.
+		 */
+		private boolean isLessSevere(final BanEntry other, final long now) {
+			final boolean banned = bannedUntilMs > now;
+			final boolean otherBanned = other.bannedUntilMs > now;
+			if (banned != otherBanned) {
+				return otherBanned;
+			}
+			if (banned) {
+				return bannedUntilMs < other.bannedUntilMs;
+			}
+			return banScore < other.banScore;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package neo.network.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import neo.model.bytes.UInt256;
+import neo.model.core.AbstractBlockBase;
+import neo.model.core.Header;
+import neo.model.util.MapUtil;
+
+/**
+ * the chain of validated headers ahead of the blockchain, that block download
+ * is driven from.
+ * <p>
+ * only the hashes are kept, 32 bytes per height, in one array, starting at the
+ * anchor, which is at or below the highest block in the blockchain. Headers are appended in batches, as they arrive in a
+ * "headers" message. A batch is validated as a whole, in parallel: each header
+ * must link to the previous header's hash, have the next index, and have a
+ * later timestamp. The valid part of the batch that connects to the tip of the
+ * chain is appended.
+ * <p>
+ * all methods are synchronized on the chain.
+ *
+ * @author coranos
+ *
+ */
+public final class HeaderChain {
+
+	/**
+	 * the API call key for headers that were already in the chain.
+	 */
+	private static final String HEADER_DUPLICATE = "header-chain-duplicate";
+
+	/**
+	 * the API call key for headers that did not match the hash already in the
+	 * chain at their index.
+	 */
+	private static final String HEADER_CONFLICT = "header-chain-conflict";
+
+	/**
+	 * the API call key for batches that did not connect to the tip of the chain.
+	 */
+	private static final String HEADER_GAP = "header-chain-gap";
+
+	/**
+	 * the API call key for batches that were not a valid chain.
+	 */
+	private static final String HEADER_INVALID = "header-chain-invalid";
+
+	/**
+	 * the initial capacity, in headers.
+	 */
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * returns the index of the first header in the batch that does not follow the
+	 * header before it, or the size of the batch if all do. The pairs are checked
+	 * in parallel.
+	 *
+	 * @param headerList
+	 *            the headers to check.
+	 * @return the index of the first header that does not follow the header
+	 *         before it.
+	 */
+	public static int getValidCount(final List<Header> headerList) {
+		final Header[] headers = headerList.toArray(new Header[headerList.size()]);
+		return IntStream.range(1, headers.length).parallel().filter(ix -> !isNext(headers[ix - 1], headers[ix]))
+				.min().orElse(headers.length);
+	}
+
+	/**
+	 * return true if the header follows the previous header.
+	 *
+	 * @param prevHeader
+	 *            the previous header.
+	 * @param header
+	 *            the header.
+	 * @return true if the header follows the previous header.
+	 */
+	private static boolean isNext(final AbstractBlockBase prevHeader, final AbstractBlockBase header) {
+		return header.prevHash.equals(prevHeader.hash)
+				&& (header.getIndexAsLong() == (prevHeader.getIndexAsLong() + 1))
+				&& (header.timestamp.asLong() > prevHeader.timestamp.asLong());
+	}
+
+	/**
+	 * the hashes, 32 bytes per height, starting at the anchor.
+	 */
+	private byte[] hashBa = new byte[0];
+
+	/**
+	 * the index of the first hash in the array.
+	 */
+	private long baseIndex;
+
+	/**
+	 * the number of hashes in the array.
+	 */
+	private int size;
+
+	/**
+	 * the timestamp of the header at the tip of the chain.
+	 */
+	private long tipTimestamp;
+
+	/**
+	 * appends the headers that are a valid chain, and connect to the tip of the
+	 * chain. Headers already in the chain are skipped.
+	 *
+	 * @param headerList
+	 *            the headers to append, in order.
+	 * @return the number of headers appended, or -1 if the headers are not a
+	 *         valid chain.
+	 */
+	public int append(final List<Header> headerList) {
+		final int validCount = getValidCount(headerList);
+		if (validCount < headerList.size()) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, HEADER_INVALID);
+			return -1;
+		}
+		synchronized (this) {
+			if (size == 0) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, HEADER_GAP);
+				return 0;
+			}
+			int firstNewIx = 0;
+			while (firstNewIx < validCount) {
+				final Header header = headerList.get(firstNewIx);
+				if (header.getIndexAsLong() > getTipIndex()) {
+					break;
+				}
+				// headers below the anchor are already in the blockchain.
+				final UInt256 hash = getHash(header.getIndexAsLong());
+				if ((hash != null) && !hash.equals(header.hash)) {
+					MapUtil.increment(LocalNodeData.API_CALL_MAP, HEADER_CONFLICT);
+					return 0;
+				}
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, HEADER_DUPLICATE);
+				firstNewIx++;
+			}
+			if (firstNewIx == validCount) {
+				return 0;
+			}
+			final Header firstNewHeader = headerList.get(firstNewIx);
+			if (!firstNewHeader.prevHash.equals(getTipHash())
+					|| (firstNewHeader.getIndexAsLong() != (getTipIndex() + 1))
+					|| (firstNewHeader.timestamp.asLong() <= tipTimestamp)) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, HEADER_GAP);
+				return 0;
+			}
+			ensureCapacity(size + (validCount - firstNewIx));
+			for (int ix = firstNewIx; ix < validCount; ix++) {
+				System.arraycopy(headerList.get(ix).hash.getBytesCopy(), 0, hashBa, size * UInt256.SIZE,
+						UInt256.SIZE);
+				size++;
+			}
+			tipTimestamp = headerList.get(validCount - 1).timestamp.asLong();
+			return validCount - firstNewIx;
+		}
+	}
+
+	/**
+	 * grows the hash array, so it can hold the given number of hashes.
+	 *
+	 * @param capacity
+	 *            the number of hashes.
+	 */
+	private void ensureCapacity(final int capacity) {
+		if ((capacity * UInt256.SIZE) > hashBa.length) {
+			final int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, (hashBa.length / UInt256.SIZE) * 2));
+			hashBa = Arrays.copyOf(hashBa, newCapacity * UInt256.SIZE);
+		}
+	}
+
+	/**
+	 * return the index of the anchor, the first hash in the chain.
+	 *
+	 * @return the index of the anchor.
+	 */
+	public synchronized long getBaseIndex() {
+		return baseIndex;
+	}
+
+	/**
+	 * return the hash at the index, or null if the index is not in the chain.
+	 *
+	 * @param index
+	 *            the index to use.
+	 * @return the hash at the index.
+	 */
+	public synchronized UInt256 getHash(final long index) {
+		if ((index < baseIndex) || (index >= (baseIndex + size))) {
+			return null;
+		}
+		final int offset = (int) (index - baseIndex) * UInt256.SIZE;
+		return new UInt256(Arrays.copyOfRange(hashBa, offset, offset + UInt256.SIZE));
+	}
+
+	/**
+	 * return the hash of the tip of the chain, or null if the chain is empty.
+	 *
+	 * @return the hash of the tip of the chain.
+	 */
+	public synchronized UInt256 getTipHash() {
+		return getHash(getTipIndex());
+	}
+
+	/**
+	 * return the index of the tip of the chain, or -1 if the chain is empty.
+	 *
+	 * @return the index of the tip of the chain.
+	 */
+	public synchronized long getTipIndex() {
+		return (baseIndex + size) - 1;
+	}
+
+	/**
+	 * removes the hashes below the index, as their blocks are in the blockchain.
+	 * The hash at the index is kept, as the new anchor. The array is only copied
+	 * once at least half of it, or the initial capacity, can be removed, so
+	 * pruning after every block is cheap.
+	 *
+	 * @param index
+	 *            the index of the new anchor.
+	 */
+	public synchronized void prune(final long index) {
+		if (index > getTipIndex()) {
+			return;
+		}
+		final int removed = (int) (index - baseIndex);
+		if (removed < Math.max(INITIAL_CAPACITY, size / 2)) {
+			return;
+		}
+		size -= removed;
+		baseIndex = index;
+		final int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+		final byte[] newHashBa = new byte[capacity * UInt256.SIZE];
+		System.arraycopy(hashBa, removed * UInt256.SIZE, newHashBa, 0, size * UInt256.SIZE);
+		hashBa = newHashBa;
+	}
+
+	/**
+	 * resets the chain, so it only contains the anchor.
+	 *
+	 * @param anchor
+	 *            the block or header to anchor the chain at.
+	 */
+	public synchronized void reset(final AbstractBlockBase anchor) {
+		hashBa = new byte[INITIAL_CAPACITY * UInt256.SIZE];
+		System.arraycopy(anchor.hash.getBytesCopy(), 0, hashBa, 0, UInt256.SIZE);
+		baseIndex = anchor.getIndexAsLong();
+		size = 1;
+		tipTimestamp = anchor.timestamp.asLong();
+	}
+
+	/**
+	 * return the number of hashes in the chain, including the anchor.
+	 *
+	 * @return the number of hashes in the chain.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
@@ -0,0 +1,191 @@
+package neo.network.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.json.JSONObject;
+
+import neo.model.bytes.UInt256;
+import neo.model.util.JsonUtil;
+
+/**
+ * a bounded, time expiring set of inventory hashes.
+ * <p>
+ * used to remember which blocks and transactions have already been seen or
+ * requested, so the same inventory is not downloaded from every peer that
+ * announces it.
+ *
+ * @author coranos
+ *
+ */
+public final class KnownInventory {
+
+	/**
+	 * the JSON key, "max-size".
+	 */
+	public static final String MAX_SIZE = "max-size";
+
+	/**
+	 * the JSON key, "expiry".
+	 */
+	public static final String EXPIRY = "expiry";
+
+	/**
+	 * the max number of hashes to keep.
+	 */
+	private final int maxSize;
+
+	/**
+	 * the time after which a hash is forgotten, in milliseconds.
+	 */
+	private final long expiryMs;
+
+	/**
+	 * the time each hash was added, in insertion order, so the oldest hashes are
+	 * always first.
+	 */
+	private final Map<UInt256, Long> timeByHashMap;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param maxSize
+	 *            the max number of hashes to keep.
+	 * @param expiryMs
+	 *            the time after which a hash is forgotten, in milliseconds.
+	 */
+	public KnownInventory(final int maxSize, final long expiryMs) {
+		this.maxSize = maxSize;
+		this.expiryMs = expiryMs;
+		timeByHashMap = new LinkedHashMap<UInt256, Long>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Entry<UInt256, Long> eldest) {
+				return size() > KnownInventory.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public KnownInventory(final JSONObject config) {
+		this(config.getInt(MAX_SIZE), JsonUtil.getTime(config, EXPIRY));
+	}
+
+	/**
+	 * adds the hash, or refreshes the hash's timestamp if it is already known.
+	 *
+	 * @param hash
+	 *            the hash to add.
+	 * @return true if the hash was not already known.
+	 */
+	public synchronized boolean add(final UInt256 hash) {
+		final long now = System.currentTimeMillis();
+		removeExpired(now);
+		final boolean isNew = timeByHashMap.remove(hash) == null;
+		timeByHashMap.put(hash, now);
+		return isNew;
+	}
+
+	/**
+	 * adds the hash, if it is not already known. Unlike add(), this does not
+	 * refresh the timestamp of a known hash, so it can be used to claim a hash for
+	 * exactly one requester until it expires.
+	 *
+	 * @param hash
+	 *            the hash to add.
+	 * @return true if the hash was not already known, and was added.
+	 */
+	public synchronized boolean addIfAbsent(final UInt256 hash) {
+		final long now = System.currentTimeMillis();
+		removeExpired(now);
+		if (timeByHashMap.containsKey(hash)) {
+			return false;
+		}
+		timeByHashMap.put(hash, now);
+		return true;
+	}
+
+	/**
+	 * clears all hashes.
+	 */
+	public synchronized void clear() {
+		timeByHashMap.clear();
+	}
+
+	/**
+	 * return true if the hash is known and has not expired.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return true if the hash is known and has not expired.
+	 */
+	public synchronized boolean contains(final UInt256 hash) {
+		removeExpired(System.currentTimeMillis());
+		return timeByHashMap.containsKey(hash);
+	}
+
+	/**
+	 * return the time after which a hash is forgotten, in milliseconds.
+	 *
+	 * @return the time after which a hash is forgotten, in milliseconds.
+	 */
+	public long getExpiryMs() {
+		return expiryMs;
+	}
+
+	/**
+	 * return the max number of hashes to keep.
+	 *
+	 * @return the max number of hashes to keep.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * removes the hash.
+	 *
+	 * @param hash
+	 *            the hash to remove.
+	 * @return true if the hash was known.
+	 */
+	public synchronized boolean remove(final UInt256 hash) {
+		return timeByHashMap.remove(hash) != null;
+	}
+
+	/**
+	 * removes all expired hashes. Since the map is in insertion order, this stops
+	 * at the first hash that has not expired.
+	 *
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	private void removeExpired(final long now) {
+		final long minTime = now - expiryMs;
+		final Iterator<Long> timeIt = timeByHashMap.values().iterator();
+		while (timeIt.hasNext()) {
+			if (timeIt.next() >= minTime) {
+				return;
+			}
+			timeIt.remove();
+		}
+	}
+
+	/**
+	 * return the number of known hashes.
+	 *
+	 * @return the number of known hashes.
+	 */
+	public synchronized int size() {
+		removeExpired(System.currentTimeMillis());
+		return timeByHashMap.size();
+	}
+}
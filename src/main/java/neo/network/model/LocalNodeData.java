@@ -6,21 +6,19 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONObject;
 
 import neo.model.bytes.Fixed8;
-import neo.model.core.AbstractBlockBase;
 import neo.model.core.Block;
-import neo.model.core.Header;
-import neo.model.core.Transaction;
 import neo.model.core.TransactionType;
 import neo.model.db.BlockDb;
+import neo.model.util.ConfigurationUtil;
+import neo.model.util.threadpool.ExecutorPools;
 import neo.network.model.socket.SocketFactory;
+import neo.rpc.server.RpcEventHub;
 
 /**
  * the lass containing all the data usd for the local node.
@@ -70,11 +68,6 @@ public class LocalNodeData {
 	 */
 	private final String networkName;
 
-	/**
-	 * the blockchain block height.
-	 */
-	private long blockchainBlockHeight;
-
 	/**
 	 * the block file size.
 	 */
@@ -151,26 +144,72 @@ public class LocalNodeData {
 	private final String chainExportStatsFileName;
 
 	/**
-	 * the map of verified headers, by blockchain height.
+	 * the chain of validated headers ahead of the blockchain. The header chain
+	 * and block pool lock themselves, so peer threads can add to them without
+	 * locking the local node data.
+	 */
+	private final HeaderChain headerChain = new HeaderChain();
+
+	/**
+	 * the pool of unverified blocks, that are not yet connected to the chain.
+	 */
+	private final OrphanBlockPool unverifiedBlockPool;
+
+	/**
+	 * the pool of transactions that have not yet been put in a block.
+	 */
+	private final MemoryPool memoryPool;
+
+	/**
+	 * the inventory that has already been recieved from any peer.
+	 */
+	private final KnownInventory knownInventory;
+
+	/**
+	 * the inventory that has been requested from a peer, but not yet recieved.
+	 */
+	private final KnownInventory requestedInventory;
+
+	/**
+	 * the peer scoring policy, and the saved peer statistics.
+	 */
+	private final PeerScores peerScores;
+
+	/**
+	 * the address book of known peers, which decides which peers to connect to.
+	 */
+	private final AddressBook addressBook;
+
+	/**
+	 * the best known height of the blockchain, derived from the peers' heights.
+	 */
+	private final NetworkHeight networkHeight;
+
+	/**
+	 * the version of the blockchain, incremented each time blocks are put in the
+	 * block database.
+	 */
+	private final AtomicLong blockchainVersion = new AtomicLong();
+
+	/**
+	 * the executors the node runs it's work on.
 	 */
-	private final SortedMap<Long, Header> verifiedHeaderPoolMap = new TreeMap<>();
+	private final ExecutorPools executorPools;
 
 	/**
-	 * the set of unverified headers, sorted by blockchain height.
+	 * the metrics of the messages sent and recieved from all peers.
 	 */
-	private final SortedSet<Header> unverifiedHeaderPoolSet = new TreeSet<>(
-			AbstractBlockBase.getAbstractBlockBaseComparator());
+	private final MessageMetrics messageMetrics;
 
 	/**
-	 * the set of unverified blocks, sorted by blockchain height.
+	 * the pool of buffers that outbound messages are serialized into.
 	 */
-	private final SortedSet<Block> unverifiedBlockPoolSet = new TreeSet<>(
-			AbstractBlockBase.getAbstractBlockBaseComparator());
+	private final WriteBufferPool writeBufferPool;
 
 	/**
-	 * the set of unverified transactions, sorted by hash.
+	 * the hub that pushes new blocks and transactions to RPC subscribers.
 	 */
-	private final SortedSet<Transaction> unverifiedTransactionSet = new TreeSet<>(Transaction.getComparator());
+	private final RpcEventHub eventHub;
 
 	/**
 	 * the constructor.
@@ -213,6 +252,10 @@ public class LocalNodeData {
 	 *            the file name for the exported chain data.
 	 * @param chainExportStatsFileName
 	 *            the file name for the exported chain statistics.
+	 * @param localJson
+	 *            the local configuration, used to configure the inventory, the
+	 *            memory pool, peer scoring, the address book, the network height,
+	 *            the unverified block pool and the RPC event hub.
 	 */
 	public LocalNodeData(final long magic, final int activeThreadCount, final long rpcClientTimeoutMillis,
 			final long rpcServerTimeoutMillis, final Class<BlockDb> blockDbClass,
@@ -220,7 +263,7 @@ public class LocalNodeData {
 			final File goodNodeFile, final Class<SocketFactory> socketFactoryClass, final JSONObject blockDbConfig,
 			final Set<String> rpcDisabledCalls, final int rpcPort, final String networkName,
 			final Map<TransactionType, Fixed8> transactionSystemFeeMap, final String chainExportDataFileName,
-			final String chainExportStatsFileName) {
+			final String chainExportStatsFileName, final JSONObject localJson) {
 		startTime = System.currentTimeMillis();
 		this.magic = magic;
 		this.activeThreadCount = activeThreadCount;
@@ -237,12 +280,27 @@ public class LocalNodeData {
 		this.chainExportDataFileName = chainExportDataFileName;
 		this.chainExportStatsFileName = chainExportStatsFileName;
 		this.rpcDisabledCalls = Collections.unmodifiableSet(rpcDisabledCalls);
+		final JSONObject inventoryJson = localJson.getJSONObject(ConfigurationUtil.INVENTORY);
+		knownInventory = new KnownInventory(inventoryJson.getJSONObject(ConfigurationUtil.KNOWN));
+		requestedInventory = new KnownInventory(inventoryJson.getJSONObject(ConfigurationUtil.REQUESTED));
+		memoryPool = new MemoryPool(localJson.getJSONObject(ConfigurationUtil.MEMPOOL));
+		peerScores = new PeerScores(localJson.getJSONObject(ConfigurationUtil.PEER_SCORE));
+		addressBook = new AddressBook(localJson.getJSONObject(ConfigurationUtil.ADDRESS_BOOK));
+		networkHeight = new NetworkHeight(localJson.getJSONObject(ConfigurationUtil.NETWORK_HEIGHT));
+		unverifiedBlockPool = new OrphanBlockPool(localJson.getJSONObject(ConfigurationUtil.BLOCK_POOL));
+		executorPools = new ExecutorPools(localJson.getJSONObject(ConfigurationUtil.EXECUTORS));
+		messageMetrics = new MessageMetrics(localJson.getJSONObject(ConfigurationUtil.MESSAGE_METRICS));
+		writeBufferPool = new WriteBufferPool(localJson.getJSONObject(ConfigurationUtil.WRITE_BUFFER));
+		eventHub = new RpcEventHub(localJson.getJSONObject(ConfigurationUtil.RPC)
+				.getJSONObject(ConfigurationUtil.SERVER).getJSONObject(RpcEventHub.EVENTS),
+				executorPools.getCpuExecutor());
 		try {
 			blockDb = blockDbClass.getConstructor(JSONObject.class).newInstance(blockDbConfig);
 		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
 				| NoSuchMethodException | SecurityException e) {
 			throw new RuntimeException(e);
 		}
+		blockDb.startIndexBackfill(executorPools.getStorageExecutor());
 		try {
 			socketFactory = socketFactoryClass.newInstance();
 		} catch (InstantiationException | IllegalAccessException e) {
@@ -256,6 +314,15 @@ public class LocalNodeData {
 		}
 	}
 
+	/**
+	 * return the address book of known peers.
+	 *
+	 * @return the address book.
+	 */
+	public AddressBook getAddressBook() {
+		return addressBook;
+	}
+
 	/**
 	 * return the active thread count.
 	 *
@@ -266,12 +333,24 @@ public class LocalNodeData {
 	}
 
 	/**
-	 * return the blockchain block height.
+	 * return the best known blockchain block height, from the peers' heights and
+	 * the tip of the header chain.
 	 *
 	 * @return the blockchain block height.
 	 */
 	public long getBlockchainBlockHeight() {
-		return blockchainBlockHeight;
+		return networkHeight.getHeight(Math.max(0, headerChain.getTipIndex()));
+	}
+
+	/**
+	 * return the version of the blockchain, which changes each time blocks are
+	 * put in the block database, so values that depend on the tip can tell when
+	 * they are stale.
+	 *
+	 * @return the version of the blockchain.
+	 */
+	public long getBlockchainVersion() {
+		return blockchainVersion.get();
 	}
 
 	/**
@@ -310,6 +389,24 @@ public class LocalNodeData {
 		return chainExportStatsFileName;
 	}
 
+	/**
+	 * return the hub that pushes new blocks and transactions to RPC subscribers.
+	 *
+	 * @return the event hub.
+	 */
+	public RpcEventHub getEventHub() {
+		return eventHub;
+	}
+
+	/**
+	 * return the executors the node runs it's work on.
+	 *
+	 * @return the executors.
+	 */
+	public ExecutorPools getExecutorPools() {
+		return executorPools;
+	}
+
 	/**
 	 * return the file of good nodes.
 	 *
@@ -319,6 +416,15 @@ public class LocalNodeData {
 		return goodNodeFile;
 	}
 
+	/**
+	 * return the chain of validated headers ahead of the blockchain.
+	 *
+	 * @return the header chain.
+	 */
+	public HeaderChain getHeaderChain() {
+		return headerChain;
+	}
+
 	/**
 	 * return the last time the highest block changed.
 	 *
@@ -337,6 +443,33 @@ public class LocalNodeData {
 		return highestHeaderTime;
 	}
 
+	/**
+	 * return the inventory that has already been recieved from any peer.
+	 *
+	 * @return the inventory that has already been recieved from any peer.
+	 */
+	public KnownInventory getKnownInventory() {
+		return knownInventory;
+	}
+
+	/**
+	 * return the pool of transactions that have not yet been put in a block.
+	 *
+	 * @return the pool of transactions that have not yet been put in a block.
+	 */
+	public MemoryPool getMemoryPool() {
+		return memoryPool;
+	}
+
+	/**
+	 * return the metrics of the messages sent and recieved from all peers.
+	 *
+	 * @return the metrics of the messages sent and recieved from all peers.
+	 */
+	public MessageMetrics getMessageMetrics() {
+		return messageMetrics;
+	}
+
 	/**
 	 * return the magic long.
 	 *
@@ -346,6 +479,16 @@ public class LocalNodeData {
 		return magic;
 	}
 
+	/**
+	 * return the best known height of the blockchain, derived from the peers'
+	 * heights.
+	 *
+	 * @return the network height.
+	 */
+	public NetworkHeight getNetworkHeight() {
+		return networkHeight;
+	}
+
 	/**
 	 * return the network name.
 	 *
@@ -364,6 +507,26 @@ public class LocalNodeData {
 		return nonce;
 	}
 
+	/**
+	 * return the peer scoring policy, and the saved peer statistics.
+	 *
+	 * @return the peer scores.
+	 */
+	public PeerScores getPeerScores() {
+		return peerScores;
+	}
+
+	/**
+	 * return the inventory that has been requested from a peer, but not yet
+	 * recieved.
+	 *
+	 * @return the inventory that has been requested from a peer, but not yet
+	 *         recieved.
+	 */
+	public KnownInventory getRequestedInventory() {
+		return requestedInventory;
+	}
+
 	/**
 	 * return the RPC client timeout.
 	 *
@@ -470,45 +633,17 @@ public class LocalNodeData {
 	 *
 	 * @return the pool of unverified blocks.
 	 */
-	public SortedSet<Block> getUnverifiedBlockPoolSet() {
-		return unverifiedBlockPoolSet;
-	}
-
-	/**
-	 * return the pool of unverified headers.
-	 *
-	 * @return the pool of unverified headers.
-	 */
-	public SortedSet<Header> getUnverifiedHeaderPoolSet() {
-		return unverifiedHeaderPoolSet;
-	}
-
-	/**
-	 * return the set of unverified transactions.
-	 *
-	 * @return the set of unverified transactions.
-	 */
-	public SortedSet<Transaction> getUnverifiedTransactionSet() {
-		return unverifiedTransactionSet;
+	public OrphanBlockPool getUnverifiedBlockPool() {
+		return unverifiedBlockPool;
 	}
 
 	/**
-	 * return the pool of verified headers.
+	 * return the pool of buffers that outbound messages are serialized into.
 	 *
-	 * @return the pool of verified headers.
+	 * @return the pool of buffers that outbound messages are serialized into.
 	 */
-	public SortedMap<Long, Header> getVerifiedHeaderPoolMap() {
-		return verifiedHeaderPoolMap;
-	}
-
-	/**
-	 * sets the block height as read from the blockchain CityOfZion web service.
-	 *
-	 * @param blockchainBlockHeight
-	 *            the block height to use.
-	 */
-	public void setBlockchainBlockHeight(final long blockchainBlockHeight) {
-		this.blockchainBlockHeight = blockchainBlockHeight;
+	public WriteBufferPool getWriteBufferPool() {
+		return writeBufferPool;
 	}
 
 	/**
@@ -521,6 +656,14 @@ public class LocalNodeData {
 		this.blockFileSize = blockFileSize;
 	}
 
+	/**
+	 * increments the version of the blockchain, after blocks are put in the block
+	 * database.
+	 */
+	public void updateBlockchainVersion() {
+		blockchainVersion.incrementAndGet();
+	}
+
 	/**
 	 * update the highest block time to be the current time.
 	 */
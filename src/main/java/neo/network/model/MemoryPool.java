@@ -0,0 +1,392 @@
+package neo.network.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.json.JSONObject;
+
+import neo.model.bytes.UInt256;
+import neo.model.core.Block;
+import neo.model.core.CoinReference;
+import neo.model.core.Transaction;
+import neo.model.util.MapUtil;
+
+/**
+ * the pool of transactions that have not yet been put in a block.
+ * <p>
+ * transactions are indexed by hash, and by the coin references they spend, so a
+ * transaction that double spends a coin already spent in the pool is rejected
+ * (the first seen transaction wins). When the pool exceeds it's size limits,
+ * the transactions with the lowest network fee per byte are evicted first.
+ * <p>
+ * reads are lock free, writes are synchronized on the pool.
+ *
+ * @author coranos
+ *
+ */
+public final class MemoryPool {
+
+	/**
+	 * the JSON key, "max-bytes".
+	 */
+	public static final String MAX_BYTES = "max-bytes";
+
+	/**
+	 * the JSON key, "max-count".
+	 */
+	public static final String MAX_COUNT = "max-count";
+
+	/**
+	 * the API call key for transactions added to the pool.
+	 */
+	private static final String MEMPOOL_ADDED = "mempool-added";
+
+	/**
+	 * the API call key for transactions that were already in the pool.
+	 */
+	private static final String MEMPOOL_DUPLICATE = "mempool-duplicate";
+
+	/**
+	 * the API call key for transactions that spend a coin already spent in the
+	 * pool.
+	 */
+	private static final String MEMPOOL_DOUBLE_SPEND = "mempool-double-spend";
+
+	/**
+	 * the API call key for transactions evicted to keep the pool in it's size
+	 * limits.
+	 */
+	private static final String MEMPOOL_EVICTED = "mempool-evicted";
+
+	/**
+	 * the API call key for transactions removed because they were put in a block,
+	 * or conflict with a transaction that was put in a block.
+	 */
+	private static final String MEMPOOL_REMOVED_BY_BLOCK = "mempool-removed-by-block";
+
+	/**
+	 * the max total size of all transactions in the pool, in bytes.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * the max number of transactions in the pool.
+	 */
+	private final int maxCount;
+
+	/**
+	 * the entries, by transaction hash.
+	 */
+	private final Map<UInt256, MemoryPoolEntry> entryByHashMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the transaction hash that spends each coin reference.
+	 */
+	private final Map<CoinReference, UInt256> hashBySpentCoinMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the entries, sorted from lowest to highest priority.
+	 */
+	private final NavigableSet<MemoryPoolEntry> entryByPrioritySet = new ConcurrentSkipListSet<>(
+			MemoryPoolEntry.getComparator());
+
+	/**
+	 * the total size of all transactions in the pool, in bytes.
+	 */
+	private volatile long totalBytes;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param maxBytes
+	 *            the max total size of all transactions in the pool, in bytes.
+	 * @param maxCount
+	 *            the max number of transactions in the pool.
+	 */
+	public MemoryPool(final long maxBytes, final int maxCount) {
+		this.maxBytes = maxBytes;
+		this.maxCount = maxCount;
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public MemoryPool(final JSONObject config) {
+		this(config.getLong(MAX_BYTES), config.getInt(MAX_COUNT));
+	}
+
+	/**
+	 * adds the transaction to the pool, if it is not already in the pool, does not
+	 * spend a coin already spent by a transaction in the pool, and is not the
+	 * lowest priority transaction in a full pool.
+	 *
+	 * @param transaction
+	 *            the transaction to add.
+	 * @param networkFee
+	 *            the network fee of the transaction, as a Fixed8 value.
+	 * @return true if the transaction was added.
+	 */
+	public synchronized boolean add(final Transaction transaction, final long networkFee) {
+		final UInt256 hash = transaction.getHash();
+		if (entryByHashMap.containsKey(hash)) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, MEMPOOL_DUPLICATE);
+			return false;
+		}
+		final Set<CoinReference> spentCoinSet = new HashSet<>();
+		for (final CoinReference input : transaction.inputs) {
+			if (hashBySpentCoinMap.containsKey(input) || !spentCoinSet.add(input)) {
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, MEMPOOL_DOUBLE_SPEND);
+				return false;
+			}
+		}
+
+		final MemoryPoolEntry entry = new MemoryPoolEntry(transaction, networkFee);
+		entryByHashMap.put(hash, entry);
+		entryByPrioritySet.add(entry);
+		for (final CoinReference input : transaction.inputs) {
+			hashBySpentCoinMap.put(input, hash);
+		}
+		totalBytes += entry.size;
+
+		while ((totalBytes > maxBytes) || (entryByHashMap.size() > maxCount)) {
+			final MemoryPoolEntry lowest = entryByPrioritySet.first();
+			removeEntry(lowest);
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, MEMPOOL_EVICTED);
+			if (lowest == entry) {
+				return false;
+			}
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, MEMPOOL_ADDED);
+		return true;
+	}
+
+	/**
+	 * return true if the transaction with the given hash is in the pool.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return true if the transaction with the given hash is in the pool.
+	 */
+	public boolean contains(final UInt256 hash) {
+		return entryByHashMap.containsKey(hash);
+	}
+
+	/**
+	 * return the hashes of the transactions in the pool, highest priority first.
+	 *
+	 * @return the hashes of the transactions in the pool.
+	 */
+	public List<UInt256> getHashList() {
+		final List<UInt256> hashList = new ArrayList<>();
+		for (final MemoryPoolEntry entry : entryByPrioritySet.descendingSet()) {
+			hashList.add(entry.transaction.getHash());
+		}
+		return hashList;
+	}
+
+	/**
+	 * return the max total size of all transactions in the pool, in bytes.
+	 *
+	 * @return the max total size of all transactions in the pool, in bytes.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * return the max number of transactions in the pool.
+	 *
+	 * @return the max number of transactions in the pool.
+	 */
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * return the hash of the transaction in the pool that spends the coin, or null
+	 * if no transaction in the pool spends the coin.
+	 *
+	 * @param coinReference
+	 *            the coin reference to use.
+	 * @return the hash of the transaction that spends the coin.
+	 */
+	public UInt256 getSpendingTransactionHash(final CoinReference coinReference) {
+		return hashBySpentCoinMap.get(coinReference);
+	}
+
+	/**
+	 * return the transaction with the given hash, or null if it is not in the pool.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the transaction with the given hash.
+	 */
+	public Transaction getTransaction(final UInt256 hash) {
+		final MemoryPoolEntry entry = entryByHashMap.get(hash);
+		if (entry == null) {
+			return null;
+		}
+		return entry.transaction;
+	}
+
+	/**
+	 * return the transactions in the pool, highest priority first. The iteration
+	 * is weakly consistent, so it does not lock the pool or copy it.
+	 *
+	 * @return the transactions in the pool.
+	 */
+	public Iterable<Transaction> getTransactions() {
+		return () -> {
+			final Iterator<MemoryPoolEntry> entryIt = entryByPrioritySet.descendingIterator();
+			return new Iterator<Transaction>() {
+				@Override
+				public boolean hasNext() {
+					return entryIt.hasNext();
+				}
+
+				@Override
+				public Transaction next() {
+					return entryIt.next().transaction;
+				}
+			};
+		};
+	}
+
+	/**
+	 * return the total size of all transactions in the pool, in bytes.
+	 *
+	 * @return the total size of all transactions in the pool, in bytes.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * removes the transaction with the given hash.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return true if the transaction was in the pool.
+	 */
+	public synchronized boolean remove(final UInt256 hash) {
+		final MemoryPoolEntry entry = entryByHashMap.get(hash);
+		if (entry == null) {
+			return false;
+		}
+		removeEntry(entry);
+		return true;
+	}
+
+	/**
+	 * removes the transactions in the block, and any transactions that spend the
+	 * same coins as a transaction in the block.
+	 *
+	 * @param block
+	 *            the block to use.
+	 * @return the number of transactions removed.
+	 */
+	public synchronized int removeBlockTransactions(final Block block) {
+		if (entryByHashMap.isEmpty()) {
+			return 0;
+		}
+		int removed = 0;
+		for (final Transaction transaction : block.getTransactionList()) {
+			if (remove(transaction.getHash())) {
+				removed++;
+			}
+			for (final CoinReference input : transaction.inputs) {
+				final UInt256 conflictHash = hashBySpentCoinMap.get(input);
+				if ((conflictHash != null) && remove(conflictHash)) {
+					removed++;
+				}
+			}
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, MEMPOOL_REMOVED_BY_BLOCK, removed);
+		return removed;
+	}
+
+	/**
+	 * removes the entry from all indexes.
+	 *
+	 * @param entry
+	 *            the entry to remove.
+	 */
+	private void removeEntry(final MemoryPoolEntry entry) {
+		entryByHashMap.remove(entry.transaction.getHash());
+		entryByPrioritySet.remove(entry);
+		for (final CoinReference input : entry.transaction.inputs) {
+			hashBySpentCoinMap.remove(input);
+		}
+		totalBytes -= entry.size;
+	}
+
+	/**
+	 * return the number of transactions in the pool.
+	 *
+	 * @return the number of transactions in the pool.
+	 */
+	public int size() {
+		return entryByHashMap.size();
+	}
+
+	/**
+	 * a transaction in the pool, with the values used to prioritize it.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class MemoryPoolEntry {
+
+		/**
+		 * return a comparator that sorts by network fee per byte, then by hash.
+		 *
+		 * @return a comparator that sorts by network fee per byte, then by hash.
+		 */
+		private static Comparator<MemoryPoolEntry> getComparator() {
+			final Comparator<MemoryPoolEntry> c = Comparator
+					.comparingDouble((final MemoryPoolEntry entry) -> entry.feePerByte)
+					.thenComparing(entry -> entry.transaction.getHash());
+			return c;
+		}
+
+		/**
+		 * the transaction.
+		 */
+		private final Transaction transaction;
+
+		/**
+		 * the size of the transaction, in bytes.
+		 */
+		private final int size;
+
+		/**
+		 * the network fee per byte.
+		 */
+		private final double feePerByte;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param transaction
+		 *            the transaction to use.
+		 * @param networkFee
+		 *            the network fee of the transaction, as a Fixed8 value.
+		 */
+		private MemoryPoolEntry(final Transaction transaction, final long networkFee) {
+			this.transaction = transaction;
+			size = transaction.toByteArray().length;
+			feePerByte = networkFee / (double) size;
+		}
+	}
+}
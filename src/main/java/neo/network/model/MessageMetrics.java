@@ -0,0 +1,546 @@
+package neo.network.model;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+import neo.model.CommandEnum;
+import neo.perfmon.LatencyHistogram;
+
+/**
+ * counters of the messages sent and recieved, broken down by command.
+ * <p>
+ * for each command, the number of messages and bytes in each direction are
+ * counted, as well as the total time spent decoding recieved messages, and
+ * handling them. All counters are lock free, so they can be updated from every
+ * peer's thread.
+ * <p>
+ * in "basic" mode only the counters are kept, which is cheap enough to always
+ * leave on. In "full" mode the decode and handler times are also kept in
+ * latency histograms, which are sent on the "/metrics" endpoint.
+ *
+ * @author coranos
+ *
+ */
+public final class MessageMetrics {
+
+	/**
+	 * the JSON key, "mode".
+	 */
+	public static final String MODE = "mode";
+
+	/**
+	 * the mode that keeps only counters.
+	 */
+	public static final String BASIC = "basic";
+
+	/**
+	 * the mode that keeps counters and histograms.
+	 */
+	public static final String FULL = "full";
+
+	/**
+	 * the JSON key, "messages-in".
+	 */
+	public static final String MESSAGES_IN = "messages-in";
+
+	/**
+	 * the JSON key, "bytes-in".
+	 */
+	public static final String BYTES_IN = "bytes-in";
+
+	/**
+	 * the JSON key, "messages-out".
+	 */
+	public static final String MESSAGES_OUT = "messages-out";
+
+	/**
+	 * the JSON key, "bytes-out".
+	 */
+	public static final String BYTES_OUT = "bytes-out";
+
+	/**
+	 * the JSON key, "decode-micros".
+	 */
+	public static final String DECODE_MICROS = "decode-micros";
+
+	/**
+	 * the JSON key, "handler-micros".
+	 */
+	public static final String HANDLER_MICROS = "handler-micros";
+
+	/**
+	 * the JSON key, "decode-histogram".
+	 */
+	public static final String DECODE_HISTOGRAM = "decode-histogram";
+
+	/**
+	 * the JSON key, "handler-histogram".
+	 */
+	public static final String HANDLER_HISTOGRAM = "handler-histogram";
+
+	/**
+	 * the JSON key, "p50-micros".
+	 */
+	public static final String P50_MICROS = "p50-micros";
+
+	/**
+	 * the JSON key, "p99-micros".
+	 */
+	public static final String P99_MICROS = "p99-micros";
+
+	/**
+	 * the JSON key, "max-micros".
+	 */
+	public static final String MAX_MICROS = "max-micros";
+
+	/**
+	 * the JSON key, "total".
+	 */
+	public static final String TOTAL = "total";
+
+	/**
+	 * the JSON key, "unknown", for messages with a command that is not in
+	 * CommandEnum.
+	 */
+	public static final String UNKNOWN = "unknown";
+
+	/**
+	 * the number of nanoseconds in a microsecond.
+	 */
+	private static final long NANOS_PER_MICRO = 1000;
+
+	/**
+	 * the index of the counters for messages with a command that is not in
+	 * CommandEnum.
+	 */
+	private static final int UNKNOWN_IX = CommandEnum.values().length;
+
+	/**
+	 * returns the name of the command at the index.
+	 *
+	 * @param ix
+	 *            the index of the counters.
+	 * @return the name of the command, or "unknown".
+	 */
+	private static String getName(final int ix) {
+		if (ix == UNKNOWN_IX) {
+			return UNKNOWN;
+		}
+		return CommandEnum.values()[ix].getName();
+	}
+
+	/**
+	 * returns the index of the counters for the command.
+	 *
+	 * @param commandEnum
+	 *            the command, or null if the command is not in CommandEnum.
+	 * @return the index of the counters for the command.
+	 */
+	private static int getIndex(final CommandEnum commandEnum) {
+		if (commandEnum == null) {
+			return UNKNOWN_IX;
+		}
+		return commandEnum.ordinal();
+	}
+
+	/**
+	 * returns a new array of counters, one per command, and one for unknown
+	 * commands.
+	 *
+	 * @return the new array of counters.
+	 */
+	private static LongAdder[] newCounters() {
+		final LongAdder[] counters = new LongAdder[UNKNOWN_IX + 1];
+		for (int ix = 0; ix < counters.length; ix++) {
+			counters[ix] = new LongAdder();
+		}
+		return counters;
+	}
+
+	/**
+	 * returns a new array of histograms, one per command, and one for unknown
+	 * commands, or null if histograms are not kept.
+	 *
+	 * @param histograms
+	 *            true if histograms are kept.
+	 * @return the new array of histograms.
+	 */
+	private static LatencyHistogram[] newHistograms(final boolean histograms) {
+		if (!histograms) {
+			return null;
+		}
+		final LatencyHistogram[] histogramArray = new LatencyHistogram[UNKNOWN_IX + 1];
+		for (int ix = 0; ix < histogramArray.length; ix++) {
+			histogramArray[ix] = new LatencyHistogram();
+		}
+		return histogramArray;
+	}
+
+	/**
+	 * returns the histograms that have latencies, by command name, or an empty
+	 * map if histograms are not kept.
+	 *
+	 * @param histograms
+	 *            the histograms to use.
+	 * @return the histograms, by command name.
+	 */
+	private static Map<String, LatencyHistogram> toLatencyMap(final LatencyHistogram[] histograms) {
+		final Map<String, LatencyHistogram> latencyMap = new TreeMap<>();
+		if (histograms != null) {
+			for (int ix = 0; ix < histograms.length; ix++) {
+				if (histograms[ix].getCount() != 0) {
+					latencyMap.put(getName(ix), histograms[ix]);
+				}
+			}
+		}
+		return latencyMap;
+	}
+
+	/**
+	 * returns the median, 99th percentile, and max of the histogram as JSON, in
+	 * microseconds.
+	 *
+	 * @param histogram
+	 *            the histogram to use.
+	 * @return the histogram as JSON.
+	 */
+	private static JSONObject toJSONObject(final LatencyHistogram histogram) {
+		final JSONObject histogramJson = new JSONObject();
+		histogramJson.put(P50_MICROS, histogram.getQuantileNanos(0.5) / NANOS_PER_MICRO);
+		histogramJson.put(P99_MICROS, histogram.getQuantileNanos(0.99) / NANOS_PER_MICRO);
+		histogramJson.put(MAX_MICROS, histogram.getMaxNanos() / NANOS_PER_MICRO);
+		return histogramJson;
+	}
+
+	/**
+	 * the messages recieved, by command.
+	 */
+	private final LongAdder[] messagesIn = newCounters();
+
+	/**
+	 * the bytes recieved, by command.
+	 */
+	private final LongAdder[] bytesIn = newCounters();
+
+	/**
+	 * the messages sent, by command.
+	 */
+	private final LongAdder[] messagesOut = newCounters();
+
+	/**
+	 * the bytes sent, by command.
+	 */
+	private final LongAdder[] bytesOut = newCounters();
+
+	/**
+	 * the time spent decoding recieved messages, in nanoseconds, by command.
+	 */
+	private final LongAdder[] decodeNanos = newCounters();
+
+	/**
+	 * the time spent handling recieved messages, in nanoseconds, by command.
+	 */
+	private final LongAdder[] handlerNanos = newCounters();
+
+	/**
+	 * the decode time histograms, by command, or null in "basic" mode.
+	 */
+	private final LatencyHistogram[] decodeHistograms;
+
+	/**
+	 * the handler time histograms, by command, or null in "basic" mode.
+	 */
+	private final LatencyHistogram[] handlerHistograms;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param histograms
+	 *            true if histograms are kept.
+	 */
+	public MessageMetrics(final boolean histograms) {
+		decodeHistograms = newHistograms(histograms);
+		handlerHistograms = newHistograms(histograms);
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public MessageMetrics(final JSONObject config) {
+		this(FULL.equals(config.getString(MODE)));
+	}
+
+	/**
+	 * return the bytes recieved for the command.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the bytes recieved for the command.
+	 */
+	public long getBytesIn(final CommandEnum commandEnum) {
+		return bytesIn[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the bytes sent for the command.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the bytes sent for the command.
+	 */
+	public long getBytesOut(final CommandEnum commandEnum) {
+		return bytesOut[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the decode time histogram for the command, or null in "basic" mode.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the decode time histogram for the command.
+	 */
+	public LatencyHistogram getDecodeHistogram(final CommandEnum commandEnum) {
+		return getHistogram(decodeHistograms, commandEnum);
+	}
+
+	/**
+	 * return the decode time histograms of the commands that have been recieved,
+	 * by command name, or an empty map in "basic" mode.
+	 *
+	 * @return the decode time histograms.
+	 */
+	public Map<String, LatencyHistogram> getDecodeLatencyMap() {
+		return toLatencyMap(decodeHistograms);
+	}
+
+	/**
+	 * return the time spent decoding messages for the command, in nanoseconds.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the time spent decoding messages for the command.
+	 */
+	public long getDecodeNanos(final CommandEnum commandEnum) {
+		return decodeNanos[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the handler time histogram for the command, or null in "basic"
+	 * mode.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the handler time histogram for the command.
+	 */
+	public LatencyHistogram getHandlerHistogram(final CommandEnum commandEnum) {
+		return getHistogram(handlerHistograms, commandEnum);
+	}
+
+	/**
+	 * return the handler time histograms of the commands that have been
+	 * recieved, by command name, or an empty map in "basic" mode.
+	 *
+	 * @return the handler time histograms.
+	 */
+	public Map<String, LatencyHistogram> getHandlerLatencyMap() {
+		return toLatencyMap(handlerHistograms);
+	}
+
+	/**
+	 * return the time spent handling messages for the command, in nanoseconds.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the time spent handling messages for the command.
+	 */
+	public long getHandlerNanos(final CommandEnum commandEnum) {
+		return handlerNanos[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the histogram for the command, or null if histograms are not kept.
+	 *
+	 * @param histograms
+	 *            the histograms to use.
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the histogram for the command.
+	 */
+	private LatencyHistogram getHistogram(final LatencyHistogram[] histograms, final CommandEnum commandEnum) {
+		if (histograms == null) {
+			return null;
+		}
+		return histograms[getIndex(commandEnum)];
+	}
+
+	/**
+	 * return the messages recieved for the command.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the messages recieved for the command.
+	 */
+	public long getMessagesIn(final CommandEnum commandEnum) {
+		return messagesIn[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the messages sent for the command.
+	 *
+	 * @param commandEnum
+	 *            the command, or null for unknown commands.
+	 * @return the messages sent for the command.
+	 */
+	public long getMessagesOut(final CommandEnum commandEnum) {
+		return messagesOut[getIndex(commandEnum)].sum();
+	}
+
+	/**
+	 * return the bytes recieved for all commands.
+	 *
+	 * @return the bytes recieved for all commands.
+	 */
+	public long getTotalBytesIn() {
+		return sum(bytesIn);
+	}
+
+	/**
+	 * return the bytes sent for all commands.
+	 *
+	 * @return the bytes sent for all commands.
+	 */
+	public long getTotalBytesOut() {
+		return sum(bytesOut);
+	}
+
+	/**
+	 * return the messages recieved for all commands.
+	 *
+	 * @return the messages recieved for all commands.
+	 */
+	public long getTotalMessagesIn() {
+		return sum(messagesIn);
+	}
+
+	/**
+	 * return the messages sent for all commands.
+	 *
+	 * @return the messages sent for all commands.
+	 */
+	public long getTotalMessagesOut() {
+		return sum(messagesOut);
+	}
+
+	/**
+	 * return true if histograms are kept ("full" mode).
+	 *
+	 * @return true if histograms are kept.
+	 */
+	public boolean isHistograms() {
+		return decodeHistograms != null;
+	}
+
+	/**
+	 * records a recieved message.
+	 *
+	 * @param commandEnum
+	 *            the command, or null if the command is not in CommandEnum.
+	 * @param bytes
+	 *            the size of the message, including the header, in bytes.
+	 * @param messageDecodeNanos
+	 *            the time spent decoding the message, in nanoseconds.
+	 * @param messageHandlerNanos
+	 *            the time spent handling the message, in nanoseconds.
+	 */
+	public void messageReceived(final CommandEnum commandEnum, final int bytes, final long messageDecodeNanos,
+			final long messageHandlerNanos) {
+		final int ix = getIndex(commandEnum);
+		messagesIn[ix].increment();
+		bytesIn[ix].add(bytes);
+		decodeNanos[ix].add(messageDecodeNanos);
+		handlerNanos[ix].add(messageHandlerNanos);
+		if (decodeHistograms != null) {
+			decodeHistograms[ix].record(messageDecodeNanos, false);
+			handlerHistograms[ix].record(messageHandlerNanos, false);
+		}
+	}
+
+	/**
+	 * records a sent message.
+	 *
+	 * @param commandEnum
+	 *            the command, or null if the command is not in CommandEnum.
+	 * @param bytes
+	 *            the size of the message, including the header, in bytes.
+	 */
+	public void messageSent(final CommandEnum commandEnum, final int bytes) {
+		final int ix = getIndex(commandEnum);
+		messagesOut[ix].increment();
+		bytesOut[ix].add(bytes);
+	}
+
+	/**
+	 * return the sum of the counters.
+	 *
+	 * @param counters
+	 *            the counters to use.
+	 * @return the sum of the counters.
+	 */
+	private long sum(final LongAdder[] counters) {
+		long total = 0;
+		for (final LongAdder counter : counters) {
+			total += counter.sum();
+		}
+		return total;
+	}
+
+	/**
+	 * return the counters of one command as JSON.
+	 *
+	 * @param ix
+	 *            the index of the counters.
+	 * @return the counters as JSON.
+	 */
+	private JSONObject toJSONObject(final int ix) {
+		final JSONObject json = new JSONObject();
+		json.put(MESSAGES_IN, messagesIn[ix].sum());
+		json.put(BYTES_IN, bytesIn[ix].sum());
+		json.put(MESSAGES_OUT, messagesOut[ix].sum());
+		json.put(BYTES_OUT, bytesOut[ix].sum());
+		json.put(DECODE_MICROS, decodeNanos[ix].sum() / NANOS_PER_MICRO);
+		json.put(HANDLER_MICROS, handlerNanos[ix].sum() / NANOS_PER_MICRO);
+		if (decodeHistograms != null) {
+			json.put(DECODE_HISTOGRAM, toJSONObject(decodeHistograms[ix]));
+			json.put(HANDLER_HISTOGRAM, toJSONObject(handlerHistograms[ix]));
+		}
+		return json;
+	}
+
+	/**
+	 * return the metrics as JSON, with one entry per command that has sent or
+	 * recieved messages, and one entry for the totals.
+	 *
+	 * @return the metrics as JSON.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		for (int ix = 0; ix <= UNKNOWN_IX; ix++) {
+			if ((messagesIn[ix].sum() != 0) || (messagesOut[ix].sum() != 0)) {
+				json.put(getName(ix), toJSONObject(ix));
+			}
+		}
+		final JSONObject totalJson = new JSONObject();
+		totalJson.put(MESSAGES_IN, getTotalMessagesIn());
+		totalJson.put(BYTES_IN, getTotalBytesIn());
+		totalJson.put(MESSAGES_OUT, getTotalMessagesOut());
+		totalJson.put(BYTES_OUT, getTotalBytesOut());
+		json.put(TOTAL, totalJson);
+		return json;
+	}
+}
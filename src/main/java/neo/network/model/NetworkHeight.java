@@ -0,0 +1,188 @@
+package neo.network.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+import neo.model.util.MapUtil;
+
+/**
+ * the best known height of the blockchain, derived from the heights our peers
+ * report.
+ * <p>
+ * each connected peer's height is the start height in it's "version" message,
+ * raised by the index of the last header in each valid "headers" message it
+ * sends. A peer's height is forgotten when it disconnects.
+ * <p>
+ * peers that are behind don't lower the estimate, but a peer can claim a height
+ * it can't prove, so heights more than the max deviation above the median are
+ * rejected as outliers, and the estimate is the highest remaining height. With
+ * fewer peers than the min peers, the median is used. The tip of the validated
+ * header chain is a lower bound, as those headers have been checked.
+ * <p>
+ * the height from the CityOfZion RPC servers can be recorded as a cross check.
+ * It is not used in the estimate, a mismatch is only counted.
+ *
+ * @author coranos
+ *
+ */
+public final class NetworkHeight {
+
+	/**
+	 * the JSON key, "min-peers".
+	 */
+	public static final String MIN_PEERS = "min-peers";
+
+	/**
+	 * the JSON key, "max-deviation".
+	 */
+	public static final String MAX_DEVIATION = "max-deviation";
+
+	/**
+	 * the JSON key, "city-of-zion-cross-check".
+	 */
+	public static final String CITY_OF_ZION_CROSS_CHECK = "city-of-zion-cross-check";
+
+	/**
+	 * the API call key for cross check heights that did not match the estimate.
+	 */
+	private static final String NETWORK_HEIGHT_CROSS_CHECK_MISMATCH = "network-height-cross-check-mismatch";
+
+	/**
+	 * the min number of peers needed to reject outliers.
+	 */
+	private final int minPeers;
+
+	/**
+	 * the max number of blocks a peer's height can be above the median.
+	 */
+	private final long maxDeviation;
+
+	/**
+	 * if true, the CityOfZion RPC servers are asked for the height, as a cross
+	 * check.
+	 */
+	private final boolean cityOfZionCrossCheck;
+
+	/**
+	 * the peer heights, by TCP address and port.
+	 */
+	private final Map<String, Long> peerHeightMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the height from the cross check, or -1 if there is none.
+	 */
+	private volatile long crossCheckHeight = -1;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public NetworkHeight(final JSONObject config) {
+		minPeers = config.getInt(MIN_PEERS);
+		maxDeviation = config.getLong(MAX_DEVIATION);
+		cityOfZionCrossCheck = config.getBoolean(CITY_OF_ZION_CROSS_CHECK);
+	}
+
+	/**
+	 * return the height from the cross check, or -1 if there is none.
+	 *
+	 * @return the height from the cross check.
+	 */
+	public long getCrossCheckHeight() {
+		return crossCheckHeight;
+	}
+
+	/**
+	 * return the best known height of the blockchain.
+	 *
+	 * @param validatedHeight
+	 *            the height that has been validated locally, the lower bound.
+	 * @return the best known height of the blockchain.
+	 */
+	public long getHeight(final long validatedHeight) {
+		final List<Long> heightList = new ArrayList<>(peerHeightMap.values());
+		if (heightList.isEmpty()) {
+			return validatedHeight;
+		}
+		Collections.sort(heightList);
+		final long median = heightList.get(heightList.size() / 2);
+		if (heightList.size() < minPeers) {
+			return Math.max(validatedHeight, median);
+		}
+		long height = median;
+		for (final long peerHeight : heightList) {
+			if (peerHeight > (median + maxDeviation)) {
+				break;
+			}
+			height = peerHeight;
+		}
+		return Math.max(validatedHeight, height);
+	}
+
+	/**
+	 * return the number of peers that reported a height.
+	 *
+	 * @return the number of peers that reported a height.
+	 */
+	public int getPeerCount() {
+		return peerHeightMap.size();
+	}
+
+	/**
+	 * return true if the CityOfZion RPC servers are asked for the height, as a
+	 * cross check.
+	 *
+	 * @return true if the CityOfZion RPC servers are asked for the height.
+	 */
+	public boolean isCityOfZionCrossCheck() {
+		return cityOfZionCrossCheck;
+	}
+
+	/**
+	 * records a peer's height, if it is higher than the height already recorded.
+	 *
+	 * @param address
+	 *            the peer's TCP address and port, as a string.
+	 * @param height
+	 *            the peer's height.
+	 */
+	public void peerHeight(final String address, final long height) {
+		peerHeightMap.merge(address, height, Math::max);
+	}
+
+	/**
+	 * forgets a peer's height, when it disconnects.
+	 *
+	 * @param address
+	 *            the peer's TCP address and port, as a string.
+	 */
+	public void removePeer(final String address) {
+		peerHeightMap.remove(address);
+	}
+
+	/**
+	 * records the height from the cross check, and counts a mismatch if it is
+	 * more than the max deviation from the estimate.
+	 *
+	 * @param height
+	 *            the height from the cross check.
+	 * @param validatedHeight
+	 *            the height that has been validated locally.
+	 * @return true if the cross check height matches the estimate.
+	 */
+	public boolean setCrossCheckHeight(final long height, final long validatedHeight) {
+		crossCheckHeight = height;
+		if (Math.abs(height - getHeight(validatedHeight)) > maxDeviation) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, NETWORK_HEIGHT_CROSS_CHECK_MISMATCH);
+			return false;
+		}
+		return true;
+	}
+}
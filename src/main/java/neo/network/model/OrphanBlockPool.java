@@ -0,0 +1,386 @@
+package neo.network.model;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.json.JSONObject;
+
+import neo.model.bytes.UInt256;
+import neo.model.core.AbstractBlockBase;
+import neo.model.core.Block;
+import neo.model.util.MapUtil;
+
+/**
+ * the pool of blocks that have been received, but not yet connected to the
+ * blockchain, because they arrived out of order, or are ahead of the chain.
+ * <p>
+ * blocks are indexed by hash, by prevHash (so connecting the next block to the
+ * chain is a single lookup), and by index. When the pool exceeds it's byte
+ * budget, the farthest ahead blocks are evicted first, as they are the last
+ * ones needed. Each peer also has a byte quota, so one peer cannot fill the
+ * pool.
+ * <p>
+ * reads are lock free, writes are synchronized on the pool.
+ *
+ * @author coranos
+ *
+ */
+public final class OrphanBlockPool {
+
+	/**
+	 * the JSON key, "max-bytes".
+	 */
+	public static final String MAX_BYTES = "max-bytes";
+
+	/**
+	 * the JSON key, "peer-max-bytes".
+	 */
+	public static final String PEER_MAX_BYTES = "peer-max-bytes";
+
+	/**
+	 * the API call key for blocks added to the pool.
+	 */
+	private static final String ORPHAN_ADDED = "orphan-added";
+
+	/**
+	 * the API call key for blocks that were already in the pool.
+	 */
+	private static final String ORPHAN_DUPLICATE = "orphan-duplicate";
+
+	/**
+	 * the API call key for blocks with the same prevHash as a block already in
+	 * the pool.
+	 */
+	private static final String ORPHAN_CONFLICT = "orphan-conflict";
+
+	/**
+	 * the API call key for blocks rejected because the peer is over it's quota.
+	 */
+	private static final String ORPHAN_PEER_QUOTA = "orphan-peer-quota";
+
+	/**
+	 * the API call key for blocks evicted to keep the pool in it's byte budget.
+	 */
+	private static final String ORPHAN_EVICTED = "orphan-evicted";
+
+	/**
+	 * the max total size of all blocks in the pool, in bytes.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * the max total size of the blocks in the pool from one peer, in bytes.
+	 */
+	private final long peerMaxBytes;
+
+	/**
+	 * the entries, by block hash.
+	 */
+	private final Map<UInt256, OrphanBlockEntry> entryByHashMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the entries, by the hash of the previous block.
+	 */
+	private final Map<UInt256, OrphanBlockEntry> entryByPrevHashMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the entries, sorted by blockchain height.
+	 */
+	private final NavigableSet<OrphanBlockEntry> entryByIndexSet = new ConcurrentSkipListSet<>(
+			OrphanBlockEntry.getComparator());
+
+	/**
+	 * the total size of the blocks in the pool from each peer, in bytes.
+	 */
+	private final Map<String, Long> peerBytesMap = new HashMap<>();
+
+	/**
+	 * the total size of all blocks in the pool, in bytes.
+	 */
+	private volatile long totalBytes;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public OrphanBlockPool(final JSONObject config) {
+		this(config.getLong(MAX_BYTES), config.getLong(PEER_MAX_BYTES));
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param maxBytes
+	 *            the max total size of all blocks in the pool, in bytes.
+	 * @param peerMaxBytes
+	 *            the max total size of the blocks in the pool from one peer, in
+	 *            bytes.
+	 */
+	public OrphanBlockPool(final long maxBytes, final long peerMaxBytes) {
+		this.maxBytes = maxBytes;
+		this.peerMaxBytes = peerMaxBytes;
+	}
+
+	/**
+	 * adds the block to the pool, if it is not already in the pool, no other block
+	 * in the pool has the same prevHash, the peer is under it's quota, and it is
+	 * not the farthest ahead block in a full pool.
+	 *
+	 * @param block
+	 *            the block to add.
+	 * @param size
+	 *            the size of the block, in bytes.
+	 * @param peer
+	 *            the address of the peer that sent the block, or null if the
+	 *            block is not counted against any peer's quota.
+	 * @return true if the block was added.
+	 */
+	public synchronized boolean add(final Block block, final int size, final String peer) {
+		if (entryByHashMap.containsKey(block.hash)) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ORPHAN_DUPLICATE);
+			return false;
+		}
+		if (entryByPrevHashMap.containsKey(block.prevHash)) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ORPHAN_CONFLICT);
+			return false;
+		}
+		if ((peer != null) && ((getPeerBytes(peer) + size) > peerMaxBytes)) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ORPHAN_PEER_QUOTA);
+			return false;
+		}
+
+		final OrphanBlockEntry entry = new OrphanBlockEntry(block, size, peer);
+		entryByHashMap.put(block.hash, entry);
+		entryByPrevHashMap.put(block.prevHash, entry);
+		entryByIndexSet.add(entry);
+		if (peer != null) {
+			peerBytesMap.put(peer, getPeerBytes(peer) + size);
+		}
+		totalBytes += size;
+
+		while (totalBytes > maxBytes) {
+			final OrphanBlockEntry highest = entryByIndexSet.last();
+			removeEntry(highest);
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, ORPHAN_EVICTED);
+			if (highest == entry) {
+				return false;
+			}
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, ORPHAN_ADDED);
+		return true;
+	}
+
+	/**
+	 * return true if the block with the given hash is in the pool.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return true if the block with the given hash is in the pool.
+	 */
+	public boolean contains(final UInt256 hash) {
+		return entryByHashMap.containsKey(hash);
+	}
+
+	/**
+	 * return the block in the pool with the highest index, or null if the pool is
+	 * empty.
+	 *
+	 * @return the block in the pool with the highest index.
+	 */
+	public Block getHighestBlock() {
+		final Iterator<OrphanBlockEntry> entryIt = entryByIndexSet.descendingIterator();
+		if (entryIt.hasNext()) {
+			return entryIt.next().block;
+		}
+		return null;
+	}
+
+	/**
+	 * return the max total size of all blocks in the pool, in bytes.
+	 *
+	 * @return the max total size of all blocks in the pool, in bytes.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * return the total size of the blocks in the pool from the peer, in bytes.
+	 *
+	 * @param peer
+	 *            the address of the peer.
+	 * @return the total size of the blocks in the pool from the peer.
+	 */
+	public synchronized long getPeerBytes(final String peer) {
+		final Long peerBytes = peerBytesMap.get(peer);
+		if (peerBytes == null) {
+			return 0;
+		}
+		return peerBytes;
+	}
+
+	/**
+	 * return the max total size of the blocks in the pool from one peer, in bytes.
+	 *
+	 * @return the max total size of the blocks in the pool from one peer.
+	 */
+	public long getPeerMaxBytes() {
+		return peerMaxBytes;
+	}
+
+	/**
+	 * return the total size of all blocks in the pool, in bytes.
+	 *
+	 * @return the total size of all blocks in the pool, in bytes.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * return true if the pool is empty.
+	 *
+	 * @return true if the pool is empty.
+	 */
+	public boolean isEmpty() {
+		return entryByHashMap.isEmpty();
+	}
+
+	/**
+	 * removes and returns the block with the given hash.
+	 *
+	 * @param hash
+	 *            the hash to use.
+	 * @return the block, or null if it is not in the pool.
+	 */
+	public synchronized Block remove(final UInt256 hash) {
+		final OrphanBlockEntry entry = entryByHashMap.get(hash);
+		if (entry == null) {
+			return null;
+		}
+		removeEntry(entry);
+		return entry.block;
+	}
+
+	/**
+	 * removes all blocks with an index at or below the given index, as they can
+	 * no longer be connected to the chain.
+	 *
+	 * @param index
+	 *            the index to use.
+	 * @return the number of blocks removed.
+	 */
+	public synchronized int removeAtOrBelow(final long index) {
+		int removed = 0;
+		while (!entryByIndexSet.isEmpty() && (entryByIndexSet.first().block.getIndexAsLong() <= index)) {
+			removeEntry(entryByIndexSet.first());
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * removes and returns the block whose prevHash is the given hash, which is the
+	 * block that connects to the block with the given hash.
+	 *
+	 * @param prevHash
+	 *            the hash of the previous block.
+	 * @return the block, or null if it is not in the pool.
+	 */
+	public synchronized Block removeChild(final UInt256 prevHash) {
+		final OrphanBlockEntry entry = entryByPrevHashMap.get(prevHash);
+		if (entry == null) {
+			return null;
+		}
+		removeEntry(entry);
+		return entry.block;
+	}
+
+	/**
+	 * removes the entry from all indexes, and from it's peer's quota.
+	 *
+	 * @param entry
+	 *            the entry to remove.
+	 */
+	private void removeEntry(final OrphanBlockEntry entry) {
+		entryByHashMap.remove(entry.block.hash);
+		entryByPrevHashMap.remove(entry.block.prevHash);
+		entryByIndexSet.remove(entry);
+		if (entry.peer != null) {
+			final long peerBytes = getPeerBytes(entry.peer) - entry.size;
+			if (peerBytes <= 0) {
+				peerBytesMap.remove(entry.peer);
+			} else {
+				peerBytesMap.put(entry.peer, peerBytes);
+			}
+		}
+		totalBytes -= entry.size;
+	}
+
+	/**
+	 * return the number of blocks in the pool.
+	 *
+	 * @return the number of blocks in the pool.
+	 */
+	public int size() {
+		return entryByHashMap.size();
+	}
+
+	/**
+	 * a block in the pool, with the size and peer used for accounting.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class OrphanBlockEntry {
+
+		/**
+		 * return a comparator that sorts by the block comparator.
+		 *
+		 * @return a comparator that sorts by the block comparator.
+		 */
+		private static Comparator<OrphanBlockEntry> getComparator() {
+			final Comparator<AbstractBlockBase> blockComparator = AbstractBlockBase
+					.getAbstractBlockBaseComparator();
+			return (entry1, entry2) -> blockComparator.compare(entry1.block, entry2.block);
+		}
+
+		/**
+		 * the block.
+		 */
+		private final Block block;
+
+		/**
+		 * the size of the block, in bytes.
+		 */
+		private final int size;
+
+		/**
+		 * the address of the peer that sent the block, or null.
+		 */
+		private final String peer;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param block
+		 *            the block to use.
+		 * @param size
+		 *            the size of the block, in bytes.
+		 * @param peer
+		 *            the address of the peer that sent the block, or null.
+		 */
+		private OrphanBlockEntry(final Block block, final int size, final String peer) {
+			this.block = block;
+			this.size = size;
+			this.peer = peer;
+		}
+	}
+}
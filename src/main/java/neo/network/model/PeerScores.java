@@ -0,0 +1,149 @@
+package neo.network.model;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+import neo.model.util.JsonUtil;
+
+/**
+ * the peer scoring policy, and the peer statistics saved from earlier runs.
+ * <p>
+ * only the fastest peers are asked for blocks, and when the max number of
+ * active peers are connected the slowest one is disconnected. If it's score is
+ * far under the median it is also evicted, and not reconnected to until the
+ * eviction time passes. The statistics of every measured peer are saved to the
+ * peer score file, and restored when the peer is next added.
+ *
+ * @author coranos
+ *
+ */
+public final class PeerScores {
+
+	/**
+	 * the JSON key, "file".
+	 */
+	public static final String FILE = "file";
+
+	/**
+	 * the JSON key, "block-download-peers".
+	 */
+	public static final String BLOCK_DOWNLOAD_PEERS = "block-download-peers";
+
+	/**
+	 * the JSON key, "evict-score-ratio".
+	 */
+	public static final String EVICT_SCORE_RATIO = "evict-score-ratio";
+
+	/**
+	 * the JSON key, "evict-time".
+	 */
+	public static final String EVICT_TIME = "evict-time";
+
+	/**
+	 * the JSON key, "min-samples".
+	 */
+	public static final String MIN_SAMPLES = "min-samples";
+
+	/**
+	 * the file the peer statistics are saved to.
+	 */
+	private final File file;
+
+	/**
+	 * the number of highest scoring peers that are asked for blocks.
+	 */
+	private final int blockDownloadPeers;
+
+	/**
+	 * a peer scoring under this fraction of the median score is evicted.
+	 */
+	private final double evictScoreRatio;
+
+	/**
+	 * the time an evicted peer is not reconnected to, in milliseconds.
+	 */
+	private final long evictTimeMs;
+
+	/**
+	 * the number of round trip times a peer needs measured before it can be
+	 * evicted.
+	 */
+	private final long minSamples;
+
+	/**
+	 * the saved peer statistics, by TCP address and port.
+	 */
+	private final Map<String, JSONObject> savedStatsMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public PeerScores(final JSONObject config) {
+		file = new File(config.getString(FILE));
+		blockDownloadPeers = config.getInt(BLOCK_DOWNLOAD_PEERS);
+		evictScoreRatio = config.getDouble(EVICT_SCORE_RATIO);
+		evictTimeMs = JsonUtil.getTime(config, EVICT_TIME);
+		minSamples = config.getLong(MIN_SAMPLES);
+	}
+
+	/**
+	 * return the number of highest scoring peers that are asked for blocks.
+	 *
+	 * @return the number of highest scoring peers that are asked for blocks.
+	 */
+	public int getBlockDownloadPeers() {
+		return blockDownloadPeers;
+	}
+
+	/**
+	 * return the fraction of the median score under which a peer is evicted.
+	 *
+	 * @return the fraction of the median score under which a peer is evicted.
+	 */
+	public double getEvictScoreRatio() {
+		return evictScoreRatio;
+	}
+
+	/**
+	 * return the time an evicted peer is not reconnected to, in milliseconds.
+	 *
+	 * @return the time an evicted peer is not reconnected to.
+	 */
+	public long getEvictTimeMs() {
+		return evictTimeMs;
+	}
+
+	/**
+	 * return the file the peer statistics are saved to.
+	 *
+	 * @return the file the peer statistics are saved to.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * return the number of round trip times a peer needs measured before it can be
+	 * evicted.
+	 *
+	 * @return the number of round trip times a peer needs measured.
+	 */
+	public long getMinSamples() {
+		return minSamples;
+	}
+
+	/**
+	 * return the saved peer statistics, by TCP address and port.
+	 *
+	 * @return the saved peer statistics.
+	 */
+	public Map<String, JSONObject> getSavedStatsMap() {
+		return savedStatsMap;
+	}
+}
@@ -0,0 +1,460 @@
+package neo.network.model;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.json.JSONObject;
+
+import neo.model.CommandEnum;
+import neo.model.network.InvPayload;
+import neo.model.network.InventoryType;
+import neo.model.network.Message;
+
+/**
+ * rolling statistics about how well a remote node serves us, and the score
+ * computed from them.
+ * <p>
+ * the round trip time is measured per timer command ("getaddr",
+ * "getdata-block", "getheaders"), from the first unanswered request to it's
+ * response, and kept as an exponentially weighted moving average. Throughput is
+ * the moving average of the bytes recieved per second, sampled about once a
+ * second. Invalid messages and blocks delivered are counted.
+ * <p>
+ * the score is the throughput per millisecond of round trip time, boosted by up
+ * to double for peers that deliver blocks, and divided down for each invalid
+ * message. A peer with no measurements gets the score of a peer with average
+ * round trip time and no throughput, so new peers are tried before known slow
+ * ones.
+ *
+ * @author coranos
+ *
+ */
+public final class PeerStats {
+
+	/**
+	 * the JSON key, "rtt-ms".
+	 */
+	public static final String RTT_MS = "rtt-ms";
+
+	/**
+	 * the JSON key, "rtt-samples".
+	 */
+	public static final String RTT_SAMPLES = "rtt-samples";
+
+	/**
+	 * the JSON key, "bytes-per-second".
+	 */
+	public static final String BYTES_PER_SECOND = "bytes-per-second";
+
+	/**
+	 * the JSON key, "invalid-messages".
+	 */
+	public static final String INVALID_MESSAGES = "invalid-messages";
+
+	/**
+	 * the JSON key, "blocks-delivered".
+	 */
+	public static final String BLOCKS_DELIVERED = "blocks-delivered";
+
+	/**
+	 * the JSON key, "evicted-until".
+	 */
+	public static final String EVICTED_UNTIL = "evicted-until";
+
+	/**
+	 * the JSON key, "score".
+	 */
+	public static final String SCORE = "score";
+
+	/**
+	 * the timer command key for "getdata" requests for blocks.
+	 */
+	public static final String GETDATA_BLOCK = CommandEnum.GETDATA.getName() + "-"
+			+ InventoryType.BLOCK.name().toLowerCase();
+
+	/**
+	 * the weight of a new sample in the moving averages.
+	 */
+	private static final double SAMPLE_WEIGHT = 0.2;
+
+	/**
+	 * the time over which bytes are counted for one throughput sample, in
+	 * milliseconds.
+	 */
+	private static final long THROUGHPUT_WINDOW_MS = 1000;
+
+	/**
+	 * the round trip time of a peer with no measurements, in milliseconds.
+	 */
+	private static final double DEFAULT_RTT_MS = 1000;
+
+	/**
+	 * added to the throughput, so a peer with no throughput still scores by round
+	 * trip time.
+	 */
+	private static final double BASE_BYTES_PER_SECOND = 1000;
+
+	/**
+	 * added to the round trip time, so very fast peers do not get unbounded
+	 * scores.
+	 */
+	private static final double BASE_RTT_MS = 100;
+
+	/**
+	 * the number of blocks delivered at which the block boost is half it's max.
+	 */
+	private static final double HALF_BOOST_BLOCKS = 100;
+
+	/**
+	 * the score is divided by one plus this, for each invalid message.
+	 */
+	private static final double INVALID_MESSAGE_PENALTY = 1;
+
+	/**
+	 * the moving average round trip time, in milliseconds, by timer command.
+	 */
+	private final Map<String, Double> rttMsMap = new TreeMap<>();
+
+	/**
+	 * the time the oldest unanswered request was sent, in milliseconds, by timer
+	 * command.
+	 */
+	private final Map<String, Long> requestSentTimeMap = new TreeMap<>();
+
+	/**
+	 * the number of round trip times measured.
+	 */
+	private long rttSampleCount;
+
+	/**
+	 * the moving average of the bytes recieved per second.
+	 */
+	private double bytesPerSecond;
+
+	/**
+	 * the start of the current throughput window, in milliseconds, or zero if no
+	 * bytes have been recieved.
+	 */
+	private long windowStartMs;
+
+	/**
+	 * the bytes recieved in the current throughput window.
+	 */
+	private long windowBytes;
+
+	/**
+	 * the number of invalid messages recieved.
+	 */
+	private long invalidMessageCount;
+
+	/**
+	 * the number of blocks delivered.
+	 */
+	private long blocksDelivered;
+
+	/**
+	 * the time until which the peer is evicted, in milliseconds.
+	 */
+	private long evictedUntilMs;
+
+	/**
+	 * return the timer command key a response is for, or null if the response is
+	 * not for a timer command.
+	 *
+	 * @param commandEnum
+	 *            the response command.
+	 * @return the timer command key.
+	 */
+	private static String getResponseKey(final CommandEnum commandEnum) {
+		switch (commandEnum) {
+		case ADDR:
+			return CommandEnum.GETADDR.getName();
+		case HEADERS:
+			return CommandEnum.GETHEADERS.getName();
+		case BLOCK:
+			return GETDATA_BLOCK;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * return the timer command key a request is for, or null if the request is not
+	 * for a timer command.
+	 *
+	 * @param message
+	 *            the request.
+	 * @return the timer command key.
+	 */
+	private static String getRequestKey(final Message message) {
+		switch (message.commandEnum) {
+		case GETADDR:
+		case GETHEADERS:
+			return message.commandEnum.getName();
+		case GETDATA:
+			final InvPayload payload = message.getPayload(InvPayload.class);
+			if ((payload != null) && payload.getType().equals(InventoryType.BLOCK)) {
+				return GETDATA_BLOCK;
+			}
+			return null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * return the moving average, updated with the sample.
+	 *
+	 * @param average
+	 *            the moving average, or null if there are no samples yet.
+	 * @param sample
+	 *            the sample.
+	 * @return the updated moving average.
+	 */
+	private static double updateAverage(final Double average, final double sample) {
+		if (average == null) {
+			return sample;
+		}
+		return average + (SAMPLE_WEIGHT * (sample - average));
+	}
+
+	/**
+	 * records that a block was delivered.
+	 */
+	public synchronized void blockDelivered() {
+		blocksDelivered++;
+	}
+
+	/**
+	 * records that bytes were recieved.
+	 *
+	 * @param byteCount
+	 *            the number of bytes.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void bytesReceived(final long byteCount, final long now) {
+		if (windowStartMs == 0) {
+			windowStartMs = now;
+		}
+		windowBytes += byteCount;
+		final long windowMs = now - windowStartMs;
+		if (windowMs >= THROUGHPUT_WINDOW_MS) {
+			final double sample = (windowBytes * 1000.0) / windowMs;
+			if (bytesPerSecond == 0) {
+				bytesPerSecond = sample;
+			} else {
+				bytesPerSecond = updateAverage(bytesPerSecond, sample);
+			}
+			windowStartMs = now;
+			windowBytes = 0;
+		}
+	}
+
+	/**
+	 * return the average of the round trip times of all timer commands, or the
+	 * default if there are none.
+	 *
+	 * @return the average round trip time, in milliseconds.
+	 */
+	public synchronized double getAverageRttMs() {
+		if (rttMsMap.isEmpty()) {
+			return DEFAULT_RTT_MS;
+		}
+		double totalRttMs = 0;
+		for (final double rttMs : rttMsMap.values()) {
+			totalRttMs += rttMs;
+		}
+		return totalRttMs / rttMsMap.size();
+	}
+
+	/**
+	 * return the number of blocks delivered.
+	 *
+	 * @return the number of blocks delivered.
+	 */
+	public synchronized long getBlocksDelivered() {
+		return blocksDelivered;
+	}
+
+	/**
+	 * return the moving average of the bytes recieved per second.
+	 *
+	 * @return the bytes recieved per second.
+	 */
+	public synchronized double getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * return the time until which the peer is evicted, in milliseconds.
+	 *
+	 * @return the time until which the peer is evicted.
+	 */
+	public synchronized long getEvictedUntilMs() {
+		return evictedUntilMs;
+	}
+
+	/**
+	 * return the number of invalid messages recieved.
+	 *
+	 * @return the number of invalid messages recieved.
+	 */
+	public synchronized long getInvalidMessageCount() {
+		return invalidMessageCount;
+	}
+
+	/**
+	 * return the moving average round trip time for a timer command, or null if
+	 * it has not been measured.
+	 *
+	 * @param key
+	 *            the timer command key.
+	 * @return the round trip time, in milliseconds.
+	 */
+	public synchronized Double getRttMs(final String key) {
+		return rttMsMap.get(key);
+	}
+
+	/**
+	 * return the number of round trip times measured.
+	 *
+	 * @return the number of round trip times measured.
+	 */
+	public synchronized long getRttSampleCount() {
+		return rttSampleCount;
+	}
+
+	/**
+	 * return the score, higher is better.
+	 *
+	 * @return the score.
+	 */
+	public synchronized double getScore() {
+		final double throughput = (bytesPerSecond + BASE_BYTES_PER_SECOND) / (getAverageRttMs() + BASE_RTT_MS);
+		final double blockBoost = 1 + (blocksDelivered / (blocksDelivered + HALF_BOOST_BLOCKS));
+		return (throughput * blockBoost) / (1 + (invalidMessageCount * INVALID_MESSAGE_PENALTY));
+	}
+
+	/**
+	 * records that an invalid message was recieved.
+	 */
+	public synchronized void invalidMessage() {
+		invalidMessageCount++;
+	}
+
+	/**
+	 * return true if the peer is evicted.
+	 *
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return true if the peer is evicted.
+	 */
+	public synchronized boolean isEvicted(final long now) {
+		return evictedUntilMs > now;
+	}
+
+	/**
+	 * return true if nothing has been recorded about the peer.
+	 *
+	 * @return true if nothing has been recorded about the peer.
+	 */
+	public synchronized boolean isEmpty() {
+		return rttMsMap.isEmpty() && (bytesPerSecond == 0) && (invalidMessageCount == 0) && (blocksDelivered == 0)
+				&& (evictedUntilMs == 0);
+	}
+
+	/**
+	 * replaces the statistics with the ones in the JSON, as written by
+	 * toJSONObject().
+	 *
+	 * @param json
+	 *            the JSON to use.
+	 */
+	public synchronized void load(final JSONObject json) {
+		rttMsMap.clear();
+		final JSONObject rttJson = json.getJSONObject(RTT_MS);
+		for (final String key : rttJson.keySet()) {
+			rttMsMap.put(key, rttJson.getDouble(key));
+		}
+		rttSampleCount = json.getLong(RTT_SAMPLES);
+		bytesPerSecond = json.getDouble(BYTES_PER_SECOND);
+		invalidMessageCount = json.getLong(INVALID_MESSAGES);
+		blocksDelivered = json.getLong(BLOCKS_DELIVERED);
+		evictedUntilMs = json.getLong(EVICTED_UNTIL);
+	}
+
+	/**
+	 * records that a message was sent, so the round trip time can be measured
+	 * when the response arrives. Only the oldest unanswered request for each timer
+	 * command is timed.
+	 *
+	 * @param message
+	 *            the message.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void requestSent(final Message message, final long now) {
+		if (message.commandEnum == null) {
+			return;
+		}
+		final String key = getRequestKey(message);
+		if ((key != null) && !requestSentTimeMap.containsKey(key)) {
+			requestSentTimeMap.put(key, now);
+		}
+	}
+
+	/**
+	 * records that a message was recieved, and if it answers a timed request,
+	 * updates the round trip time for it's timer command.
+	 *
+	 * @param commandEnum
+	 *            the command of the message.
+	 * @param now
+	 *            the current time, in milliseconds.
+	 */
+	public synchronized void responseReceived(final CommandEnum commandEnum, final long now) {
+		final String key = getResponseKey(commandEnum);
+		if (key == null) {
+			return;
+		}
+		final Long sentTimeMs = requestSentTimeMap.remove(key);
+		if (sentTimeMs == null) {
+			return;
+		}
+		rttMsMap.put(key, updateAverage(rttMsMap.get(key), now - sentTimeMs));
+		rttSampleCount++;
+	}
+
+	/**
+	 * sets the time until which the peer is evicted.
+	 *
+	 * @param evictedUntilMs
+	 *            the time until which the peer is evicted, in milliseconds.
+	 */
+	public synchronized void setEvictedUntilMs(final long evictedUntilMs) {
+		this.evictedUntilMs = evictedUntilMs;
+	}
+
+	/**
+	 * return the statistics, and the score, as JSON.
+	 *
+	 * @return the statistics, as JSON.
+	 */
+	public synchronized JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		final JSONObject rttJson = new JSONObject();
+		for (final Entry<String, Double> rttEntry : rttMsMap.entrySet()) {
+			rttJson.put(rttEntry.getKey(), rttEntry.getValue());
+		}
+		json.put(RTT_MS, rttJson);
+		json.put(RTT_SAMPLES, rttSampleCount);
+		json.put(BYTES_PER_SECOND, bytesPerSecond);
+		json.put(INVALID_MESSAGES, invalidMessageCount);
+		json.put(BLOCKS_DELIVERED, blocksDelivered);
+		json.put(EVICTED_UNTIL, evictedUntilMs);
+		json.put(SCORE, getScore());
+		return json;
+	}
+}
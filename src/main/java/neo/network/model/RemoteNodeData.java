@@ -1,6 +1,7 @@
 package neo.network.model;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -15,6 +16,7 @@ import org.slf4j.LoggerFactory;
 import neo.model.network.Message;
 import neo.model.util.ConfigurationUtil;
 import neo.model.util.JsonUtil;
+import neo.network.RecurringTimer;
 import neo.network.TimerUtil;
 
 /**
@@ -125,6 +127,27 @@ public final class RemoteNodeData {
 	 */
 	private final ConcurrentLinkedQueue<Message> sendQueue = new ConcurrentLinkedQueue<>();
 
+	/**
+	 * the inventory this peer has announced or sent.
+	 */
+	private final KnownInventory knownInventory;
+
+	/**
+	 * the timers that send requests to this peer.
+	 */
+	private final List<RecurringTimer> recurringTimerList = new ArrayList<>();
+
+	/**
+	 * the statistics about how well the peer serves us.
+	 */
+	private final PeerStats peerStats = new PeerStats();
+
+	/**
+	 * the metrics of the messages sent to and recieved from the peer, without
+	 * histograms, as they are kept for every peer.
+	 */
+	private final MessageMetrics messageMetrics = new MessageMetrics(false);
+
 	/**
 	 * the good peer flag.
 	 */
@@ -135,6 +158,11 @@ public final class RemoteNodeData {
 	 */
 	private boolean isAcknowledgedPeer = false;
 
+	/**
+	 * the inbound peer flag, true if the peer connected to us.
+	 */
+	private boolean isInbound = false;
+
 	/**
 	 * the constructor.
 	 *
@@ -146,6 +174,7 @@ public final class RemoteNodeData {
 		timersMap = TimerUtil.getTimerMap(timersJson);
 		sleepIntervalMs = JsonUtil.getTime(config, ConfigurationUtil.SLEEP_INTERVAL);
 		recycleIntervalMs = JsonUtil.getTime(config, ConfigurationUtil.RECYCLE_INTERVAL);
+		knownInventory = new KnownInventory(config.getJSONObject(ConfigurationUtil.KNOWN_INVENTORY));
 	}
 
 	/**
@@ -176,6 +205,15 @@ public final class RemoteNodeData {
 		return peer.getAddress().getHostAddress();
 	}
 
+	/**
+	 * return the inventory this peer has announced or sent.
+	 *
+	 * @return the inventory this peer has announced or sent.
+	 */
+	public KnownInventory getKnownInventory() {
+		return knownInventory;
+	}
+
 	/**
 	 * return the last message timestamp.
 	 *
@@ -185,6 +223,24 @@ public final class RemoteNodeData {
 		return lastMessageTimestamp;
 	}
 
+	/**
+	 * return the metrics of the messages sent to and recieved from the peer.
+	 *
+	 * @return the metrics of the messages sent to and recieved from the peer.
+	 */
+	public MessageMetrics getMessageMetrics() {
+		return messageMetrics;
+	}
+
+	/**
+	 * return the statistics about how well the peer serves us.
+	 *
+	 * @return the peer statistics.
+	 */
+	public PeerStats getPeerStats() {
+		return peerStats;
+	}
+
 	/**
 	 * return the queue depth.
 	 *
@@ -278,6 +334,15 @@ public final class RemoteNodeData {
 		return isGoodPeer;
 	}
 
+	/**
+	 * return the inbound peer flag, true if the peer connected to us.
+	 *
+	 * @return the inbound peer flag.
+	 */
+	public boolean isInbound() {
+		return isInbound;
+	}
+
 	/**
 	 * queue up a message for sending.
 	 *
@@ -335,6 +400,16 @@ public final class RemoteNodeData {
 		this.isGoodPeer = isGoodPeer;
 	}
 
+	/**
+	 * set the inbound peer flag.
+	 *
+	 * @param isInbound
+	 *            the flag value to use.
+	 */
+	public void setInbound(final boolean isInbound) {
+		this.isInbound = isInbound;
+	}
+
 	/**
 	 * sets the last message timestamp.
 	 *
@@ -365,4 +440,33 @@ public final class RemoteNodeData {
 		this.version = version;
 	}
 
+	/**
+	 * starts the timers that send requests to this peer, stopping any timers
+	 * started for a previous connection.
+	 *
+	 * @param recurringTimers
+	 *            the timers to start.
+	 */
+	public void startRecurringTimers(final List<RecurringTimer> recurringTimers) {
+		synchronized (recurringTimerList) {
+			stopRecurringTimers();
+			recurringTimerList.addAll(recurringTimers);
+			for (final RecurringTimer recurringTimer : recurringTimerList) {
+				recurringTimer.start();
+			}
+		}
+	}
+
+	/**
+	 * stops the timers that send requests to this peer.
+	 */
+	public void stopRecurringTimers() {
+		synchronized (recurringTimerList) {
+			for (final RecurringTimer recurringTimer : recurringTimerList) {
+				recurringTimer.stop();
+			}
+			recurringTimerList.clear();
+		}
+	}
+
 }
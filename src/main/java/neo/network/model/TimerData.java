@@ -52,12 +52,17 @@ public class TimerData {
 	/**
 	 * the last sent time.
 	 */
-	private long lastSentTimeMs = 0;
+	private volatile long lastSentTimeMs = 0;
 
 	/**
 	 * waiting for response flag.
 	 */
-	private boolean waitingForResponse = false;
+	private volatile boolean waitingForResponse = false;
+
+	/**
+	 * the listener to run when a response is recieved, or null.
+	 */
+	private volatile Runnable responseListener;
 
 	/**
 	 * the label for logging.
@@ -83,6 +88,24 @@ public class TimerData {
 		}
 	}
 
+	/**
+	 * return the time until the timer is next ready to send, in milliseconds, or
+	 * zero if it is ready now.
+	 *
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @return the time until the timer is next ready to send, in milliseconds.
+	 */
+	public long getDelayUntilReadyMs(final long now) {
+		final long readyTimeMs;
+		if (waitingForResponse) {
+			readyTimeMs = lastSentTimeMs + waitTimeBeforeResendMs;
+		} else {
+			readyTimeMs = lastSentTimeMs + waitTimeBeforeSendMs;
+		}
+		return Math.max(0, (readyTimeMs - now) + 1);
+	}
+
 	/**
 	 * return the response command.
 	 *
@@ -136,6 +159,17 @@ public class TimerData {
 		waitingForResponse = true;
 	}
 
+	/**
+	 * sets the listener to run when a response is recieved, so a scheduled timer
+	 * can be moved earlier.
+	 *
+	 * @param responseListener
+	 *            the listener to use, or null.
+	 */
+	public void setResponseListener(final Runnable responseListener) {
+		this.responseListener = responseListener;
+	}
+
 	/**
 	 * tell the timer data object that the response was recieved, so it should
 	 * update the wait timer to false.
@@ -143,6 +177,10 @@ public class TimerData {
 	public void responseReceived() {
 		LOG.debug("STARTED responseReceived");
 		waitingForResponse = false;
+		final Runnable listener = responseListener;
+		if (listener != null) {
+			listener.run();
+		}
 		LOG.debug("SUCCESS responseReceived");
 	}
 
@@ -0,0 +1,134 @@
+package neo.network.model;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+import neo.model.util.MapUtil;
+
+/**
+ * the pool of buffers that outbound messages are serialized into, before they
+ * are written to a peer's socket.
+ * <p>
+ * a peer borrows a buffer when it has messages to send, serializes as many
+ * queued messages into it as fit, writes the buffer to the socket in one call,
+ * and returns it. So the buffers are only held while sending, and the pool
+ * only needs as many buffers as peers that send at the same time.
+ * <p>
+ * the pool is lock free.
+ *
+ * @author coranos
+ *
+ */
+public final class WriteBufferPool {
+
+	/**
+	 * the JSON key, "buffer-size".
+	 */
+	public static final String BUFFER_SIZE = "buffer-size";
+
+	/**
+	 * the JSON key, "max-pooled".
+	 */
+	public static final String MAX_POOLED = "max-pooled";
+
+	/**
+	 * the API call key for buffers allocated because the pool was empty.
+	 */
+	private static final String WRITE_BUFFER_ALLOCATED = "write-buffer-allocated";
+
+	/**
+	 * the size of each buffer, in bytes.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * the max number of buffers kept in the pool.
+	 */
+	private final int maxPooled;
+
+	/**
+	 * the buffers in the pool.
+	 */
+	private final Queue<ByteBuffer> bufferQueue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * the number of buffers in the pool.
+	 */
+	private final AtomicInteger pooledCount = new AtomicInteger();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param bufferSize
+	 *            the size of each buffer, in bytes.
+	 * @param maxPooled
+	 *            the max number of buffers kept in the pool.
+	 */
+	public WriteBufferPool(final int bufferSize, final int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public WriteBufferPool(final JSONObject config) {
+		this(config.getInt(BUFFER_SIZE), config.getInt(MAX_POOLED));
+	}
+
+	/**
+	 * borrows an empty buffer from the pool, or allocates a new one if the pool
+	 * is empty.
+	 *
+	 * @return the buffer.
+	 */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = bufferQueue.poll();
+		if (buffer == null) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, WRITE_BUFFER_ALLOCATED);
+			return ByteBuffer.allocate(bufferSize);
+		}
+		pooledCount.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * return the size of each buffer, in bytes.
+	 *
+	 * @return the size of each buffer, in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * return the number of buffers in the pool.
+	 *
+	 * @return the number of buffers in the pool.
+	 */
+	public int getPooledCount() {
+		return pooledCount.get();
+	}
+
+	/**
+	 * returns the buffer to the pool, unless the pool is full.
+	 *
+	 * @param buffer
+	 *            the buffer to return.
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (pooledCount.incrementAndGet() > maxPooled) {
+			pooledCount.decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		bufferQueue.add(buffer);
+	}
+}
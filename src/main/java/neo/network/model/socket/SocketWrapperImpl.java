@@ -46,6 +46,17 @@ public final class SocketWrapperImpl implements SocketWrapper {
 		}
 	}
 
+	/**
+	 * the constructor, for a socket that was accepted by a server socket, and so
+	 * is already connected.
+	 *
+	 * @param socketChannel
+	 *            the accepted socket.
+	 */
+	public SocketWrapperImpl(final SocketChannel socketChannel) {
+		this.socketChannel = socketChannel;
+	}
+
 	@Override
 	public void close() throws Exception {
 		socketChannel.close();
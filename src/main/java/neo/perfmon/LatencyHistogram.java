@@ -0,0 +1,177 @@
+package neo.perfmon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a lock free histogram of latencies, in nanoseconds.
+ * <p>
+ * the buckets are log linear: each power of two is split into eight buckets,
+ * so a quantile is within 12.5% of the true latency, and a recording is one
+ * atomic increment, whatever the latency. The exact max, sum, and error count
+ * are kept beside the buckets.
+ *
+ * @author coranos
+ *
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * the number of bits of each latency, after it's highest bit, that pick it's
+	 * bucket within it's power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * the number of buckets in each power of two.
+	 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * the number of buckets, enough for any positive long.
+	 */
+	private static final int BUCKET_COUNT = Long.SIZE * SUB_BUCKET_COUNT;
+
+	/**
+	 * return the index of the bucket of the latency.
+	 *
+	 * @param nanos
+	 *            the latency, in nanoseconds.
+	 * @return the bucket index.
+	 */
+	private static int getBucketIndex(final long nanos) {
+		if (nanos < SUB_BUCKET_COUNT) {
+			return (int) Math.max(0, nanos);
+		}
+		final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(nanos);
+		final int shift = exponent - SUB_BUCKET_BITS;
+		final int subBucket = (int) (nanos >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return ((shift + 1) * SUB_BUCKET_COUNT) + subBucket;
+	}
+
+	/**
+	 * return the highest latency in the bucket.
+	 *
+	 * @param index
+	 *            the bucket index.
+	 * @return the highest latency, in nanoseconds.
+	 */
+	private static long getBucketMaxNanos(final int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		final int shift = (index / SUB_BUCKET_COUNT) - 1;
+		final long subBucket = index % SUB_BUCKET_COUNT;
+		final long min = (SUB_BUCKET_COUNT + subBucket) << shift;
+		return (min + (1L << shift)) - 1;
+	}
+
+	/**
+	 * the count of latencies in each bucket.
+	 */
+	private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * the number of latencies.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * the number of latencies of calls that failed.
+	 */
+	private final LongAdder errorCount = new LongAdder();
+
+	/**
+	 * the sum of the latencies.
+	 */
+	private final LongAdder sumNanos = new LongAdder();
+
+	/**
+	 * the highest latency.
+	 */
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * return the number of latencies.
+	 *
+	 * @return the count.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * return the number of latencies of calls that failed.
+	 *
+	 * @return the error count.
+	 */
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	/**
+	 * return the highest latency.
+	 *
+	 * @return the max, in nanoseconds.
+	 */
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * return the latency that the quantile of latencies are at or below, rounded
+	 * up to the top of it's bucket, but never above the max.
+	 *
+	 * @param quantile
+	 *            the quantile, from 0 to 1, such as 0.99.
+	 * @return the latency, in nanoseconds, or zero if there are no latencies.
+	 */
+	public long getQuantileNanos(final double quantile) {
+		final long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int ix = 0; ix < BUCKET_COUNT; ix++) {
+			counts[ix] = bucketCounts.get(ix);
+			total += counts[ix];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int ix = 0; ix < BUCKET_COUNT; ix++) {
+			seen += counts[ix];
+			if (seen >= rank) {
+				return Math.min(getBucketMaxNanos(ix), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	 * return the sum of the latencies.
+	 *
+	 * @return the sum, in nanoseconds.
+	 */
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+
+	/**
+	 * records a latency.
+	 *
+	 * @param nanos
+	 *            the latency, in nanoseconds.
+	 * @param error
+	 *            if true, the call failed.
+	 */
+	public void record(final long nanos, final boolean error) {
+		bucketCounts.incrementAndGet(getBucketIndex(nanos));
+		count.increment();
+		sumNanos.add(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+		if (error) {
+			errorCount.increment();
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.text.NumberFormat;
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.commons.collections4.BoundedCollection;
 import org.apache.commons.collections4.queue.CircularFifoQueue;
@@ -37,6 +38,11 @@ public final class PerformanceMonitor implements AutoCloseable {
 	 */
 	public static final Map<String, Long> PERF_DATA_COUNT_MAP = Collections.synchronizedMap(new TreeMap<>());
 
+	/**
+	 * the latency histograms, by name.
+	 */
+	public static final Map<String, LatencyHistogram> LATENCY_MAP = new ConcurrentSkipListMap<>();
+
 	/**
 	 * max history of performance for stats.
 	 */
@@ -83,6 +89,11 @@ public final class PerformanceMonitor implements AutoCloseable {
 	 */
 	private final long startTime;
 
+	/**
+	 * the start time, in nanoseconds, for the latency histogram.
+	 */
+	private final long startNanos;
+
 	/**
 	 * the name.
 	 */
@@ -123,6 +134,7 @@ public final class PerformanceMonitor implements AutoCloseable {
 	 */
 	public PerformanceMonitor(final String name, final long count) {
 		startTime = System.currentTimeMillis();
+		startNanos = System.nanoTime();
 		this.name = name;
 		this.count = count;
 		totalMillisName = name + "TotalMillis";
@@ -133,6 +145,7 @@ public final class PerformanceMonitor implements AutoCloseable {
 	@Override
 	public void close() {
 		final long measurement = System.currentTimeMillis() - startTime;
+		LATENCY_MAP.computeIfAbsent(name, key -> new LatencyHistogram()).record(System.nanoTime() - startNanos, false);
 		addToPerfDataSumMap(totalMillisName, measurement);
 		addToPerfDataSumMap(name, count);
 		MapUtil.increment(PERF_DATA_COUNT_MAP, name, count);
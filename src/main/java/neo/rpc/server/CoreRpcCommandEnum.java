@@ -34,6 +34,8 @@ public enum CoreRpcCommandEnum {
 	SUBMITBLOCK("submitblock"),
 	/** getaccountlist. */
 	GETACCOUNTLIST("getaccountlist"),
+	/** getmessagemetrics. */
+	GETMESSAGEMETRICS("getmessagemetrics"),
 	/** default, unknown. */
 	UNKNOWN(""),
 	/** */
@@ -0,0 +1,216 @@
+package neo.rpc.server;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.json.JSONObject;
+
+/**
+ * writes JSON incrementally onto a stream, so a large result is never held in
+ * memory as a JSON tree or a string.
+ * <p>
+ * objects and arrays are opened and closed with the begin and end methods, and
+ * commas are written as needed. Values are written with org.json's rules, so a
+ * value can be a small JSONObject or JSONArray, such as one entry of a list.
+ *
+ * @author coranos
+ *
+ */
+public final class JsonStreamWriter implements Closeable {
+
+	/**
+	 * the size of the buffer between the writer and the stream.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * return the JSON written by the streamable, as UTF-8 bytes.
+	 *
+	 * @param streamable
+	 *            the streamable to use.
+	 * @return the JSON bytes.
+	 */
+	public static byte[] toByteArray(final JsonStreamable streamable) {
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (JsonStreamWriter writer = new JsonStreamWriter(bout)) {
+			streamable.writeTo(writer);
+		}
+		return bout.toByteArray();
+	}
+
+	/**
+	 * the writer.
+	 */
+	private final Writer writer;
+
+	/**
+	 * for each open object or array, true if nothing has been written in it yet.
+	 */
+	private final Deque<Boolean> firstStack = new ArrayDeque<>();
+
+	/**
+	 * if true, a key was written, and the next value is it's value.
+	 */
+	private boolean afterKey = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param out
+	 *            the stream to write to.
+	 */
+	public JsonStreamWriter(final OutputStream out) {
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	/**
+	 * writes a comma if the value is not the first in it's object or array.
+	 */
+	private void beforeValue() {
+		if (afterKey) {
+			afterKey = false;
+			return;
+		}
+		if (firstStack.isEmpty()) {
+			return;
+		}
+		if (firstStack.peek()) {
+			firstStack.pop();
+			firstStack.push(false);
+		} else {
+			write(",");
+		}
+	}
+
+	/**
+	 * opens an array.
+	 *
+	 * @return this writer.
+	 */
+	public JsonStreamWriter beginArray() {
+		beforeValue();
+		write("[");
+		firstStack.push(true);
+		return this;
+	}
+
+	/**
+	 * opens an object.
+	 *
+	 * @return this writer.
+	 */
+	public JsonStreamWriter beginObject() {
+		beforeValue();
+		write("{");
+		firstStack.push(true);
+		return this;
+	}
+
+	/**
+	 * flushes and closes the writer, and the stream.
+	 */
+	@Override
+	public void close() {
+		try {
+			writer.close();
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * closes an array.
+	 *
+	 * @return this writer.
+	 */
+	public JsonStreamWriter endArray() {
+		firstStack.pop();
+		write("]");
+		return this;
+	}
+
+	/**
+	 * closes an object.
+	 *
+	 * @return this writer.
+	 */
+	public JsonStreamWriter endObject() {
+		firstStack.pop();
+		write("}");
+		return this;
+	}
+
+	/**
+	 * writes a key and it's value, in an object.
+	 *
+	 * @param name
+	 *            the key.
+	 * @param value
+	 *            the value.
+	 * @return this writer.
+	 */
+	public JsonStreamWriter entry(final String name, final Object value) {
+		return key(name).value(value);
+	}
+
+	/**
+	 * flushes the buffered JSON to the stream.
+	 */
+	public void flush() {
+		try {
+			writer.flush();
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * writes a key, in an object. The next value written is it's value.
+	 *
+	 * @param name
+	 *            the key.
+	 * @return this writer.
+	 */
+	public JsonStreamWriter key(final String name) {
+		beforeValue();
+		write(JSONObject.quote(name));
+		write(":");
+		afterKey = true;
+		return this;
+	}
+
+	/**
+	 * writes a value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return this writer.
+	 */
+	public JsonStreamWriter value(final Object value) {
+		beforeValue();
+		write(JSONObject.valueToString(value));
+		return this;
+	}
+
+	/**
+	 * writes the string to the writer.
+	 *
+	 * @param str
+	 *            the string to write.
+	 */
+	private void write(final String str) {
+		try {
+			writer.write(str);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
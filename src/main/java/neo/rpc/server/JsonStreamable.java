@@ -0,0 +1,19 @@
+package neo.rpc.server;
+
+/**
+ * a response that is written incrementally onto a JSON stream, instead of being
+ * built as a JSONObject, so large results are not held in memory.
+ *
+ * @author coranos
+ *
+ */
+public interface JsonStreamable {
+
+	/**
+	 * writes the response.
+	 *
+	 * @param writer
+	 *            the writer to use.
+	 */
+	void writeTo(JsonStreamWriter writer);
+}
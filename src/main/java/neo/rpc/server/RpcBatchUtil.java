@@ -0,0 +1,205 @@
+package neo.rpc.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.MapUtil;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.network.LocalControllerNode;
+import neo.network.model.LocalNodeData;
+
+/**
+ * the utility for processing JSON-RPC 2.0 batch requests, an array of request
+ * objects sent in one HTTP request.
+ * <p>
+ * the calls in a batch are independent, so they are run in parallel. The
+ * thread handling the batch runs calls itself, and helpers are started on the
+ * RPC executor, if it has room. Each thread takes the next call that has not
+ * been started, so the batch never waits on a helper that is queued behind
+ * other work. The responses are returned in the order of the requests.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcBatchUtil {
+
+	/**
+	 * the JSON key, "max-batch-size".
+	 */
+	public static final String MAX_BATCH_SIZE = "max-batch-size";
+
+	/**
+	 * the JSON key, "batch-parallelism".
+	 */
+	public static final String BATCH_PARALLELISM = "batch-parallelism";
+
+	/**
+	 * the response tag for an error.
+	 */
+	private static final String ERROR = "error";
+
+	/**
+	 * the response tag for an error, for the expected value of a field.
+	 */
+	private static final String EXPECTED = "expected";
+
+	/**
+	 * the response tag for an error, for the actual value of a field.
+	 */
+	private static final String ACTUAL = "actual";
+
+	/**
+	 * the error for a call in a batch that is not a valid request.
+	 */
+	private static final String INVALID_REQUEST = "invalid request";
+
+	/**
+	 * the API call key for batch requests.
+	 */
+	private static final String RPC_BATCH = "rpc-batch";
+
+	/**
+	 * the API call key for the calls in batch requests.
+	 */
+	private static final String RPC_BATCH_CALLS = "rpc-batch-calls";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(RpcBatchUtil.class);
+
+	/**
+	 * return true if the request body is a batch, a JSON array.
+	 *
+	 * @param requestStr
+	 *            the request body.
+	 * @return true if the request body is a batch.
+	 */
+	public static boolean isBatch(final String requestStr) {
+		for (int ix = 0; ix < requestStr.length(); ix++) {
+			final char c = requestStr.charAt(ix);
+			if (!Character.isWhitespace(c)) {
+				return c == '[';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * return a new error response.
+	 *
+	 * @param error
+	 *            the error message.
+	 * @param expected
+	 *            the expected value.
+	 * @param actual
+	 *            the actual value.
+	 * @return the new error response.
+	 */
+	private static JSONObject newErrorResponse(final String error, final Object expected, final Object actual) {
+		final JSONObject response = new JSONObject();
+		response.put(ERROR, error);
+		response.put(EXPECTED, expected);
+		response.put(ACTUAL, actual);
+		return response;
+	}
+
+	/**
+	 * processes the batch request.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param requestArray
+	 *            the request objects.
+	 * @param executor
+	 *            the executor to run helpers on.
+	 * @param config
+	 *            the configuration to use, with the max batch size and the max
+	 *            number of threads running calls for a batch.
+	 * @return the responses, as a JSON array in the order of the requests, or an
+	 *         error response object if the batch is empty or too large.
+	 */
+	public static Object process(final LocalControllerNode controller, final JSONArray requestArray,
+			final MeteredExecutor executor, final JSONObject config) {
+		final int size = requestArray.length();
+		final int maxBatchSize = config.getInt(MAX_BATCH_SIZE);
+		if (size == 0) {
+			return newErrorResponse("empty batch", "at least one request", size);
+		}
+		if (size > maxBatchSize) {
+			return newErrorResponse("batch too large", maxBatchSize, size);
+		}
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_BATCH);
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_BATCH_CALLS, size);
+
+		final JSONObject[] responses = new JSONObject[size];
+		final AtomicInteger nextIx = new AtomicInteger();
+		final CountDownLatch doneLatch = new CountDownLatch(size);
+		final Runnable worker = () -> {
+			int ix = nextIx.getAndIncrement();
+			while (ix < size) {
+				responses[ix] = processCall(controller, requestArray.opt(ix));
+				doneLatch.countDown();
+				ix = nextIx.getAndIncrement();
+			}
+		};
+		final int helperCount = Math.min(config.getInt(BATCH_PARALLELISM), size) - 1;
+		for (int helperIx = 0; helperIx < helperCount; helperIx++) {
+			if (!executor.tryExecute(worker)) {
+				break;
+			}
+		}
+		worker.run();
+		try {
+			doneLatch.await();
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		final JSONArray responseArray = new JSONArray();
+		for (final JSONObject response : responses) {
+			responseArray.put(response);
+		}
+		return responseArray;
+	}
+
+	/**
+	 * processes one call in a batch, and records it's latency. An error in the
+	 * call is an error response, so it does not fail the other calls.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param request
+	 *            the request, which should be a JSON object.
+	 * @return the response.
+	 */
+	private static JSONObject processCall(final LocalControllerNode controller, final Object request) {
+		if (!(request instanceof JSONObject)) {
+			return newErrorResponse(INVALID_REQUEST, "object", String.valueOf(request));
+		}
+		final String name = RpcMetricsUtil.getCoreRpcName(request);
+		final long startNanos = System.nanoTime();
+		try {
+			final JSONObject response = RpcServerUtil.processCoreRpc(controller, (JSONObject) request);
+			RpcMetricsUtil.record(name, startNanos, response.has(ERROR));
+			return response;
+		} catch (final RuntimeException e) {
+			RpcMetricsUtil.record(name, startNanos, true);
+			LOG.debug("error in batch call {}", request, e);
+			final JSONObject response = newErrorResponse(INVALID_REQUEST, "valid request", e.getMessage());
+			response.put(RpcServerUtil.ID, ((JSONObject) request).opt(RpcServerUtil.ID));
+			return response;
+		}
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private RpcBatchUtil() {
+
+	}
+}
@@ -0,0 +1,35 @@
+package neo.rpc.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * the chunks of a response body in HTTP/1.1 chunked transfer encoding, which
+ * the connection takes on the selector thread as they are ready.
+ *
+ * @author coranos
+ *
+ */
+interface RpcChunkSource {
+
+	/**
+	 * return true if the body failed, and the connection should be closed without
+	 * the last chunk.
+	 *
+	 * @return true if the body failed.
+	 */
+	boolean isFailed();
+
+	/**
+	 * return true if the last chunk has been queued and taken.
+	 *
+	 * @return true if the body is complete.
+	 */
+	boolean isComplete();
+
+	/**
+	 * return the next chunk, or null if none is waiting.
+	 *
+	 * @return the next chunk.
+	 */
+	ByteBuffer poll();
+}
@@ -0,0 +1,252 @@
+package neo.rpc.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * the body of a streamed response, in HTTP/1.1 chunked transfer encoding.
+ * <p>
+ * the handler writes on the RPC executor, and the bytes are cut into chunks,
+ * which the connection takes on the selector thread. Only a few chunks can be
+ * waiting, so when the client reads slowly the handler waits, and the memory
+ * used does not grow with the size of the response.
+ *
+ * @author coranos
+ *
+ */
+final class RpcChunkedOutputStream extends OutputStream implements RpcChunkSource {
+
+	/**
+	 * the line separator in a chunk.
+	 */
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * the last chunk, which ends the body.
+	 */
+	private static final byte[] LAST_CHUNK = ("0" + CRLF + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * the time to wait for room in the chunk queue, before checking if the
+	 * connection closed, in milliseconds.
+	 */
+	private static final long OFFER_WAIT_MS = 100;
+
+	/**
+	 * return the bytes as one chunk, the size in hex, the bytes, and a line
+	 * separator.
+	 *
+	 * @param ba
+	 *            the bytes to use.
+	 * @param off
+	 *            the offset of the first byte.
+	 * @param len
+	 *            the number of bytes.
+	 * @return the chunk.
+	 */
+	static ByteBuffer toChunk(final byte[] ba, final int off, final int len) {
+		final byte[] sizeBa = (Integer.toHexString(len) + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+		final ByteBuffer chunk = ByteBuffer.allocate(sizeBa.length + len + 2);
+		chunk.put(sizeBa);
+		chunk.put(ba, off, len);
+		chunk.put((byte) '\r');
+		chunk.put((byte) '\n');
+		chunk.flip();
+		return chunk;
+	}
+
+	/**
+	 * the bytes written, that are not yet a chunk.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * the number of bytes in the buffer.
+	 */
+	private int count = 0;
+
+	/**
+	 * the chunks waiting to be written to the client.
+	 */
+	private final BlockingQueue<ByteBuffer> chunkQueue;
+
+	/**
+	 * the time to wait for the client to take a chunk, in milliseconds.
+	 */
+	private final long timeoutMs;
+
+	/**
+	 * returns true if the connection closed.
+	 */
+	private final BooleanSupplier closedSupplier;
+
+	/**
+	 * tells the connection a chunk is ready.
+	 */
+	private final Runnable onChunkReady;
+
+	/**
+	 * if true, the last chunk has been queued.
+	 */
+	private volatile boolean done = false;
+
+	/**
+	 * if true, the handler failed, and the body is incomplete.
+	 */
+	private volatile boolean failed = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param chunkBytes
+	 *            the max size of a chunk.
+	 * @param maxChunks
+	 *            the max number of chunks waiting to be written.
+	 * @param timeoutMs
+	 *            the time to wait for the client to take a chunk, in
+	 *            milliseconds.
+	 * @param closedSupplier
+	 *            returns true if the connection closed.
+	 * @param onChunkReady
+	 *            tells the connection a chunk is ready.
+	 */
+	RpcChunkedOutputStream(final int chunkBytes, final int maxChunks, final long timeoutMs,
+			final BooleanSupplier closedSupplier, final Runnable onChunkReady) {
+		buffer = new byte[chunkBytes];
+		chunkQueue = new ArrayBlockingQueue<>(maxChunks);
+		this.timeoutMs = timeoutMs;
+		this.closedSupplier = closedSupplier;
+		this.onChunkReady = onChunkReady;
+	}
+
+	/**
+	 * marks the body as failed, so the connection is closed without the last
+	 * chunk, and the client sees the response is incomplete.
+	 */
+	void abort() {
+		failed = true;
+		onChunkReady.run();
+	}
+
+	/**
+	 * writes the buffered bytes and the last chunk.
+	 *
+	 * @throws IOException
+	 *             if the connection closed, or the client did not read in time.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (done || failed) {
+			return;
+		}
+		queueBuffer();
+		queueChunk(ByteBuffer.wrap(LAST_CHUNK));
+		done = true;
+		onChunkReady.run();
+	}
+
+	@Override
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return done && chunkQueue.isEmpty();
+	}
+
+	@Override
+	public ByteBuffer poll() {
+		return chunkQueue.poll();
+	}
+
+	/**
+	 * queues the buffered bytes as a chunk.
+	 *
+	 * @throws IOException
+	 *             if the connection closed, or the client did not read in time.
+	 */
+	private void queueBuffer() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		final ByteBuffer chunk = toChunk(buffer, 0, count);
+		count = 0;
+		queueChunk(chunk);
+		onChunkReady.run();
+	}
+
+	/**
+	 * queues a chunk, waiting for room if the client is reading slowly.
+	 *
+	 * @param chunk
+	 *            the chunk to queue.
+	 * @throws IOException
+	 *             if the connection closed, or the client did not read in time.
+	 */
+	private void queueChunk(final ByteBuffer chunk) throws IOException {
+		final long endMs = System.currentTimeMillis() + timeoutMs;
+		try {
+			while (!chunkQueue.offer(chunk, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+				if (closedSupplier.getAsBoolean()) {
+					throw new IOException("connection closed");
+				}
+				if (System.currentTimeMillis() > endMs) {
+					throw new IOException("timed out waiting for the client to read");
+				}
+			}
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * writes bytes, queueing a chunk each time the buffer fills.
+	 *
+	 * @param ba
+	 *            the bytes to write.
+	 * @param off
+	 *            the offset of the first byte.
+	 * @param len
+	 *            the number of bytes.
+	 * @throws IOException
+	 *             if the connection closed, or the client did not read in time.
+	 */
+	@Override
+	public void write(final byte[] ba, final int off, final int len) throws IOException {
+		int ix = off;
+		final int end = off + len;
+		while (ix < end) {
+			final int n = Math.min(buffer.length - count, end - ix);
+			System.arraycopy(ba, ix, buffer, count, n);
+			count += n;
+			ix += n;
+			if (count == buffer.length) {
+				queueBuffer();
+			}
+		}
+	}
+
+	/**
+	 * writes a byte.
+	 *
+	 * @param b
+	 *            the byte to write.
+	 * @throws IOException
+	 *             if the connection closed, or the client did not read in time.
+	 */
+	@Override
+	public void write(final int b) throws IOException {
+		buffer[count] = (byte) b;
+		count++;
+		if (count == buffer.length) {
+			queueBuffer();
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package neo.rpc.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.bytes.UInt160;
+import neo.model.core.Block;
+import neo.model.core.CoinReference;
+import neo.model.core.Transaction;
+import neo.model.core.TransactionOutput;
+import neo.model.db.BlockDb;
+import neo.model.util.MapUtil;
+import neo.model.util.ModelUtil;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.network.model.LocalNodeData;
+
+/**
+ * pushes new blocks, new memory pool transactions, and the activity of
+ * accounts, to clients subscribed with server sent events on the RPC port, so
+ * they do not poll "getblockcount" and "getblock".
+ * <p>
+ * a client subscribes with "GET /events", and the query parameters "blocks",
+ * "transactions", and "address=" once for each account. Each event is encoded
+ * once, and queued to each subscription without waiting. A subscription whose
+ * queue is full is dropped, so a slow client never holds up the node.
+ * <p>
+ * finding the accounts of a block's transactions reads the transaction of
+ * each input from the block database, so account events are found on the
+ * executor, one block at a time in the order the blocks were added, and not
+ * on the thread that added the blocks.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcEventHub {
+
+	/**
+	 * the JSON key, "events".
+	 */
+	public static final String EVENTS = "events";
+
+	/**
+	 * the JSON key, "max-subscribers".
+	 */
+	public static final String MAX_SUBSCRIBERS = "max-subscribers";
+
+	/**
+	 * the JSON key, "max-queued-events".
+	 */
+	public static final String MAX_QUEUED_EVENTS = "max-queued-events";
+
+	/**
+	 * the URI to subscribe to events.
+	 */
+	public static final String EVENTS_URI = "/events";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(RpcEventHub.class);
+
+	/**
+	 * the event, and query parameter, for new blocks.
+	 */
+	private static final String BLOCKS = "blocks";
+
+	/**
+	 * the event, and query parameter, for new memory pool transactions.
+	 */
+	private static final String TRANSACTIONS = "transactions";
+
+	/**
+	 * the event, and query parameter, for account activity.
+	 */
+	private static final String ADDRESS = "address";
+
+	/**
+	 * the content type, "text/event-stream".
+	 */
+	private static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+	/**
+	 * the API call key for subscriptions.
+	 */
+	private static final String RPC_EVENT_SUBSCRIBED = "rpc-event-subscribed";
+
+	/**
+	 * the API call key for subscriptions dropped because the client read too
+	 * slowly.
+	 */
+	private static final String RPC_EVENT_DROPPED = "rpc-event-dropped";
+
+	/**
+	 * the API call key for blocks whose account events were skipped because too
+	 * many blocks were waiting for the executor.
+	 */
+	private static final String RPC_EVENT_ADDRESS_SKIPPED = "rpc-event-address-skipped";
+
+	/**
+	 * return the accounts that sent or recieved value in the transaction. Inputs
+	 * whose transaction is not in the block database are skipped.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param transaction
+	 *            the transaction to use.
+	 * @return the accounts.
+	 */
+	private static Set<UInt160> getAccounts(final BlockDb blockDb, final Transaction transaction) {
+		final Set<UInt160> accounts = new TreeSet<>();
+		for (final CoinReference cr : transaction.inputs) {
+			final Transaction tiTx = blockDb.getTransactionWithHash(cr.prevHash.reverse());
+			if (tiTx != null) {
+				accounts.add(tiTx.outputs.get(cr.prevIndex.asInt()).scriptHash);
+			}
+		}
+		for (final TransactionOutput output : transaction.outputs) {
+			accounts.add(output.scriptHash);
+		}
+		return accounts;
+	}
+
+	/**
+	 * return the event as a chunk, in the server sent events format.
+	 *
+	 * @param event
+	 *            the name of the event.
+	 * @param data
+	 *            the data of the event.
+	 * @return the chunk.
+	 */
+	private static ByteBuffer toChunk(final String event, final JSONObject data) {
+		final String str = "event: " + event + "\ndata: " + data.toString() + "\n\n";
+		final byte[] ba = str.getBytes(StandardCharsets.UTF_8);
+		return RpcChunkedOutputStream.toChunk(ba, 0, ba.length);
+	}
+
+	/**
+	 * the max number of subscriptions.
+	 */
+	private final int maxSubscribers;
+
+	/**
+	 * the max number of events waiting to be written to a subscription.
+	 */
+	private final int maxQueuedEvents;
+
+	/**
+	 * the subscriptions.
+	 */
+	private final Set<RpcEventSubscription> subscriptionSet = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * the executor that finds the account events.
+	 */
+	private final MeteredExecutor executor;
+
+	/**
+	 * the blocks waiting for their account events to be found.
+	 */
+	private final Queue<Block> accountBlockQueue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * true if a task on the executor is finding account events.
+	 */
+	private final AtomicBoolean accountTaskRunning = new AtomicBoolean();
+
+	/**
+	 * the blockDb the account events are read from.
+	 */
+	private volatile BlockDb accountBlockDb;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 * @param executor
+	 *            the executor that finds the account events.
+	 */
+	public RpcEventHub(final JSONObject config, final MeteredExecutor executor) {
+		maxSubscribers = config.getInt(MAX_SUBSCRIBERS);
+		maxQueuedEvents = config.getInt(MAX_QUEUED_EVENTS);
+		this.executor = executor;
+	}
+
+	/**
+	 * return true if any subscription matches.
+	 *
+	 * @param filter
+	 *            the filter to use.
+	 * @return true if any subscription matches.
+	 */
+	private boolean anyMatch(final Predicate<RpcEventSubscription> filter) {
+		for (final RpcEventSubscription subscription : subscriptionSet) {
+			if (filter.test(subscription)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * return the number of subscriptions.
+	 *
+	 * @return the number of subscriptions.
+	 */
+	public int getSubscriberCount() {
+		removeDone();
+		return subscriptionSet.size();
+	}
+
+	/**
+	 * sends the block's transactions to the subscriptions for their accounts.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param block
+	 *            the block to use.
+	 */
+	private void publishAccounts(final BlockDb blockDb, final Block block) {
+		for (final Transaction transaction : block.getTransactionList()) {
+			for (final UInt160 account : getAccounts(blockDb, transaction)) {
+				if (anyMatch(subscription -> subscription.hasAccount(account))) {
+					final JSONObject data = new JSONObject();
+					data.put(ADDRESS, ModelUtil.scriptHashToAddress(account));
+					data.put("txid", transaction.getHash().toString());
+					data.put("block", block.getIndexAsLong());
+					publish(toChunk(ADDRESS, data), subscription -> subscription.hasAccount(account));
+				}
+			}
+		}
+	}
+
+	/**
+	 * publishes the account events of the waiting blocks, in order, until none
+	 * are left. Runs on the executor.
+	 */
+	private void publishAccountBlocks() {
+		try {
+			Block block = accountBlockQueue.poll();
+			while (block != null) {
+				if (anyMatch(RpcEventSubscription::hasAccounts)) {
+					publishAccounts(accountBlockDb, block);
+				}
+				block = accountBlockQueue.poll();
+			}
+		} catch (final RuntimeException e) {
+			LOG.error("error publishing account events", e);
+		} finally {
+			accountTaskRunning.set(false);
+		}
+		startAccountTask();
+	}
+
+	/**
+	 * sends the block to the subscriptions for blocks now, and queues it so it's
+	 * transactions are sent to the subscriptions for their accounts on the
+	 * executor. The block must be in the block database.
+	 *
+	 * @param blockDb
+	 *            the block database to use.
+	 * @param block
+	 *            the block to use.
+	 */
+	public void publishBlock(final BlockDb blockDb, final Block block) {
+		removeDone();
+		if (subscriptionSet.isEmpty()) {
+			return;
+		}
+		if (anyMatch(RpcEventSubscription::isBlocks)) {
+			publish(toChunk(BLOCKS, block.toJSONObject()), RpcEventSubscription::isBlocks);
+		}
+		if (!anyMatch(RpcEventSubscription::hasAccounts)) {
+			return;
+		}
+		if (accountBlockQueue.size() >= maxQueuedEvents) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_EVENT_ADDRESS_SKIPPED);
+			return;
+		}
+		accountBlockDb = blockDb;
+		accountBlockQueue.add(block);
+		startAccountTask();
+	}
+
+	/**
+	 * sends the event to the matching subscriptions, and drops those that are
+	 * full.
+	 *
+	 * @param chunk
+	 *            the event, as a chunk.
+	 * @param filter
+	 *            the filter to use.
+	 */
+	private void publish(final ByteBuffer chunk, final Predicate<RpcEventSubscription> filter) {
+		for (final RpcEventSubscription subscription : subscriptionSet) {
+			if (filter.test(subscription) && !subscription.offer(chunk)) {
+				LOG.debug("dropped slow event subscription");
+				MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_EVENT_DROPPED);
+				subscriptionSet.remove(subscription);
+			}
+		}
+	}
+
+	/**
+	 * sends the transaction, which was just added to the memory pool, to the
+	 * subscriptions for transactions.
+	 *
+	 * @param transaction
+	 *            the transaction to use.
+	 */
+	public void publishTransaction(final Transaction transaction) {
+		removeDone();
+		if (anyMatch(RpcEventSubscription::isTransactions)) {
+			publish(toChunk(TRANSACTIONS, transaction.toJSONObject()), RpcEventSubscription::isTransactions);
+		}
+	}
+
+	/**
+	 * forgets the subscriptions that failed or whose connection closed.
+	 */
+	private void removeDone() {
+		for (final RpcEventSubscription subscription : new ArrayList<>(subscriptionSet)) {
+			if (subscription.isDone()) {
+				subscriptionSet.remove(subscription);
+			}
+		}
+	}
+
+	/**
+	 * starts a task on the executor to publish the account events of the waiting
+	 * blocks, unless one is running already or none are waiting. If the executor
+	 * is full, the blocks wait for the next block.
+	 */
+	private void startAccountTask() {
+		if (accountBlockQueue.isEmpty() || !accountTaskRunning.compareAndSet(false, true)) {
+			return;
+		}
+		if (!executor.tryExecute(this::publishAccountBlocks)) {
+			accountTaskRunning.set(false);
+		}
+	}
+
+	/**
+	 * subscribes the client to the events in the request's query, and returns the
+	 * response, whose body is the events. HTTP/1.0 clients can't take a chunked
+	 * body, and are refused.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @return the response.
+	 */
+	public RpcHttpResponse subscribe(final RpcHttpRequest request) {
+		if (request.getVersion().equals(RpcHttpRequest.HTTP_1_0)) {
+			return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "events need HTTP/1.1");
+		}
+		boolean blocks = false;
+		boolean transactions = false;
+		final Set<UInt160> accounts = new TreeSet<>();
+		if (request.getQuery() != null) {
+			for (final String param : request.getQuery().split("&")) {
+				final int equalsIx = param.indexOf('=');
+				final String name = equalsIx < 0 ? param : param.substring(0, equalsIx);
+				if (name.equals(BLOCKS)) {
+					blocks = true;
+				} else if (name.equals(TRANSACTIONS)) {
+					transactions = true;
+				} else if (name.equals(ADDRESS) && (equalsIx > 0)) {
+					try {
+						accounts.add(ModelUtil.addressToScriptHash(param.substring(equalsIx + 1)));
+					} catch (final RuntimeException e) {
+						return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "bad address");
+					}
+				}
+			}
+		}
+		if (!blocks && !transactions && accounts.isEmpty()) {
+			return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "no events");
+		}
+		removeDone();
+		if (subscriptionSet.size() >= maxSubscribers) {
+			return RpcHttpResponse.error(RpcHttpResponse.SERVICE_UNAVAILABLE, "too many subscribers");
+		}
+		final RpcEventSubscription subscription = new RpcEventSubscription(blocks, transactions, accounts,
+				maxQueuedEvents);
+		subscriptionSet.add(subscription);
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_EVENT_SUBSCRIBED);
+		return RpcHttpResponse.subscribe(TEXT_EVENT_STREAM, subscription).addHeader("Cache-Control", "no-cache");
+	}
+}
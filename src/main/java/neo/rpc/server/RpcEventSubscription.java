@@ -0,0 +1,189 @@
+package neo.rpc.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+
+import neo.model.bytes.UInt160;
+
+/**
+ * a client's subscription to server sent events, the body of a response that
+ * never ends.
+ * <p>
+ * events are queued by the thread that publishes them, and taken by the
+ * connection on the selector thread. The queue is bounded, and events are never
+ * waited for, so when a client reads too slowly and the queue fills, the
+ * subscription fails, and the connection is closed.
+ *
+ * @author coranos
+ *
+ */
+final class RpcEventSubscription implements RpcChunkSource {
+
+	/**
+	 * the first chunk, a comment, so the client knows the subscription started.
+	 */
+	private static final byte[] STARTED = ": subscribed\n\n".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * if true, send new blocks.
+	 */
+	private final boolean blocks;
+
+	/**
+	 * if true, send new memory pool transactions.
+	 */
+	private final boolean transactions;
+
+	/**
+	 * the accounts to send activity for.
+	 */
+	private final Set<UInt160> accounts;
+
+	/**
+	 * the chunks waiting to be written to the client.
+	 */
+	private final BlockingQueue<ByteBuffer> chunkQueue;
+
+	/**
+	 * returns true if the connection closed, or null if the subscription has not
+	 * started.
+	 */
+	private volatile BooleanSupplier closedSupplier;
+
+	/**
+	 * tells the connection a chunk is ready, or null if the subscription has not
+	 * started.
+	 */
+	private volatile Runnable onChunkReady;
+
+	/**
+	 * if true, the queue filled, and the client is dropped.
+	 */
+	private volatile boolean failed = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param blocks
+	 *            if true, send new blocks.
+	 * @param transactions
+	 *            if true, send new memory pool transactions.
+	 * @param accounts
+	 *            the accounts to send activity for.
+	 * @param maxQueuedEvents
+	 *            the max number of events waiting to be written.
+	 */
+	RpcEventSubscription(final boolean blocks, final boolean transactions, final Set<UInt160> accounts,
+			final int maxQueuedEvents) {
+		this.blocks = blocks;
+		this.transactions = transactions;
+		this.accounts = accounts;
+		chunkQueue = new ArrayBlockingQueue<>(maxQueuedEvents + 1);
+		chunkQueue.add(RpcChunkedOutputStream.toChunk(STARTED, 0, STARTED.length));
+	}
+
+	/**
+	 * return true if the client is sent activity for the account.
+	 *
+	 * @param account
+	 *            the account to use.
+	 * @return true if the client is sent activity for the account.
+	 */
+	boolean hasAccount(final UInt160 account) {
+		return accounts.contains(account);
+	}
+
+	/**
+	 * return true if the client is sent activity for any account.
+	 *
+	 * @return true if the client is sent account activity.
+	 */
+	boolean hasAccounts() {
+		return !accounts.isEmpty();
+	}
+
+	/**
+	 * return true if the client is sent new blocks.
+	 *
+	 * @return true if the client is sent new blocks.
+	 */
+	boolean isBlocks() {
+		return blocks;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return false;
+	}
+
+	/**
+	 * return true if the subscription failed or it's connection closed, so it
+	 * should be forgotten.
+	 *
+	 * @return true if the subscription is done.
+	 */
+	boolean isDone() {
+		final BooleanSupplier closed = closedSupplier;
+		return failed || ((closed != null) && closed.getAsBoolean());
+	}
+
+	@Override
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * return true if the client is sent new memory pool transactions.
+	 *
+	 * @return true if the client is sent new memory pool transactions.
+	 */
+	boolean isTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * queues an event, without waiting. If the queue is full, the subscription
+	 * fails.
+	 *
+	 * @param chunk
+	 *            the event, as a chunk. It is shared by every subscription, so
+	 *            only a duplicate is queued.
+	 * @return false if the queue was full.
+	 */
+	boolean offer(final ByteBuffer chunk) {
+		if (failed) {
+			return false;
+		}
+		if (!chunkQueue.offer(chunk.duplicate())) {
+			failed = true;
+		}
+		final Runnable ready = onChunkReady;
+		if (ready != null) {
+			ready.run();
+		}
+		return !failed;
+	}
+
+	@Override
+	public ByteBuffer poll() {
+		return chunkQueue.poll();
+	}
+
+	/**
+	 * starts sending events to the connection.
+	 *
+	 * @param closedSupplier
+	 *            returns true if the connection closed.
+	 * @param onChunkReady
+	 *            tells the connection a chunk is ready.
+	 */
+	void start(final BooleanSupplier closedSupplier, final Runnable onChunkReady) {
+		this.closedSupplier = closedSupplier;
+		this.onChunkReady = onChunkReady;
+		onChunkReady.run();
+	}
+}
@@ -0,0 +1,580 @@
+package neo.rpc.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a connection to the RPC server.
+ * <p>
+ * requests are parsed from the bytes read, and handled on the RPC executor, so
+ * a client can pipeline requests. Responses are written in the order the
+ * requests were recieved, as they complete. When the max number of requests are
+ * pending, the connection stops reading until responses are written.
+ * <p>
+ * a streamed response is written chunk by chunk as the handler writes it. Its
+ * chunks are only taken when the earlier bytes have been written, so a slow
+ * client makes the handler wait instead of filling memory.
+ * <p>
+ * the response to an event subscription is written as events are published,
+ * and never completes. It ends when the client closes the connection, or is
+ * dropped for reading too slowly.
+ * <p>
+ * all methods but the handlers run on the server's selector thread.
+ *
+ * @author coranos
+ *
+ */
+final class RpcHttpConnection {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(RpcHttpConnection.class);
+
+	/**
+	 * the initial size of the read buffer.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	/**
+	 * the length of the blank line at the end of the head, "\r\n\r\n".
+	 */
+	private static final int HEADER_END_LENGTH = 4;
+
+	/**
+	 * the header, "content-length".
+	 */
+	private static final String CONTENT_LENGTH = "content-length";
+
+	/**
+	 * the header, "transfer-encoding".
+	 */
+	private static final String TRANSFER_ENCODING = "transfer-encoding";
+
+	/**
+	 * the server.
+	 */
+	private final RpcHttpServer server;
+
+	/**
+	 * the channel.
+	 */
+	private final SocketChannel channel;
+
+	/**
+	 * the channel's selection key.
+	 */
+	private final SelectionKey key;
+
+	/**
+	 * the address of the client.
+	 */
+	private final InetSocketAddress remoteAddress;
+
+	/**
+	 * the bytes read, that are not yet parsed. Kept in write mode.
+	 */
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+	/**
+	 * the index in the read buffer to start looking for the end of the head.
+	 */
+	private int headerScanIx = 0;
+
+	/**
+	 * the responses, in the order the requests were recieved.
+	 */
+	private final Queue<PendingResponse> pendingQueue = new ArrayDeque<>();
+
+	/**
+	 * the response bytes waiting to be written.
+	 */
+	private final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+	/**
+	 * if true, no more requests are read, and the connection is closed when the
+	 * pending responses are written.
+	 */
+	private boolean closeAfterWrite = false;
+
+	/**
+	 * if true, the client has closed it's side of the connection, and the
+	 * connection is closed when the pending responses are written.
+	 */
+	private boolean inputClosed = false;
+
+	/**
+	 * if true, the connection is closed.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * the time of the last read or write, in milliseconds.
+	 */
+	private long lastActivityMs = System.currentTimeMillis();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param server
+	 *            the server.
+	 * @param channel
+	 *            the channel.
+	 * @param key
+	 *            the channel's selection key.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	RpcHttpConnection(final RpcHttpServer server, final SocketChannel channel, final SelectionKey key)
+			throws IOException {
+		this.server = server;
+		this.channel = channel;
+		this.key = key;
+		remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+	}
+
+	/**
+	 * closes the connection.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		key.cancel();
+		try {
+			channel.close();
+		} catch (final IOException e) {
+			LOG.trace("error closing {}", remoteAddress, e);
+		}
+		server.onConnectionClosed(this);
+	}
+
+	/**
+	 * sends the request to the handler on the RPC executor, through the client's
+	 * queue in the rate limiter. If the executor is full, the response is an
+	 * overload response, and if the client's queue is full, it is a 429
+	 * response.
+	 *
+	 * @param request
+	 *            the request.
+	 */
+	private void dispatch(final RpcHttpRequest request) {
+		final PendingResponse pending = new PendingResponse(request.isKeepAlive());
+		pendingQueue.add(pending);
+		if (!request.isKeepAlive()) {
+			closeAfterWrite = true;
+		}
+		final RpcRateLimiter rateLimiter = server.getRateLimiter();
+		final boolean submitted = rateLimiter.submit(rateLimiter.getClientKey(request), () -> {
+			final RpcHttpResponse response = server.handle(request);
+			if (response.getSubscription() != null) {
+				subscribe(pending, response);
+			} else if (response.isStreamed()) {
+				stream(pending, response);
+			} else {
+				pending.response = response;
+				server.onResponseReady(this);
+			}
+		}, () -> {
+			pending.response = server.newOverloadResponse();
+			server.onResponseReady(this);
+		});
+		if (!submitted) {
+			pending.response = rateLimiter.newQueueFullResponse();
+		}
+	}
+
+	/**
+	 * makes the read buffer at least the required size.
+	 *
+	 * @param required
+	 *            the required size.
+	 */
+	private void ensureCapacity(final int required) {
+		if (readBuffer.capacity() >= required) {
+			return;
+		}
+		final ByteBuffer newBuffer = ByteBuffer.allocate(required);
+		readBuffer.flip();
+		newBuffer.put(readBuffer);
+		readBuffer = newBuffer;
+	}
+
+	/**
+	 * return the index after the blank line at the end of the head, or -1 if the
+	 * head has not all been read.
+	 *
+	 * @return the index after the end of the head.
+	 */
+	private int findHeaderEnd() {
+		final byte[] ba = readBuffer.array();
+		final int end = readBuffer.position() - HEADER_END_LENGTH;
+		for (int ix = headerScanIx; ix <= end; ix++) {
+			if ((ba[ix] == '\r') && (ba[ix + 1] == '\n') && (ba[ix + 2] == '\r') && (ba[ix + 3] == '\n')) {
+				return ix + HEADER_END_LENGTH;
+			}
+		}
+		headerScanIx = Math.max(0, end + 1);
+		return -1;
+	}
+
+	/**
+	 * return true if the connection has no pending responses, and has not read
+	 * or written since the idle timeout.
+	 *
+	 * @param now
+	 *            the current time, in milliseconds.
+	 * @param idleTimeoutMs
+	 *            the idle timeout, in milliseconds.
+	 * @return true if the connection is idle.
+	 */
+	boolean isIdle(final long now, final long idleTimeoutMs) {
+		return pendingQueue.isEmpty() && writeQueue.isEmpty() && ((now - lastActivityMs) > idleTimeoutMs);
+	}
+
+	/**
+	 * reads from the channel, and handles any requests read.
+	 */
+	void onReadable() {
+		if (!readBuffer.hasRemaining()) {
+			ensureCapacity(Math.min(readBuffer.capacity() * 2,
+					server.getMaxHeaderBytes() + server.getMaxRequestBytes()));
+		}
+		final int bytesRead;
+		try {
+			bytesRead = channel.read(readBuffer);
+		} catch (final IOException e) {
+			LOG.trace("error reading {}", remoteAddress, e);
+			close();
+			return;
+		}
+		if (bytesRead < 0) {
+			inputClosed = true;
+		} else {
+			lastActivityMs = System.currentTimeMillis();
+		}
+		process();
+	}
+
+	/**
+	 * parses the head of the request, and handles it if the body has all been
+	 * read.
+	 *
+	 * @param headerEnd
+	 *            the index after the end of the head.
+	 * @return true if a request was handled, false if the body has not all been
+	 *         read, or the request was rejected.
+	 */
+	private boolean parseRequest(final int headerEnd) {
+		final String head = new String(readBuffer.array(), 0, headerEnd - HEADER_END_LENGTH,
+				StandardCharsets.ISO_8859_1);
+		final String[] lines = head.split("\r\n");
+		final String[] requestLine = lines[0].split(" ");
+		if ((requestLine.length != 3) || !requestLine[2].startsWith("HTTP/1.")) {
+			reject(RpcHttpResponse.BAD_REQUEST, "bad request line");
+			return false;
+		}
+		final Map<String, String> headerMap = new HashMap<>();
+		for (int lineIx = 1; lineIx < lines.length; lineIx++) {
+			final int colonIx = lines[lineIx].indexOf(':');
+			if (colonIx <= 0) {
+				reject(RpcHttpResponse.BAD_REQUEST, "bad header");
+				return false;
+			}
+			headerMap.put(lines[lineIx].substring(0, colonIx).trim().toLowerCase(Locale.ROOT),
+					lines[lineIx].substring(colonIx + 1).trim());
+		}
+		if (headerMap.containsKey(TRANSFER_ENCODING)) {
+			reject(RpcHttpResponse.LENGTH_REQUIRED, "chunked requests are not supported");
+			return false;
+		}
+		final long contentLength;
+		try {
+			contentLength = Long.parseLong(headerMap.getOrDefault(CONTENT_LENGTH, "0"));
+		} catch (final NumberFormatException e) {
+			reject(RpcHttpResponse.BAD_REQUEST, "bad content length");
+			return false;
+		}
+		if ((contentLength < 0) || (contentLength > server.getMaxRequestBytes())) {
+			reject(RpcHttpResponse.PAYLOAD_TOO_LARGE, "request too large");
+			return false;
+		}
+		final int requestEnd = headerEnd + (int) contentLength;
+		if (readBuffer.position() < requestEnd) {
+			ensureCapacity(requestEnd);
+			return false;
+		}
+		final String target = requestLine[1];
+		final int queryIx = target.indexOf('?');
+		final String path;
+		try {
+			path = URLDecoder.decode(queryIx < 0 ? target : target.substring(0, queryIx), "UTF-8");
+		} catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+			reject(RpcHttpResponse.BAD_REQUEST, "bad uri");
+			return false;
+		}
+		final String query = queryIx < 0 ? null : target.substring(queryIx + 1);
+		final byte[] body = Arrays.copyOfRange(readBuffer.array(), headerEnd, requestEnd);
+		readBuffer.flip();
+		readBuffer.position(requestEnd);
+		readBuffer.compact();
+		headerScanIx = 0;
+		dispatch(new RpcHttpRequest(requestLine[0], path, query, requestLine[2], headerMap, body, remoteAddress));
+		return true;
+	}
+
+	/**
+	 * parses and handles the requests read, until a request is incomplete or the
+	 * max number of requests are pending.
+	 */
+	private void parseRequests() {
+		while (!closeAfterWrite && (pendingQueue.size() < server.getMaxPipelined())) {
+			final int headerEnd = findHeaderEnd();
+			final int headerBytes;
+			if (headerEnd < 0) {
+				headerBytes = readBuffer.position();
+			} else {
+				headerBytes = headerEnd;
+			}
+			if (headerBytes > server.getMaxHeaderBytes()) {
+				reject(RpcHttpResponse.HEADER_TOO_LARGE, "request header too large");
+				return;
+			}
+			if ((headerEnd < 0) || !parseRequest(headerEnd)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * parses the requests read, and writes the responses that are complete.
+	 */
+	void process() {
+		while (!closed && writeResponses()) {
+			parseRequests();
+			if (!queueCompletedResponses()) {
+				break;
+			}
+		}
+		if (closed) {
+			return;
+		}
+		if ((closeAfterWrite || inputClosed) && pendingQueue.isEmpty() && writeQueue.isEmpty()) {
+			close();
+			return;
+		}
+		if (inputClosed && !pendingQueue.isEmpty() && (pendingQueue.peek().stream instanceof RpcEventSubscription)) {
+			close();
+			return;
+		}
+		updateInterestOps();
+	}
+
+	/**
+	 * moves the complete responses at the front of the pending queue to the
+	 * write queue, so responses are written in the order of the requests.
+	 *
+	 * @return true if any responses were moved.
+	 */
+	private boolean queueCompletedResponses() {
+		boolean anyQueued = false;
+		while (!pendingQueue.isEmpty() && (pendingQueue.peek().response != null)) {
+			final PendingResponse pending = pendingQueue.peek();
+			if (!pending.headQueued) {
+				writeQueue.add(pending.response.toByteBuffer(pending.keepAlive));
+				pending.headQueued = true;
+				anyQueued = true;
+			}
+			final RpcChunkSource stream = pending.stream;
+			if (stream != null) {
+				anyQueued |= queueChunks(stream);
+				if (stream.isFailed()) {
+					close();
+					return false;
+				}
+				if (!stream.isComplete()) {
+					return anyQueued;
+				}
+			}
+			pendingQueue.poll();
+		}
+		return anyQueued;
+	}
+
+	/**
+	 * moves the waiting chunks of a streamed response to the write queue, if the
+	 * earlier bytes have all been written.
+	 *
+	 * @param stream
+	 *            the streamed response.
+	 * @return true if any chunks were moved.
+	 */
+	private boolean queueChunks(final RpcChunkSource stream) {
+		if (!writeQueue.isEmpty()) {
+			return false;
+		}
+		boolean anyQueued = false;
+		ByteBuffer chunk = stream.poll();
+		while (chunk != null) {
+			writeQueue.add(chunk);
+			anyQueued = true;
+			chunk = stream.poll();
+		}
+		return anyQueued;
+	}
+
+	/**
+	 * rejects the request being parsed, with an error response, and closes the
+	 * connection after the response is written.
+	 *
+	 * @param status
+	 *            the status of the response.
+	 * @param message
+	 *            the error message.
+	 */
+	private void reject(final int status, final String message) {
+		LOG.debug("rejected request from {}, {}", remoteAddress, message);
+		server.onBadRequest();
+		final PendingResponse pending = new PendingResponse(false);
+		pending.response = RpcHttpResponse.error(status, message);
+		pendingQueue.add(pending);
+		closeAfterWrite = true;
+		readBuffer.clear();
+		headerScanIx = 0;
+	}
+
+	/**
+	 * runs the streamed response's body on the handler's thread. The head is
+	 * sent first, and the chunks follow as they are written. If the body fails,
+	 * the connection is closed without the last chunk.
+	 *
+	 * @param pending
+	 *            the pending response.
+	 * @param response
+	 *            the streamed response.
+	 */
+	private void stream(final PendingResponse pending, final RpcHttpResponse response) {
+		final RpcChunkedOutputStream stream = new RpcChunkedOutputStream(server.getStreamChunkBytes(),
+				server.getMaxStreamChunks(), server.getIdleTimeoutMs(), () -> closed,
+				() -> server.onResponseReady(this));
+		pending.stream = stream;
+		pending.response = response;
+		server.onResponseReady(this);
+		try {
+			response.getStreamBody().accept(stream);
+			stream.close();
+		} catch (final IOException | RuntimeException e) {
+			LOG.debug("error streaming response to {}", remoteAddress, e);
+			stream.abort();
+		}
+	}
+
+	/**
+	 * starts writing the subscription's events as the body of the response.
+	 *
+	 * @param pending
+	 *            the pending response.
+	 * @param response
+	 *            the response to the subscription.
+	 */
+	private void subscribe(final PendingResponse pending, final RpcHttpResponse response) {
+		final RpcEventSubscription subscription = response.getSubscription();
+		pending.stream = subscription;
+		pending.response = response;
+		subscription.start(() -> closed, () -> server.onResponseReady(this));
+	}
+
+	/**
+	 * sets the operations the selector waits for. The connection waits to read if
+	 * it can take more requests, and waits to write if it has bytes to write.
+	 */
+	private void updateInterestOps() {
+		int interestOps = 0;
+		if (!closeAfterWrite && !inputClosed && (pendingQueue.size() < server.getMaxPipelined())) {
+			interestOps |= SelectionKey.OP_READ;
+		}
+		if (!writeQueue.isEmpty()) {
+			interestOps |= SelectionKey.OP_WRITE;
+		}
+		key.interestOps(interestOps);
+	}
+
+	/**
+	 * writes as many of the queued response bytes as the channel will take.
+	 *
+	 * @return true if all the queued bytes were written.
+	 */
+	private boolean writeResponses() {
+		if (writeQueue.isEmpty()) {
+			return true;
+		}
+		try {
+			channel.write(writeQueue.toArray(new ByteBuffer[writeQueue.size()]));
+		} catch (final IOException e) {
+			LOG.trace("error writing {}", remoteAddress, e);
+			close();
+			return false;
+		}
+		lastActivityMs = System.currentTimeMillis();
+		while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+			writeQueue.poll();
+		}
+		return writeQueue.isEmpty();
+	}
+
+	/**
+	 * a response to a request, which is null until the handler completes.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class PendingResponse {
+
+		/**
+		 * if true, the connection is kept open after the response.
+		 */
+		private final boolean keepAlive;
+
+		/**
+		 * the response, or null if the handler has not completed.
+		 */
+		private volatile RpcHttpResponse response;
+
+		/**
+		 * the body of a streamed response, or null if the body is fixed. Set
+		 * before the response.
+		 */
+		private volatile RpcChunkSource stream;
+
+		/**
+		 * if true, the head of the response has been queued to write.
+		 */
+		private boolean headQueued = false;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param keepAlive
+		 *            if true, the connection is kept open after the response.
+		 */
+		private PendingResponse(final boolean keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+	}
+}
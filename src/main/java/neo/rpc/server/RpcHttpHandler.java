@@ -0,0 +1,20 @@
+package neo.rpc.server;
+
+/**
+ * handles the requests recieved by the RPC server. Requests are handled on the
+ * RPC executor, so a handler may block.
+ *
+ * @author coranos
+ *
+ */
+public interface RpcHttpHandler {
+
+	/**
+	 * handles the request.
+	 *
+	 * @param request
+	 *            the request to handle.
+	 * @return the response.
+	 */
+	RpcHttpResponse handle(RpcHttpRequest request);
+}
@@ -0,0 +1,202 @@
+package neo.rpc.server;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * an HTTP request recieved by the RPC server.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcHttpRequest {
+
+	/**
+	 * the HTTP version, "HTTP/1.0".
+	 */
+	public static final String HTTP_1_0 = "HTTP/1.0";
+
+	/**
+	 * the header, "connection".
+	 */
+	public static final String CONNECTION = "connection";
+
+	/**
+	 * the header, "if-none-match".
+	 */
+	public static final String IF_NONE_MATCH = "if-none-match";
+
+	/**
+	 * the "connection" header value, "close".
+	 */
+	private static final String CLOSE = "close";
+
+	/**
+	 * the "connection" header value, "keep-alive".
+	 */
+	private static final String KEEP_ALIVE = "keep-alive";
+
+	/**
+	 * the request method, such as "GET" or "POST".
+	 */
+	private final String method;
+
+	/**
+	 * the decoded path of the request URI.
+	 */
+	private final String uri;
+
+	/**
+	 * the query string of the request URI, or null if there is none.
+	 */
+	private final String query;
+
+	/**
+	 * the HTTP version.
+	 */
+	private final String version;
+
+	/**
+	 * the headers, with lower case names.
+	 */
+	private final Map<String, String> headerMap;
+
+	/**
+	 * the body.
+	 */
+	private final byte[] body;
+
+	/**
+	 * the address of the client.
+	 */
+	private final InetSocketAddress remoteAddress;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param method
+	 *            the request method.
+	 * @param uri
+	 *            the decoded path of the request URI.
+	 * @param query
+	 *            the query string, or null if there is none.
+	 * @param version
+	 *            the HTTP version.
+	 * @param headerMap
+	 *            the headers, with lower case names.
+	 * @param body
+	 *            the body.
+	 * @param remoteAddress
+	 *            the address of the client.
+	 */
+	public RpcHttpRequest(final String method, final String uri, final String query, final String version,
+			final Map<String, String> headerMap, final byte[] body, final InetSocketAddress remoteAddress) {
+		this.method = method;
+		this.uri = uri;
+		this.query = query;
+		this.version = version;
+		this.headerMap = Collections.unmodifiableMap(headerMap);
+		this.body = body;
+		this.remoteAddress = remoteAddress;
+	}
+
+	/**
+	 * return the body.
+	 *
+	 * @return the body.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * return the body, as a UTF-8 string.
+	 *
+	 * @return the body, as a string.
+	 */
+	public String getBodyString() {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * return the value of the header, or null if there is none.
+	 *
+	 * @param name
+	 *            the lower case name of the header.
+	 * @return the value of the header.
+	 */
+	public String getHeader(final String name) {
+		return headerMap.get(name);
+	}
+
+	/**
+	 * return the headers, with lower case names.
+	 *
+	 * @return the headers.
+	 */
+	public Map<String, String> getHeaderMap() {
+		return headerMap;
+	}
+
+	/**
+	 * return the request method.
+	 *
+	 * @return the request method.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * return the query string, or null if there is none.
+	 *
+	 * @return the query string.
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * return the address of the client.
+	 *
+	 * @return the address of the client.
+	 */
+	public InetSocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * return the decoded path of the request URI.
+	 *
+	 * @return the path of the request URI.
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * return the HTTP version.
+	 *
+	 * @return the HTTP version.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * return true if the connection should be kept open after the response. In
+	 * HTTP/1.1 it is, unless the client asks to close it, in HTTP/1.0 it isn't,
+	 * unless the client asks to keep it alive.
+	 *
+	 * @return true if the connection should be kept open.
+	 */
+	public boolean isKeepAlive() {
+		final String connection = headerMap.get(CONNECTION);
+		if (version.equals(HTTP_1_0)) {
+			return KEEP_ALIVE.equalsIgnoreCase(connection);
+		}
+		return !CLOSE.equalsIgnoreCase(connection);
+	}
+}
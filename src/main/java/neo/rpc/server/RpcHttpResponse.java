@@ -0,0 +1,416 @@
+package neo.rpc.server;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+/**
+ * an HTTP response sent by the RPC server.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcHttpResponse {
+
+	/**
+	 * the status, 200 OK.
+	 */
+	public static final int OK = 200;
+
+	/**
+	 * the status, 304 Not Modified.
+	 */
+	public static final int NOT_MODIFIED = 304;
+
+	/**
+	 * the status, 400 Bad Request.
+	 */
+	public static final int BAD_REQUEST = 400;
+
+	/**
+	 * the status, 404 Not Found.
+	 */
+	public static final int NOT_FOUND = 404;
+
+	/**
+	 * the status, 411 Length Required.
+	 */
+	public static final int LENGTH_REQUIRED = 411;
+
+	/**
+	 * the status, 413 Payload Too Large.
+	 */
+	public static final int PAYLOAD_TOO_LARGE = 413;
+
+	/**
+	 * the status, 429 Too Many Requests.
+	 */
+	public static final int TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * the status, 431 Request Header Fields Too Large.
+	 */
+	public static final int HEADER_TOO_LARGE = 431;
+
+	/**
+	 * the status, 500 Internal Server Error.
+	 */
+	public static final int INTERNAL_SERVER_ERROR = 500;
+
+	/**
+	 * the status, 503 Service Unavailable.
+	 */
+	public static final int SERVICE_UNAVAILABLE = 503;
+
+	/**
+	 * the content type, "application/json".
+	 */
+	public static final String APPLICATION_JSON = "application/json";
+
+	/**
+	 * the header, "Retry-After".
+	 */
+	public static final String RETRY_AFTER = "Retry-After";
+
+	/**
+	 * the header, "ETag".
+	 */
+	public static final String ETAG = "ETag";
+
+	/**
+	 * the JSON key for an error message, "error".
+	 */
+	private static final String ERROR = "error";
+
+	/**
+	 * the line separator in the HTTP head.
+	 */
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * the header name and value separator.
+	 */
+	private static final String HEADER_SEPARATOR = ": ";
+
+	/**
+	 * return a new response with a JSON error message.
+	 *
+	 * @param status
+	 *            the status to use.
+	 * @param message
+	 *            the error message.
+	 * @return the new response.
+	 */
+	public static RpcHttpResponse error(final int status, final String message) {
+		final JSONObject json = new JSONObject();
+		json.put(ERROR, message);
+		return new RpcHttpResponse(status, APPLICATION_JSON, json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * return the reason phrase of the status.
+	 *
+	 * @param status
+	 *            the status to use.
+	 * @return the reason phrase.
+	 */
+	private static String getReason(final int status) {
+		switch (status) {
+		case OK:
+			return "OK";
+		case NOT_MODIFIED:
+			return "Not Modified";
+		case BAD_REQUEST:
+			return "Bad Request";
+		case NOT_FOUND:
+			return "Not Found";
+		case LENGTH_REQUIRED:
+			return "Length Required";
+		case PAYLOAD_TOO_LARGE:
+			return "Payload Too Large";
+		case TOO_MANY_REQUESTS:
+			return "Too Many Requests";
+		case HEADER_TOO_LARGE:
+			return "Request Header Fields Too Large";
+		case INTERNAL_SERVER_ERROR:
+			return "Internal Server Error";
+		case SERVICE_UNAVAILABLE:
+			return "Service Unavailable";
+		default:
+			return "Unknown";
+		}
+	}
+
+	/**
+	 * return a new 200 OK response with a JSON body.
+	 *
+	 * @param json
+	 *            the body, a JSON object or array.
+	 * @return the new response.
+	 */
+	public static RpcHttpResponse json(final Object json) {
+		final RpcHttpResponse response = new RpcHttpResponse(OK, APPLICATION_JSON,
+				json.toString().getBytes(StandardCharsets.UTF_8));
+		response.errorBody = (json instanceof JSONObject) && ((JSONObject) json).has(ERROR);
+		return response;
+	}
+
+	/**
+	 * return a new 200 OK response with a JSON body that is written as it is
+	 * sent, in chunked transfer encoding.
+	 *
+	 * @param streamBody
+	 *            writes the body onto the stream.
+	 * @return the new response.
+	 */
+	public static RpcHttpResponse stream(final Consumer<OutputStream> streamBody) {
+		return stream(APPLICATION_JSON, streamBody);
+	}
+
+	/**
+	 * return a new 200 OK response with a body that is written as it is sent, in
+	 * chunked transfer encoding.
+	 *
+	 * @param contentType
+	 *            the content type.
+	 * @param streamBody
+	 *            writes the body onto the stream.
+	 * @return the new response.
+	 */
+	public static RpcHttpResponse stream(final String contentType, final Consumer<OutputStream> streamBody) {
+		return new RpcHttpResponse(OK, contentType, new byte[0], streamBody, null);
+	}
+
+	/**
+	 * return a new 200 OK response whose body is the events of the subscription,
+	 * in chunked transfer encoding. The body never ends.
+	 *
+	 * @param contentType
+	 *            the content type.
+	 * @param subscription
+	 *            the subscription.
+	 * @return the new response.
+	 */
+	static RpcHttpResponse subscribe(final String contentType, final RpcEventSubscription subscription) {
+		return new RpcHttpResponse(OK, contentType, new byte[0], null, subscription);
+	}
+
+	/**
+	 * the status.
+	 */
+	private final int status;
+
+	/**
+	 * the content type.
+	 */
+	private final String contentType;
+
+	/**
+	 * the body.
+	 */
+	private final byte[] body;
+
+	/**
+	 * writes the body as it is sent, or null if the body is fixed.
+	 */
+	private final Consumer<OutputStream> streamBody;
+
+	/**
+	 * the subscription whose events are the body, or null if there is none.
+	 */
+	private final RpcEventSubscription subscription;
+
+	/**
+	 * the extra headers.
+	 */
+	private final Map<String, String> headerMap = new LinkedHashMap<>();
+
+	/**
+	 * if true, the body is a JSON error, sent with a 200 OK status.
+	 */
+	private boolean errorBody = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param status
+	 *            the status.
+	 * @param contentType
+	 *            the content type.
+	 * @param body
+	 *            the body.
+	 */
+	public RpcHttpResponse(final int status, final String contentType, final byte[] body) {
+		this(status, contentType, body, null, null);
+	}
+
+	/**
+	 * the constructor.
+	 *
+	 * @param status
+	 *            the status.
+	 * @param contentType
+	 *            the content type.
+	 * @param body
+	 *            the body.
+	 * @param streamBody
+	 *            writes the body as it is sent, or null if the body is fixed.
+	 * @param subscription
+	 *            the subscription whose events are the body, or null if there is
+	 *            none.
+	 */
+	private RpcHttpResponse(final int status, final String contentType, final byte[] body,
+			final Consumer<OutputStream> streamBody, final RpcEventSubscription subscription) {
+		this.status = status;
+		this.contentType = contentType;
+		this.body = body;
+		this.streamBody = streamBody;
+		this.subscription = subscription;
+	}
+
+	/**
+	 * adds a header.
+	 *
+	 * @param name
+	 *            the name of the header.
+	 * @param value
+	 *            the value of the header.
+	 * @return this response.
+	 */
+	public RpcHttpResponse addHeader(final String name, final String value) {
+		headerMap.put(name, value);
+		return this;
+	}
+
+	/**
+	 * return the body.
+	 *
+	 * @return the body.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * return the content type.
+	 *
+	 * @return the content type.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * return the value of the extra header, or null if there is none.
+	 *
+	 * @param name
+	 *            the name of the header.
+	 * @return the value of the header.
+	 */
+	public String getHeader(final String name) {
+		return headerMap.get(name);
+	}
+
+	/**
+	 * return the status.
+	 *
+	 * @return the status.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * return the writer of the body, or null if the body is fixed.
+	 *
+	 * @return the writer of the body.
+	 */
+	public Consumer<OutputStream> getStreamBody() {
+		return streamBody;
+	}
+
+	/**
+	 * return the subscription whose events are the body, or null if there is
+	 * none.
+	 *
+	 * @return the subscription.
+	 */
+	RpcEventSubscription getSubscription() {
+		return subscription;
+	}
+
+	/**
+	 * return true if the call failed: the status is an error, or the body is a
+	 * JSON error.
+	 *
+	 * @return true if the call failed.
+	 */
+	public boolean isError() {
+		return errorBody || (status >= BAD_REQUEST);
+	}
+
+	/**
+	 * return true if the body is written as it is sent.
+	 *
+	 * @return true if the body is streamed.
+	 */
+	public boolean isStreamed() {
+		return (streamBody != null) || (subscription != null);
+	}
+
+	/**
+	 * return the response, as the bytes sent to the client. For a streamed
+	 * response, this is only the head, and the chunks follow.
+	 *
+	 * @param keepAlive
+	 *            if true, the connection is kept open after the response.
+	 * @return the response bytes, ready to be written.
+	 */
+	public ByteBuffer toByteBuffer(final boolean keepAlive) {
+		final StringBuilder head = new StringBuilder();
+		head.append("HTTP/1.1 ").append(status).append(' ').append(getReason(status)).append(CRLF);
+		head.append("Content-Type").append(HEADER_SEPARATOR).append(contentType).append(CRLF);
+		if (isStreamed()) {
+			head.append("Transfer-Encoding").append(HEADER_SEPARATOR).append("chunked").append(CRLF);
+		} else {
+			head.append("Content-Length").append(HEADER_SEPARATOR).append(body.length).append(CRLF);
+		}
+		head.append("Connection").append(HEADER_SEPARATOR);
+		if (keepAlive) {
+			head.append("keep-alive");
+		} else {
+			head.append("close");
+		}
+		head.append(CRLF);
+		for (final Map.Entry<String, String> header : headerMap.entrySet()) {
+			head.append(header.getKey()).append(HEADER_SEPARATOR).append(header.getValue()).append(CRLF);
+		}
+		head.append(CRLF);
+		final byte[] headBa = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+		final ByteBuffer buffer = ByteBuffer.allocate(headBa.length + body.length);
+		buffer.put(headBa);
+		buffer.put(body);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * return a copy of this response, with the same headers, whose body is
+	 * written by the given writer.
+	 *
+	 * @param newStreamBody
+	 *            writes the body onto the stream.
+	 * @return the new response.
+	 */
+	public RpcHttpResponse withStreamBody(final Consumer<OutputStream> newStreamBody) {
+		final RpcHttpResponse response = new RpcHttpResponse(status, contentType, body, newStreamBody, subscription);
+		response.headerMap.putAll(headerMap);
+		response.errorBody = errorBody;
+		return response;
+	}
+}
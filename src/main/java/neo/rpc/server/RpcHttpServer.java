@@ -0,0 +1,506 @@
+package neo.rpc.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.JsonUtil;
+import neo.model.util.MapUtil;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.network.model.LocalNodeData;
+
+/**
+ * a non blocking HTTP/1.1 server for the RPC calls.
+ * <p>
+ * one selector thread accepts connections, reads requests and writes
+ * responses. Requests are handled on the RPC executor, which has a fixed number
+ * of threads and a bounded queue, so the number of connections does not set
+ * the number of threads. Connections are kept alive, and requests can be
+ * pipelined.
+ * <p>
+ * when the RPC executor is full, requests get a 503 response with a
+ * "Retry-After" header, instead of waiting, and when there are too many
+ * connections, new connections get a 503 response and are closed. Each
+ * client's requests are admitted and queued by the rate limiter. Requests
+ * with a head or body over the configured size are rejected, and their
+ * connection is closed.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcHttpServer implements Runnable {
+
+	/**
+	 * the JSON key, "max-connections".
+	 */
+	public static final String MAX_CONNECTIONS = "max-connections";
+
+	/**
+	 * the JSON key, "max-header-bytes".
+	 */
+	public static final String MAX_HEADER_BYTES = "max-header-bytes";
+
+	/**
+	 * the JSON key, "max-request-bytes".
+	 */
+	public static final String MAX_REQUEST_BYTES = "max-request-bytes";
+
+	/**
+	 * the JSON key, "max-pipelined".
+	 */
+	public static final String MAX_PIPELINED = "max-pipelined";
+
+	/**
+	 * the JSON key, "idle-timeout".
+	 */
+	public static final String IDLE_TIMEOUT = "idle-timeout";
+
+	/**
+	 * the JSON key, "stream-chunk-bytes".
+	 */
+	public static final String STREAM_CHUNK_BYTES = "stream-chunk-bytes";
+
+	/**
+	 * the JSON key, "max-stream-chunks".
+	 */
+	public static final String MAX_STREAM_CHUNKS = "max-stream-chunks";
+
+	/**
+	 * the API call key for requests rejected because the RPC executor was full.
+	 */
+	private static final String RPC_OVERLOAD = "rpc-overload";
+
+	/**
+	 * the API call key for connections refused because there were too many.
+	 */
+	private static final String RPC_CONNECTION_REFUSED = "rpc-connection-refused";
+
+	/**
+	 * the API call key for requests that could not be parsed, or were too large.
+	 */
+	private static final String RPC_BAD_REQUEST = "rpc-bad-request";
+
+	/**
+	 * the API call key for requests whose handler threw an exception.
+	 */
+	private static final String RPC_HANDLER_ERROR = "rpc-handler-error";
+
+	/**
+	 * the time to wait for the selector, so idle connections are closed.
+	 */
+	private static final long SELECT_TIMEOUT_MS = 1000;
+
+	/**
+	 * the number of seconds a client should wait before retrying an overloaded
+	 * request.
+	 */
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(RpcHttpServer.class);
+
+	/**
+	 * the port to listen on.
+	 */
+	private final int port;
+
+	/**
+	 * the max number of open connections.
+	 */
+	private final int maxConnections;
+
+	/**
+	 * the max size of a request's head.
+	 */
+	private final int maxHeaderBytes;
+
+	/**
+	 * the max size of a request's body.
+	 */
+	private final int maxRequestBytes;
+
+	/**
+	 * the max number of requests pending on a connection.
+	 */
+	private final int maxPipelined;
+
+	/**
+	 * the time a connection can be idle before it is closed, in milliseconds.
+	 */
+	private final long idleTimeoutMs;
+
+	/**
+	 * the max size of a chunk of a streamed response.
+	 */
+	private final int streamChunkBytes;
+
+	/**
+	 * the max number of chunks of a streamed response waiting to be written.
+	 */
+	private final int maxStreamChunks;
+
+	/**
+	 * the executor the handler runs on.
+	 */
+	private final MeteredExecutor executor;
+
+	/**
+	 * the handler.
+	 */
+	private final RpcHttpHandler handler;
+
+	/**
+	 * the rate limiter, which queues each client's requests for the executor.
+	 */
+	private final RpcRateLimiter rateLimiter;
+
+	/**
+	 * the open connections.
+	 */
+	private final Set<RpcHttpConnection> connectionSet = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * the connections with responses that completed on the RPC executor.
+	 */
+	private final Queue<RpcHttpConnection> readyQueue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * the selector.
+	 */
+	private Selector selector;
+
+	/**
+	 * the server socket channel.
+	 */
+	private ServerSocketChannel serverChannel;
+
+	/**
+	 * if true, the server is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * the constructor.
+	 *
+	 * @param port
+	 *            the port to listen on.
+	 * @param config
+	 *            the configuration to use.
+	 * @param executor
+	 *            the executor the handler runs on.
+	 * @param handler
+	 *            the handler.
+	 */
+	public RpcHttpServer(final int port, final JSONObject config, final MeteredExecutor executor,
+			final RpcHttpHandler handler) {
+		this.port = port;
+		maxConnections = config.getInt(MAX_CONNECTIONS);
+		maxHeaderBytes = config.getInt(MAX_HEADER_BYTES);
+		maxRequestBytes = config.getInt(MAX_REQUEST_BYTES);
+		maxPipelined = config.getInt(MAX_PIPELINED);
+		idleTimeoutMs = JsonUtil.getTime(config, IDLE_TIMEOUT);
+		streamChunkBytes = config.getInt(STREAM_CHUNK_BYTES);
+		maxStreamChunks = config.getInt(MAX_STREAM_CHUNKS);
+		this.executor = executor;
+		this.handler = handler;
+		rateLimiter = new RpcRateLimiter(config.getJSONObject(RpcRateLimiter.RATE_LIMIT), executor);
+	}
+
+	/**
+	 * accepts a connection. If there are too many connections, the connection is
+	 * sent a 503 response and closed.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	private void accept() throws IOException {
+		final SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		if (connectionSet.size() >= maxConnections) {
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_CONNECTION_REFUSED);
+			try {
+				final ByteBuffer response = newOverloadResponse().toByteBuffer(false);
+				channel.write(response);
+			} finally {
+				channel.close();
+			}
+			return;
+		}
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		final RpcHttpConnection connection = new RpcHttpConnection(this, channel, key);
+		key.attach(connection);
+		connectionSet.add(connection);
+	}
+
+	/**
+	 * closes the connections that have been idle longer than the idle timeout.
+	 */
+	private void closeIdleConnections() {
+		final long now = System.currentTimeMillis();
+		for (final RpcHttpConnection connection : new ArrayList<>(connectionSet)) {
+			if (connection.isIdle(now, idleTimeoutMs)) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * return the number of open connections.
+	 *
+	 * @return the number of open connections.
+	 */
+	public int getConnectionCount() {
+		return connectionSet.size();
+	}
+
+	/**
+	 * return the executor the handler runs on.
+	 *
+	 * @return the executor.
+	 */
+	public MeteredExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * return the time a connection can be idle before it is closed, in
+	 * milliseconds.
+	 *
+	 * @return the idle timeout, in milliseconds.
+	 */
+	long getIdleTimeoutMs() {
+		return idleTimeoutMs;
+	}
+
+	/**
+	 * return the max size of a request's head.
+	 *
+	 * @return the max size of a request's head.
+	 */
+	int getMaxHeaderBytes() {
+		return maxHeaderBytes;
+	}
+
+	/**
+	 * return the rate limiter.
+	 *
+	 * @return the rate limiter.
+	 */
+	public RpcRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * return the max number of requests pending on a connection.
+	 *
+	 * @return the max number of requests pending on a connection.
+	 */
+	int getMaxPipelined() {
+		return maxPipelined;
+	}
+
+	/**
+	 * return the max number of chunks of a streamed response waiting to be
+	 * written.
+	 *
+	 * @return the max number of chunks waiting.
+	 */
+	int getMaxStreamChunks() {
+		return maxStreamChunks;
+	}
+
+	/**
+	 * return the max size of a request's body.
+	 *
+	 * @return the max size of a request's body.
+	 */
+	int getMaxRequestBytes() {
+		return maxRequestBytes;
+	}
+
+	/**
+	 * return the max size of a chunk of a streamed response.
+	 *
+	 * @return the max size of a chunk.
+	 */
+	int getStreamChunkBytes() {
+		return streamChunkBytes;
+	}
+
+	/**
+	 * handles the request. An exception in the handler is a 500 response.
+	 *
+	 * @param request
+	 *            the request to handle.
+	 * @return the response.
+	 */
+	RpcHttpResponse handle(final RpcHttpRequest request) {
+		try {
+			return handler.handle(request);
+		} catch (final RuntimeException e) {
+			LOG.error("error handling {} {} from {}", request.getMethod(), request.getUri(),
+					request.getRemoteAddress(), e);
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_HANDLER_ERROR);
+			return RpcHttpResponse.error(RpcHttpResponse.INTERNAL_SERVER_ERROR, String.valueOf(e.getMessage()));
+		}
+	}
+
+	/**
+	 * return a new 503 response, for when the server is overloaded.
+	 *
+	 * @return the new response.
+	 */
+	RpcHttpResponse newOverloadResponse() {
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_OVERLOAD);
+		return RpcHttpResponse.error(RpcHttpResponse.SERVICE_UNAVAILABLE, "server busy")
+				.addHeader(RpcHttpResponse.RETRY_AFTER, RETRY_AFTER_SECONDS);
+	}
+
+	/**
+	 * counts a request that could not be parsed, or was too large.
+	 */
+	void onBadRequest() {
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_BAD_REQUEST);
+	}
+
+	/**
+	 * forgets a closed connection.
+	 *
+	 * @param connection
+	 *            the connection that closed.
+	 */
+	void onConnectionClosed(final RpcHttpConnection connection) {
+		connectionSet.remove(connection);
+	}
+
+	/**
+	 * wakes the selector thread, so it writes the responses that completed on the
+	 * connection.
+	 *
+	 * @param connection
+	 *            the connection with a completed response.
+	 */
+	void onResponseReady(final RpcHttpConnection connection) {
+		readyQueue.add(connection);
+		if (!stopped) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * opens the server socket, so the server is ready for connections.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	public void open() throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		LOG.debug("SUCCESS open RPC server on port {}", port);
+	}
+
+	/**
+	 * runs the selector loop, until the server is stopped. The server must be
+	 * opened first.
+	 */
+	@Override
+	public void run() {
+		long lastIdleCheckMs = System.currentTimeMillis();
+		try {
+			while (!stopped) {
+				selector.select(SELECT_TIMEOUT_MS);
+				final Iterator<SelectionKey> keyIt = selector.selectedKeys().iterator();
+				while (keyIt.hasNext()) {
+					final SelectionKey key = keyIt.next();
+					keyIt.remove();
+					runKey(key);
+				}
+				RpcHttpConnection connection = readyQueue.poll();
+				while (connection != null) {
+					connection.process();
+					connection = readyQueue.poll();
+				}
+				final long now = System.currentTimeMillis();
+				if ((now - lastIdleCheckMs) > SELECT_TIMEOUT_MS) {
+					closeIdleConnections();
+					lastIdleCheckMs = now;
+				}
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			for (final RpcHttpConnection connection : new ArrayList<>(connectionSet)) {
+				connection.close();
+			}
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (final IOException e) {
+				LOG.error("error closing RPC server", e);
+			}
+			LOG.debug("SUCCESS stop RPC server on port {}", port);
+		}
+	}
+
+	/**
+	 * runs the ready operations of the selection key.
+	 *
+	 * @param key
+	 *            the selection key.
+	 */
+	private void runKey(final SelectionKey key) {
+		if (!key.isValid()) {
+			return;
+		}
+		if (key.isAcceptable()) {
+			try {
+				accept();
+			} catch (final IOException e) {
+				LOG.error("error accepting RPC connection", e);
+			}
+			return;
+		}
+		final RpcHttpConnection connection = (RpcHttpConnection) key.attachment();
+		if (key.isReadable()) {
+			connection.onReadable();
+		} else if (key.isWritable()) {
+			connection.process();
+		}
+	}
+
+	/**
+	 * stops the server. The selector loop closes the connections and the server
+	 * socket as it exits.
+	 */
+	public void stop() {
+		stopped = true;
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+}
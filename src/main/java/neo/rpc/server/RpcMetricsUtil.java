@@ -0,0 +1,393 @@
+package neo.rpc.server;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+import neo.model.core.Block;
+import neo.network.LocalControllerNode;
+import neo.network.model.LocalNodeData;
+import neo.network.model.MessageMetrics;
+import neo.network.model.NodeConnectionPhaseEnum;
+import neo.network.model.RemoteNodeData;
+import neo.perfmon.LatencyHistogram;
+import neo.perfmon.PerformanceMonitor;
+
+/**
+ * the RPC call metrics, and the "/metrics" endpoint, which sends them, and the
+ * storage, peer message, sync, and peer metrics, in the Prometheus text
+ * format, so a headless node can be watched. The peer message latencies are
+ * only sent in the "full" message metrics mode.
+ * <p>
+ * each core RPC and City of Zion call is timed into a latency histogram for
+ * it's method. A streamed response is timed until it's body is written.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcMetricsUtil {
+
+	/**
+	 * the URI of the metrics.
+	 */
+	public static final String METRICS_URI = "/metrics";
+
+	/**
+	 * the latency histograms of the RPC calls, by method.
+	 */
+	public static final Map<String, LatencyHistogram> RPC_LATENCY_MAP = new ConcurrentSkipListMap<>();
+
+	/**
+	 * the name of the method of unknown calls.
+	 */
+	private static final String UNKNOWN = "unknown";
+
+	/**
+	 * the name of the label that holds a message's command.
+	 */
+	private static final String COMMAND = "command";
+
+	/**
+	 * the content type of the Prometheus text format.
+	 */
+	private static final String TEXT_PLAIN = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * the quantiles of each latency histogram that are sent.
+	 */
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	/**
+	 * the nanoseconds in a second.
+	 */
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	/**
+	 * the Prometheus type, "gauge".
+	 */
+	private static final String GAUGE = "gauge";
+
+	/**
+	 * the suffix of the highest latency of a latency summary.
+	 */
+	private static final String MAX_SUFFIX = "_max";
+
+	/**
+	 * the quote around a label value.
+	 */
+	private static final String QUOTE = "\"";
+
+	/**
+	 * the backslash that escapes a character in a label value.
+	 */
+	private static final String BACKSLASH = "\\";
+
+	/**
+	 * appends the help and type lines of a metric.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 * @param name
+	 *            the name of the metric.
+	 * @param help
+	 *            the help text.
+	 * @param type
+	 *            the Prometheus type.
+	 */
+	private static void appendHead(final StringBuilder sb, final String name, final String help, final String type) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * appends a summary of each latency histogram: it's quantiles, sum, count,
+	 * and max, in seconds.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 * @param name
+	 *            the name of the metric.
+	 * @param help
+	 *            the help text.
+	 * @param labelName
+	 *            the name of the label that holds the histogram's name.
+	 * @param latencyMap
+	 *            the latency histograms, by name.
+	 */
+	private static void appendLatency(final StringBuilder sb, final String name, final String help,
+			final String labelName, final Map<String, LatencyHistogram> latencyMap) {
+		appendHead(sb, name, help, "summary");
+		for (final Map.Entry<String, LatencyHistogram> entry : latencyMap.entrySet()) {
+			final String label = toLabel(labelName, entry.getKey());
+			final LatencyHistogram histogram = entry.getValue();
+			for (final double quantile : QUANTILES) {
+				appendSample(sb, name, label + "," + toLabel("quantile", Double.toString(quantile)),
+						toSeconds(histogram.getQuantileNanos(quantile)));
+			}
+			appendSample(sb, name + "_sum", label, toSeconds(histogram.getSumNanos()));
+			appendSample(sb, name + "_count", label, histogram.getCount());
+		}
+		appendHead(sb, name + MAX_SUFFIX, "the highest " + help, GAUGE);
+		for (final Map.Entry<String, LatencyHistogram> entry : latencyMap.entrySet()) {
+			appendSample(sb, name + MAX_SUFFIX, toLabel(labelName, entry.getKey()),
+					toSeconds(entry.getValue().getMaxNanos()));
+		}
+	}
+
+	/**
+	 * appends the number of peers in each connection phase.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 * @param controller
+	 *            the controller to use.
+	 */
+	private static void appendPeers(final StringBuilder sb, final LocalControllerNode controller) {
+		final Map<NodeConnectionPhaseEnum, Long> countMap = new EnumMap<>(NodeConnectionPhaseEnum.class);
+		for (final NodeConnectionPhaseEnum phase : NodeConnectionPhaseEnum.values()) {
+			countMap.put(phase, 0L);
+		}
+		final List<RemoteNodeData> peerDataList = new ArrayList<>();
+		controller.addPeerDataSetToList(peerDataList);
+		for (final RemoteNodeData data : peerDataList) {
+			countMap.put(data.getConnectionPhase(), countMap.get(data.getConnectionPhase()) + 1);
+		}
+		final String name = "neo_peers";
+		appendHead(sb, name, "the number of peers, by connection phase.", GAUGE);
+		for (final Map.Entry<NodeConnectionPhaseEnum, Long> entry : countMap.entrySet()) {
+			appendSample(sb, name, toLabel("phase", entry.getKey().name().toLowerCase(Locale.ROOT)), entry.getValue());
+		}
+	}
+
+	/**
+	 * appends a sample.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 * @param name
+	 *            the name of the metric.
+	 * @param labels
+	 *            the labels, or the empty string if there are none.
+	 * @param value
+	 *            the value.
+	 */
+	private static void appendSample(final StringBuilder sb, final String name, final String labels,
+			final Object value) {
+		sb.append(name);
+		if (!labels.isEmpty()) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * appends the stats of the API call map, which hold the storage, executor,
+	 * cache, and rate limiter stats.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 */
+	private static void appendStats(final StringBuilder sb) {
+		final Map<String, Long> statMap;
+		synchronized (LocalNodeData.API_CALL_MAP) {
+			statMap = new TreeMap<>(LocalNodeData.API_CALL_MAP);
+		}
+		final String name = "neo_stat";
+		appendHead(sb, name, "the node's stats, by name.", GAUGE);
+		for (final Map.Entry<String, Long> entry : statMap.entrySet()) {
+			appendSample(sb, name, toLabel("name", entry.getKey()), entry.getValue());
+		}
+	}
+
+	/**
+	 * appends the sync metrics, the heights of the blocks, the headers, and the
+	 * blockchain.
+	 *
+	 * @param sb
+	 *            the string builder to use.
+	 * @param localNodeData
+	 *            the local node data to use.
+	 */
+	private static void appendSync(final StringBuilder sb, final LocalNodeData localNodeData) {
+		final Block maxHeader = localNodeData.getBlockDb().getHeaderOfBlockWithMaxIndex();
+		final long blockHeight;
+		if (maxHeader == null) {
+			blockHeight = -1;
+		} else {
+			blockHeight = maxHeader.getIndexAsLong();
+		}
+		final String blockHeightName = "neo_block_height";
+		appendHead(sb, blockHeightName, "the index of the highest block in the block database.", GAUGE);
+		appendSample(sb, blockHeightName, "", blockHeight);
+		final String headerHeightName = "neo_header_height";
+		appendHead(sb, headerHeightName, "the index of the tip of the header chain.", GAUGE);
+		appendSample(sb, headerHeightName, "", localNodeData.getHeaderChain().getTipIndex());
+		final String blockchainHeightName = "neo_blockchain_height";
+		appendHead(sb, blockchainHeightName, "the best known blockchain height.", GAUGE);
+		appendSample(sb, blockchainHeightName, "", localNodeData.getBlockchainBlockHeight());
+		final String fileSizeName = "neo_block_file_size_bytes";
+		appendHead(sb, fileSizeName, "the size of the block database files.", GAUGE);
+		appendSample(sb, fileSizeName, "", localNodeData.getBlockFileSize());
+	}
+
+	/**
+	 * return the name of the City of Zion call to the URI, the lower case name
+	 * of it's command.
+	 *
+	 * @param uri
+	 *            the uri to use.
+	 * @return the name.
+	 */
+	public static String getCityOfZionName(final String uri) {
+		return CityOfZionCommandEnum.getCommandStartingWith(uri).name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * return the name of the core RPC call, it's method, or "unknown" if it is
+	 * not a known method, so clients can't make a histogram for every name they
+	 * send.
+	 *
+	 * @param request
+	 *            the request, which should be a JSON object.
+	 * @return the name.
+	 */
+	public static String getCoreRpcName(final Object request) {
+		if (!(request instanceof JSONObject)) {
+			return UNKNOWN;
+		}
+		final String method = ((JSONObject) request).optString(RpcServerUtil.METHOD, null);
+		if (method == null) {
+			return UNKNOWN;
+		}
+		final CoreRpcCommandEnum command = CoreRpcCommandEnum.fromName(method);
+		if (command == CoreRpcCommandEnum.UNKNOWN) {
+			return UNKNOWN;
+		}
+		return command.getName();
+	}
+
+	/**
+	 * processes a request for the metrics.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @return the response, the metrics in the Prometheus text format.
+	 */
+	public static RpcHttpResponse process(final LocalControllerNode controller) {
+		final StringBuilder sb = new StringBuilder();
+		appendLatency(sb, "neo_rpc_latency_seconds", "latency of RPC calls, by method.", RpcServerUtil.METHOD,
+				RPC_LATENCY_MAP);
+		final String errorsName = "neo_rpc_errors_total";
+		appendHead(sb, errorsName, "the number of RPC calls that failed, by method.", "counter");
+		for (final Map.Entry<String, LatencyHistogram> entry : RPC_LATENCY_MAP.entrySet()) {
+			appendSample(sb, errorsName, toLabel(RpcServerUtil.METHOD, entry.getKey()),
+					entry.getValue().getErrorCount());
+		}
+		appendLatency(sb, "neo_storage_latency_seconds", "latency of block database calls, by call.", "call",
+				PerformanceMonitor.LATENCY_MAP);
+		final MessageMetrics messageMetrics = controller.getLocalNodeData().getMessageMetrics();
+		if (messageMetrics.isHistograms()) {
+			appendLatency(sb, "neo_message_decode_latency_seconds", "latency of decoding peer messages, by command.",
+					COMMAND, messageMetrics.getDecodeLatencyMap());
+			appendLatency(sb, "neo_message_handler_latency_seconds", "latency of handling peer messages, by command.",
+					COMMAND, messageMetrics.getHandlerLatencyMap());
+		}
+		appendSync(sb, controller.getLocalNodeData());
+		appendPeers(sb, controller);
+		appendStats(sb);
+		return new RpcHttpResponse(RpcHttpResponse.OK, TEXT_PLAIN, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * records the latency of a call.
+	 *
+	 * @param name
+	 *            the name of the call.
+	 * @param startNanos
+	 *            the time the call started, from System.nanoTime().
+	 * @param error
+	 *            if true, the call failed.
+	 */
+	public static void record(final String name, final long startNanos, final boolean error) {
+		RPC_LATENCY_MAP.computeIfAbsent(name, key -> new LatencyHistogram()).record(System.nanoTime() - startNanos,
+				error);
+	}
+
+	/**
+	 * runs the processor, and records it's latency. The latency of a streamed
+	 * response is recorded when it's body has been written.
+	 *
+	 * @param name
+	 *            the name of the call.
+	 * @param processor
+	 *            makes the response.
+	 * @return the response.
+	 */
+	public static RpcHttpResponse timed(final String name, final Supplier<RpcHttpResponse> processor) {
+		final long startNanos = System.nanoTime();
+		final RpcHttpResponse response;
+		try {
+			response = processor.get();
+		} catch (final RuntimeException e) {
+			record(name, startNanos, true);
+			throw e;
+		}
+		final Consumer<OutputStream> streamBody = response.getStreamBody();
+		if (streamBody == null) {
+			record(name, startNanos, response.isError());
+			return response;
+		}
+		return response.withStreamBody(out -> {
+			boolean failed = true;
+			try {
+				streamBody.accept(out);
+				failed = false;
+			} finally {
+				record(name, startNanos, failed);
+			}
+		});
+	}
+
+	/**
+	 * return a label, with it's value escaped.
+	 *
+	 * @param name
+	 *            the name of the label.
+	 * @param value
+	 *            the value of the label.
+	 * @return the label.
+	 */
+	private static String toLabel(final String name, final String value) {
+		final String escaped = value.replace(BACKSLASH, BACKSLASH + BACKSLASH).replace(QUOTE, BACKSLASH + QUOTE)
+				.replace("\n", BACKSLASH + "n");
+		return name + "=" + QUOTE + escaped + QUOTE;
+	}
+
+	/**
+	 * return the nanoseconds in seconds.
+	 *
+	 * @param nanos
+	 *            the nanoseconds to use.
+	 * @return the seconds.
+	 */
+	private static double toSeconds(final long nanos) {
+		return nanos / NANOS_PER_SECOND;
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private RpcMetricsUtil() {
+
+	}
+}
@@ -0,0 +1,567 @@
+package neo.rpc.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import neo.model.util.MapUtil;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.network.model.LocalNodeData;
+
+/**
+ * admission control for the RPC server, per client, so one client can not
+ * starve the block database for the node and the other clients.
+ * <p>
+ * a client is the value of the configured API key header, if the key is one
+ * of the configured client keys, or else the client's IP address. Keys that
+ * are not configured are ignored, so a client can not get a new bucket by
+ * sending a new key with each request.
+ * <p>
+ * each client has a token bucket, which fills at a fixed rate up to the burst
+ * size. Each call takes it's cost from the bucket, so expensive calls such as
+ * "getaccountlist" take more tokens than cheap ones, and a batch takes the sum
+ * of it's calls. When the bucket does not have enough tokens, the call gets a
+ * 429 response, with a "Retry-After" header for when it will. A call that
+ * costs more than a full bucket can never be admitted, and gets a 413
+ * response.
+ * <p>
+ * requests are also queued fairly: each client can only have a few requests on
+ * the RPC executor at once, and it's other requests wait in it's own queue
+ * until one of them completes. A client that pipelines many requests waits
+ * behind itself, not in front of everyone else.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcRateLimiter {
+
+	/**
+	 * the JSON key, "rate-limit".
+	 */
+	public static final String RATE_LIMIT = "rate-limit";
+
+	/**
+	 * the JSON key, "tokens-per-second".
+	 */
+	public static final String TOKENS_PER_SECOND = "tokens-per-second";
+
+	/**
+	 * the JSON key, "burst".
+	 */
+	public static final String BURST = "burst";
+
+	/**
+	 * the JSON key, "max-clients".
+	 */
+	public static final String MAX_CLIENTS = "max-clients";
+
+	/**
+	 * the JSON key, "max-in-flight".
+	 */
+	public static final String MAX_IN_FLIGHT = "max-in-flight";
+
+	/**
+	 * the JSON key, "max-waiting".
+	 */
+	public static final String MAX_WAITING = "max-waiting";
+
+	/**
+	 * the JSON key, "client-key-header".
+	 */
+	public static final String CLIENT_KEY_HEADER = "client-key-header";
+
+	/**
+	 * the JSON key, "client-keys".
+	 */
+	public static final String CLIENT_KEYS = "client-keys";
+
+	/**
+	 * the JSON key, "default-cost".
+	 */
+	public static final String DEFAULT_COST = "default-cost";
+
+	/**
+	 * the JSON key, "method-cost".
+	 */
+	public static final String METHOD_COST = "method-cost";
+
+	/**
+	 * the JSON key, "clients".
+	 */
+	public static final String CLIENTS = "clients";
+
+	/**
+	 * the JSON key, "admitted".
+	 */
+	public static final String ADMITTED = "admitted";
+
+	/**
+	 * the JSON key, "limited".
+	 */
+	public static final String LIMITED = "limited";
+
+	/**
+	 * the JSON key, "in-flight".
+	 */
+	public static final String IN_FLIGHT = "in-flight";
+
+	/**
+	 * the JSON key, "waiting".
+	 */
+	public static final String WAITING = "waiting";
+
+	/**
+	 * the JSON key, "queue-full".
+	 */
+	public static final String QUEUE_FULL = "queue-full";
+
+	/**
+	 * the API call key for calls rejected because the client had too few tokens.
+	 */
+	private static final String RPC_RATE_LIMITED = "rpc-rate-limited";
+
+	/**
+	 * the client key of the shared bucket, used when there are too many clients.
+	 */
+	private static final String OVERFLOW_CLIENT = "*";
+
+	/**
+	 * the rate the buckets fill, in tokens per second.
+	 */
+	private final double tokensPerSecond;
+
+	/**
+	 * the size of the buckets.
+	 */
+	private final double burst;
+
+	/**
+	 * the max number of clients with a bucket.
+	 */
+	private final int maxClients;
+
+	/**
+	 * the max number of requests of a client on the executor.
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * the max number of requests of a client waiting for the executor.
+	 */
+	private final int maxWaiting;
+
+	/**
+	 * the header with the client's API key, in lower case, or null to key every
+	 * client by IP address.
+	 */
+	private final String clientKeyHeader;
+
+	/**
+	 * the API keys that get their own bucket. Requests with any other key are
+	 * keyed by IP address.
+	 */
+	private final Set<String> clientKeySet = new HashSet<>();
+
+	/**
+	 * the cost of a call with no configured cost.
+	 */
+	private final int defaultCost;
+
+	/**
+	 * the cost of each call, by method name or City of Zion command, in lower
+	 * case.
+	 */
+	private final Map<String, Integer> methodCostMap = new HashMap<>();
+
+	/**
+	 * the executor the requests run on.
+	 */
+	private final MeteredExecutor executor;
+
+	/**
+	 * the token buckets, by client.
+	 */
+	private final Map<String, TokenBucket> bucketMap = new HashMap<>();
+
+	/**
+	 * the requests on the executor and waiting for it, by client.
+	 */
+	private final Map<String, ClientQueue> clientQueueMap = new HashMap<>();
+
+	/**
+	 * the number of calls admitted.
+	 */
+	private final LongAdder admittedCount = new LongAdder();
+
+	/**
+	 * the number of calls rejected because the client had too few tokens.
+	 */
+	private final LongAdder limitedCount = new LongAdder();
+
+	/**
+	 * the number of requests rejected because the client's queue was full.
+	 */
+	private final LongAdder queueFullCount = new LongAdder();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 * @param executor
+	 *            the executor the requests run on.
+	 */
+	public RpcRateLimiter(final JSONObject config, final MeteredExecutor executor) {
+		tokensPerSecond = config.getDouble(TOKENS_PER_SECOND);
+		burst = config.getDouble(BURST);
+		maxClients = config.getInt(MAX_CLIENTS);
+		maxInFlight = config.getInt(MAX_IN_FLIGHT);
+		maxWaiting = config.getInt(MAX_WAITING);
+		if (config.has(CLIENT_KEY_HEADER)) {
+			clientKeyHeader = config.getString(CLIENT_KEY_HEADER).toLowerCase(Locale.ROOT);
+		} else {
+			clientKeyHeader = null;
+		}
+		if (config.has(CLIENT_KEYS)) {
+			final JSONArray clientKeysJson = config.getJSONArray(CLIENT_KEYS);
+			for (int ix = 0; ix < clientKeysJson.length(); ix++) {
+				clientKeySet.add(clientKeysJson.getString(ix));
+			}
+		}
+		defaultCost = config.getInt(DEFAULT_COST);
+		final JSONObject methodCostJson = config.getJSONObject(METHOD_COST);
+		for (final String method : methodCostJson.keySet()) {
+			methodCostMap.put(method.toLowerCase(Locale.ROOT), methodCostJson.getInt(method));
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * removes the buckets that are full, as their clients have been idle, and
+	 * their state is the same as a new bucket.
+	 *
+	 * @param nowNanos
+	 *            the current time, in nanoseconds.
+	 */
+	private void evictFullBuckets(final long nowNanos) {
+		final Iterator<TokenBucket> bucketIt = bucketMap.values().iterator();
+		while (bucketIt.hasNext()) {
+			final TokenBucket bucket = bucketIt.next();
+			bucket.refill(nowNanos);
+			if (bucket.tokens >= burst) {
+				bucketIt.remove();
+			}
+		}
+	}
+
+	/**
+	 * runs the request on the executor, or, if the executor is full, rejects it.
+	 * When the request completes, the client's next waiting request is run.
+	 *
+	 * @param client
+	 *            the client.
+	 * @param request
+	 *            the request.
+	 */
+	private void execute(final String client, final QueuedRequest request) {
+		final boolean submitted = executor.tryExecute(() -> {
+			try {
+				request.task.run();
+			} finally {
+				onComplete(client);
+			}
+		});
+		if (!submitted) {
+			request.onRejected.run();
+			onComplete(client);
+		}
+	}
+
+	/**
+	 * return the client of the request, the value of it's API key header if the
+	 * key is a configured client key, or else it's IP address.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @return the client.
+	 */
+	public String getClientKey(final RpcHttpRequest request) {
+		if (clientKeyHeader != null) {
+			final String key = request.getHeader(clientKeyHeader);
+			if ((key != null) && clientKeySet.contains(key)) {
+				return "key:" + key;
+			}
+		}
+		return "ip:" + request.getRemoteAddress().getAddress().getHostAddress();
+	}
+
+	/**
+	 * return the cost of the call.
+	 *
+	 * @param method
+	 *            the method name or City of Zion command.
+	 * @return the cost.
+	 */
+	public int getCost(final String method) {
+		if (method == null) {
+			return defaultCost;
+		}
+		return methodCostMap.getOrDefault(method.toLowerCase(Locale.ROOT), defaultCost);
+	}
+
+	/**
+	 * return a new 429 response with a "Retry-After" header.
+	 *
+	 * @param message
+	 *            the error message.
+	 * @param retryAfterSeconds
+	 *            the number of seconds the client should wait before retrying,
+	 *            at least one.
+	 * @return the new response.
+	 */
+	private RpcHttpResponse newTooManyRequestsResponse(final String message, final long retryAfterSeconds) {
+		return RpcHttpResponse.error(RpcHttpResponse.TOO_MANY_REQUESTS, message)
+				.addHeader(RpcHttpResponse.RETRY_AFTER, Long.toString(Math.max(1, retryAfterSeconds)));
+	}
+
+	/**
+	 * return a new 429 response, for a request rejected because the client's
+	 * queue was full.
+	 *
+	 * @return the new response.
+	 */
+	RpcHttpResponse newQueueFullResponse() {
+		return newTooManyRequestsResponse("too many pending requests", 1);
+	}
+
+	/**
+	 * starts the client's next waiting request, or, if none are waiting, frees
+	 * it's place on the executor.
+	 *
+	 * @param client
+	 *            the client.
+	 */
+	private void onComplete(final String client) {
+		final QueuedRequest next;
+		synchronized (clientQueueMap) {
+			final ClientQueue clientQueue = clientQueueMap.get(client);
+			next = clientQueue.waitingQueue.poll();
+			if (next == null) {
+				clientQueue.inFlight--;
+				if (clientQueue.inFlight == 0) {
+					clientQueueMap.remove(client);
+				}
+			}
+		}
+		if (next != null) {
+			execute(client, next);
+		}
+	}
+
+	/**
+	 * runs the request on the executor if the client has fewer than the max
+	 * requests on it, or queues it behind the client's other requests.
+	 *
+	 * @param client
+	 *            the client.
+	 * @param task
+	 *            runs the request.
+	 * @param onRejected
+	 *            sends the overload response, if the executor is full when the
+	 *            request is run.
+	 * @return false if the client's queue is full, and the request was not
+	 *         queued.
+	 */
+	public boolean submit(final String client, final Runnable task, final Runnable onRejected) {
+		final QueuedRequest request = new QueuedRequest(task, onRejected);
+		synchronized (clientQueueMap) {
+			final ClientQueue clientQueue = clientQueueMap.computeIfAbsent(client, key -> new ClientQueue());
+			if (clientQueue.inFlight >= maxInFlight) {
+				if (clientQueue.waitingQueue.size() >= maxWaiting) {
+					queueFullCount.increment();
+					return false;
+				}
+				clientQueue.waitingQueue.add(request);
+				return true;
+			}
+			clientQueue.inFlight++;
+		}
+		execute(client, request);
+		return true;
+	}
+
+	/**
+	 * return the statistics of the limiter.
+	 *
+	 * @return the statistics.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		synchronized (bucketMap) {
+			json.put(CLIENTS, bucketMap.size());
+		}
+		long inFlight = 0;
+		long waiting = 0;
+		synchronized (clientQueueMap) {
+			for (final ClientQueue clientQueue : clientQueueMap.values()) {
+				inFlight += clientQueue.inFlight;
+				waiting += clientQueue.waitingQueue.size();
+			}
+		}
+		json.put(IN_FLIGHT, inFlight);
+		json.put(WAITING, waiting);
+		json.put(ADMITTED, admittedCount.sum());
+		json.put(LIMITED, limitedCount.sum());
+		json.put(QUEUE_FULL, queueFullCount.sum());
+		return json;
+	}
+
+	/**
+	 * takes the cost of a call from the client's bucket.
+	 *
+	 * @param client
+	 *            the client.
+	 * @param cost
+	 *            the cost of the call.
+	 * @return null if the call is admitted, a 429 response if the bucket does not
+	 *         have enough tokens, or a 413 response if the cost is over the
+	 *         burst size.
+	 */
+	public RpcHttpResponse tryAcquire(final String client, final int cost) {
+		if (cost > burst) {
+			limitedCount.increment();
+			MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_RATE_LIMITED);
+			return RpcHttpResponse.error(RpcHttpResponse.PAYLOAD_TOO_LARGE, "request costs more than the burst size");
+		}
+		final long nowNanos = System.nanoTime();
+		final double tokens = cost;
+		final double missingTokens;
+		synchronized (bucketMap) {
+			if (!bucketMap.containsKey(client) && (bucketMap.size() >= maxClients)) {
+				evictFullBuckets(nowNanos);
+			}
+			final String bucketKey;
+			if (bucketMap.containsKey(client) || (bucketMap.size() < maxClients)) {
+				bucketKey = client;
+			} else {
+				bucketKey = OVERFLOW_CLIENT;
+			}
+			final TokenBucket bucket = bucketMap.computeIfAbsent(bucketKey, key -> new TokenBucket(nowNanos));
+			bucket.refill(nowNanos);
+			missingTokens = tokens - bucket.tokens;
+			if (missingTokens <= 0) {
+				bucket.tokens -= tokens;
+			}
+		}
+		if (missingTokens <= 0) {
+			admittedCount.increment();
+			return null;
+		}
+		limitedCount.increment();
+		MapUtil.increment(LocalNodeData.API_CALL_MAP, RPC_RATE_LIMITED);
+		return newTooManyRequestsResponse("rate limited", (long) Math.ceil(missingTokens / tokensPerSecond));
+	}
+
+	/**
+	 * the requests of a client on the executor and waiting for it.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class ClientQueue {
+
+		/**
+		 * the number of requests on the executor.
+		 */
+		private int inFlight = 0;
+
+		/**
+		 * the requests waiting for the executor.
+		 */
+		private final Queue<QueuedRequest> waitingQueue = new ArrayDeque<>();
+	}
+
+	/**
+	 * a request waiting for the executor.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class QueuedRequest {
+
+		/**
+		 * runs the request.
+		 */
+		private final Runnable task;
+
+		/**
+		 * sends the overload response, if the executor is full.
+		 */
+		private final Runnable onRejected;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param task
+		 *            runs the request.
+		 * @param onRejected
+		 *            sends the overload response, if the executor is full.
+		 */
+		private QueuedRequest(final Runnable task, final Runnable onRejected) {
+			this.task = task;
+			this.onRejected = onRejected;
+		}
+	}
+
+	/**
+	 * a token bucket, which fills at a fixed rate up to the burst size.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private final class TokenBucket {
+
+		/**
+		 * the tokens in the bucket.
+		 */
+		private double tokens;
+
+		/**
+		 * the time the bucket was last filled, in nanoseconds.
+		 */
+		private long refillNanos;
+
+		/**
+		 * the constructor, for a full bucket.
+		 *
+		 * @param nowNanos
+		 *            the current time, in nanoseconds.
+		 */
+		private TokenBucket(final long nowNanos) {
+			tokens = burst;
+			refillNanos = nowNanos;
+		}
+
+		/**
+		 * adds the tokens for the time since the bucket was last filled.
+		 *
+		 * @param nowNanos
+		 *            the current time, in nanoseconds.
+		 */
+		private void refill(final long nowNanos) {
+			final double seconds = (nowNanos - refillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+			tokens = Math.min(burst, tokens + (seconds * tokensPerSecond));
+			refillNanos = nowNanos;
+		}
+	}
+}
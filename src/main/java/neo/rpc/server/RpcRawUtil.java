@@ -0,0 +1,311 @@
+package neo.rpc.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import neo.model.bytes.UInt256;
+import neo.model.core.Block;
+import neo.model.db.BlockDb;
+import neo.model.util.ModelUtil;
+
+/**
+ * the binary RPC endpoints, which send blocks and transactions as their stored
+ * bytes, with no JSON, and without decoding them into objects.
+ * <ul>
+ * <li>"/raw/block/{height or hash}" sends one block.</li>
+ * <li>"/raw/tx/{hash}" sends one transaction.</li>
+ * <li>"/raw/blocks?from={height}&amp;count={count}" sends a range of blocks,
+ * written as they are read, each one prefixed with it's length as a little
+ * endian int, the same as the chain export file.</li>
+ * </ul>
+ *
+ * @author coranos
+ *
+ */
+public final class RpcRawUtil {
+
+	/**
+	 * the JSON key, "max-raw-blocks".
+	 */
+	public static final String MAX_RAW_BLOCKS = "max-raw-blocks";
+
+	/**
+	 * the prefix of the raw URIs.
+	 */
+	public static final String RAW_URI_PREFIX = "/raw/";
+
+	/**
+	 * the content type, "application/octet-stream".
+	 */
+	private static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+
+	/**
+	 * the command for one block.
+	 */
+	private static final String BLOCK = "block";
+
+	/**
+	 * the command for one transaction.
+	 */
+	private static final String TX = "tx";
+
+	/**
+	 * the command for a range of blocks.
+	 */
+	private static final String BLOCKS = "blocks";
+
+	/**
+	 * the query parameter for the height of the first block.
+	 */
+	private static final String FROM = "from";
+
+	/**
+	 * the query parameter for the number of blocks.
+	 */
+	private static final String COUNT = "count";
+
+	/**
+	 * the prefix of the rate limiter cost key of a raw command.
+	 */
+	private static final String COST_KEY_PREFIX = "raw-";
+
+	/**
+	 * the radix of a hex digit.
+	 */
+	private static final int HEX_RADIX = 16;
+
+	/**
+	 * return the raw command of the URI, the path segment after "/raw/".
+	 *
+	 * @param uri
+	 *            the uri to use.
+	 * @return the command.
+	 */
+	private static String getCommand(final String uri) {
+		final String remainder = uri.substring(RAW_URI_PREFIX.length());
+		final int slashIx = remainder.indexOf('/');
+		if (slashIx < 0) {
+			return remainder;
+		}
+		return remainder.substring(0, slashIx);
+	}
+
+	/**
+	 * return the rate limiter cost key of the raw URI, such as "raw-blocks".
+	 *
+	 * @param uri
+	 *            the uri to use.
+	 * @return the cost key.
+	 */
+	public static String getCostKey(final String uri) {
+		return COST_KEY_PREFIX + getCommand(uri);
+	}
+
+	/**
+	 * return the value of the query parameter, as a long.
+	 *
+	 * @param query
+	 *            the query, or null if there is none.
+	 * @param name
+	 *            the name of the parameter.
+	 * @return the value, or null if there is no such parameter.
+	 */
+	private static Long getQueryLong(final String query, final String name) {
+		if (query == null) {
+			return null;
+		}
+		for (final String param : query.split("&")) {
+			if (param.startsWith(name + "=")) {
+				return Long.parseLong(param.substring(name.length() + 1));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * return the hash in the hex string, or null if it is not a hash.
+	 *
+	 * @param hashHex
+	 *            the hex string to use.
+	 * @return the hash.
+	 */
+	private static UInt256 getHash(final String hashHex) {
+		if (hashHex.length() != (UInt256.SIZE * 2)) {
+			return null;
+		}
+		for (final char c : hashHex.toCharArray()) {
+			if (Character.digit(c, HEX_RADIX) < 0) {
+				return null;
+			}
+		}
+		return new UInt256(ByteBuffer.wrap(ModelUtil.decodeHex(hashHex)));
+	}
+
+	/**
+	 * return true if the URI is one of the raw URIs.
+	 *
+	 * @param uri
+	 *            the uri to use.
+	 * @return true if the URI is raw.
+	 */
+	public static boolean isRaw(final String uri) {
+		return uri.startsWith(RAW_URI_PREFIX);
+	}
+
+	/**
+	 * processes a raw request.
+	 *
+	 * @param blockDb
+	 *            the block database to read.
+	 * @param request
+	 *            the request to use.
+	 * @param maxBlocks
+	 *            the max number of blocks in a range.
+	 * @return the response.
+	 */
+	public static RpcHttpResponse process(final BlockDb blockDb, final RpcHttpRequest request, final int maxBlocks) {
+		final String uri = request.getUri();
+		final String command = getCommand(uri);
+		final String remainder = uri.substring(RAW_URI_PREFIX.length() + command.length());
+		switch (command) {
+		case BLOCK: {
+			return processBlock(blockDb, remainder);
+		}
+		case TX: {
+			final UInt256 hash = getHash(remainder.substring(Math.min(1, remainder.length())));
+			if (hash == null) {
+				return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "expected a transaction hash");
+			}
+			return toHttpResponse(blockDb.getRawTransactionFromHash(hash));
+		}
+		case BLOCKS: {
+			return processBlocks(blockDb, request, maxBlocks);
+		}
+		default: {
+			return RpcHttpResponse.error(RpcHttpResponse.NOT_FOUND, "unknown URI");
+		}
+		}
+	}
+
+	/**
+	 * processes a request for one block.
+	 *
+	 * @param blockDb
+	 *            the block database to read.
+	 * @param remainder
+	 *            the URI after the command, "/" then the height or hash.
+	 * @return the response.
+	 */
+	private static RpcHttpResponse processBlock(final BlockDb blockDb, final String remainder) {
+		final String heightOrHash = remainder.substring(Math.min(1, remainder.length()));
+		if (!heightOrHash.isEmpty() && heightOrHash.chars().allMatch(Character::isDigit)
+				&& (heightOrHash.length() < UInt256.SIZE)) {
+			return toHttpResponse(blockDb.getRawBlockFromHeight(Long.parseLong(heightOrHash)));
+		}
+		final UInt256 hash = getHash(heightOrHash);
+		if (hash == null) {
+			return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "expected a block height or hash");
+		}
+		return toHttpResponse(blockDb.getRawBlockFromHash(hash));
+	}
+
+	/**
+	 * processes a request for a range of blocks. The range is cut off at the
+	 * highest block. HTTP/1.1 clients are sent the blocks as they are read, in
+	 * chunked transfer encoding, and HTTP/1.0 clients, which can't take a chunked
+	 * body, are sent them all at once.
+	 *
+	 * @param blockDb
+	 *            the block database to read.
+	 * @param request
+	 *            the request to use.
+	 * @param maxBlocks
+	 *            the max number of blocks in a range.
+	 * @return the response.
+	 */
+	private static RpcHttpResponse processBlocks(final BlockDb blockDb, final RpcHttpRequest request,
+			final int maxBlocks) {
+		final Long from;
+		final Long count;
+		try {
+			from = getQueryLong(request.getQuery(), FROM);
+			count = getQueryLong(request.getQuery(), COUNT);
+		} catch (final NumberFormatException e) {
+			return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST, "bad from or count");
+		}
+		if ((from == null) || (count == null) || (from < 0) || (count < 1) || (count > maxBlocks)) {
+			return RpcHttpResponse.error(RpcHttpResponse.BAD_REQUEST,
+					"expected from >= 0 and count from 1 to " + maxBlocks);
+		}
+		final Block maxHeader = blockDb.getHeaderOfBlockWithMaxIndex();
+		final long maxIndex;
+		if (maxHeader == null) {
+			maxIndex = -1;
+		} else {
+			maxIndex = maxHeader.getIndexAsLong();
+		}
+		final long to = Math.min(from + count, maxIndex + 1);
+		final Consumer<OutputStream> streamBody = out -> writeBlocks(blockDb, from, to, out);
+		if (request.getVersion().equals(RpcHttpRequest.HTTP_1_0)) {
+			final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			streamBody.accept(bout);
+			return new RpcHttpResponse(RpcHttpResponse.OK, APPLICATION_OCTET_STREAM, bout.toByteArray());
+		}
+		return RpcHttpResponse.stream(APPLICATION_OCTET_STREAM, streamBody);
+	}
+
+	/**
+	 * return the stored bytes as a response, or a 404 response if they are null.
+	 *
+	 * @param ba
+	 *            the stored bytes, or null if nothing was found.
+	 * @return the response.
+	 */
+	private static RpcHttpResponse toHttpResponse(final byte[] ba) {
+		if (ba == null) {
+			return RpcHttpResponse.error(RpcHttpResponse.NOT_FOUND, "not found");
+		}
+		return new RpcHttpResponse(RpcHttpResponse.OK, APPLICATION_OCTET_STREAM, ba);
+	}
+
+	/**
+	 * writes the blocks, each one prefixed with it's length as a little endian
+	 * int.
+	 *
+	 * @param blockDb
+	 *            the block database to read.
+	 * @param from
+	 *            the height of the first block.
+	 * @param to
+	 *            the height after the last block.
+	 * @param out
+	 *            the stream to write to.
+	 */
+	private static void writeBlocks(final BlockDb blockDb, final long from, final long to, final OutputStream out) {
+		final ByteBuffer lengthBb = ByteBuffer.allocate(Integer.BYTES);
+		try {
+			for (long height = from; height < to; height++) {
+				final byte[] ba = blockDb.getRawBlockFromHeight(height);
+				if (ba == null) {
+					return;
+				}
+				lengthBb.clear();
+				lengthBb.putInt(Integer.reverseBytes(ba.length));
+				out.write(lengthBb.array());
+				out.write(ba);
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private RpcRawUtil() {
+
+	}
+}
@@ -0,0 +1,447 @@
+package neo.rpc.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.codec.binary.Hex;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import neo.model.util.SHA256HashUtil;
+
+/**
+ * a cache of serialized RPC responses, limited to a max number of bytes.
+ * <p>
+ * blocks and transactions never change once they are in the blockchain, so the
+ * responses to calls that look them up are immutable, and are kept until they
+ * are evicted. The responses to calls that depend on the tip of the blockchain,
+ * such as the block count, are kept only until the blockchain version changes.
+ * Error responses are not cached, as the block or transaction may arrive later.
+ * <p>
+ * responses are stored without their JSON-RPC id, so one entry serves every
+ * client, and the id of each request is spliced into the stored bytes. Each
+ * entry has an ETag, the hash of it's bytes, so clients can send
+ * "If-None-Match" and get a 304 response with no body.
+ *
+ * @author coranos
+ *
+ */
+public final class RpcResponseCache {
+
+	/**
+	 * the JSON key, "max-bytes".
+	 */
+	public static final String MAX_BYTES = "max-bytes";
+
+	/**
+	 * the JSON key, "hits".
+	 */
+	public static final String HITS = "hits";
+
+	/**
+	 * the JSON key, "misses".
+	 */
+	public static final String MISSES = "misses";
+
+	/**
+	 * the JSON key, "hit-ratio-percent".
+	 */
+	public static final String HIT_RATIO_PERCENT = "hit-ratio-percent";
+
+	/**
+	 * the JSON key, "evictions".
+	 */
+	public static final String EVICTIONS = "evictions";
+
+	/**
+	 * the JSON key, "bytes".
+	 */
+	public static final String BYTES = "bytes";
+
+	/**
+	 * the JSON key, "entries".
+	 */
+	public static final String ENTRIES = "entries";
+
+	/**
+	 * the calls whose responses never change.
+	 */
+	private static final Set<String> IMMUTABLE_METHODS = Collections
+			.unmodifiableSet(new TreeSet<>(Arrays.asList(CoreRpcCommandEnum.GETBLOCK.getName(),
+					CoreRpcCommandEnum.GETBLOCKHASH.getName(), CoreRpcCommandEnum.GETRAWTRANSACTION.getName())));
+
+	/**
+	 * the calls whose responses change when the tip of the blockchain changes.
+	 */
+	private static final Set<String> TIP_METHODS = Collections.unmodifiableSet(new TreeSet<>(Arrays
+			.asList(CoreRpcCommandEnum.GETBLOCKCOUNT.getName(), CoreRpcCommandEnum.GETBESTBLOCKHASH.getName())));
+
+	/**
+	 * the blockchain version of immutable entries.
+	 */
+	private static final long IMMUTABLE = -1;
+
+	/**
+	 * the number of bytes of the hash used in the ETag.
+	 */
+	private static final int ETAG_HASH_BYTES = 16;
+
+	/**
+	 * the estimated memory used by an entry, besides it's key and bytes.
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	/**
+	 * the prefix of the key of a CityOfZion call.
+	 */
+	private static final String URI_KEY_PREFIX = "uri:";
+
+	/**
+	 * return the cache key of a core RPC request, or null if it's response can't
+	 * be cached. The key is the method and the parameters, with hex strings in
+	 * lower case.
+	 *
+	 * @param request
+	 *            the request to use.
+	 * @return the cache key, or null.
+	 */
+	public static String getCoreRpcKey(final JSONObject request) {
+		if (!RpcServerUtil.VERSION_2_0.equals(request.optString(RpcServerUtil.JSONRPC))) {
+			return null;
+		}
+		final String method = request.optString(RpcServerUtil.METHOD);
+		if (TIP_METHODS.contains(method)) {
+			return method;
+		}
+		if (!IMMUTABLE_METHODS.contains(method)) {
+			return null;
+		}
+		final JSONArray params = request.optJSONArray(RpcServerUtil.PARAMS);
+		if (params == null) {
+			return null;
+		}
+		final JSONArray canonicalParams = new JSONArray();
+		for (int ix = 0; ix < params.length(); ix++) {
+			final Object param = params.get(ix);
+			if (param instanceof String) {
+				canonicalParams.put(((String) param).toLowerCase(Locale.ROOT));
+			} else {
+				canonicalParams.put(param);
+			}
+		}
+		return method + canonicalParams.toString();
+	}
+
+	/**
+	 * return the cache key of a CityOfZion request, or null if it's response
+	 * can't be cached. Only transaction lookups are cached.
+	 *
+	 * @param uri
+	 *            the URI of the request.
+	 * @return the cache key, or null.
+	 */
+	public static String getUriKey(final String uri) {
+		if (uri.startsWith(CityOfZionCommandEnum.TRANSACTION.getUriPrefix())) {
+			return URI_KEY_PREFIX + uri.toLowerCase(Locale.ROOT);
+		}
+		return null;
+	}
+
+	/**
+	 * return true if the key is for a call that depends on the tip of the
+	 * blockchain.
+	 *
+	 * @param key
+	 *            the cache key.
+	 * @return true if the call depends on the tip of the blockchain.
+	 */
+	private static boolean isTipDependent(final String key) {
+		return TIP_METHODS.contains(key);
+	}
+
+	/**
+	 * the max number of bytes of the entries.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * the entries, in least recently used order.
+	 */
+	private final LinkedHashMap<String, CachedResponse> entryMap = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * the number of bytes of the entries.
+	 */
+	private long currentBytes = 0;
+
+	/**
+	 * the number of lookups that found an entry.
+	 */
+	private final LongAdder hitCount = new LongAdder();
+
+	/**
+	 * the number of lookups that did not find an entry.
+	 */
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * the number of entries evicted to stay under the max bytes.
+	 */
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param config
+	 *            the configuration to use.
+	 */
+	public RpcResponseCache(final JSONObject config) {
+		maxBytes = config.getLong(MAX_BYTES);
+	}
+
+	/**
+	 * return the cached response, or null if there is none, or it depends on the
+	 * tip and the blockchain version has changed.
+	 *
+	 * @param key
+	 *            the cache key.
+	 * @param blockchainVersion
+	 *            the current blockchain version.
+	 * @return the cached response, or null.
+	 */
+	public CachedResponse get(final String key, final long blockchainVersion) {
+		final CachedResponse cachedResponse;
+		synchronized (this) {
+			final CachedResponse entry = entryMap.get(key);
+			if ((entry != null) && (entry.blockchainVersion != IMMUTABLE)
+					&& (entry.blockchainVersion != blockchainVersion)) {
+				remove(key);
+				cachedResponse = null;
+			} else {
+				cachedResponse = entry;
+			}
+		}
+		if (cachedResponse == null) {
+			missCount.increment();
+		} else {
+			hitCount.increment();
+		}
+		return cachedResponse;
+	}
+
+	/**
+	 * return the number of bytes of the entries.
+	 *
+	 * @return the number of bytes of the entries.
+	 */
+	public synchronized long getBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * return the number of entries.
+	 *
+	 * @return the number of entries.
+	 */
+	public synchronized int getEntryCount() {
+		return entryMap.size();
+	}
+
+	/**
+	 * return the number of entries evicted to stay under the max bytes.
+	 *
+	 * @return the number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * return the number of lookups that found an entry.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * return the percent of lookups that found an entry.
+	 *
+	 * @return the hit ratio, as a percent.
+	 */
+	public long getHitRatioPercent() {
+		final long hits = hitCount.sum();
+		final long lookups = hits + missCount.sum();
+		if (lookups == 0) {
+			return 0;
+		}
+		return (hits * 100) / lookups;
+	}
+
+	/**
+	 * return the number of lookups that did not find an entry.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * caches the response, if it fits, and returns it as a cached response. The
+	 * JSON-RPC id is removed from the response.
+	 *
+	 * @param key
+	 *            the cache key.
+	 * @param response
+	 *            the response.
+	 * @param blockchainVersion
+	 *            the blockchain version when the response was made.
+	 * @return the cached response.
+	 */
+	public CachedResponse put(final String key, final JSONObject response, final long blockchainVersion) {
+		response.remove(RpcServerUtil.ID);
+		final byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+		final long entryVersion;
+		if (isTipDependent(key)) {
+			entryVersion = blockchainVersion;
+		} else {
+			entryVersion = IMMUTABLE;
+		}
+		final CachedResponse cachedResponse = new CachedResponse(body, entryVersion);
+		final long entryBytes = getEntryBytes(key, cachedResponse);
+		if (entryBytes > maxBytes) {
+			return cachedResponse;
+		}
+		synchronized (this) {
+			remove(key);
+			entryMap.put(key, cachedResponse);
+			currentBytes += entryBytes;
+			final Iterator<Map.Entry<String, CachedResponse>> entryIt = entryMap.entrySet().iterator();
+			while ((currentBytes > maxBytes) && entryIt.hasNext()) {
+				final Map.Entry<String, CachedResponse> entry = entryIt.next();
+				currentBytes -= getEntryBytes(entry.getKey(), entry.getValue());
+				entryIt.remove();
+				evictionCount.increment();
+			}
+		}
+		return cachedResponse;
+	}
+
+	/**
+	 * return the estimated memory used by an entry.
+	 *
+	 * @param key
+	 *            the key of the entry.
+	 * @param cachedResponse
+	 *            the response of the entry.
+	 * @return the estimated memory used.
+	 */
+	private long getEntryBytes(final String key, final CachedResponse cachedResponse) {
+		return (key.length() * 2L) + cachedResponse.body.length + ENTRY_OVERHEAD_BYTES;
+	}
+
+	/**
+	 * removes the entry, if there is one. The caller must hold the lock.
+	 *
+	 * @param key
+	 *            the cache key.
+	 */
+	private void remove(final String key) {
+		final CachedResponse removed = entryMap.remove(key);
+		if (removed != null) {
+			currentBytes -= getEntryBytes(key, removed);
+		}
+	}
+
+	/**
+	 * return the statistics of the cache.
+	 *
+	 * @return the statistics.
+	 */
+	public JSONObject toJSONObject() {
+		final JSONObject json = new JSONObject();
+		json.put(HITS, getHitCount());
+		json.put(MISSES, getMissCount());
+		json.put(HIT_RATIO_PERCENT, getHitRatioPercent());
+		json.put(EVICTIONS, getEvictionCount());
+		json.put(BYTES, getBytes());
+		json.put(ENTRIES, getEntryCount());
+		return json;
+	}
+
+	/**
+	 * a serialized response in the cache.
+	 *
+	 * @author coranos
+	 *
+	 */
+	public static final class CachedResponse {
+
+		/**
+		 * the serialized response, without a JSON-RPC id.
+		 */
+		private final byte[] body;
+
+		/**
+		 * the blockchain version the response is valid for, or IMMUTABLE.
+		 */
+		private final long blockchainVersion;
+
+		/**
+		 * the ETag, a quoted hash of the body.
+		 */
+		private final String etag;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param body
+		 *            the serialized response, without a JSON-RPC id.
+		 * @param blockchainVersion
+		 *            the blockchain version the response is valid for.
+		 */
+		private CachedResponse(final byte[] body, final long blockchainVersion) {
+			this.body = body;
+			this.blockchainVersion = blockchainVersion;
+			final byte[] hash = Arrays.copyOf(SHA256HashUtil.getSHA256Hash(body), ETAG_HASH_BYTES);
+			etag = '"' + Hex.encodeHexString(hash) + '"';
+		}
+
+		/**
+		 * return the serialized response, with the JSON-RPC id spliced in.
+		 *
+		 * @param id
+		 *            the JSON-RPC id of the request, or null for no id.
+		 * @return the serialized response.
+		 */
+		public byte[] getBody(final Object id) {
+			if (id == null) {
+				return body;
+			}
+			final byte[] prefix = ("{\"" + RpcServerUtil.ID + "\":" + JSONObject.valueToString(id) + ',')
+					.getBytes(StandardCharsets.UTF_8);
+			final byte[] idBody = Arrays.copyOf(prefix, (prefix.length + body.length) - 1);
+			System.arraycopy(body, 1, idBody, prefix.length, body.length - 1);
+			return idBody;
+		}
+
+		/**
+		 * return the ETag, a quoted hash of the response.
+		 *
+		 * @return the ETag.
+		 */
+		public String getEtag() {
+			return etag;
+		}
+	}
+}
@@ -1,11 +1,12 @@
 package neo.rpc.server;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.function.Function;
 
 import org.apache.commons.codec.binary.Hex;
 import org.json.JSONArray;
@@ -20,11 +21,12 @@ import neo.model.core.Block;
 import neo.model.core.CoinReference;
 import neo.model.core.Transaction;
 import neo.model.core.TransactionOutput;
-import neo.model.core.TransactionType;
+import neo.model.db.AccountActivity;
 import neo.model.db.BlockDb;
-import neo.model.util.MapUtil;
+import neo.model.db.ClaimRecord;
 import neo.model.util.ModelUtil;
 import neo.network.LocalControllerNode;
+import neo.network.MemoryPoolUtil;
 import neo.network.model.LocalNodeData;
 import neo.network.model.NodeConnectionPhaseEnum;
 import neo.network.model.RemoteNodeData;
@@ -60,6 +62,16 @@ import neo.network.model.RemoteNodeData;
  */
 public final class RpcServerUtil {
 
+	/**
+	 * the JSON key, "commands".
+	 */
+	private static final String COMMANDS = "commands";
+
+	/**
+	 * the JSON key, "peers".
+	 */
+	private static final String PEERS = "peers";
+
 	/**
 	 * the JSON key, "sysfee".
 	 */
@@ -235,127 +247,6 @@ public final class RpcServerUtil {
 	 */
 	public static final String METHOD = "method";
 
-	/**
-	 * gas generation amount.
-	 */
-	private static final long[] GENERATION_AMOUNT = new long[] { 8, 7, 6, 5, 4, 3, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
-			1, 1, 1, 1 };
-
-	/**
-	 * gas generation length.
-	 */
-	private static final long GENERATION_LENGTH = 22;
-
-	/**
-	 * gas generation decrement interval.
-	 */
-	private static final long DECREMENT_INTERVAL = 2000000;
-
-	/**
-	 * calculates the bonus for the given claim.
-	 *
-	 * @param claim
-	 *            the claim to use.
-	 * @return the bonus.
-	 */
-	private static long calculateBonus(final JSONObject claim) {
-		long amountClaimed = 0;
-		final long startHeight = claim.getLong(START);
-		final long endHeight = claim.getLong(END);
-		long amount = 0;
-		long ustart = startHeight / DECREMENT_INTERVAL;
-		if (ustart < GENERATION_LENGTH) {
-			long istart = startHeight % DECREMENT_INTERVAL;
-			long uend = endHeight / DECREMENT_INTERVAL;
-			long iend = endHeight % DECREMENT_INTERVAL;
-			if (uend >= GENERATION_LENGTH) {
-				uend = GENERATION_LENGTH;
-				iend = 0;
-			}
-			if (iend == 0) {
-				uend = uend - 1;
-				iend = DECREMENT_INTERVAL;
-			}
-			while (ustart < uend) {
-				amount += (DECREMENT_INTERVAL - istart) * GENERATION_AMOUNT[(int) ustart];
-				ustart += 1;
-				istart = 0;
-			}
-
-			amount += (iend - istart) * GENERATION_AMOUNT[(int) ustart];
-		}
-
-		amount += claim.getLong(SYSFEE);
-		amountClaimed += claim.getInt(VALUE) * amount;
-		return amountClaimed;
-	}
-
-	/**
-	 * calculates the system fee for the given blocks.
-	 *
-	 * @param systemFeeMap
-	 *            the map of system fees by transaction type.
-	 *
-	 * @param blockDb
-	 *            the block database.
-	 * @param startBlockIx
-	 *            the start block index.
-	 *
-	 * @param endBlockIx
-	 *            the end block index.
-	 *
-	 * @return the system fee.
-	 */
-	private static long computeSysFee(final Map<TransactionType, Fixed8> systemFeeMap, final BlockDb blockDb,
-			final long startBlockIx, final long endBlockIx) {
-		long sysFee = 0;
-
-		for (long blockIx = startBlockIx; blockIx <= endBlockIx; blockIx++) {
-			final Block block = blockDb.getFullBlockFromHeight(blockIx);
-			for (final Transaction tx : block.getTransactionList()) {
-				sysFee += systemFeeMap.get(tx.type).value;
-			}
-		}
-		return sysFee;
-	}
-
-	/**
-	 * returns the address asset map.
-	 *
-	 * @param blockDb
-	 *            the block database to use.
-	 * @param transaction
-	 *            the transaction to use.
-	 * @return the address asset map.
-	 */
-	public static Map<UInt160, Map<UInt256, Long>> getAddressAssetMap(final BlockDb blockDb,
-			final Transaction transaction) {
-		final Map<UInt160, Map<UInt256, Long>> friendAssetMap = new TreeMap<>();
-
-		for (final CoinReference cr : transaction.inputs) {
-			final UInt256 prevHashReversed = cr.prevHash.reverse();
-			final Transaction tiTx = blockDb.getTransactionWithHash(prevHashReversed);
-
-			if (tiTx == null) {
-				throw new RuntimeException("no transaction with prevHash:" + prevHashReversed);
-			}
-
-			final TransactionOutput ti = tiTx.outputs.get(cr.prevIndex.asInt());
-			final UInt160 input = ti.scriptHash;
-			if ((ti.assetId.equals(ModelUtil.NEO_HASH)) || (ti.assetId.equals(ModelUtil.GAS_HASH))) {
-				MapUtil.increment(friendAssetMap, input, ti.assetId, ti.value.value, TreeMap.class);
-			}
-		}
-
-		for (final TransactionOutput to : transaction.outputs) {
-			final UInt160 output = to.scriptHash;
-			if ((to.assetId.equals(ModelUtil.NEO_HASH)) || (to.assetId.equals(ModelUtil.GAS_HASH))) {
-				MapUtil.increment(friendAssetMap, output, to.assetId, -to.value.value, TreeMap.class);
-			}
-		}
-		return friendAssetMap;
-	}
-
 	/**
 	 * finds a block with a given timestamp.
 	 *
@@ -406,9 +297,9 @@ public final class RpcServerUtil {
 	 *            the id to use.
 	 * @param params
 	 *            the parameters to use.
-	 * @return the list of account data.
+	 * @return the list of account data, streamed, or an error response.
 	 */
-	private static JSONObject onGetAccountList(final LocalControllerNode controller, final int id,
+	private static Object onGetAccountList(final LocalControllerNode controller, final int id,
 			final JSONArray params) {
 		try {
 			LOG.trace("getaccountlist 0");
@@ -423,80 +314,22 @@ public final class RpcServerUtil {
 
 			LOG.trace("getaccountlist 1 fromHeight:{};toHeight:{};", fromHeight, toHeight);
 
-			LOG.trace("getaccountlist 2 accountStateCache STARTED");
-
-			final Map<UInt160, Map<UInt256, Fixed8>> addressStateCache = blockDb.getAccountAssetValueMap();
-			LOG.trace("getaccountlist 2 accountStateCache SUCCESS, count:{}", addressStateCache.size());
-
-			final Map<UInt160, Long> neoTxByAddress = new TreeMap<>();
-			final Map<UInt160, Long> gasTxByAddress = new TreeMap<>();
-
-			final Map<UInt160, Long> neoInByAddress = new TreeMap<>();
-			final Map<UInt160, Long> gasInByAddress = new TreeMap<>();
-
-			final Map<UInt160, Long> neoOutByAddress = new TreeMap<>();
-			final Map<UInt160, Long> gasOutByAddress = new TreeMap<>();
-			final Map<UInt160, Long> firstTsByAddress = new TreeMap<>();
-			final Map<UInt160, Long> lastTsByAddress = new TreeMap<>();
-
-			for (long index = fromHeight; index < toHeight; index++) {
-				LOG.trace("getaccountlist 3 fromHeight:{};toHeight:{};index:{};", fromHeight, toHeight, index);
-				final Block block = blockDb.getFullBlockFromHeight(index);
+			LOG.trace("getaccountlist 2 activityLookup STARTED");
+			final Function<UInt160, AccountActivity> activityLookup = blockDb.getAccountActivityLookup(fromHeight,
+					toHeight);
+			LOG.trace("getaccountlist 2 activityLookup SUCCESS");
 
-				for (final Transaction t : block.getTransactionList()) {
-					final Map<UInt160, Map<UInt256, Long>> addressAssetMap = getAddressAssetMap(blockDb, t);
-
-					for (final UInt160 friend : addressAssetMap.keySet()) {
-						if (!firstTsByAddress.containsKey(friend)) {
-							firstTsByAddress.put(friend, block.timestamp.asLong());
-						}
-						lastTsByAddress.put(friend, block.timestamp.asLong());
-
-						if (addressAssetMap.get(friend).containsKey(ModelUtil.NEO_HASH)) {
-							MapUtil.increment(neoTxByAddress, friend);
-							final long value = addressAssetMap.get(friend).get(ModelUtil.NEO_HASH);
-							if (value < 0) {
-								MapUtil.increment(neoInByAddress, friend, -value);
-							} else {
-								MapUtil.increment(neoOutByAddress, friend, value);
-							}
-						}
-						if (addressAssetMap.get(friend).containsKey(ModelUtil.GAS_HASH)) {
-							MapUtil.increment(gasTxByAddress, friend);
-							final long value = addressAssetMap.get(friend).get(ModelUtil.GAS_HASH);
-							if (value < 0) {
-								MapUtil.increment(gasInByAddress, friend, -value);
-							} else {
-								MapUtil.increment(gasOutByAddress, friend, value);
-							}
-						}
-					}
-				}
-			}
-
-			LOG.trace("getaccountlist 4 addressByAccount STARTED");
-
-			final Map<UInt160, String> addressByScriptHash = new TreeMap<>();
-
-			for (final UInt160 key : addressStateCache.keySet()) {
-				final String address = ModelUtil.scriptHashToAddress(key);
-				addressByScriptHash.put(key, address);
-			}
-			LOG.trace("getaccountlist 4 addressByAccount SUCCESS, address count:{};", addressByScriptHash.size());
-
-			LOG.trace("getaccountlist 5 returnList STARTED");
-			final JSONArray returnList = new JSONArray();
-
-			for (final UInt160 key : addressStateCache.keySet()) {
-				LOG.trace("getaccountlist 6 key:{};", key);
-				if (addressByScriptHash.containsKey(key)) {
-					final Map<UInt256, Fixed8> addressState = addressStateCache.get(key);
-					final String address = addressByScriptHash.get(key);
-
-					LOG.trace("getaccountlist 7 key:{}; address:{};", key, address);
+			LOG.trace("getaccountlist 3 returnList STREAMED");
+			final JsonStreamable response = writer -> {
+				writer.beginObject();
+				writer.entry(ID, id);
+				writer.entry(JSONRPC, VERSION_2_0);
+				writer.key(RESULT).beginArray();
+				blockDb.forEachAccountAssetValue((key, addressState) -> {
+					final AccountActivity activity = activityLookup.apply(key);
 
 					final JSONObject entry = new JSONObject();
-					entry.put("account", address);
+					entry.put("account", ModelUtil.scriptHashToAddress(key));
 
 					if (addressState.containsKey(ModelUtil.NEO_HASH)) {
 						entry.put(ModelUtil.NEO, ModelUtil.toRoundedLong(addressState.get(ModelUtil.NEO_HASH).value));
@@ -510,65 +343,22 @@ public final class RpcServerUtil {
 						entry.put(ModelUtil.GAS, 0);
 					}
 
-					if (neoInByAddress.containsKey(key)) {
-						entry.put(NEO_IN, ModelUtil.toRoundedLong(neoInByAddress.get(key)));
-					} else {
-						entry.put(NEO_IN, 0);
-					}
-
-					if (neoOutByAddress.containsKey(key)) {
-						entry.put(NEO_OUT, ModelUtil.toRoundedLong(neoOutByAddress.get(key)));
-					} else {
-						entry.put(NEO_OUT, 0);
-					}
-
-					if (gasInByAddress.containsKey(key)) {
-						entry.put(GAS_IN, ModelUtil.toRoundedDouble(gasInByAddress.get(key)));
-					} else {
-						entry.put(GAS_IN, 0);
-					}
+					entry.put(NEO_IN, ModelUtil.toRoundedLong(activity.getNeoIn()));
+					entry.put(NEO_OUT, ModelUtil.toRoundedLong(activity.getNeoOut()));
+					entry.put(GAS_IN, ModelUtil.toRoundedDouble(activity.getGasIn()));
+					entry.put(GAS_OUT, ModelUtil.toRoundedDouble(activity.getGasOut()));
+					entry.put(NEO_TX, activity.getNeoTx());
+					entry.put(GAS_TX, activity.getGasTx());
+					entry.put(FIRST_TS, activity.getFirstTs());
+					entry.put(LAST_TS, activity.getLastTs());
 
-					if (gasOutByAddress.containsKey(key)) {
-						entry.put(GAS_OUT, ModelUtil.toRoundedDouble(gasOutByAddress.get(key)));
-					} else {
-						entry.put(GAS_OUT, 0);
-					}
+					writer.value(entry);
+				});
+				writer.endArray();
+				writer.endObject();
+			};
 
-					if (neoTxByAddress.containsKey(key)) {
-						entry.put(NEO_TX, neoTxByAddress.get(key));
-					} else {
-						entry.put(NEO_TX, 0);
-					}
-
-					if (gasTxByAddress.containsKey(key)) {
-						entry.put(GAS_TX, gasTxByAddress.get(key));
-					} else {
-						entry.put(GAS_TX, 0);
-					}
-
-					if (firstTsByAddress.containsKey(key)) {
-						entry.put(FIRST_TS, firstTsByAddress.get(key));
-					} else {
-						entry.put(FIRST_TS, 0);
-					}
-
-					if (lastTsByAddress.containsKey(key)) {
-						entry.put(LAST_TS, lastTsByAddress.get(key));
-					} else {
-						entry.put(LAST_TS, 0);
-					}
-
-					returnList.put(entry);
-				}
-			}
-			LOG.trace("getaccountlist 5 returnList SUCCESS, returnList.size:{};", returnList.length());
-
-			LOG.trace("getaccountlist 6 return");
-
-			final JSONObject response = new JSONObject();
-			response.put(ID, id);
-			response.put(JSONRPC, VERSION_2_0);
-			response.put(RESULT, returnList);
+			LOG.trace("getaccountlist 4 return");
 
 			return response;
 		} catch (final RuntimeException e) {
@@ -812,7 +602,8 @@ public final class RpcServerUtil {
 	}
 
 	/**
-	 * return the available claims of the address.
+	 * return the available claims of the address, the NEO outputs it spent whose
+	 * GAS has not been claimed, read from the block database's claim index.
 	 *
 	 * @param controller
 	 *            the controller to use.
@@ -827,50 +618,21 @@ public final class RpcServerUtil {
 		}
 
 		try {
-			final BlockDb blockDb = controller.getLocalNodeData().getBlockDb();
-			final Map<UInt256, Map<TransactionOutput, CoinReference>> transactionOutputListMap = controller
-					.getLocalNodeData().getBlockDb().getUnspentTransactionOutputListMap(scriptHash);
+			final List<ClaimRecord> claimList = controller.getLocalNodeData().getBlockDb()
+					.getClaimableList(scriptHash);
 
 			final JSONArray claimJa = new JSONArray();
-
-			if (transactionOutputListMap != null) {
-				final Map<TransactionOutput, CoinReference> neoTransactionOutputListMap = transactionOutputListMap
-						.get(ModelUtil.NEO_HASH);
-
-				final Map<TransactionOutput, Long> blockIxByTxoMap = new TreeMap<>();
-
-				final List<Transaction> transactionList = blockDb.getTransactionWithAccountList(scriptHash);
-				for (final Transaction transaction : transactionList) {
-					final long blockIx = blockDb.getBlockIndexFromTransactionHash(transaction.getHash());
-					for (final TransactionOutput to : transaction.outputs) {
-						if (neoTransactionOutputListMap.containsKey(to)) {
-							blockIxByTxoMap.put(to, blockIx);
-						}
-					}
-				}
-
-				for (final TransactionOutput output : neoTransactionOutputListMap.keySet()) {
-					final CoinReference cr = neoTransactionOutputListMap.get(output);
-					final JSONObject unspent = toUnspentJSONObject(false, output, cr);
-
-					final JSONObject claim = new JSONObject();
-					final String txHashStr = unspent.getString(TXID);
-					claim.put(TXID, txHashStr);
-					claim.put(INDEX, unspent.getLong(INDEX));
-					claim.put(VALUE, unspent.getLong(VALUE));
-
-					final UInt256 txHash = ModelUtil.getUInt256(ByteBuffer.wrap(ModelUtil.decodeHex(txHashStr)), true);
-					final long start = blockDb.getBlockIndexFromTransactionHash(txHash);
-					claim.put(START, start);
-
-					final long end = blockIxByTxoMap.get(output);
-					claim.put(END, end);
-					claim.put(SYSFEE, computeSysFee(controller.getLocalNodeData().getTransactionSystemFeeMap(), blockDb,
-							start, end));
-					claim.put("claim", calculateBonus(claim));
-
-					claimJa.put(claim);
-				}
+			for (final ClaimRecord record : claimList) {
+				final CoinReference cr = record.getCoinReference();
+				final JSONObject claim = new JSONObject();
+				claim.put(TXID, cr.prevHash.toHexString());
+				claim.put(INDEX, cr.prevIndex.asInt());
+				claim.put(VALUE, ModelUtil.toRoundedLong(record.getValue()));
+				claim.put(START, record.getStart());
+				claim.put(END, record.getEnd());
+				claim.put(SYSFEE, record.getSysFee());
+				claim.put("claim", record.getClaim());
+				claimJa.put(claim);
 			}
 			final JSONObject response = new JSONObject();
 			response.put(ADDRESS, address);
@@ -898,9 +660,9 @@ public final class RpcServerUtil {
 	 *            the controller to use.
 	 * @param address
 	 *            the address to use.
-	 * @return the balance of the address.
+	 * @return the history of the address, streamed, or an error response.
 	 */
-	private static JSONObject onGetCityOfZionHistory(final LocalControllerNode controller, final String address) {
+	private static Object onGetCityOfZionHistory(final LocalControllerNode controller, final String address) {
 		final UInt160 scriptHash = ModelUtil.addressToScriptHash(address);
 		if (LOG.isTraceEnabled()) {
 			LOG.trace("onGetCityOfZionHistory.scriptHash:{}", scriptHash);
@@ -910,36 +672,40 @@ public final class RpcServerUtil {
 			final BlockDb blockDb = controller.getLocalNodeData().getBlockDb();
 			final List<Transaction> transactionList = blockDb.getTransactionWithAccountList(scriptHash);
 
-			final JSONArray historyJa = new JSONArray();
-			if (transactionList != null) {
-				for (final Transaction transaction : transactionList) {
-					Fixed8 neo = ModelUtil.FIXED8_ZERO;
-					Fixed8 gas = ModelUtil.FIXED8_ZERO;
-					for (final TransactionOutput to : transaction.outputs) {
-						if (to.scriptHash.equals(scriptHash)) {
-							if (to.assetId.equals(ModelUtil.NEO_HASH)) {
-								neo = ModelUtil.add(neo, to.value);
-							}
-							if (to.assetId.equals(ModelUtil.GAS_HASH)) {
-								gas = ModelUtil.add(gas, to.value);
+			final String networkName = controller.getLocalNodeData().getNetworkName();
+			final JsonStreamable response = writer -> {
+				writer.beginObject();
+				writer.entry(ADDRESS, address);
+				writer.key(HISTORY).beginArray();
+				if (transactionList != null) {
+					for (final Transaction transaction : transactionList) {
+						Fixed8 neo = ModelUtil.FIXED8_ZERO;
+						Fixed8 gas = ModelUtil.FIXED8_ZERO;
+						for (final TransactionOutput to : transaction.outputs) {
+							if (to.scriptHash.equals(scriptHash)) {
+								if (to.assetId.equals(ModelUtil.NEO_HASH)) {
+									neo = ModelUtil.add(neo, to.value);
+								}
+								if (to.assetId.equals(ModelUtil.GAS_HASH)) {
+									gas = ModelUtil.add(gas, to.value);
+								}
 							}
 						}
-					}
-					final JSONObject transactionResponse = new JSONObject();
+						final JSONObject transactionResponse = new JSONObject();
 
-					transactionResponse.put(GAS, ModelUtil.toRoundedDouble(gas.value));
-					transactionResponse.put(NEO, ModelUtil.toRoundedLong(neo.value));
+						transactionResponse.put(GAS, ModelUtil.toRoundedDouble(gas.value));
+						transactionResponse.put(NEO, ModelUtil.toRoundedLong(neo.value));
 
-					final Long blockIndex = blockDb.getBlockIndexFromTransactionHash(transaction.getHash());
-					transactionResponse.put("block_index", blockIndex);
-					transactionResponse.put(TXID, transaction.getHash().toString());
-					historyJa.put(transactionResponse);
+						final Long blockIndex = blockDb.getBlockIndexFromTransactionHash(transaction.getHash());
+						transactionResponse.put("block_index", blockIndex);
+						transactionResponse.put(TXID, transaction.getHash().toString());
+						writer.value(transactionResponse);
+					}
 				}
-			}
-			final JSONObject response = new JSONObject();
-			response.put(ADDRESS, address);
-			response.put(HISTORY, historyJa);
-			response.put(NET, controller.getLocalNodeData().getNetworkName());
+				writer.endArray();
+				writer.entry(NET, networkName);
+				writer.endObject();
+			};
 			return response;
 		} catch (final RuntimeException e) {
 			LOG.error("onGetCityOfZionHistory", e);
@@ -1019,18 +785,47 @@ public final class RpcServerUtil {
 	}
 
 	/**
-	 * return the transactions in the unverified transaction pool.
+	 * responds to a "getmessagemetrics" command, with the metrics of the messages
+	 * sent and recieved by command, for all peers, and for each peer.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param id
+	 *            the request id to use.
+	 * @return the response.
+	 */
+	private static JSONObject onGetMessageMetrics(final LocalControllerNode controller, final int id) {
+		final JSONObject peersJson = new JSONObject();
+		final List<RemoteNodeData> peerDataList = new ArrayList<>();
+		controller.addPeerDataSetToList(peerDataList);
+		for (final RemoteNodeData data : peerDataList) {
+			if (data.getMessageMetrics().getTotalMessagesIn() != 0) {
+				peersJson.put(data.getTcpAddressAndPortString(), data.getMessageMetrics().toJSONObject());
+			}
+		}
+		final JSONObject result = new JSONObject();
+		result.put(COMMANDS, controller.getLocalNodeData().getMessageMetrics().toJSONObject());
+		result.put(PEERS, peersJson);
+		final JSONObject response = new JSONObject();
+		response.put(RESULT, result);
+		response.put(ID, id);
+		response.put(JSONRPC, VERSION_2_0);
+		return response;
+	}
+
+	/**
+	 * return the transactions in the memory pool.
 	 *
 	 * @param controller
 	 *            the controllers to use
 	 * @param id
 	 *            the id to use.
-	 * @return the transactions in the unverified transaction pool.
+	 * @return the transactions in the memory pool.
 	 */
 	private static JSONObject onGetRawMempool(final LocalControllerNode controller, final int id) {
 		try {
 			final JSONArray resultArray = new JSONArray();
-			for (final Transaction transaction : controller.getLocalNodeData().getUnverifiedTransactionSet()) {
+			for (final Transaction transaction : controller.getLocalNodeData().getMemoryPool().getTransactions()) {
 				final String hex = ModelUtil.toHexString(transaction.toByteArray());
 				resultArray.put(hex);
 			}
@@ -1217,7 +1012,7 @@ public final class RpcServerUtil {
 			final String hex = params.getString(0);
 			final byte[] ba = ModelUtil.decodeHex(hex);
 			final Transaction tx = new Transaction(ByteBuffer.wrap(ba));
-			controller.getLocalNodeData().getUnverifiedTransactionSet().add(tx);
+			MemoryPoolUtil.addTransaction(controller.getLocalNodeData(), tx);
 		} catch (final RuntimeException e) {
 			final JSONObject response = new JSONObject();
 			response.put(ERROR, e.getMessage());
@@ -1257,6 +1052,7 @@ public final class RpcServerUtil {
 			final byte[] ba = ModelUtil.decodeHex(hex);
 			final Block block = new Block(ByteBuffer.wrap(ba));
 			controller.getLocalNodeData().getBlockDb().put(false, block);
+			controller.getLocalNodeData().updateBlockchainVersion();
 		} catch (final RuntimeException e) {
 			final JSONObject response = new JSONObject();
 			response.put(ERROR, e.getMessage());
@@ -1284,80 +1080,129 @@ public final class RpcServerUtil {
 	 * @return the response.
 	 */
 	public static JSONObject process(final LocalControllerNode controller, final String uri, final String requestStr) {
-		LOG.trace("process uri:{};requestStr:{};", uri, requestStr);
-		if (uri.equals("/")) {
-			final JSONObject request = new JSONObject(requestStr);
+		return toJSONObject(processStreamed(controller, uri, requestStr));
+	}
 
-			final String versionStr = request.getString(JSONRPC);
-			if (!versionStr.equals(VERSION_2_0)) {
-				final JSONObject response = new JSONObject();
-				response.put(ERROR, "unexpected version");
-				response.put(EXPECTED, VERSION_2_0);
-				response.put(ACTUAL, versionStr);
-				return response;
-			}
-			final String methodStr = request.getString(METHOD);
-			final Set<String> disabledMethods = controller.getLocalNodeData().getRpcDisabledCalls();
-			if (disabledMethods.contains(methodStr)) {
-				final JSONObject response = new JSONObject();
-				response.put(ERROR, "method disabled");
-				response.put(EXPECTED, methodStr + " enabled");
-				response.put(ACTUAL, methodStr + " disabled");
-				return response;
-			}
+	/**
+	 * process a core RPC request, a JSON-RPC request object.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param request
+	 *            the request to process.
+	 *
+	 * @return the response.
+	 */
+	public static JSONObject processCoreRpc(final LocalControllerNode controller, final JSONObject request) {
+		return toJSONObject(processCoreRpcStreamed(controller, request));
+	}
 
-			final int id = request.getInt(ID);
-			final CoreRpcCommandEnum coreRpcCommand = CoreRpcCommandEnum.fromName(methodStr);
+	/**
+	 * process a core RPC request, a JSON-RPC request object. Large results are
+	 * not built in memory, they are returned as a JsonStreamable that writes the
+	 * response as it is sent.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param request
+	 *            the request to process.
+	 *
+	 * @return the response, a JSONObject or a JsonStreamable.
+	 */
+	public static Object processCoreRpcStreamed(final LocalControllerNode controller, final JSONObject request) {
+		final String versionStr = request.getString(JSONRPC);
+		if (!versionStr.equals(VERSION_2_0)) {
+			final JSONObject response = new JSONObject();
+			response.put(ERROR, "unexpected version");
+			response.put(EXPECTED, VERSION_2_0);
+			response.put(ACTUAL, versionStr);
+			return response;
+		}
+		final String methodStr = request.getString(METHOD);
+		final Set<String> disabledMethods = controller.getLocalNodeData().getRpcDisabledCalls();
+		if (disabledMethods.contains(methodStr)) {
+			final JSONObject response = new JSONObject();
+			response.put(ERROR, "method disabled");
+			response.put(EXPECTED, methodStr + " enabled");
+			response.put(ACTUAL, methodStr + " disabled");
+			return response;
+		}
 
-			switch (coreRpcCommand) {
-			case GETBESTBLOCKHASH: {
-				return onGetBestBlockHash(controller, id);
-			}
-			case GETBLOCKCOUNT: {
-				return onGetBlockCount(controller, id);
-			}
-			case GETBLOCK: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onGetBlock(controller, id, params);
-			}
-			case GETBLOCKHASH: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onGetBlockHash(controller, id, params);
-			}
-			case GETCONNECTIONCOUNT: {
-				return onGetConnectionCount(controller, id);
-			}
-			case GETRAWMEMPOOL: {
-				return onGetRawMempool(controller, id);
-			}
-			case GETRAWTRANSACTION: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onGetRawTransaction(controller, id, params);
-			}
-			case GETTXOUT: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onGetTransactionOutput(controller, id, params);
-			}
-			case SENDRAWTRANSACTION: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onSendRawTransaction(controller, id, params);
-			}
-			case SUBMITBLOCK: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onSubmitBlock(controller, id, params);
-			}
-			case GETACCOUNTLIST: {
-				final JSONArray params = request.getJSONArray(PARAMS);
-				return onGetAccountList(controller, id, params);
-			}
-			default: {
-				final JSONObject response = new JSONObject();
-				response.put(ERROR, "unknown method");
-				response.put(EXPECTED, CoreRpcCommandEnum.getValuesJSONArray());
-				response.put(ACTUAL, methodStr);
-				return response;
-			}
-			}
+		final int id = request.getInt(ID);
+		final CoreRpcCommandEnum coreRpcCommand = CoreRpcCommandEnum.fromName(methodStr);
+
+		switch (coreRpcCommand) {
+		case GETBESTBLOCKHASH: {
+			return onGetBestBlockHash(controller, id);
+		}
+		case GETBLOCKCOUNT: {
+			return onGetBlockCount(controller, id);
+		}
+		case GETBLOCK: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onGetBlock(controller, id, params);
+		}
+		case GETBLOCKHASH: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onGetBlockHash(controller, id, params);
+		}
+		case GETCONNECTIONCOUNT: {
+			return onGetConnectionCount(controller, id);
+		}
+		case GETMESSAGEMETRICS: {
+			return onGetMessageMetrics(controller, id);
+		}
+		case GETRAWMEMPOOL: {
+			return onGetRawMempool(controller, id);
+		}
+		case GETRAWTRANSACTION: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onGetRawTransaction(controller, id, params);
+		}
+		case GETTXOUT: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onGetTransactionOutput(controller, id, params);
+		}
+		case SENDRAWTRANSACTION: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onSendRawTransaction(controller, id, params);
+		}
+		case SUBMITBLOCK: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onSubmitBlock(controller, id, params);
+		}
+		case GETACCOUNTLIST: {
+			final JSONArray params = request.getJSONArray(PARAMS);
+			return onGetAccountList(controller, id, params);
+		}
+		default: {
+			final JSONObject response = new JSONObject();
+			response.put(ERROR, "unknown method");
+			response.put(EXPECTED, CoreRpcCommandEnum.getValuesJSONArray());
+			response.put(ACTUAL, methodStr);
+			return response;
+		}
+		}
+	}
+
+	/**
+	 * process the request. Large results are not built in memory, they are
+	 * returned as a JsonStreamable that writes the response as it is sent.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param uri
+	 *            the uri to process
+	 * @param requestStr
+	 *            the request to process
+	 *
+	 * @return the response, a JSONObject or a JsonStreamable.
+	 */
+	public static Object processStreamed(final LocalControllerNode controller, final String uri,
+			final String requestStr) {
+		LOG.trace("process uri:{};requestStr:{};", uri, requestStr);
+		if (uri.equals("/")) {
+			return processCoreRpcStreamed(controller, new JSONObject(requestStr));
 		} else {
 			final CityOfZionCommandEnum cityOfZionCommand = CityOfZionCommandEnum.getCommandStartingWith(uri);
 			final String remainder = uri.substring(cityOfZionCommand.getUriPrefix().length());
@@ -1388,6 +1233,23 @@ public final class RpcServerUtil {
 		}
 	}
 
+	/**
+	 * return the response as a JSONObject. A streamed response is written into
+	 * memory, so this is only for callers that need the whole response, such as
+	 * a call in a batch.
+	 *
+	 * @param response
+	 *            the response, a JSONObject or a JsonStreamable.
+	 * @return the response as a JSONObject.
+	 */
+	private static JSONObject toJSONObject(final Object response) {
+		if (response instanceof JsonStreamable) {
+			return new JSONObject(
+					new String(JsonStreamWriter.toByteArray((JsonStreamable) response), StandardCharsets.UTF_8));
+		}
+		return (JSONObject) response;
+	}
+
 	/**
 	 * converts a map of TransactionOutputs and CoinReferences to a json array of
 	 * unspent transaction outputs.
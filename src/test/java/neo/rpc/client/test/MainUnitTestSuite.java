@@ -27,9 +27,13 @@ import org.junit.runners.Suite;
 		/** */
 		TestNetwork.class,
 		/** */
+		TestNetworkModel.class,
+		/** */
 		TestDBH2.class,
 		/** */
-		TestDBMapDb.class, })
+		TestDBMapDb.class,
+		/** */
+		TestSimulatedNetwork.class, })
 
 public class MainUnitTestSuite {
 }
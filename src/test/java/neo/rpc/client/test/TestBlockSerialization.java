@@ -2,6 +2,7 @@ package neo.rpc.client.test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -25,6 +26,7 @@ import neo.model.core.Block;
 import neo.model.core.Transaction;
 import neo.model.core.TransactionType;
 import neo.model.db.BlockDb;
+import neo.model.util.BlockUtil;
 import neo.model.util.ModelUtil;
 import neo.rpc.client.test.util.AbstractJsonMockBlockDb;
 import neo.rpc.client.test.util.TestUtil;
@@ -79,16 +81,27 @@ public class TestBlockSerialization {
 	 */
 	private void assertTransactionTypeEquals(final String testFunctionName, final int txIx,
 			final TransactionType expectedTransactionType) {
+		final Block block = getBlock(testFunctionName);
+		final Transaction tx = block.getTransactionList().get(txIx);
+		final TransactionType actulaTransactionType = tx.type;
+		Assert.assertEquals("transaction types must match", expectedTransactionType, actulaTransactionType);
+	}
+
+	/**
+	 * reads in the test json for the given test name, and returns the block.
+	 *
+	 * @param testFunctionName
+	 *            the test function name to use.
+	 * @return the block.
+	 */
+	private Block getBlock(final String testFunctionName) {
 		try {
 			final String blockJsonStr = TestUtil.getJsonTestResourceAsString("test", getClass().getSimpleName(),
 					testFunctionName);
 			final JSONObject blockJson = new JSONObject(blockJsonStr);
 			final String blockStr = TestUtil.fromHexJsonObject(blockJson);
 			final byte[] blockBa = Hex.decodeHex(blockStr.toCharArray());
-			final Block block = new Block(ByteBuffer.wrap(blockBa));
-			final Transaction tx = block.getTransactionList().get(txIx);
-			final TransactionType actulaTransactionType = tx.type;
-			Assert.assertEquals("transaction types must match", expectedTransactionType, actulaTransactionType);
+			return new Block(ByteBuffer.wrap(blockBa));
 		} catch (final Exception e) {
 			throw new RuntimeException(e);
 		}
@@ -170,6 +183,21 @@ public class TestBlockSerialization {
 		assertTransactionTypeEquals("test009TxTypeState", 6, TransactionType.STATE_TRANSACTION);
 	}
 
+	/**
+	 * test the merkle root calculated from the transactions matches the block's
+	 * merkle root, for blocks with odd and even numbers of transactions.
+	 */
+	@Test
+	public void test010MerkleRoot() {
+		final String[] testFunctionNames = { "test001TxTypeMiner", "test005TxTypeClaim", "test008TxTypeInvocation",
+				"test009TxTypeState" };
+		for (final String testFunctionName : testFunctionNames) {
+			final Block block = getBlock(testFunctionName);
+			Assert.assertEquals(testFunctionName, block.merkleRoot, BlockUtil.getMerkleRoot(block.getTransactionList()));
+		}
+		Assert.assertNull("no transactions", BlockUtil.getMerkleRoot(new ArrayList<>()));
+	}
+
 	/**
 	 * pulls all the blocks (slow) to check for full coverage.
 	 *
@@ -244,6 +244,34 @@ public class TestDBMapDb {
 		}
 	}
 
+	/**
+	 * test put, and getRawBlockFromHash, getRawBlockFromHeight,
+	 * getRawHeaderFromHeight and getRawTransactionFromHash, which should match the
+	 * serialized block, header and transaction.
+	 */
+	@Test
+	public void test012putAndGetRawBlockAndHeader() {
+		try (TestLocalControllerNode controller = getTestLocalControllerNode()) {
+			final Block expectedBlock = MockUtil.getMockBlock003();
+			controller.getBlockDb().put(true, GenesisBlockUtil.GENESIS_BLOCK);
+			controller.getBlockDb().put(true, expectedBlock);
+			Assert.assertArrayEquals("raw blocks should match.", expectedBlock.toByteArray(),
+					controller.getBlockDb().getRawBlockFromHash(expectedBlock.hash));
+			Assert.assertArrayEquals("raw headers should match.", expectedBlock.toHeaderByteArray(),
+					controller.getBlockDb().getRawHeaderFromHeight(expectedBlock.getIndexAsLong()));
+			Assert.assertNull("missing block should be null.",
+					controller.getBlockDb().getRawBlockFromHash(expectedBlock.prevHash));
+			Assert.assertNull("missing header should be null.", controller.getBlockDb().getRawHeaderFromHeight(2));
+			Assert.assertArrayEquals("raw blocks by height should match.", expectedBlock.toByteArray(),
+					controller.getBlockDb().getRawBlockFromHeight(expectedBlock.getIndexAsLong()));
+			Assert.assertNull("missing block by height should be null.",
+					controller.getBlockDb().getRawBlockFromHeight(2));
+			final Transaction expectedTx = expectedBlock.getTransactionList().get(0);
+			Assert.assertArrayEquals("raw transactions should match.", expectedTx.toByteArray(),
+					controller.getBlockDb().getRawTransactionFromHash(expectedTx.getHash()));
+		}
+	}
+
 	/**
 	 * last test, blank, so afterClass() time doesnt throw off the metrics.
 	 */
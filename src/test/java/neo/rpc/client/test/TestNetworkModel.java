@@ -0,0 +1,1151 @@
+package neo.rpc.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.CommandEnum;
+import neo.model.bytes.UInt16;
+import neo.model.bytes.UInt160;
+import neo.model.bytes.UInt256;
+import neo.model.bytes.UInt32;
+import neo.model.core.Block;
+import neo.model.core.CoinReference;
+import neo.model.core.Header;
+import neo.model.core.Transaction;
+import neo.model.db.AccountActivity;
+import neo.model.db.ClaimRecord;
+import neo.model.db.mapdb.BlockDbMapDbImpl;
+import neo.model.network.GetBlocksPayload;
+import neo.model.network.InvPayload;
+import neo.model.network.InventoryType;
+import neo.model.network.Message;
+import neo.model.util.ConfigurationUtil;
+import neo.model.util.GenesisBlockUtil;
+import neo.model.util.threadpool.ExecutorPools;
+import neo.model.util.threadpool.HashedWheelTimer;
+import neo.model.util.threadpool.HashedWheelTimer.WheelTimeout;
+import neo.model.util.threadpool.MeteredExecutor;
+import neo.model.util.threadpool.StagedPipeline;
+import neo.model.util.threadpool.StagedPipeline.Stage;
+import neo.model.util.threadpool.StopRunnable;
+import neo.network.model.AddressBook;
+import neo.network.model.HeaderChain;
+import neo.network.model.KnownInventory;
+import neo.network.InventoryUtil;
+import neo.network.MessageUtil;
+import neo.network.PeerScoreUtil;
+import neo.network.model.MemoryPool;
+import neo.network.model.MessageMetrics;
+import neo.network.model.NetworkHeight;
+import neo.network.model.OrphanBlockPool;
+import neo.network.model.PeerStats;
+import neo.network.model.RemoteNodeData;
+import neo.network.model.WriteBufferPool;
+import neo.perfmon.LatencyHistogram;
+import neo.rpc.client.test.util.MockUtil;
+import neo.rpc.client.test.util.SimulatedNetwork;
+import neo.rpc.server.RpcHttpRequest;
+import neo.rpc.server.RpcHttpResponse;
+import neo.rpc.server.RpcRateLimiter;
+
+/**
+ * tests the network model data structures.
+ *
+ * @author coranos
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestNetworkModel {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(TestNetworkModel.class);
+
+	/**
+	 * method for after class disposal.
+	 */
+	@AfterClass
+	public static void afterClass() {
+		LOG.debug("afterClass");
+	}
+
+	/**
+	 * method for before class setup.
+	 */
+	@BeforeClass
+	public static void beforeClass() {
+		LOG.debug("beforeClass");
+	}
+
+	/**
+	 * return a hash with the given last byte.
+	 *
+	 * @param lastByte
+	 *            the last byte.
+	 * @return the hash.
+	 */
+	private static UInt256 getHash(final int lastByte) {
+		final byte[] ba = new byte[UInt256.SIZE];
+		ba[ba.length - 1] = (byte) lastByte;
+		return new UInt256(ba);
+	}
+
+	/**
+	 * return a mock block with the given index, that connects to the previous
+	 * block.
+	 *
+	 * @param index
+	 *            the index of the block.
+	 * @param prevHash
+	 *            the hash of the previous block.
+	 * @return the block.
+	 */
+	private static Block getChainBlock(final long index, final UInt256 prevHash) {
+		final byte[] ba = MockUtil.getMockBlock000().toByteArray();
+		final int prevHashOffset = UInt32.SIZE;
+		final int indexOffset = (UInt32.SIZE * 2) + (UInt256.SIZE * 2);
+		System.arraycopy(prevHash.getBytesCopy(), 0, ba, prevHashOffset, UInt256.SIZE);
+		System.arraycopy(new UInt32(index).getBytesCopy(), 0, ba, indexOffset, UInt32.SIZE);
+		return new Block(ByteBuffer.wrap(ba));
+	}
+
+	/**
+	 * return a mock transaction that spends the coins with the given hashes.
+	 *
+	 * @param coins
+	 *            the last bytes of the hashes of the coins to spend.
+	 * @return the transaction.
+	 */
+	private static Transaction getTransaction(final int... coins) {
+		final Transaction transaction = MockUtil.getMockTransaction000();
+		for (final int coin : coins) {
+			transaction.inputs.add(new CoinReference(getHash(coin), new UInt16(0)));
+		}
+		transaction.recalculateHash();
+		return transaction;
+	}
+
+	/**
+	 * first test, blank, so beforeClass() time doesnt throw off the metrics.
+	 */
+	@Test
+	public void aaaFirstTest() {
+	}
+
+	/**
+	 * test the known inventory is bounded, and evicts the oldest hash first.
+	 */
+	@Test
+	public void test001KnownInventoryBounded() {
+		final KnownInventory knownInventory = new KnownInventory(2, 60000);
+		Assert.assertTrue("first add is new", knownInventory.add(getHash(1)));
+		Assert.assertFalse("second add is not new", knownInventory.add(getHash(1)));
+		knownInventory.add(getHash(2));
+		knownInventory.add(getHash(3));
+		Assert.assertEquals("size", 2, knownInventory.size());
+		Assert.assertFalse("oldest evicted", knownInventory.contains(getHash(1)));
+		Assert.assertTrue("newest kept", knownInventory.contains(getHash(3)));
+	}
+
+	/**
+	 * test the known inventory forgets hashes after they expire, and that
+	 * addIfAbsent only lets one requester claim a hash.
+	 *
+	 * @throws InterruptedException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test002KnownInventoryExpiry() throws InterruptedException {
+		final KnownInventory requestedInventory = new KnownInventory(10, 50);
+		Assert.assertTrue("first claim", requestedInventory.addIfAbsent(getHash(1)));
+		Assert.assertFalse("second claim", requestedInventory.addIfAbsent(getHash(1)));
+		Thread.sleep(100);
+		Assert.assertFalse("expired", requestedInventory.contains(getHash(1)));
+		Assert.assertTrue("claim after expiry", requestedInventory.addIfAbsent(getHash(1)));
+		Assert.assertTrue("remove", requestedInventory.remove(getHash(1)));
+		Assert.assertEquals("size", 0, requestedInventory.size());
+	}
+
+	/**
+	 * test the memory pool rejects duplicates and double spends, on a first seen
+	 * basis.
+	 */
+	@Test
+	public void test003MemoryPoolDoubleSpend() {
+		final MemoryPool memoryPool = new MemoryPool(1000000, 100);
+		final Transaction tx1 = getTransaction(1);
+		Assert.assertTrue("first spend", memoryPool.add(tx1, 0));
+		Assert.assertFalse("duplicate", memoryPool.add(tx1, 0));
+		Assert.assertFalse("double spend", memoryPool.add(getTransaction(1, 2), 100));
+		Assert.assertFalse("spends coin twice", memoryPool.add(getTransaction(3, 3), 100));
+		Assert.assertTrue("other spend", memoryPool.add(getTransaction(2), 0));
+		Assert.assertEquals("spender", tx1.getHash(),
+				memoryPool.getSpendingTransactionHash(new CoinReference(getHash(1), new UInt16(0))));
+		Assert.assertEquals("size", 2, memoryPool.size());
+		Assert.assertTrue("remove", memoryPool.remove(tx1.getHash()));
+		Assert.assertTrue("spend after remove", memoryPool.add(getTransaction(1, 4), 0));
+	}
+
+	/**
+	 * test the memory pool evicts the lowest fee per byte first when it is full,
+	 * and lists transactions highest fee per byte first.
+	 */
+	@Test
+	public void test004MemoryPoolEviction() {
+		final MemoryPool memoryPool = new MemoryPool(1000000, 2);
+		final Transaction txLow = getTransaction(1);
+		final Transaction txHigh = getTransaction(2);
+		final Transaction txMid = getTransaction(3);
+		Assert.assertTrue("low", memoryPool.add(txLow, 100));
+		Assert.assertTrue("high", memoryPool.add(txHigh, 300));
+		Assert.assertTrue("mid", memoryPool.add(txMid, 200));
+		Assert.assertFalse("low evicted", memoryPool.contains(txLow.getHash()));
+		Assert.assertFalse("lowest rejected", memoryPool.add(getTransaction(4), 50));
+		Assert.assertEquals("order", Arrays.asList(txHigh.getHash(), txMid.getHash()), memoryPool.getHashList());
+		Assert.assertEquals("bytes", txHigh.toByteArray().length + txMid.toByteArray().length,
+				memoryPool.getTotalBytes());
+
+		final MemoryPool bytePool = new MemoryPool(txHigh.toByteArray().length, 100);
+		Assert.assertTrue("fits", bytePool.add(txLow, 100));
+		Assert.assertTrue("replaces", bytePool.add(txHigh, 300));
+		Assert.assertEquals("size", 1, bytePool.size());
+	}
+
+	/**
+	 * test the memory pool removes transactions that conflict with a block.
+	 */
+	@Test
+	public void test005MemoryPoolRemoveBlockTransactions() {
+		final MemoryPool memoryPool = new MemoryPool(1000000, 100);
+		final Block block = MockUtil.getMockBlock003();
+		final Transaction blockTx = block.getTransactionList().get(block.getTransactionList().size() - 1);
+		final Transaction conflictTx = getTransaction(1);
+		conflictTx.inputs.add(blockTx.inputs.get(0));
+		conflictTx.recalculateHash();
+		Assert.assertTrue("conflict", memoryPool.add(conflictTx, 0));
+		Assert.assertTrue("other", memoryPool.add(getTransaction(2), 0));
+		Assert.assertEquals("removed", 1, memoryPool.removeBlockTransactions(block));
+		Assert.assertFalse("conflict removed", memoryPool.contains(conflictTx.getHash()));
+		Assert.assertEquals("size", 1, memoryPool.size());
+	}
+
+	/**
+	 * test the timer wheel runs tasks in deadline order, no earlier than their
+	 * deadline, including tasks more than one turn of the wheel away, and does not
+	 * run cancelled tasks.
+	 *
+	 * @throws InterruptedException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test006HashedWheelTimer() throws InterruptedException {
+		final HashedWheelTimer timerWheel = new HashedWheelTimer(10, 8);
+		final List<Integer> firedList = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch latch = new CountDownLatch(3);
+		final long startMs = System.currentTimeMillis();
+		final long[] firedMs = new long[4];
+		timerWheel.start();
+		try {
+			for (final int delayIx : new int[] { 3, 1, 2 }) {
+				timerWheel.schedule(() -> {
+					firedMs[delayIx] = System.currentTimeMillis();
+					firedList.add(delayIx);
+					latch.countDown();
+				}, delayIx * 100);
+			}
+			final WheelTimeout cancelled = timerWheel.schedule(() -> firedList.add(0), 50);
+			cancelled.cancel();
+			Assert.assertTrue("all fired", latch.await(5, TimeUnit.SECONDS));
+		} finally {
+			timerWheel.stop();
+		}
+		Assert.assertEquals("order", Arrays.asList(1, 2, 3), firedList);
+		for (int delayIx = 1; delayIx <= 3; delayIx++) {
+			Assert.assertTrue("not early " + delayIx, (firedMs[delayIx] - startMs) >= (delayIx * 100));
+		}
+		Assert.assertEquals("scheduled", 4, timerWheel.getScheduledCount());
+		Assert.assertEquals("fired", 3, timerWheel.getFiredCount());
+		Assert.assertTrue("lag", timerWheel.getMaxLagMs() >= timerWheel.getAverageLagMs());
+	}
+
+	/**
+	 * test peer statistics measure round trip times from requests to responses,
+	 * penalize invalid messages, and survive a JSON round trip.
+	 */
+	@Test
+	public void test007PeerStats() {
+		final PeerStats fastStats = new PeerStats();
+		final Message getHeaders = new Message(0, CommandEnum.GETHEADERS,
+				new GetBlocksPayload(getHash(1), null).toByteArray());
+		fastStats.requestSent(getHeaders, 1000);
+		fastStats.requestSent(getHeaders, 1050);
+		fastStats.responseReceived(CommandEnum.HEADERS, 1100);
+		fastStats.responseReceived(CommandEnum.HEADERS, 1200);
+		Assert.assertEquals("rtt", 100, fastStats.getRttMs(CommandEnum.GETHEADERS.getName()), 0);
+		Assert.assertEquals("rtt samples", 1, fastStats.getRttSampleCount());
+
+		final PeerStats slowStats = new PeerStats();
+		slowStats.requestSent(getHeaders, 1000);
+		slowStats.responseReceived(CommandEnum.HEADERS, 3000);
+		Assert.assertTrue("fast over slow", fastStats.getScore() > slowStats.getScore());
+		Assert.assertTrue("measured slow under unmeasured", slowStats.getScore() < new PeerStats().getScore());
+
+		final double scoreBeforeInvalid = fastStats.getScore();
+		fastStats.invalidMessage();
+		Assert.assertEquals("invalid penalty", scoreBeforeInvalid / 2, fastStats.getScore(), 0.000001);
+
+		fastStats.bytesReceived(1000, 1000);
+		fastStats.bytesReceived(1000, 2000);
+		Assert.assertEquals("bytes per second", 2000, fastStats.getBytesPerSecond(), 0);
+		fastStats.blockDelivered();
+
+		final PeerStats loadedStats = new PeerStats();
+		loadedStats.load(fastStats.toJSONObject());
+		Assert.assertEquals("loaded", fastStats.toJSONObject().toString(), loadedStats.toJSONObject().toString());
+	}
+
+	/**
+	 * test peers are ranked highest score first.
+	 */
+	@Test
+	public void test008RankPeers() {
+		final JSONObject remoteJson = ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.REMOTE);
+		final Message getAddr = new Message(0, CommandEnum.GETADDR);
+		final List<RemoteNodeData> peerDataList = new ArrayList<>();
+		for (final long rttMs : new long[] { 300, 100, 200 }) {
+			final RemoteNodeData data = new RemoteNodeData(remoteJson);
+			data.getPeerStats().requestSent(getAddr, 0);
+			data.getPeerStats().responseReceived(CommandEnum.ADDR, rttMs);
+			peerDataList.add(data);
+		}
+		final List<RemoteNodeData> rankedPeerDataList = PeerScoreUtil.rankPeers(peerDataList);
+		Assert.assertSame("first", peerDataList.get(1), rankedPeerDataList.get(0));
+		Assert.assertSame("second", peerDataList.get(2), rankedPeerDataList.get(1));
+		Assert.assertSame("third", peerDataList.get(0), rankedPeerDataList.get(2));
+	}
+
+	/**
+	 * test the orphan block pool connects blocks by prevHash, evicts the farthest
+	 * ahead blocks first, and enforces the per peer quota.
+	 */
+	@Test
+	public void test009OrphanBlockPool() {
+		final List<Block> chain = new ArrayList<>();
+		UInt256 prevHash = getHash(1);
+		for (long index = 1; index <= 4; index++) {
+			final Block block = getChainBlock(index, prevHash);
+			Assert.assertEquals("prevHash", prevHash, block.prevHash);
+			chain.add(block);
+			prevHash = block.hash;
+		}
+		final int size = chain.get(0).toByteArray().length;
+
+		final OrphanBlockPool pool = new OrphanBlockPool(size * 3, size * 2);
+		Assert.assertTrue("add 3 peer A", pool.add(chain.get(2), size, "A"));
+		Assert.assertTrue("add 2 peer A", pool.add(chain.get(1), size, "A"));
+		Assert.assertFalse("peer A over quota", pool.add(chain.get(0), size, "A"));
+		Assert.assertFalse("duplicate", pool.add(chain.get(1), size, "B"));
+		Assert.assertTrue("add 1 peer B", pool.add(chain.get(0), size, "B"));
+		Assert.assertEquals("highest", chain.get(2).hash, pool.getHighestBlock().hash);
+
+		Assert.assertFalse("farthest ahead evicted", pool.add(chain.get(3), size, null));
+		Assert.assertFalse("not in pool", pool.contains(chain.get(3).hash));
+		Assert.assertEquals("total bytes", size * 3, pool.getTotalBytes());
+
+		Assert.assertEquals("child of 0", chain.get(0).hash, pool.removeChild(getHash(1)).hash);
+		Assert.assertEquals("child of 1", chain.get(1).hash, pool.removeChild(chain.get(0).hash).hash);
+		Assert.assertEquals("peer A bytes", size, pool.getPeerBytes("A"));
+		Assert.assertEquals("peer B bytes", 0, pool.getPeerBytes("B"));
+		Assert.assertNull("no child", pool.removeChild(chain.get(2).hash));
+
+		Assert.assertEquals("remove stale", 1, pool.removeAtOrBelow(3));
+		Assert.assertTrue("empty", pool.isEmpty());
+		Assert.assertEquals("empty bytes", 0, pool.getTotalBytes());
+	}
+
+	/**
+	 * test the staged pipeline runs the last stage in submit order, even when an
+	 * earlier stage finishes items out of order, and skips dropped items.
+	 *
+	 * @throws InterruptedException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test010StagedPipeline() throws InterruptedException {
+		final int itemCount = 200;
+		final List<Integer> persistedList = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch latch = new CountDownLatch(itemCount);
+		final Stage<Integer> slowStage = new Stage<>("slow", 4, item -> {
+			if ((item % 10) == 0) {
+				try {
+					Thread.sleep(5);
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return (item % 7) != 0;
+		});
+		final Stage<Integer> persistStage = new Stage<>("persist", 1, item -> {
+			persistedList.add(item);
+			return true;
+		});
+		final StagedPipeline<Integer> pipeline = new StagedPipeline<>("test", 16,
+				Arrays.asList(slowStage, new Stage<Integer>("count", 2, item -> {
+					latch.countDown();
+					return true;
+				}), persistStage));
+		final List<Integer> expectedList = new ArrayList<>();
+		for (int item = 0; item < itemCount; item++) {
+			Assert.assertTrue("submit", pipeline.submit(item));
+			if ((item % 7) != 0) {
+				expectedList.add(item);
+			} else {
+				latch.countDown();
+			}
+		}
+		Assert.assertTrue("stages finished", latch.await(10, TimeUnit.SECONDS));
+		final long endMs = System.currentTimeMillis() + 10000;
+		while ((pipeline.getInFlight() > 0) && (System.currentTimeMillis() < endMs)) {
+			Thread.sleep(10);
+		}
+		pipeline.stop();
+		Assert.assertEquals("persisted in order", expectedList, persistedList);
+		Assert.assertEquals("dropped", itemCount - expectedList.size(), slowStage.getDropped());
+		Assert.assertEquals("count", itemCount, slowStage.getCount());
+		Assert.assertEquals("queue depth", 0, persistStage.getQueueDepth());
+	}
+
+	/**
+	 * test the message metrics count by command, and only keep histograms in
+	 * "full" mode.
+	 */
+	@Test
+	public void test011MessageMetrics() {
+		final JSONObject config = new JSONObject();
+		config.put(MessageMetrics.MODE, MessageMetrics.BASIC);
+		final MessageMetrics basic = new MessageMetrics(config);
+		Assert.assertFalse("basic histograms", basic.isHistograms());
+		basic.messageReceived(CommandEnum.BLOCK, 1000, 2000, 3000);
+		basic.messageReceived(CommandEnum.BLOCK, 500, 2000, 3000);
+		basic.messageReceived(null, 24, 0, 0);
+		basic.messageSent(CommandEnum.GETDATA, 61);
+		Assert.assertEquals("block messages in", 2, basic.getMessagesIn(CommandEnum.BLOCK));
+		Assert.assertEquals("block bytes in", 1500, basic.getBytesIn(CommandEnum.BLOCK));
+		Assert.assertEquals("block decode nanos", 4000, basic.getDecodeNanos(CommandEnum.BLOCK));
+		Assert.assertEquals("block handler nanos", 6000, basic.getHandlerNanos(CommandEnum.BLOCK));
+		Assert.assertEquals("total messages in", 3, basic.getTotalMessagesIn());
+		Assert.assertEquals("total bytes out", 61, basic.getTotalBytesOut());
+		Assert.assertNull("basic histogram", basic.getDecodeHistogram(CommandEnum.BLOCK));
+		Assert.assertTrue("basic latency map", basic.getDecodeLatencyMap().isEmpty());
+		final JSONObject basicJson = basic.toJSONObject();
+		Assert.assertEquals("json keys", 4, basicJson.length());
+		Assert.assertEquals("json block bytes in", 1500,
+				basicJson.getJSONObject(CommandEnum.BLOCK.getName()).getLong(MessageMetrics.BYTES_IN));
+		Assert.assertTrue("json unknown", basicJson.has(MessageMetrics.UNKNOWN));
+
+		final MessageMetrics full = new MessageMetrics(true);
+		full.messageReceived(CommandEnum.INV, 100, 500, 5000);
+		full.messageReceived(CommandEnum.INV, 100, 1500, 5000);
+		final LatencyHistogram decodeHistogram = full.getDecodeHistogram(CommandEnum.INV);
+		Assert.assertEquals("decode count", 2, decodeHistogram.getCount());
+		Assert.assertEquals("decode max", 1500, decodeHistogram.getMaxNanos());
+		Assert.assertEquals("handler sum", 10000, full.getHandlerHistogram(CommandEnum.INV).getSumNanos());
+		Assert.assertEquals("latency map", Collections.singleton(CommandEnum.INV.getName()),
+				full.getHandlerLatencyMap().keySet());
+		Assert.assertEquals("json handler max", 5, full.toJSONObject().getJSONObject(CommandEnum.INV.getName())
+				.getJSONObject(MessageMetrics.HANDLER_HISTOGRAM).getLong(MessageMetrics.MAX_MICROS));
+	}
+
+	/**
+	 * test the header chain appends valid batches that connect to it's tip, skips
+	 * duplicates, and rejects invalid batches.
+	 */
+	@Test
+	public void test012HeaderChain() {
+		final List<Header> headerList = new ArrayList<>();
+		for (final byte[] blockBa : SimulatedNetwork.newSyntheticChain(30)) {
+			final Block block = new Block(ByteBuffer.wrap(blockBa));
+			headerList.add(new Header(ByteBuffer.wrap(block.toHeaderByteArray())));
+		}
+		final HeaderChain headerChain = new HeaderChain();
+		Assert.assertEquals("empty tip", -1, headerChain.getTipIndex());
+		Assert.assertEquals("empty append", 0, headerChain.append(headerList.subList(1, 10)));
+
+		headerChain.reset(headerList.get(0));
+		Assert.assertEquals("append", 9, headerChain.append(headerList.subList(1, 10)));
+		Assert.assertEquals("tip", 9, headerChain.getTipIndex());
+		Assert.assertEquals("tip hash", headerList.get(9).hash, headerChain.getTipHash());
+		Assert.assertEquals("duplicate", 0, headerChain.append(headerList.subList(5, 10)));
+		Assert.assertEquals("overlap", 5, headerChain.append(headerList.subList(5, 15)));
+		Assert.assertEquals("gap", 0, headerChain.append(headerList.subList(16, 20)));
+
+		final List<Header> swappedList = new ArrayList<>(headerList.subList(15, 20));
+		Collections.swap(swappedList, 2, 3);
+		Assert.assertEquals("valid count", 2, HeaderChain.getValidCount(swappedList));
+		Assert.assertEquals("invalid", -1, headerChain.append(swappedList));
+		Assert.assertEquals("invalid tip", 14, headerChain.getTipIndex());
+
+		Assert.assertEquals("append rest", 15, headerChain.append(headerList.subList(15, 30)));
+		Assert.assertEquals("hash", headerList.get(20).hash, headerChain.getHash(20));
+		Assert.assertNull("hash above tip", headerChain.getHash(30));
+		headerChain.prune(20);
+		Assert.assertEquals("small prune is deferred", 0, headerChain.getBaseIndex());
+		Assert.assertEquals("size", 30, headerChain.size());
+	}
+
+	/**
+	 * test outbound messages serialize into a write buffer the same as on their
+	 * own, consecutive inventory requests are merged, and write buffers are
+	 * pooled.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test013WriteBuffer() throws IOException {
+		final long magic = 7630401;
+		final UInt256 hash1 = new UInt256(new byte[UInt256.SIZE]);
+		final UInt256 hash2 = getChainBlock(2, hash1).hash;
+		final UInt256 hash3 = getChainBlock(3, hash2).hash;
+		final List<Message> messageList = new ArrayList<>();
+		messageList.add(newInvMessage(magic, CommandEnum.GETDATA, InventoryType.BLOCK, hash1));
+		messageList.add(newInvMessage(magic, CommandEnum.GETDATA, InventoryType.BLOCK, hash2, hash3));
+		messageList.add(newInvMessage(magic, CommandEnum.GETDATA, InventoryType.TRANSACTION, hash1));
+		messageList.add(new Message(magic, CommandEnum.VERACK));
+		messageList.add(newInvMessage(magic, CommandEnum.GETDATA, InventoryType.BLOCK, hash1));
+
+		final List<Message> coalescedList = MessageUtil.coalesce(messageList);
+		Assert.assertEquals("coalesced size", 4, coalescedList.size());
+		Assert.assertEquals("merged hashes", Arrays.asList(hash1, hash2, hash3),
+				coalescedList.get(0).getPayload(InvPayload.class).getHashes());
+		Assert.assertSame("unmerged", messageList.get(2), coalescedList.get(1));
+		Assert.assertSame("verack", messageList.get(3), coalescedList.get(2));
+
+		final WriteBufferPool pool = new WriteBufferPool(1024, 1);
+		final ByteBuffer buffer = pool.acquire();
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (final Message message : coalescedList) {
+			message.writeTo(buffer);
+			expected.write(message.toByteArray());
+		}
+		final byte[] bufferBa = Arrays.copyOf(buffer.array(), buffer.position());
+		Assert.assertArrayEquals("written", expected.toByteArray(), bufferBa);
+		final ByteArrayInputStream in = new ByteArrayInputStream(bufferBa);
+		for (final Message message : coalescedList) {
+			final Message readMessage = new Message(1000, in);
+			Assert.assertEquals("command", message.command, readMessage.command);
+			Assert.assertEquals("magic", magic, readMessage.magic);
+			Assert.assertArrayEquals("payload", message.getPayloadByteArray(), readMessage.getPayloadByteArray());
+		}
+
+		pool.release(buffer);
+		pool.release(ByteBuffer.allocate(1024));
+		Assert.assertEquals("pooled count", 1, pool.getPooledCount());
+		final ByteBuffer reusedBuffer = pool.acquire();
+		Assert.assertSame("reused", buffer, reusedBuffer);
+		Assert.assertEquals("cleared", 0, reusedBuffer.position());
+	}
+
+	/**
+	 * test the address book, that failed peers back off exponentially, that
+	 * protocol violations ban a peer's IP address, that selection spreads over
+	 * network groups and prefers peers that succeeded, that a full address book
+	 * replaces it's worst address, and that it is saved and loaded.
+	 */
+	@Test
+	public void test014AddressBook() {
+		final JSONObject config = new JSONObject(ConfigurationUtil.getConfiguration()
+				.getJSONObject(ConfigurationUtil.LOCAL).getJSONObject(ConfigurationUtil.ADDRESS_BOOK).toString());
+		config.put(AddressBook.MAX_CONNECT_ATTEMPTS, 2);
+		final AddressBook addressBook = new AddressBook(config);
+		final String good = "10.1.0.1:10333";
+		final String bad = "10.1.0.2:10333";
+		final String other = "10.2.0.1:10333";
+		final long now = 1000000;
+		Assert.assertTrue("good seen", addressBook.addressSeen(good, now));
+		Assert.assertTrue("bad seen", addressBook.addressSeen(bad, now));
+		Assert.assertTrue("other seen", addressBook.addressSeen(other, now));
+		Assert.assertEquals("network group", "10.1", AddressBook.getNetworkGroup(good));
+
+		addressBook.connectAttempted(bad, now);
+		addressBook.connectFailed(bad);
+		final long baseBackoffMs = addressBook.getBackoffMs(bad);
+		Assert.assertTrue("base backoff", baseBackoffMs > 0);
+		Assert.assertFalse("backing off", addressBook.isEligible(bad, now + baseBackoffMs - 1));
+		Assert.assertTrue("backed off", addressBook.isEligible(bad, now + baseBackoffMs));
+		addressBook.connectFailed(bad);
+		Assert.assertEquals("doubled backoff", baseBackoffMs * 2, addressBook.getBackoffMs(bad));
+
+		addressBook.connectAttempted(good, now);
+		addressBook.connectSucceeded(good, now);
+		Assert.assertEquals("reset backoff", 0, addressBook.getBackoffMs(good));
+
+		final List<String> candidates = Arrays.asList(good, bad, other);
+		final long later = now + addressBook.getBackoffMs(bad);
+		int goodCount = 0;
+		for (int ix = 0; ix < 100; ix++) {
+			final List<String> selected = addressBook.select(candidates, later);
+			Assert.assertEquals("selected count", 2, selected.size());
+			Assert.assertTrue("one per group", selected.contains(other));
+			if (selected.contains(good)) {
+				goodCount++;
+			}
+		}
+		Assert.assertTrue("more likely preferred", goodCount > 50);
+
+		final int formatErrorScore = config.getInt(AddressBook.FORMAT_ERROR_SCORE);
+		final int banThreshold = config.getInt(AddressBook.BAN_THRESHOLD);
+		final String otherIp = AddressBook.getIp(other);
+		final String otherPort = otherIp + ":20333";
+		Assert.assertTrue("other port seen", addressBook.addressSeen(otherPort, now));
+		for (int score = 0; score < banThreshold; score += formatErrorScore) {
+			Assert.assertFalse("not banned", addressBook.isBanned(otherIp, now));
+			addressBook.formatError(otherIp, now);
+		}
+		Assert.assertTrue("banned", addressBook.isBanned(otherIp, now));
+		Assert.assertFalse("banned not eligible", addressBook.isEligible(other, later));
+		Assert.assertFalse("banned by ip", addressBook.isEligible(otherPort, later));
+		final String inboundIp = "10.3.0.1";
+		for (int score = 0; score < banThreshold; score += formatErrorScore) {
+			addressBook.formatError(inboundIp, now);
+		}
+		Assert.assertTrue("inbound banned", addressBook.isBanned(inboundIp, now));
+
+		final AddressBook loadedAddressBook = new AddressBook(config);
+		final List<String> loaded = loadedAddressBook.load(addressBook.toJSONObject(), now);
+		Assert.assertEquals("loaded", 4, loaded.size());
+		Assert.assertTrue("loaded ban", loadedAddressBook.isBanned(otherIp, now));
+		Assert.assertTrue("loaded inbound ban", loadedAddressBook.isBanned(inboundIp, now));
+		Assert.assertEquals("loaded backoff", baseBackoffMs * 2, loadedAddressBook.getBackoffMs(bad));
+
+		config.put(AddressBook.MAX_ADDRESSES, 4);
+		final AddressBook fullAddressBook = new AddressBook(config);
+		Assert.assertEquals("full", 4, fullAddressBook.load(addressBook.toJSONObject(), now).size());
+		Assert.assertTrue("replaced banned", fullAddressBook.addressSeen("10.4.0.1:10333", now));
+		Assert.assertTrue("replaced banned port", fullAddressBook.addressSeen("10.4.0.2:10333", now));
+		Assert.assertEquals("backing off", baseBackoffMs * 2, fullAddressBook.getBackoffMs(bad));
+		Assert.assertTrue("replaced failed", fullAddressBook.addressSeen("10.4.0.3:10333", now));
+		Assert.assertEquals("failed replaced", 0, fullAddressBook.getBackoffMs(bad));
+		Assert.assertEquals("still full", 4, fullAddressBook.size());
+		Assert.assertFalse("not more likely", fullAddressBook.addressSeen("10.4.0.4:10333", now));
+		Assert.assertTrue("replaced oldest", fullAddressBook.addressSeen("10.4.0.4:10333", later));
+		Assert.assertTrue("succeeded kept", fullAddressBook.isEligible(good, later));
+	}
+
+	/**
+	 * test the network height, that it ignores peers that are behind, rejects a
+	 * peer claiming a height far above the others, never drops under the
+	 * validated height, and only records the cross check height.
+	 */
+	@Test
+	public void test015NetworkHeight() {
+		final JSONObject config = new JSONObject();
+		config.put(NetworkHeight.MIN_PEERS, 3);
+		config.put(NetworkHeight.MAX_DEVIATION, 100);
+		config.put(NetworkHeight.CITY_OF_ZION_CROSS_CHECK, false);
+		final NetworkHeight networkHeight = new NetworkHeight(config);
+		Assert.assertEquals("no peers", 5, networkHeight.getHeight(5));
+
+		networkHeight.peerHeight("10.0.0.1:10333", 1000);
+		networkHeight.peerHeight("10.0.0.2:10333", 2000);
+		Assert.assertEquals("median of too few peers", 2000, networkHeight.getHeight(0));
+
+		networkHeight.peerHeight("10.0.0.3:10333", 2010);
+		networkHeight.peerHeight("10.0.0.4:10333", 2050);
+		networkHeight.peerHeight("10.0.0.5:10333", 900000);
+		Assert.assertEquals("outlier rejected", 2050, networkHeight.getHeight(0));
+		Assert.assertEquals("validated height", 3000, networkHeight.getHeight(3000));
+
+		networkHeight.peerHeight("10.0.0.3:10333", 1500);
+		Assert.assertEquals("height only raised", 2050, networkHeight.getHeight(0));
+		networkHeight.removePeer("10.0.0.4:10333");
+		Assert.assertEquals("peer removed", 2010, networkHeight.getHeight(0));
+
+		Assert.assertFalse("cross check mismatch", networkHeight.setCrossCheckHeight(5000, 0));
+		Assert.assertTrue("cross check match", networkHeight.setCrossCheckHeight(2000, 0));
+		Assert.assertEquals("cross check not used", 2010, networkHeight.getHeight(0));
+		Assert.assertEquals("cross check height", 2000, networkHeight.getCrossCheckHeight());
+	}
+
+	/**
+	 * test the executors, that a full executor rejects tasks, tasks are counted,
+	 * a task submitting to it's own full executor runs the submitted task itself,
+	 * and running StopRunnables are stopped when the executors are stopped.
+	 *
+	 * @throws InterruptedException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test016ExecutorPools() throws InterruptedException {
+		final JSONObject config = new JSONObject();
+		config.put(ExecutorPools.IO, new JSONObject().put(ExecutorPools.VIRTUAL_THREADS, false)
+				.put(ExecutorPools.MAX_QUEUED, 4));
+		config.put(ExecutorPools.CPU, new JSONObject().put(ExecutorPools.THREADS, 2).put(ExecutorPools.MAX_QUEUED, 4));
+		config.put(ExecutorPools.STORAGE,
+				new JSONObject().put(ExecutorPools.THREADS, 1).put(ExecutorPools.MAX_QUEUED, 2));
+		config.put(ExecutorPools.RPC, new JSONObject().put(ExecutorPools.THREADS, 1).put(ExecutorPools.MAX_QUEUED, 4));
+		final ExecutorPools executorPools = new ExecutorPools(config);
+
+		final MeteredExecutor storageExecutor = executorPools.getStorageExecutor();
+		final CountDownLatch releaseLatch = new CountDownLatch(1);
+		final CountDownLatch doneLatch = new CountDownLatch(3);
+		Assert.assertTrue("first task", storageExecutor.tryExecute(() -> {
+			try {
+				releaseLatch.await();
+			} catch (final InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			storageExecutor.execute(doneLatch::countDown);
+			doneLatch.countDown();
+		}));
+		Assert.assertTrue("second task", storageExecutor.tryExecute(doneLatch::countDown));
+		Assert.assertFalse("full", storageExecutor.tryExecute(doneLatch::countDown));
+		Assert.assertEquals("rejected", 1, storageExecutor.getRejectedCount());
+		releaseLatch.countDown();
+		Assert.assertTrue("done", doneLatch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("caller runs", 1, storageExecutor.getCallerRunsCount());
+
+		final CountDownLatch startedLatch = new CountDownLatch(1);
+		final StopRunnable loop = new StopRunnable() {
+			private volatile boolean stopped = false;
+
+			@Override
+			public void run() {
+				startedLatch.countDown();
+				while (!stopped) {
+					Thread.yield();
+				}
+			}
+
+			@Override
+			public void stop() {
+				stopped = true;
+			}
+		};
+		executorPools.getIoExecutor().execute(loop);
+		Assert.assertTrue("started", startedLatch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("active", 1, executorPools.getIoExecutor().getActiveCount());
+		executorPools.stop();
+		Assert.assertEquals("stopped", 0, executorPools.getIoExecutor().getActiveCount());
+		Assert.assertEquals("counted, apart from the caller run", 2, storageExecutor.getCount());
+		Assert.assertFalse("stopped rejects", executorPools.getCpuExecutor().tryExecute(() -> {
+		}));
+	}
+
+	/**
+	 * test the account activity index, that a complete bucket read from the
+	 * MapDB database matches replaying its blocks.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test017AccountActivity() throws IOException {
+		final File dir = Files.createTempDirectory("account-activity").toFile();
+		final JSONObject config = new JSONObject();
+		config.put(ConfigurationUtil.FILE_SIZE_DIR, dir.getPath());
+		config.put(ConfigurationUtil.URL, new File(dir, "db.mapdb").getPath());
+		config.put(ConfigurationUtil.ACCOUNT_ACTIVITY_BUCKET_SIZE, 1);
+		config.put(ConfigurationUtil.SYSTEM_FEE, getSystemFeeJson());
+		final BlockDbMapDbImpl blockDb = new BlockDbMapDbImpl(config);
+		try {
+			blockDb.put(true, GenesisBlockUtil.GENESIS_BLOCK);
+			final Map<UInt160, AccountActivity> indexed = blockDb.getAccountActivity(0, 1);
+			final Map<UInt160, AccountActivity> replayed = AccountActivity.replay(blockDb, 0, 1);
+			final Function<UInt160, AccountActivity> lookup = blockDb.getAccountActivityLookup(0, 1);
+			Assert.assertFalse("accounts", indexed.isEmpty());
+			Assert.assertEquals("same accounts", replayed.keySet(), indexed.keySet());
+			for (final UInt160 account : replayed.keySet()) {
+				Assert.assertArrayEquals("same activity", replayed.get(account).toByteArray(),
+						indexed.get(account).toByteArray());
+				Assert.assertArrayEquals("same looked up activity", replayed.get(account).toByteArray(),
+						lookup.apply(account).toByteArray());
+			}
+
+			final AccountActivity total = new AccountActivity();
+			for (final AccountActivity activity : indexed.values()) {
+				total.add(activity);
+			}
+			Assert.assertEquals("first ts", GenesisBlockUtil.GENESIS_BLOCK.timestamp.asLong(), total.getFirstTs());
+			Assert.assertEquals("round trip", total.getNeoIn(),
+					new AccountActivity(ByteBuffer.wrap(total.toByteArray())).getNeoIn());
+		} finally {
+			blockDb.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * test the claim index, that spending a NEO output adds a claim record with
+	 * it's GAS precomputed, that a claim transaction marks it claimed, and that
+	 * deleting the blocks takes both back out.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test018ClaimIndex() throws IOException {
+		final File dir = Files.createTempDirectory("claim-index").toFile();
+		final JSONObject config = new JSONObject();
+		config.put(ConfigurationUtil.FILE_SIZE_DIR, dir.getPath());
+		config.put(ConfigurationUtil.URL, new File(dir, "db.mapdb").getPath());
+		config.put(ConfigurationUtil.ACCOUNT_ACTIVITY_BUCKET_SIZE, 1);
+		config.put(ConfigurationUtil.SYSTEM_FEE, getSystemFeeJson());
+		final BlockDbMapDbImpl blockDb = new BlockDbMapDbImpl(config);
+		try {
+			final CoinReference cr = MockUtil.getCoinReference001();
+			final byte[] crBa = cr.toByteArray();
+			blockDb.put(true, GenesisBlockUtil.GENESIS_BLOCK);
+			final UInt160 account = ClaimRecord.getOutput(blockDb, cr).scriptHash;
+			Assert.assertTrue("unspent", blockDb.getClaimableList(account).isEmpty());
+
+			final byte[] spendBa = ArrayUtils.addAll(new byte[] { (byte) 0x80, 0, 0, 1 }, crBa);
+			blockDb.put(true, newBlock(1, ArrayUtils.addAll(spendBa, new byte[] { 0, 0 })));
+			final List<ClaimRecord> claimList = blockDb.getClaimableList(account);
+			Assert.assertEquals("spent", 1, claimList.size());
+			final ClaimRecord record = claimList.get(0);
+			Assert.assertEquals("start", 0, record.getStart());
+			Assert.assertEquals("end", 1, record.getEnd());
+			Assert.assertEquals("sysfee", 20500, record.getSysFee());
+			Assert.assertEquals("claim", 100000000L * (8 + 20500), record.getClaim());
+			Assert.assertArrayEquals("round trip", record.toByteArray(),
+					new ClaimRecord(ByteBuffer.wrap(record.toByteArray())).toByteArray());
+
+			final byte[] claimBa = ArrayUtils.addAll(new byte[] { 2, 0, 1 }, crBa);
+			blockDb.put(true, newBlock(2, ArrayUtils.addAll(claimBa, new byte[] { 0, 0, 0, 0 })));
+			Assert.assertTrue("claimed", blockDb.getClaimableList(account).isEmpty());
+
+			blockDb.deleteHighestBlock();
+			Assert.assertEquals("unclaimed", 1, blockDb.getClaimableList(account).size());
+			blockDb.deleteHighestBlock();
+			Assert.assertTrue("unspent again", blockDb.getClaimableList(account).isEmpty());
+		} finally {
+			blockDb.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * test the RPC rate limiter, that each client has it's own token bucket,
+	 * that expensive calls take more tokens, and that a client's requests past
+	 * it's in flight limit wait in it's own queue.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted.
+	 */
+	@Test
+	public void test019RpcRateLimiter() throws InterruptedException {
+		final JSONObject config = new JSONObject();
+		config.put(RpcRateLimiter.TOKENS_PER_SECOND, 1);
+		config.put(RpcRateLimiter.BURST, 10);
+		config.put(RpcRateLimiter.MAX_CLIENTS, 2);
+		config.put(RpcRateLimiter.MAX_IN_FLIGHT, 1);
+		config.put(RpcRateLimiter.MAX_WAITING, 1);
+		config.put(RpcRateLimiter.DEFAULT_COST, 1);
+		config.put(RpcRateLimiter.METHOD_COST, new JSONObject().put("getaccountlist", 10));
+		final ExecutorService delegate = Executors.newFixedThreadPool(2);
+		final RpcRateLimiter rateLimiter = new RpcRateLimiter(config, new MeteredExecutor("rpc", delegate, 8));
+
+		Assert.assertEquals("expensive", 10, rateLimiter.getCost("GetAccountList"));
+		Assert.assertEquals("default", 1, rateLimiter.getCost("getblockcount"));
+		Assert.assertNull("first call", rateLimiter.tryAcquire("a", rateLimiter.getCost("getaccountlist")));
+		final RpcHttpResponse limited = rateLimiter.tryAcquire("a", rateLimiter.getCost("getblockcount"));
+		Assert.assertEquals("limited", RpcHttpResponse.TOO_MANY_REQUESTS, limited.getStatus());
+		Assert.assertEquals("retry after", "1", limited.getHeader(RpcHttpResponse.RETRY_AFTER));
+		Assert.assertNull("other client", rateLimiter.tryAcquire("b", rateLimiter.getCost("getblockcount")));
+		final RpcHttpResponse overBurst = rateLimiter.tryAcquire("c", rateLimiter.getCost("getaccountlist") + 1);
+		Assert.assertEquals("over burst", RpcHttpResponse.PAYLOAD_TOO_LARGE, overBurst.getStatus());
+		Assert.assertNull("over burst no retry", overBurst.getHeader(RpcHttpResponse.RETRY_AFTER));
+
+		final CountDownLatch releaseLatch = new CountDownLatch(1);
+		final CountDownLatch doneLatch = new CountDownLatch(2);
+		final Runnable blockedTask = () -> {
+			try {
+				releaseLatch.await();
+			} catch (final InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			doneLatch.countDown();
+		};
+		final Runnable rejected = () -> Assert.fail("executor full");
+		Assert.assertTrue("in flight", rateLimiter.submit("a", blockedTask, rejected));
+		Assert.assertTrue("waiting", rateLimiter.submit("a", doneLatch::countDown, rejected));
+		Assert.assertFalse("queue full", rateLimiter.submit("a", doneLatch::countDown, rejected));
+		final CountDownLatch otherLatch = new CountDownLatch(1);
+		Assert.assertTrue("other client runs", rateLimiter.submit("b", otherLatch::countDown, rejected));
+		Assert.assertTrue("other client ran", otherLatch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("still waiting", 2, doneLatch.getCount());
+
+		final JSONObject stats = rateLimiter.toJSONObject();
+		Assert.assertEquals("clients", 2, stats.getLong(RpcRateLimiter.CLIENTS));
+		Assert.assertEquals("limited stat", 2, stats.getLong(RpcRateLimiter.LIMITED));
+		Assert.assertEquals("queue full stat", 1, stats.getLong(RpcRateLimiter.QUEUE_FULL));
+		Assert.assertEquals("waiting stat", 1, stats.getLong(RpcRateLimiter.WAITING));
+
+		releaseLatch.countDown();
+		Assert.assertTrue("queued ran", doneLatch.await(10, TimeUnit.SECONDS));
+		delegate.shutdown();
+	}
+
+	/**
+	 * test the latency histogram's quantiles are within a bucket of the true
+	 * latency, and never above the max.
+	 */
+	@Test
+	public void test020LatencyHistogram() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals("empty", 0, histogram.getQuantileNanos(0.5));
+		for (long nanos = 1; nanos <= 1000; nanos++) {
+			histogram.record(nanos * 1000, nanos > 990);
+		}
+		Assert.assertEquals("count", 1000, histogram.getCount());
+		Assert.assertEquals("errors", 10, histogram.getErrorCount());
+		Assert.assertEquals("max", 1_000_000, histogram.getMaxNanos());
+		Assert.assertEquals("sum", 500_500_000, histogram.getSumNanos());
+		final long p50 = histogram.getQuantileNanos(0.5);
+		Assert.assertTrue("p50 " + p50, (p50 >= 500_000) && (p50 < 562_500));
+		final long p99 = histogram.getQuantileNanos(0.99);
+		Assert.assertTrue("p99 " + p99, (p99 >= 990_000) && (p99 <= 1_000_000));
+		Assert.assertEquals("p999", 1_000_000, histogram.getQuantileNanos(0.999));
+		histogram.record(3, false);
+		Assert.assertEquals("small latencies are exact", 3, histogram.getQuantileNanos(0.0001));
+	}
+
+	/**
+	 * test inventory is announced to a peer only once, and never announced back
+	 * to the peer that sent it.
+	 */
+	@Test
+	public void test021AnnounceInventoryOnce() {
+		final JSONObject remoteJson = ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.REMOTE);
+		final RemoteNodeData remoteNodeData = new RemoteNodeData(remoteJson);
+		final UInt256 sent = new UInt256(new byte[UInt256.SIZE]);
+		final byte[] receivedBa = new byte[UInt256.SIZE];
+		receivedBa[0] = 1;
+		final UInt256 received = new UInt256(receivedBa);
+		remoteNodeData.getKnownInventory().add(received);
+		Assert.assertArrayEquals("first", new UInt256[] { sent },
+				InventoryUtil.claimUnannouncedHashes(remoteNodeData, sent, received));
+		Assert.assertEquals("second", 0, InventoryUtil.claimUnannouncedHashes(remoteNodeData, sent).length);
+	}
+
+	/**
+	 * test a database whose claim index does not start at the genesis block, as
+	 * in a database from before the claim index was kept, computes claims from
+	 * it's blocks until the claim index is built on the executor, and that an
+	 * interrupted build carries on from where it stopped.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test022ClaimIndexBackfill() throws IOException {
+		final File dir = Files.createTempDirectory("claim-index-backfill").toFile();
+		final File dbFile = new File(dir, "db.mapdb");
+		final JSONObject config = new JSONObject();
+		config.put(ConfigurationUtil.FILE_SIZE_DIR, dir.getPath());
+		config.put(ConfigurationUtil.URL, dbFile.getPath());
+		config.put(ConfigurationUtil.ACCOUNT_ACTIVITY_BUCKET_SIZE, 1);
+		config.put(ConfigurationUtil.SYSTEM_FEE, getSystemFeeJson());
+		final CoinReference cr = MockUtil.getCoinReference001();
+		final byte[] spendBa = ArrayUtils.addAll(new byte[] { (byte) 0x80, 0, 0, 1 }, cr.toByteArray());
+		try {
+			final BlockDbMapDbImpl oldBlockDb = new BlockDbMapDbImpl(config);
+			oldBlockDb.put(true, GenesisBlockUtil.GENESIS_BLOCK);
+			oldBlockDb.put(true, newBlock(1, ArrayUtils.addAll(spendBa, new byte[] { 0, 0 })));
+			oldBlockDb.close();
+
+			// remove the claim index, as it was before the claim index was kept.
+			final DB oldDb = DBMaker.fileDB(dbFile).transactionEnable().make();
+			oldDb.atomicLong("claimStartIndex").createOrOpen().set(-1);
+			oldDb.treeMap("claimByAccountAndCoin", Serializer.BYTE_ARRAY, Serializer.BYTE_ARRAY).createOrOpen().clear();
+			oldDb.commit();
+			oldDb.close();
+
+			final BlockDbMapDbImpl blockDb = new BlockDbMapDbImpl(config);
+			final UInt160 account = ClaimRecord.getOutput(blockDb, cr).scriptHash;
+			Assert.assertNotNull("computed from the blocks", blockDb.getClaimableList(account));
+			blockDb.startIndexBackfill(Runnable::run);
+			final List<ClaimRecord> claimList = blockDb.getClaimableList(account);
+			blockDb.close();
+			Assert.assertEquals("spent", 1, claimList.size());
+			Assert.assertEquals("claim", 100000000L * (8 + 20500), claimList.get(0).getClaim());
+
+			final DB newDb = DBMaker.fileDB(dbFile).transactionEnable().make();
+			Assert.assertEquals("start index", 0, newDb.atomicLong("claimStartIndex").createOrOpen().get());
+			Assert.assertEquals("backfill index", 2, newDb.atomicLong("claimBackfillIndex").createOrOpen().get());
+			final Map<byte[], byte[]> claimMap = newDb
+					.treeMap("claimByAccountAndCoin", Serializer.BYTE_ARRAY, Serializer.BYTE_ARRAY).createOrOpen();
+			Assert.assertEquals("indexed", 1, claimMap.size());
+
+			// interrupt the build after the genesis block, with a record it must keep.
+			newDb.atomicLong("claimStartIndex").createOrOpen().set(-1);
+			newDb.atomicLong("claimBackfillIndex").createOrOpen().set(1);
+			claimMap.clear();
+			claimMap.put(new byte[] { 0 }, new byte[] { 0 });
+			newDb.commit();
+			newDb.close();
+
+			final BlockDbMapDbImpl resumedBlockDb = new BlockDbMapDbImpl(config);
+			resumedBlockDb.startIndexBackfill(Runnable::run);
+			Assert.assertEquals("resumed claim", 100000000L * (8 + 20500),
+					resumedBlockDb.getClaimableList(account).get(0).getClaim());
+			resumedBlockDb.close();
+
+			final DB resumedDb = DBMaker.fileDB(dbFile).transactionEnable().make();
+			Assert.assertEquals("resumed start index", 0, resumedDb.atomicLong("claimStartIndex").createOrOpen().get());
+			Assert.assertEquals("resumed, not rebuilt", 2, resumedDb
+					.treeMap("claimByAccountAndCoin", Serializer.BYTE_ARRAY, Serializer.BYTE_ARRAY).createOrOpen().size());
+			resumedDb.close();
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * test the RPC rate limiter only keys a client by it's API key if the key is
+	 * configured, so sending a new key with each request does not get a new
+	 * bucket.
+	 */
+	@Test
+	public void test023RpcClientKeys() {
+		final JSONObject config = new JSONObject();
+		config.put(RpcRateLimiter.TOKENS_PER_SECOND, 1);
+		config.put(RpcRateLimiter.BURST, 2);
+		config.put(RpcRateLimiter.MAX_CLIENTS, 16);
+		config.put(RpcRateLimiter.MAX_IN_FLIGHT, 1);
+		config.put(RpcRateLimiter.MAX_WAITING, 1);
+		config.put(RpcRateLimiter.DEFAULT_COST, 1);
+		config.put(RpcRateLimiter.METHOD_COST, new JSONObject());
+		config.put(RpcRateLimiter.CLIENT_KEY_HEADER, "X-Api-Key");
+		config.put(RpcRateLimiter.CLIENT_KEYS, Collections.singletonList("known"));
+		final RpcRateLimiter rateLimiter = new RpcRateLimiter(config, null);
+
+		final InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+		final Function<String, String> clientKey = key -> rateLimiter.getClientKey(new RpcHttpRequest("POST", "/",
+				null, "HTTP/1.1", Collections.singletonMap("x-api-key", key), new byte[0], remoteAddress));
+		Assert.assertEquals("known key", "key:known", clientKey.apply("known"));
+		final String ipKey = "ip:" + remoteAddress.getAddress().getHostAddress();
+		Assert.assertEquals("unknown key", ipKey, clientKey.apply("rotated0"));
+
+		for (int ix = 0; ix < 2; ix++) {
+			Assert.assertNull("burst " + ix, rateLimiter.tryAcquire(clientKey.apply("rotated" + ix), 1));
+		}
+		final RpcHttpResponse limited = rateLimiter.tryAcquire(clientKey.apply("rotated2"), 1);
+		Assert.assertEquals("rotated key limited", RpcHttpResponse.TOO_MANY_REQUESTS, limited.getStatus());
+		Assert.assertNull("known key has it's own bucket", rateLimiter.tryAcquire(clientKey.apply("known"), 1));
+	}
+
+	/**
+	 * test a staged pipeline whose last stage's executor rejects it's workers
+	 * still runs every item, in order, on the thread that queued it.
+	 */
+	@Test
+	public void test024StagedPipelineRejectedWorker() {
+		final List<Integer> persistedList = Collections.synchronizedList(new ArrayList<>());
+		final Executor rejectingExecutor = task -> {
+			throw new RejectedExecutionException("full");
+		};
+		final Stage<Integer> persistStage = new Stage<>("persist", 1, rejectingExecutor, item -> {
+			persistedList.add(item);
+			return true;
+		});
+		final StagedPipeline<Integer> pipeline = new StagedPipeline<>("rejected", 4,
+				Arrays.asList(new Stage<Integer>("first", 2, rejectingExecutor, item -> true), persistStage));
+		final List<Integer> expectedList = new ArrayList<>();
+		for (int item = 0; item < 10; item++) {
+			Assert.assertTrue("submit", pipeline.submit(item));
+			expectedList.add(item);
+		}
+		Assert.assertEquals("in flight", 0, pipeline.getInFlight());
+		pipeline.stop();
+		Assert.assertEquals("persisted in order", expectedList, persistedList);
+	}
+
+	/**
+	 * return the system fee section of the configuration.
+	 *
+	 * @return the system fee section.
+	 */
+	private JSONObject getSystemFeeJson() {
+		return ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.LOCAL)
+				.getJSONObject(ConfigurationUtil.SYSTEM_FEE);
+	}
+
+	/**
+	 * returns a new block, with an empty header apart from the index.
+	 *
+	 * @param index
+	 *            the index to use.
+	 * @param transactionBa
+	 *            the transaction to use, serialized.
+	 * @return the new block.
+	 */
+	private Block newBlock(final long index, final byte[] transactionBa) {
+		final int headerSize = (UInt32.SIZE * 3) + (UInt256.SIZE * 2) + Long.BYTES + UInt160.SIZE + 3;
+		final byte[] headerBa = new byte[headerSize];
+		final byte[] indexBa = new UInt32(index).getBytesCopy();
+		System.arraycopy(indexBa, 0, headerBa, (UInt32.SIZE * 2) + (UInt256.SIZE * 2), indexBa.length);
+		final byte[] blockBa = ArrayUtils.addAll(ArrayUtils.add(headerBa, (byte) 1), transactionBa);
+		return new Block(ByteBuffer.wrap(blockBa));
+	}
+
+	/**
+	 * returns a new inventory message.
+	 *
+	 * @param magic
+	 *            the magic to use.
+	 * @param command
+	 *            the command to use.
+	 * @param type
+	 *            the inventory type to use.
+	 * @param hashes
+	 *            the hashes to use.
+	 * @return the new message.
+	 */
+	private Message newInvMessage(final long magic, final CommandEnum command, final InventoryType type,
+			final UInt256... hashes) {
+		return new Message(magic, command, new InvPayload(type, hashes).toByteArray());
+	}
+
+	/**
+	 * last test, blank, so afterClass() time doesnt throw off the metrics.
+	 */
+	@Test
+	public void zzzLastTest() {
+	}
+}
@@ -3,7 +3,14 @@ package neo.rpc.client.test;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -32,6 +39,10 @@ import neo.rpc.client.test.util.TestRpcServerUtil;
 import neo.rpc.client.test.util.TestUtil;
 import neo.rpc.server.CityOfZionCommandEnum;
 import neo.rpc.server.CoreRpcCommandEnum;
+import neo.rpc.server.RpcEventHub;
+import neo.rpc.server.RpcHttpResponse;
+import neo.rpc.server.RpcMetricsUtil;
+import neo.rpc.server.RpcResponseCache;
 import neo.rpc.server.RpcServerUtil;
 
 /**
@@ -586,6 +597,335 @@ public class TestRpcServer {
 		Assert.assertEquals(TestUtil.RESPONSES_MUST_MATCH, expectedStr, actualStr);
 	}
 
+	/**
+	 * return the body of the raw response to the request, de-chunked if it was
+	 * sent in chunked transfer encoding.
+	 *
+	 * @param request
+	 *            the raw request to send.
+	 * @return the body.
+	 */
+	private static byte[] getRawBody(final String request) {
+		final String response = new String(TestRpcServerUtil.getRawResponseBytes(CONTROLLER, request),
+				StandardCharsets.ISO_8859_1);
+		Assert.assertTrue("ok", response.startsWith("HTTP/1.1 200 "));
+		Assert.assertTrue("binary", response.contains("Content-Type: application/octet-stream\r\n"));
+		int ix = response.indexOf("\r\n\r\n") + 4;
+		if (!response.contains("Transfer-Encoding: chunked\r\n")) {
+			return response.substring(ix).getBytes(StandardCharsets.ISO_8859_1);
+		}
+		final StringBuilder body = new StringBuilder();
+		int chunkSize = Integer.parseInt(response.substring(ix, response.indexOf('\r', ix)), 16);
+		while (chunkSize > 0) {
+			ix = response.indexOf('\n', ix) + 1;
+			body.append(response, ix, ix + chunkSize);
+			ix += chunkSize + 2;
+			chunkSize = Integer.parseInt(response.substring(ix, response.indexOf('\r', ix)), 16);
+		}
+		return body.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * return the characters read from the stream, up to and including the end.
+	 *
+	 * @param in
+	 *            the stream to read.
+	 * @param end
+	 *            the characters to read up to.
+	 * @return the characters read.
+	 * @throws IOException
+	 *             if an error occurs, or the stream ends first.
+	 */
+	private static String readUntil(final InputStream in, final String end) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		while (sb.indexOf(end) < 0) {
+			final int b = in.read();
+			if (b < 0) {
+				throw new IOException("stream ended before \"" + end + "\", read:" + sb);
+			}
+			sb.append((char) b);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * test the HTTP server, that pipelined requests on a kept alive connection
+	 * are answered in order, and that oversized and malformed requests are
+	 * rejected and their connection closed.
+	 */
+	@Test
+	public void test023HttpPipelining() {
+		final String body = TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0,
+				CoreRpcCommandEnum.GETBLOCKCOUNT.getName(), new JSONArray()).toString();
+		final String request = "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length() + "\r\n";
+		final String pipelined = request + "\r\n" + body + request + "Connection: close\r\n\r\n" + body;
+		final String responses = TestRpcServerUtil.getRawResponse(CONTROLLER, pipelined);
+		final String[] responseArray = responses.split("HTTP/1.1 200 OK\r\n", -1);
+		Assert.assertEquals("pipelined responses", 3, responseArray.length);
+		Assert.assertTrue("first kept alive", responseArray[1].contains("Connection: keep-alive"));
+		Assert.assertTrue("second closed", responseArray[2].contains("Connection: close"));
+		Assert.assertEquals("same result", responseArray[1].substring(responseArray[1].indexOf('{')),
+				responseArray[2].substring(responseArray[2].indexOf('{')));
+
+		final String tooLarge = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				"POST / HTTP/1.1\r\nContent-Length: 1000000000\r\n\r\n");
+		Assert.assertTrue("too large", tooLarge.startsWith("HTTP/1.1 413 "));
+
+		final String badRequest = TestRpcServerUtil.getRawResponse(CONTROLLER, "POST\r\n\r\n");
+		Assert.assertTrue("bad request", badRequest.startsWith("HTTP/1.1 400 "));
+	}
+
+	/**
+	 * test a JSON-RPC batch, that the responses are in the order of the requests,
+	 * match the responses to single calls, and that an invalid call only fails
+	 * itself.
+	 */
+	@Test
+	public void test024HttpBatch() {
+		final JSONArray params = new JSONArray();
+		final String blockCountMethod = CoreRpcCommandEnum.GETBLOCKCOUNT.getName();
+		final String bestBlockHashMethod = CoreRpcCommandEnum.GETBESTBLOCKHASH.getName();
+		final JSONArray batch = new JSONArray();
+		batch.put(TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0, blockCountMethod, params));
+		batch.put(TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0, bestBlockHashMethod, params));
+		batch.put("not a request");
+		final String body = batch.toString();
+		final String response = TestRpcServerUtil.getRawResponse(CONTROLLER, "POST / HTTP/1.1\r\nContent-Length: "
+				+ body.length() + "\r\nConnection: close\r\n\r\n" + body);
+		final JSONArray responseArray = new JSONArray(response.substring(response.indexOf('[')));
+		Assert.assertEquals("batch size", 3, responseArray.length());
+		Assert.assertEquals("block count",
+				TestRpcServerUtil.getResponse(CONTROLLER, "", RpcServerUtil.VERSION_2_0, params, blockCountMethod),
+				responseArray.getJSONObject(0).toString(2));
+		Assert.assertEquals("best block hash",
+				TestRpcServerUtil.getResponse(CONTROLLER, "", RpcServerUtil.VERSION_2_0, params, bestBlockHashMethod),
+				responseArray.getJSONObject(1).toString(2));
+		Assert.assertTrue("invalid call", responseArray.getJSONObject(2).has("error"));
+	}
+
+	/**
+	 * test the response cache, that a repeated call for a block hash is a hit
+	 * with the same ETag and the caller's id, and that a matching If-None-Match
+	 * gets a 304 with no body.
+	 */
+	@Test
+	public void test025ResponseCache() {
+		final JSONArray params = new JSONArray();
+		params.put(0);
+		final String method = CoreRpcCommandEnum.GETBLOCKHASH.getName();
+		final RpcResponseCache responseCache = CONTROLLER.getRpcResponseCache();
+		final long hitCount = responseCache.getHitCount();
+
+		final JSONObject request = TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0, method, params);
+		request.put(RpcServerUtil.ID, 7);
+		final String body = request.toString();
+		final String head = "POST / HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n";
+		final String first = TestRpcServerUtil.getRawResponse(CONTROLLER, head + "Connection: close\r\n\r\n" + body);
+		final String second = TestRpcServerUtil.getRawResponse(CONTROLLER, head + "Connection: close\r\n\r\n" + body);
+		Assert.assertTrue("first ok", first.startsWith("HTTP/1.1 200 "));
+		Assert.assertEquals("same response", first, second);
+		Assert.assertTrue("cache hit", responseCache.getHitCount() > hitCount);
+
+		final JSONObject response = new JSONObject(second.substring(second.indexOf('{')));
+		Assert.assertEquals("id", 7, response.getInt(RpcServerUtil.ID));
+
+		final int etagIx = second.indexOf(RpcHttpResponse.ETAG + ": ") + RpcHttpResponse.ETAG.length() + 2;
+		final String etag = second.substring(etagIx, second.indexOf('\r', etagIx));
+		final String notModified = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				head + "If-None-Match: " + etag + "\r\nConnection: close\r\n\r\n" + body);
+		Assert.assertTrue("not modified", notModified.startsWith("HTTP/1.1 304 "));
+		Assert.assertTrue("no body", notModified.endsWith("\r\n\r\n"));
+	}
+
+	/**
+	 * test a streamed response, that the account list is sent in chunked
+	 * transfer encoding to HTTP/1.1 clients, and with a content length to HTTP/1.0
+	 * clients, and that both bodies match the response from the HTTP client.
+	 */
+	@Test
+	public void test026StreamedResponse() {
+		final JSONArray params = new JSONArray();
+		params.put(0);
+		params.put(0);
+		final String method = CoreRpcCommandEnum.GETACCOUNTLIST.getName();
+		final String expectedStr = TestRpcServerUtil.getResponse(CONTROLLER, "", RpcServerUtil.VERSION_2_0, params,
+				method);
+
+		final String body = TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0, method, params).toString();
+		final String requestLine = "POST / HTTP/1.1\r\nContent-Length: ";
+		final String chunked = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				requestLine + body.length() + "\r\nConnection: close\r\n\r\n" + body);
+		Assert.assertTrue("chunked", chunked.contains("Transfer-Encoding: chunked\r\n"));
+		Assert.assertTrue("last chunk", chunked.endsWith("\r\n0\r\n\r\n"));
+		final StringBuilder chunkedBody = new StringBuilder();
+		int ix = chunked.indexOf("\r\n\r\n") + 4;
+		int chunkSize = Integer.parseInt(chunked.substring(ix, chunked.indexOf('\r', ix)), 16);
+		while (chunkSize > 0) {
+			ix = chunked.indexOf('\n', ix) + 1;
+			chunkedBody.append(chunked, ix, ix + chunkSize);
+			ix += chunkSize + 2;
+			chunkSize = Integer.parseInt(chunked.substring(ix, chunked.indexOf('\r', ix)), 16);
+		}
+		Assert.assertEquals("chunked body", expectedStr, new JSONObject(chunkedBody.toString()).toString(2));
+
+		final String http10 = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				requestLine.replace("1.1", "1.0") + body.length() + "\r\n\r\n" + body);
+		Assert.assertTrue("content length", http10.contains("Content-Length: "));
+		Assert.assertEquals("HTTP/1.0 body", expectedStr,
+				new JSONObject(http10.substring(http10.indexOf('{'))).toString(2));
+	}
+
+	/**
+	 * test server sent events, that a subscriber is sent a published block, that
+	 * it is forgotten when it closes the connection, and that bad subscriptions
+	 * are refused.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 * @throws InterruptedException
+	 *             if interrupted.
+	 */
+	@Test
+	public void test027EventSubscription() throws IOException, InterruptedException {
+		final RpcEventHub eventHub = CONTROLLER.getLocalNodeData().getEventHub();
+		try (Socket socket = new Socket(LOCALHOST, CONTROLLER.getLocalNodeData().getRpcPort())) {
+			socket.setSoTimeout(10000);
+			final OutputStream out = socket.getOutputStream();
+			out.write("GET /events?blocks&transactions HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			final InputStream in = socket.getInputStream();
+			final String head = readUntil(in, ": subscribed\n\n");
+			Assert.assertTrue("ok", head.startsWith("HTTP/1.1 200 "));
+			Assert.assertTrue("event stream", head.contains("Content-Type: text/event-stream\r\n"));
+			Assert.assertTrue("chunked", head.contains("Transfer-Encoding: chunked\r\n"));
+			Assert.assertEquals("subscribed", 1, eventHub.getSubscriberCount());
+
+			final Block block = CONTROLLER.getLocalNodeData().getBlockDb().getFullBlockFromHeight(0);
+			eventHub.publishBlock(CONTROLLER.getLocalNodeData().getBlockDb(), block);
+			final String event = readUntil(in, "\n\n");
+			Assert.assertTrue("block event", event.contains("event: blocks\ndata: "));
+			final JSONObject data = new JSONObject(event.substring(event.indexOf('{'), event.lastIndexOf('}') + 1));
+			Assert.assertEquals("block hash", block.toJSONObject().getString("hash"), data.getString("hash"));
+		}
+		for (int tries = 0; (tries < 100) && (eventHub.getSubscriberCount() > 0); tries++) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("unsubscribed", 0, eventHub.getSubscriberCount());
+
+		final String noEvents = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				"GET /events HTTP/1.1\r\nConnection: close\r\n\r\n");
+		Assert.assertTrue("no events", noEvents.startsWith("HTTP/1.1 400 "));
+		final String badAddress = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				"GET /events?address=bad HTTP/1.1\r\nConnection: close\r\n\r\n");
+		Assert.assertTrue("bad address", badAddress.startsWith("HTTP/1.1 400 "));
+		final String http10 = TestRpcServerUtil.getRawResponse(CONTROLLER, "GET /events?blocks HTTP/1.0\r\n\r\n");
+		Assert.assertTrue("HTTP/1.0", http10.startsWith("HTTP/1.1 400 "));
+	}
+
+	/**
+	 * test the raw endpoints, that a block by height or hash, and a transaction
+	 * by hash, are sent as their serialized bytes, that a range of blocks is sent
+	 * length prefixed, and that missing blocks and bad hashes are errors.
+	 */
+	@Test
+	public void test028RawEndpoints() {
+		final Block block = CONTROLLER.getLocalNodeData().getBlockDb().getFullBlockFromHeight(0);
+		final byte[] blockBa = block.toByteArray();
+		final String hashHex = GenesisBlockUtil.GENESIS_HASH.toHexString();
+		final Transaction transaction = block.getTransactionList().get(0);
+		final String close = " HTTP/1.1\r\nConnection: close\r\n\r\n";
+
+		Assert.assertArrayEquals("block by height", blockBa, getRawBody("GET /raw/block/0" + close));
+		Assert.assertArrayEquals("block by hash", blockBa, getRawBody("GET /raw/block/" + hashHex + close));
+		Assert.assertArrayEquals("transaction", transaction.toByteArray(),
+				getRawBody("GET /raw/tx/" + transaction.getHash().toHexString() + close));
+
+		final byte[] rangeBa = getRawBody("GET /raw/blocks?from=0&count=1" + close);
+		final ByteBuffer rangeBb = ByteBuffer.wrap(rangeBa).order(ByteOrder.LITTLE_ENDIAN);
+		Assert.assertEquals("length prefix", blockBa.length, rangeBb.getInt());
+		Assert.assertEquals("one block", Integer.BYTES + blockBa.length, rangeBa.length);
+
+		final String missing = TestRpcServerUtil.getRawResponse(CONTROLLER, "GET /raw/block/2" + close);
+		Assert.assertTrue("missing", missing.startsWith("HTTP/1.1 404 "));
+		final String badHash = TestRpcServerUtil.getRawResponse(CONTROLLER, "GET /raw/tx/zz" + close);
+		Assert.assertTrue("bad hash", badHash.startsWith("HTTP/1.1 400 "));
+		final String badRange = TestRpcServerUtil.getRawResponse(CONTROLLER, "GET /raw/blocks?from=0" + close);
+		Assert.assertTrue("bad range", badRange.startsWith("HTTP/1.1 400 "));
+	}
+
+	/**
+	 * test the metrics endpoint sends the latency of each call, and the sync and
+	 * peer metrics, in the Prometheus text format.
+	 */
+	@Test
+	public void test029Metrics() {
+		TestRpcServerUtil.getResponse(CONTROLLER, "", RpcServerUtil.VERSION_2_0, new JSONArray(),
+				CoreRpcCommandEnum.GETBLOCKCOUNT.getName());
+		TestRpcServerUtil.getResponse(CONTROLLER, "", RpcServerUtil.VERSION_2_0, new JSONArray(), "nosuchmethod");
+		Assert.assertTrue("unknown method is an error",
+				RpcMetricsUtil.RPC_LATENCY_MAP.get("unknown").getErrorCount() > 0);
+
+		final String response = TestRpcServerUtil.getRawResponse(CONTROLLER,
+				"GET " + RpcMetricsUtil.METRICS_URI + " HTTP/1.1\r\nConnection: close\r\n\r\n");
+		Assert.assertTrue("ok", response.startsWith("HTTP/1.1 200 "));
+		Assert.assertTrue("text format", response.contains("Content-Type: text/plain; version=0.0.4"));
+		Assert.assertTrue("p99",
+				response.contains("neo_rpc_latency_seconds{method=\"getblockcount\",quantile=\"0.99\"} "));
+		Assert.assertTrue("count", response.contains("neo_rpc_latency_seconds_count{method=\"getblockcount\"} "));
+		Assert.assertTrue("max", response.contains("neo_rpc_latency_seconds_max{method=\"getblockcount\"} "));
+		Assert.assertTrue("errors", response.contains("neo_rpc_errors_total{method=\"unknown\"} "));
+		Assert.assertTrue("sync", response.contains("neo_block_height 1\n"));
+		Assert.assertTrue("peers", response.contains("neo_peers{phase=\"acknowledged\"} "));
+	}
+
+	/**
+	 * test an account subscription gets an event for each transaction of a
+	 * published block that sends value to the account, found on the executor.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test030AddressEvents() throws IOException {
+		final Block block = CONTROLLER.getLocalNodeData().getBlockDb().getFullBlockFromHeight(1);
+		final Transaction transaction = block.getTransactionList().get(block.getTransactionList().size() - 1);
+		final String address = ModelUtil.scriptHashToAddress(transaction.outputs.get(0).scriptHash);
+		try (Socket socket = new Socket(LOCALHOST, CONTROLLER.getLocalNodeData().getRpcPort())) {
+			socket.setSoTimeout(10000);
+			final OutputStream out = socket.getOutputStream();
+			out.write(("GET /events?address=" + address + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			final InputStream in = socket.getInputStream();
+			readUntil(in, ": subscribed\n\n");
+
+			CONTROLLER.getLocalNodeData().getEventHub().publishBlock(CONTROLLER.getLocalNodeData().getBlockDb(),
+					block);
+			final String event = readUntil(in, "\n\n");
+			Assert.assertTrue("address event", event.contains("event: address\ndata: "));
+			final JSONObject data = new JSONObject(event.substring(event.indexOf('{'), event.lastIndexOf('}') + 1));
+			Assert.assertEquals("address", address, data.getString("address"));
+			Assert.assertEquals("block", 1, data.getLong("block"));
+		}
+	}
+
+	/**
+	 * test a batch that costs more than a full token bucket is refused, and not
+	 * charged as if it cost a full bucket.
+	 */
+	@Test
+	public void test031BatchOverBurst() {
+		final JSONArray batch = new JSONArray();
+		for (int ix = 0; ix < 11; ix++) {
+			batch.put(TestRpcServerUtil.createInputJson(RpcServerUtil.VERSION_2_0,
+					CoreRpcCommandEnum.GETACCOUNTLIST.getName(), new JSONArray()));
+		}
+		final String body = batch.toString();
+		final String response = TestRpcServerUtil.getRawResponse(CONTROLLER, "POST / HTTP/1.1\r\nContent-Length: "
+				+ body.length() + "\r\nConnection: close\r\n\r\n" + body);
+		Assert.assertTrue("over burst", response.startsWith("HTTP/1.1 413 "));
+		Assert.assertFalse("no retry", response.contains(RpcHttpResponse.RETRY_AFTER));
+	}
+
 	/**
 	 * test reading address balance.
 	 */
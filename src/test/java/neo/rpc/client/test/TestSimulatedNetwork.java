@@ -0,0 +1,109 @@
+package neo.rpc.client.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.util.ConfigurationUtil;
+import neo.network.model.PeerStats;
+import neo.rpc.client.test.util.SimulatedNetwork;
+import neo.rpc.client.test.util.SyncBenchmark;
+
+/**
+ * tests syncing a local controller node from a simulated network.
+ *
+ * @author coranos
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestSimulatedNetwork {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(TestSimulatedNetwork.class);
+
+	/**
+	 * method for after class disposal.
+	 */
+	@AfterClass
+	public static void afterClass() {
+		LOG.debug("afterClass");
+	}
+
+	/**
+	 * method for before class setup.
+	 */
+	@BeforeClass
+	public static void beforeClass() {
+		LOG.debug("beforeClass");
+	}
+
+	/**
+	 * return the magic number in the configuration.
+	 *
+	 * @return the magic number in the configuration.
+	 */
+	private static long getMagic() {
+		return ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.LOCAL)
+				.getLong(ConfigurationUtil.MAGIC);
+	}
+
+	/**
+	 * first test, blank, so beforeClass() time doesnt throw off the metrics.
+	 */
+	@Test
+	public void aaaFirstTest() {
+	}
+
+	/**
+	 * test the synthetic chain links each block to the one before it.
+	 */
+	@Test
+	public void test001SyntheticChain() {
+		final List<byte[]> blockBaList = SimulatedNetwork.newSyntheticChain(5);
+		final SimulatedNetwork network = new SimulatedNetwork(getMagic(), blockBaList, 0, 50);
+		Assert.assertEquals("block count", 5, network.getBlockCount());
+	}
+
+	/**
+	 * test a local controller node syncs every block from the network, through a
+	 * slow peer and a peer that drops connections.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void test002SyncFromSimulatedNetwork() throws IOException {
+		final SimulatedNetwork network = new SimulatedNetwork(getMagic(), SimulatedNetwork.newSyntheticChain(30), 0,
+				50);
+		network.addPeer("10.0.0.1", 5, 0, 0);
+		network.addPeer("10.0.0.2", 20, 100000, 0);
+		network.addPeer("10.0.0.3", 5, 0, 0.5);
+		final JSONObject result = SyncBenchmark.run(network,
+				Files.createTempDirectory("test-simulated-java-chain").toFile(), 60000);
+		LOG.info("test002SyncFromSimulatedNetwork {}", result);
+		Assert.assertEquals("blocks", 30, result.getLong(SyncBenchmark.BLOCKS));
+		Assert.assertTrue("blocks per second", result.getDouble(SyncBenchmark.BLOCKS_PER_SECOND) > 0);
+		Assert.assertTrue("blocks served", result.getLong(SyncBenchmark.BLOCKS_SERVED) >= 30);
+		final JSONObject peerStatsJson = result.getJSONObject(SyncBenchmark.PEER_STATS).getJSONObject("10.0.0.1");
+		Assert.assertTrue("rtt samples", peerStatsJson.getLong(PeerStats.RTT_SAMPLES) > 0);
+	}
+
+	/**
+	 * last test, blank, so afterClass() time doesnt throw off the metrics.
+	 */
+	@Test
+	public void zzzLastTest() {
+	}
+}
@@ -5,6 +5,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -17,7 +20,10 @@ import neo.model.core.Block;
 import neo.model.core.CoinReference;
 import neo.model.core.Transaction;
 import neo.model.core.TransactionOutput;
+import neo.model.db.AccountActivity;
 import neo.model.db.BlockDb;
+import neo.model.db.ClaimRecord;
+import neo.model.util.ConfigurationUtil;
 import neo.model.util.ModelUtil;
 
 /**
@@ -88,6 +94,23 @@ public abstract class AbstractJsonMockBlockDb implements BlockDb {
 	public void deleteHighestBlock() {
 	}
 
+	@Override
+	public final void forEachAccountAssetValue(final BiConsumer<UInt160, Map<UInt256, Fixed8>> consumer) {
+		getAccountAssetValueMap().forEach(consumer);
+	}
+
+	@Override
+	public final Map<UInt160, AccountActivity> getAccountActivity(final long fromIndex, final long toIndex) {
+		return AccountActivity.replay(this, fromIndex, toIndex);
+	}
+
+	@Override
+	public final Function<UInt160, AccountActivity> getAccountActivityLookup(final long fromIndex,
+			final long toIndex) {
+		final Map<UInt160, AccountActivity> activityByAccount = getAccountActivity(fromIndex, toIndex);
+		return account -> activityByAccount.getOrDefault(account, new AccountActivity());
+	}
+
 	@Override
 	public final Map<UInt160, Map<UInt256, Fixed8>> getAccountAssetValueMap() {
 		final Map<UInt160, Map<UInt256, Fixed8>> accountAssetValueMap = new TreeMap<>();
@@ -96,6 +119,11 @@ public abstract class AbstractJsonMockBlockDb implements BlockDb {
 			final JSONObject mockBlock = mockBlockDb.getJSONObject(ix);
 			final Block block = getBlock(mockBlock, true);
 			for (final Transaction transaction : block.getTransactionList()) {
+				for (final CoinReference cr : transaction.inputs) {
+					final TransactionOutput spent = ClaimRecord.getOutput(this, cr);
+					final Map<UInt256, Fixed8> assetValueMap = accountAssetValueMap.get(spent.scriptHash);
+					assetValueMap.put(spent.assetId, ModelUtil.subtract(spent.value, assetValueMap.get(spent.assetId)));
+				}
 				for (final TransactionOutput output : transaction.outputs) {
 					if (!accountAssetValueMap.containsKey(output.scriptHash)) {
 						accountAssetValueMap.put(output.scriptHash, new TreeMap<>());
@@ -188,6 +216,13 @@ public abstract class AbstractJsonMockBlockDb implements BlockDb {
 		throw new RuntimeException("no transaction with hash:" + hash);
 	}
 
+	@Override
+	public List<ClaimRecord> getClaimableList(final UInt160 account) {
+		final JSONObject localJson = ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.LOCAL);
+		return ClaimRecord.getClaimableList(
+				ClaimRecord.replay(this, account, ConfigurationUtil.getTransactionSystemFeeMap(localJson)));
+	}
+
 	/**
 	 * return the block with the maximum value in the index column.
 	 *
@@ -241,6 +276,41 @@ public abstract class AbstractJsonMockBlockDb implements BlockDb {
 		return getBlockWithMaxIndex(false);
 	}
 
+	@Override
+	public final byte[] getRawBlockFromHash(final UInt256 hash) {
+		final Block block = getBlock(hash, true);
+		if (block == null) {
+			return null;
+		}
+		return block.toByteArray();
+	}
+
+	@Override
+	public final byte[] getRawBlockFromHeight(final long blockHeight) {
+		if (blockHeight > getBlockWithMaxIndex(false).getIndexAsLong()) {
+			return null;
+		}
+		return getBlock(blockHeight, true).toByteArray();
+	}
+
+	@Override
+	public final byte[] getRawHeaderFromHeight(final long blockHeight) {
+		final Block block = getBlock(blockHeight, false);
+		if (block == null) {
+			return null;
+		}
+		return block.toHeaderByteArray();
+	}
+
+	@Override
+	public final byte[] getRawTransactionFromHash(final UInt256 hash) {
+		final Transaction transaction = getTransactionWithHash(hash);
+		if (transaction == null) {
+			return null;
+		}
+		return transaction.toByteArray();
+	}
+
 	/**
 	 * return the mock block database.
 	 *
@@ -327,6 +397,10 @@ public abstract class AbstractJsonMockBlockDb implements BlockDb {
 		}
 	}
 
+	@Override
+	public void startIndexBackfill(final Executor executor) {
+	}
+
 	@Override
 	public void validate() {
 	}
@@ -0,0 +1,602 @@
+package neo.rpc.client.test.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.CommandEnum;
+import neo.model.bytes.UInt256;
+import neo.model.bytes.UInt32;
+import neo.model.core.Block;
+import neo.model.core.Transaction;
+import neo.model.network.GetBlocksPayload;
+import neo.model.network.HeadersPayload;
+import neo.model.network.InvPayload;
+import neo.model.network.InventoryType;
+import neo.model.network.Message;
+import neo.model.network.VersionPayload;
+import neo.model.util.BlockUtil;
+import neo.model.util.GenesisBlockUtil;
+import neo.model.util.NetworkUtil;
+import neo.network.model.socket.SocketFactory;
+import neo.network.model.socket.SocketWrapper;
+
+/**
+ * a simulated network of peers, that serve headers and blocks from a chain held
+ * in memory, over in memory pipes.
+ * <p>
+ * each peer has it's own latency, bandwidth and failure rate. A failure closes
+ * the connection instead of answering a message, the way a real peer drops off
+ * the network. Set the local node's socket factory to {@link SocketFactoryImpl}
+ * to connect to the network set with {@link #setCurrent(SimulatedNetwork)}.
+ *
+ * @author coranos
+ *
+ */
+public final class SimulatedNetwork {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(SimulatedNetwork.class);
+
+	/**
+	 * the time a peer waits for the rest of a message, in milliseconds.
+	 */
+	private static final long PEER_READ_TIMEOUT_MS = 60000;
+
+	/**
+	 * the network the socket factory connects to.
+	 */
+	private static volatile SimulatedNetwork current;
+
+	/**
+	 * return the network the socket factory connects to.
+	 *
+	 * @return the network the socket factory connects to.
+	 */
+	public static SimulatedNetwork getCurrent() {
+		return current;
+	}
+
+	/**
+	 * return a chain loaded from a "chain.acc" export file.
+	 *
+	 * @param file
+	 *            the file to load.
+	 * @param maxBlockCount
+	 *            the max number of blocks to load.
+	 * @return the blocks in the chain, serialized.
+	 */
+	public static List<byte[]> loadChainAcc(final File file, final long maxBlockCount) {
+		final List<byte[]> blockBaList = new ArrayList<>();
+		try (InputStream fileIn = new FileInputStream(file);
+				BufferedInputStream buffIn = new BufferedInputStream(fileIn, 1024 * 1024 * 32);
+				DataInputStream in = new DataInputStream(buffIn);) {
+			final long blockCount = Integer.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+			final long loadCount = Math.min(blockCount, maxBlockCount);
+			for (long blockIx = 0; blockIx < loadCount; blockIx++) {
+				final int length = Integer.reverseBytes(in.readInt());
+				final byte[] ba = new byte[length];
+				in.readFully(ba);
+				blockBaList.add(ba);
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		return blockBaList;
+	}
+
+	/**
+	 * return a synthetic chain, of the genesis block followed by blocks with one
+	 * miner transaction each.
+	 *
+	 * @param blockCount
+	 *            the number of blocks in the chain, including the genesis block.
+	 * @return the blocks in the chain, serialized.
+	 */
+	public static List<byte[]> newSyntheticChain(final int blockCount) {
+		final Block genesis = GenesisBlockUtil.GENESIS_BLOCK;
+		final List<byte[]> blockBaList = new ArrayList<>();
+		blockBaList.add(genesis.toByteArray());
+		Block prevBlock = genesis;
+		final byte[] minerTxBa = genesis.getTransactionList().get(0).toByteArray();
+		for (int blockIx = 1; blockIx < blockCount; blockIx++) {
+			// the miner transaction's nonce is the block index, so it's hash is unique.
+			System.arraycopy(new UInt32(blockIx).toByteArray(), 0, minerTxBa, 2, UInt32.SIZE);
+			final Transaction minerTx = new Transaction(ByteBuffer.wrap(minerTxBa));
+			final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			NetworkUtil.write(bout, genesis.version, true);
+			NetworkUtil.write(bout, prevBlock.hash, false);
+			NetworkUtil.write(bout, BlockUtil.getMerkleRoot(Collections.singletonList(minerTx)), true);
+			NetworkUtil.write(bout, new UInt32(genesis.timestamp.asLong() + (blockIx * 15)), false);
+			NetworkUtil.write(bout, new UInt32(blockIx), false);
+			NetworkUtil.write(bout, genesis.consensusData, true);
+			NetworkUtil.write(bout, genesis.nextConsensus, true);
+			NetworkUtil.write(bout, new byte[] { 1 });
+			NetworkUtil.write(bout, genesis.script, false);
+			NetworkUtil.writeVarInt(bout, 1);
+			NetworkUtil.write(bout, minerTx.toByteArray());
+			final byte[] ba = bout.toByteArray();
+			final Block block = new Block(ByteBuffer.wrap(ba));
+			if ((block.getIndexAsLong() != blockIx) || !block.prevHash.equals(prevBlock.hash)) {
+				throw new RuntimeException("synthetic block " + blockIx + " does not link, index was "
+						+ block.getIndexAsLong() + ", prevHash was " + block.prevHash);
+			}
+			blockBaList.add(ba);
+			prevBlock = block;
+		}
+		return blockBaList;
+	}
+
+	/**
+	 * sets the network the socket factory connects to.
+	 *
+	 * @param network
+	 *            the network to use.
+	 */
+	public static void setCurrent(final SimulatedNetwork network) {
+		current = network;
+	}
+
+	/**
+	 * the magic number of the network.
+	 */
+	private final long magic;
+
+	/**
+	 * the blocks, serialized, by height.
+	 */
+	private final List<byte[]> blockBaList;
+
+	/**
+	 * the headers, serialized, by height.
+	 */
+	private final List<byte[]> headerBaList;
+
+	/**
+	 * the block height of each block hash.
+	 */
+	private final Map<UInt256, Integer> heightByHashMap;
+
+	/**
+	 * the peers, by address.
+	 */
+	private final Map<InetSocketAddress, PeerConfig> peerByAddressMap = new ConcurrentHashMap<>();
+
+	/**
+	 * the random number generator used to inject failures.
+	 */
+	private final Random random;
+
+	/**
+	 * the read timeout, in milliseconds, or zero to use the socket timeout.
+	 */
+	private final long readTimeoutMs;
+
+	/**
+	 * the number of connections made.
+	 */
+	private final AtomicLong connectionCount = new AtomicLong();
+
+	/**
+	 * the number of failures injected.
+	 */
+	private final AtomicLong failureCount = new AtomicLong();
+
+	/**
+	 * the number of blocks served.
+	 */
+	private final AtomicLong blocksServedCount = new AtomicLong();
+
+	/**
+	 * the number of headers served.
+	 */
+	private final AtomicLong headersServedCount = new AtomicLong();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param magic
+	 *            the magic number of the network.
+	 * @param blockBaList
+	 *            the blocks in the chain, serialized, starting with the genesis
+	 *            block.
+	 * @param seed
+	 *            the seed for the random number generator used to inject failures.
+	 * @param readTimeoutMs
+	 *            the read timeout, in milliseconds, or zero to use the socket
+	 *            timeout.
+	 */
+	public SimulatedNetwork(final long magic, final List<byte[]> blockBaList, final long seed,
+			final long readTimeoutMs) {
+		this.magic = magic;
+		this.blockBaList = Collections.unmodifiableList(new ArrayList<>(blockBaList));
+		this.readTimeoutMs = readTimeoutMs;
+		random = new Random(seed);
+		final List<byte[]> headerBaList = new ArrayList<>();
+		final Map<UInt256, Integer> heightByHashMap = new ConcurrentHashMap<>();
+		for (int height = 0; height < blockBaList.size(); height++) {
+			final Block block = new Block(ByteBuffer.wrap(blockBaList.get(height)));
+			headerBaList.add(block.toHeaderByteArray());
+			heightByHashMap.put(block.hash, height);
+		}
+		this.headerBaList = Collections.unmodifiableList(headerBaList);
+		this.heightByHashMap = heightByHashMap;
+	}
+
+	/**
+	 * adds a peer to the network.
+	 *
+	 * @param host
+	 *            the host address of the peer.
+	 * @param latencyMs
+	 *            the latency, in milliseconds, in each direction.
+	 * @param bytesPerSecond
+	 *            the bandwidth, in bytes per second, in each direction, or zero for
+	 *            unlimited.
+	 * @param failureRate
+	 *            the chance, from zero to one, that the peer drops the connection
+	 *            instead of answering a message.
+	 * @return the address of the peer.
+	 */
+	public InetSocketAddress addPeer(final String host, final long latencyMs, final long bytesPerSecond,
+			final double failureRate) {
+		final InetSocketAddress address = new InetSocketAddress(host, 10333);
+		peerByAddressMap.put(address, new PeerConfig(latencyMs, bytesPerSecond, failureRate));
+		return address;
+	}
+
+	/**
+	 * return the number of blocks in the chain.
+	 *
+	 * @return the number of blocks in the chain.
+	 */
+	public int getBlockCount() {
+		return blockBaList.size();
+	}
+
+	/**
+	 * return the number of blocks served.
+	 *
+	 * @return the number of blocks served.
+	 */
+	public long getBlocksServedCount() {
+		return blocksServedCount.get();
+	}
+
+	/**
+	 * return the number of connections made.
+	 *
+	 * @return the number of connections made.
+	 */
+	public long getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * return the number of failures injected.
+	 *
+	 * @return the number of failures injected.
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * return the number of headers served.
+	 *
+	 * @return the number of headers served.
+	 */
+	public long getHeadersServedCount() {
+		return headersServedCount.get();
+	}
+
+	/**
+	 * return the addresses of the peers.
+	 *
+	 * @return the addresses of the peers.
+	 */
+	public List<InetSocketAddress> getPeerAddressList() {
+		return new ArrayList<>(peerByAddressMap.keySet());
+	}
+
+	/**
+	 * return true if a failure should be injected.
+	 *
+	 * @param failureRate
+	 *            the chance of a failure, from zero to one.
+	 * @return true if a failure should be injected.
+	 */
+	private boolean isFailure(final double failureRate) {
+		final double roll;
+		synchronized (random) {
+			roll = random.nextDouble();
+		}
+		return roll < failureRate;
+	}
+
+	/**
+	 * answers a message sent to a peer.
+	 *
+	 * @param out
+	 *            the output stream to the local node.
+	 * @param message
+	 *            the message to answer.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	private void onMessage(final OutputStream out, final Message message) throws IOException {
+		switch (message.commandEnum) {
+		case VERSION:
+			final VersionPayload versionPayload = new VersionPayload(0L, 10333, 0, "/simulated/",
+					(long) blockBaList.size() - 1);
+			write(out, new Message(magic, CommandEnum.VERSION, versionPayload.toByteArray()));
+			write(out, new Message(magic, CommandEnum.VERACK));
+			break;
+		case GETHEADERS:
+			sendHeaders(out, message.getPayload(GetBlocksPayload.class));
+			break;
+		case GETDATA:
+			final InvPayload invPayload = message.getPayload(InvPayload.class);
+			if (invPayload.getType().equals(InventoryType.BLOCK)) {
+				for (final UInt256 hash : invPayload.getHashes()) {
+					final Integer height = heightByHashMap.get(hash);
+					if (height != null) {
+						write(out, new Message(magic, CommandEnum.BLOCK, blockBaList.get(height)));
+						blocksServedCount.incrementAndGet();
+					}
+				}
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * sends the headers after the first known start hash.
+	 *
+	 * @param out
+	 *            the output stream to the local node.
+	 * @param payload
+	 *            the payload of the "getheaders" message.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	private void sendHeaders(final OutputStream out, final GetBlocksPayload payload) throws IOException {
+		Integer startHeight = null;
+		for (final UInt256 hashStart : payload.getHashStartList()) {
+			startHeight = heightByHashMap.get(hashStart);
+			if (startHeight != null) {
+				break;
+			}
+		}
+		if (startHeight == null) {
+			return;
+		}
+		final int stopHeight = Math.min(headerBaList.size() - 1, startHeight + HeadersPayload.MAX_HEADERS);
+		if (stopHeight <= startHeight) {
+			return;
+		}
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		NetworkUtil.writeVarInt(bout, stopHeight - startHeight);
+		for (int height = startHeight + 1; height <= stopHeight; height++) {
+			NetworkUtil.write(bout, headerBaList.get(height));
+		}
+		write(out, new Message(magic, CommandEnum.HEADERS, bout.toByteArray()));
+		headersServedCount.addAndGet(stopHeight - startHeight);
+	}
+
+	/**
+	 * writes the message to the output stream.
+	 *
+	 * @param out
+	 *            the output stream to use.
+	 * @param message
+	 *            the message to write.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	private void write(final OutputStream out, final Message message) throws IOException {
+		out.write(message.toByteArray());
+	}
+
+	/**
+	 * the configuration of a simulated peer.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class PeerConfig {
+
+		/**
+		 * the latency, in milliseconds.
+		 */
+		private final long latencyMs;
+
+		/**
+		 * the bandwidth, in bytes per second, or zero for unlimited.
+		 */
+		private final long bytesPerSecond;
+
+		/**
+		 * the chance, from zero to one, that the peer drops the connection instead of
+		 * answering a message.
+		 */
+		private final double failureRate;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param latencyMs
+		 *            the latency, in milliseconds.
+		 * @param bytesPerSecond
+		 *            the bandwidth, in bytes per second, or zero for unlimited.
+		 * @param failureRate
+		 *            the chance, from zero to one, that the peer drops the connection
+		 *            instead of answering a message.
+		 */
+		private PeerConfig(final long latencyMs, final long bytesPerSecond, final double failureRate) {
+			this.latencyMs = latencyMs;
+			this.bytesPerSecond = bytesPerSecond;
+			this.failureRate = failureRate;
+		}
+	}
+
+	/**
+	 * the socket factory, which connects to the current network.
+	 *
+	 * @author coranos
+	 *
+	 */
+	public static final class SocketFactoryImpl implements SocketFactory {
+
+		@Override
+		public SocketWrapper newSocketWrapper() {
+			return new SimulatedSocketWrapper(getCurrent());
+		}
+	}
+
+	/**
+	 * a socket connected to a simulated peer. The peer answers messages on it's
+	 * own thread.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class SimulatedSocketWrapper implements SocketWrapper {
+
+		/**
+		 * the network to connect to.
+		 */
+		private final SimulatedNetwork network;
+
+		/**
+		 * the pipe from the local node to the peer.
+		 */
+		private SimulatedPipe toPeer;
+
+		/**
+		 * the pipe from the peer to the local node.
+		 */
+		private SimulatedPipe fromPeer;
+
+		/**
+		 * the read timeout, in milliseconds.
+		 */
+		private long soTimeoutMs = 2000;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param network
+		 *            the network to connect to.
+		 */
+		private SimulatedSocketWrapper(final SimulatedNetwork network) {
+			this.network = network;
+		}
+
+		@Override
+		public void close() throws Exception {
+			if (toPeer != null) {
+				toPeer.close();
+				fromPeer.close();
+			}
+		}
+
+		@Override
+		public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+			final PeerConfig peer = network.peerByAddressMap.get(endpoint);
+			if (peer == null) {
+				throw new ConnectException("no simulated peer at " + endpoint);
+			}
+			network.connectionCount.incrementAndGet();
+			final long localReadTimeoutMs;
+			if (network.readTimeoutMs > 0) {
+				localReadTimeoutMs = network.readTimeoutMs;
+			} else {
+				localReadTimeoutMs = soTimeoutMs;
+			}
+			toPeer = new SimulatedPipe(peer.latencyMs, peer.bytesPerSecond, PEER_READ_TIMEOUT_MS);
+			fromPeer = new SimulatedPipe(peer.latencyMs, peer.bytesPerSecond, localReadTimeoutMs);
+			final Thread peerThread = new Thread(() -> runPeer(peer), "Simulated Peer " + endpoint);
+			peerThread.setDaemon(true);
+			peerThread.start();
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return fromPeer.getInputStream();
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return toPeer.getOutputStream();
+		}
+
+		/**
+		 * the peer's loop, which answers messages until the connection closes or a
+		 * failure is injected.
+		 *
+		 * @param peer
+		 *            the peer's configuration.
+		 */
+		private void runPeer(final PeerConfig peer) {
+			final InputStream in = toPeer.getInputStream();
+			final OutputStream out = fromPeer.getOutputStream();
+			try {
+				while (!toPeer.isClosed()) {
+					final Message message;
+					try {
+						message = new Message(PEER_READ_TIMEOUT_MS, in);
+					} catch (final SocketTimeoutException e) {
+						continue;
+					}
+					if (message.commandEnum == null) {
+						continue;
+					}
+					if (network.isFailure(peer.failureRate)) {
+						network.failureCount.incrementAndGet();
+						LOG.debug("simulated peer dropping connection on {}", message.command);
+						break;
+					}
+					network.onMessage(out, message);
+				}
+			} catch (final IOException | RuntimeException e) {
+				LOG.debug("simulated peer closing, {}", e.getMessage(), e);
+			}
+			toPeer.close();
+			fromPeer.close();
+		}
+
+		@Override
+		public void setSoTimeout(final int timeout) throws SocketException {
+			soTimeoutMs = timeout;
+			if ((fromPeer != null) && (network.readTimeoutMs <= 0)) {
+				fromPeer.setReadTimeoutMs(timeout);
+			}
+		}
+	}
+}
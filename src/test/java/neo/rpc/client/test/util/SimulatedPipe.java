@@ -0,0 +1,264 @@
+package neo.rpc.client.test.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a one way, in memory, connection between two simulated sockets.
+ * <p>
+ * each write is delivered as one chunk, after the latency, plus the time it
+ * takes to send all the bytes written before it at the given bandwidth. Reads
+ * block until a chunk is delivered, or the read timeout passes.
+ *
+ * @author coranos
+ *
+ */
+public final class SimulatedPipe {
+
+	/**
+	 * the latency, in milliseconds.
+	 */
+	private final long latencyMs;
+
+	/**
+	 * the bandwidth, in bytes per second, or zero for unlimited.
+	 */
+	private final long bytesPerSecond;
+
+	/**
+	 * the chunks written but not yet read.
+	 */
+	private final LinkedBlockingQueue<Chunk> chunkQueue = new LinkedBlockingQueue<>();
+
+	/**
+	 * the time the last chunk written finishes sending, in milliseconds.
+	 */
+	private long sendFreeTimeMs;
+
+	/**
+	 * the read timeout, in milliseconds.
+	 */
+	private volatile long readTimeoutMs;
+
+	/**
+	 * true if the pipe is closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * the input stream.
+	 */
+	private final InputStream inputStream = new PipeInputStream();
+
+	/**
+	 * the output stream.
+	 */
+	private final OutputStream outputStream = new PipeOutputStream();
+
+	/**
+	 * the constructor.
+	 *
+	 * @param latencyMs
+	 *            the latency, in milliseconds.
+	 * @param bytesPerSecond
+	 *            the bandwidth, in bytes per second, or zero for unlimited.
+	 * @param readTimeoutMs
+	 *            the read timeout, in milliseconds.
+	 */
+	public SimulatedPipe(final long latencyMs, final long bytesPerSecond, final long readTimeoutMs) {
+		this.latencyMs = latencyMs;
+		this.bytesPerSecond = bytesPerSecond;
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	/**
+	 * closes the pipe. Reads return the chunks already delivered, then end of
+	 * stream, and writes throw a broken pipe exception.
+	 */
+	public void close() {
+		closed = true;
+		chunkQueue.add(new Chunk(new byte[0], 0));
+	}
+
+	/**
+	 * return the input stream, for the reading end of the pipe.
+	 *
+	 * @return the input stream.
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * return the output stream, for the writing end of the pipe.
+	 *
+	 * @return the output stream.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * return true if the pipe is closed.
+	 *
+	 * @return true if the pipe is closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * sets the read timeout.
+	 *
+	 * @param readTimeoutMs
+	 *            the read timeout, in milliseconds.
+	 */
+	public void setReadTimeoutMs(final long readTimeoutMs) {
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	/**
+	 * a chunk of bytes, and the time they are delivered.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private static final class Chunk {
+
+		/**
+		 * the bytes.
+		 */
+		private final byte[] ba;
+
+		/**
+		 * the time the bytes are delivered, in milliseconds.
+		 */
+		private final long deliveryTimeMs;
+
+		/**
+		 * the number of bytes read so far.
+		 */
+		private int position;
+
+		/**
+		 * the constructor.
+		 *
+		 * @param ba
+		 *            the bytes.
+		 * @param deliveryTimeMs
+		 *            the time the bytes are delivered, in milliseconds.
+		 */
+		private Chunk(final byte[] ba, final long deliveryTimeMs) {
+			this.ba = ba;
+			this.deliveryTimeMs = deliveryTimeMs;
+		}
+	}
+
+	/**
+	 * the reading end of the pipe.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private final class PipeInputStream extends InputStream {
+
+		/**
+		 * the chunk being read, or null if the next chunk has not been taken from the
+		 * queue.
+		 */
+		private Chunk chunk;
+
+		/**
+		 * waits for the next chunk to be delivered.
+		 *
+		 * @return the next chunk, or null at the end of the stream.
+		 * @throws IOException
+		 *             if the read times out or is interrupted.
+		 */
+		private Chunk nextChunk() throws IOException {
+			if ((chunk != null) && (chunk.position < chunk.ba.length)) {
+				return chunk;
+			}
+			try {
+				chunk = chunkQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+				if (chunk == null) {
+					throw new SocketTimeoutException("simulated read timed out");
+				}
+				if (chunk.ba.length == 0) {
+					return null;
+				}
+				final long waitMs = chunk.deliveryTimeMs - System.currentTimeMillis();
+				if (waitMs > 0) {
+					Thread.sleep(waitMs);
+				}
+				return chunk;
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] ba = new byte[1];
+			if (read(ba, 0, 1) == -1) {
+				return -1;
+			}
+			return ba[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] ba, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			final Chunk current = nextChunk();
+			if (current == null) {
+				chunkQueue.add(new Chunk(new byte[0], 0));
+				return -1;
+			}
+			final int readLen = Math.min(len, current.ba.length - current.position);
+			System.arraycopy(current.ba, current.position, ba, off, readLen);
+			current.position += readLen;
+			return readLen;
+		}
+	}
+
+	/**
+	 * the writing end of the pipe.
+	 *
+	 * @author coranos
+	 *
+	 */
+	private final class PipeOutputStream extends OutputStream {
+
+		@Override
+		public void write(final byte[] ba, final int off, final int len) throws IOException {
+			if (closed) {
+				throw new IOException("Broken pipe");
+			}
+			final byte[] chunkBa = new byte[len];
+			System.arraycopy(ba, off, chunkBa, 0, len);
+			final long deliveryTimeMs;
+			synchronized (SimulatedPipe.this) {
+				final long startTimeMs = Math.max(System.currentTimeMillis(), sendFreeTimeMs);
+				if (bytesPerSecond > 0) {
+					sendFreeTimeMs = startTimeMs + ((len * 1000L) / bytesPerSecond);
+				} else {
+					sendFreeTimeMs = startTimeMs;
+				}
+				deliveryTimeMs = sendFreeTimeMs + latencyMs;
+			}
+			chunkQueue.add(new Chunk(chunkBa, deliveryTimeMs));
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package neo.rpc.client.test.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import neo.model.db.BlockDb;
+import neo.model.util.ConfigurationUtil;
+import neo.model.util.JsonUtil;
+import neo.network.LocalControllerNode;
+import neo.network.model.KnownInventory;
+import neo.network.model.NodeConnectionPhaseEnum;
+import neo.network.model.AddressBook;
+import neo.network.model.PeerScores;
+import neo.network.model.RemoteNodeData;
+
+/**
+ * measures how fast a local controller node syncs blocks end to end, from a
+ * {@link SimulatedNetwork}, into a MapDb block database.
+ * <p>
+ * run the main method with the path to a "chain.acc" export, the max number of
+ * blocks to sync, and the number of peers, to benchmark against real blocks.
+ *
+ * @author coranos
+ *
+ */
+public final class SyncBenchmark {
+
+	/**
+	 * the logger.
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(SyncBenchmark.class);
+
+	/**
+	 * the JSON key, "send-interval".
+	 */
+	private static final String SEND_INTERVAL = "send-interval";
+
+	/**
+	 * the JSON key, "response-wait-timeout".
+	 */
+	private static final String RESPONSE_WAIT_TIMEOUT = "response-wait-timeout";
+
+	/**
+	 * the JSON key, "blocks".
+	 */
+	public static final String BLOCKS = "blocks";
+
+	/**
+	 * the JSON key, "elapsed-ms".
+	 */
+	public static final String ELAPSED_MS = "elapsed-ms";
+
+	/**
+	 * the JSON key, "blocks-per-second".
+	 */
+	public static final String BLOCKS_PER_SECOND = "blocks-per-second";
+
+	/**
+	 * the JSON key, "connections".
+	 */
+	public static final String CONNECTIONS = "connections";
+
+	/**
+	 * the JSON key, "failures".
+	 */
+	public static final String FAILURES = "failures";
+
+	/**
+	 * the JSON key, "blocks-served".
+	 */
+	public static final String BLOCKS_SERVED = "blocks-served";
+
+	/**
+	 * the JSON key, "headers-served".
+	 */
+	public static final String HEADERS_SERVED = "headers-served";
+
+	/**
+	 * the JSON key, "peer-stats".
+	 */
+	public static final String PEER_STATS = "peer-stats";
+
+	/**
+	 * the interval, in milliseconds, used for every timer, so the benchmark
+	 * measures the node and not the timer configuration.
+	 */
+	private static final long TIMER_INTERVAL_MS = 20;
+
+	/**
+	 * the time, in milliseconds, to wait for a response before resending a
+	 * request.
+	 */
+	private static final long RESPONSE_WAIT_MS = 1000;
+
+	/**
+	 * the keys of the remote "send" timers that request blocks and headers.
+	 */
+	private static final String[] SYNC_TIMER_KEYS = { "getdata-block", "getheaders" };
+
+	/**
+	 * deletes the directory.
+	 *
+	 * @param dir
+	 *            the directory to delete.
+	 */
+	private static void deleteDirectory(final File dir) {
+		try {
+			FileUtils.deleteDirectory(dir);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * return the configuration for a local node that syncs from the simulated
+	 * network.
+	 *
+	 * @param dbDir
+	 *            the directory to put the block database in.
+	 * @return the configuration.
+	 */
+	public static JSONObject getConfiguration(final File dbDir) {
+		final JSONObject config = ConfigurationUtil.getConfiguration();
+		final JSONObject localJson = config.getJSONObject(ConfigurationUtil.LOCAL);
+		final JSONObject blockDbJson = localJson.getJSONObject(ConfigurationUtil.BLOCK_DB);
+		blockDbJson.put(ConfigurationUtil.URL, new File(dbDir, "db-mapdb/db.mapdb").getPath());
+		blockDbJson.put(ConfigurationUtil.FILE_SIZE_DIR, dbDir.getPath());
+		blockDbJson.put(ConfigurationUtil.IMPL, "neo.model.db.mapdb.BlockDbMapDbImpl");
+		localJson.put(ConfigurationUtil.TCP_PORT, 30333);
+		localJson.put(ConfigurationUtil.SOCKET_FACTORY_IMPL, SimulatedNetwork.SocketFactoryImpl.class.getName());
+		localJson.getJSONObject(ConfigurationUtil.ADDRESS_BOOK).put(AddressBook.FILE,
+				new File(dbDir, "addressBook.json").getPath());
+		localJson.getJSONObject(ConfigurationUtil.PEER_SCORE).put(PeerScores.FILE,
+				new File(dbDir, "peerScores.json").getPath());
+
+		final JSONObject timerWheelJson = localJson.getJSONObject(ConfigurationUtil.TIMER_WHEEL);
+		timerWheelJson.put(ConfigurationUtil.MIN_DELAY, getTimeJson(TIMER_INTERVAL_MS));
+
+		final JSONObject verifyJson = localJson.getJSONObject(ConfigurationUtil.TIMERS).getJSONObject("verify");
+		for (final String key : verifyJson.keySet()) {
+			verifyJson.getJSONObject(key).put(SEND_INTERVAL, getTimeJson(TIMER_INTERVAL_MS));
+		}
+
+		final JSONObject requestedJson = localJson.getJSONObject(ConfigurationUtil.INVENTORY)
+				.getJSONObject(ConfigurationUtil.REQUESTED);
+		requestedJson.put(KnownInventory.EXPIRY, getTimeJson(RESPONSE_WAIT_MS));
+
+		final JSONObject remoteJson = config.getJSONObject(ConfigurationUtil.REMOTE);
+		remoteJson.put(ConfigurationUtil.SLEEP_INTERVAL, getTimeJson(1));
+		final JSONObject sendJson = remoteJson.getJSONObject(ConfigurationUtil.TIMERS).getJSONObject("send");
+		// only the sync timers are shortened, the simulated peers never answer
+		// "getaddr".
+		for (final String key : SYNC_TIMER_KEYS) {
+			sendJson.getJSONObject(key).put(SEND_INTERVAL, getTimeJson(TIMER_INTERVAL_MS));
+			sendJson.getJSONObject(key).put(RESPONSE_WAIT_TIMEOUT, getTimeJson(RESPONSE_WAIT_MS));
+		}
+		return config;
+	}
+
+	/**
+	 * return a time JSON object, in milliseconds.
+	 *
+	 * @param ms
+	 *            the time, in milliseconds.
+	 * @return the time JSON object.
+	 */
+	private static JSONObject getTimeJson(final long ms) {
+		final JSONObject timeJson = new JSONObject();
+		timeJson.put(JsonUtil.MILLISECONDS, ms);
+		return timeJson;
+	}
+
+	/**
+	 * runs the benchmark, from the "chain.acc" file.
+	 *
+	 * @param args
+	 *            the path to the "chain.acc" file, the max number of blocks to
+	 *            sync, and the number of peers.
+	 */
+	public static void main(final String[] args) {
+		if (args.length != 3) {
+			LOG.error("usage: SyncBenchmark <chain.acc> <max-blocks> <peer-count>");
+			return;
+		}
+		final List<byte[]> blockBaList = SimulatedNetwork.loadChainAcc(new File(args[0]), Long.parseLong(args[1]));
+		final long magic = ConfigurationUtil.getConfiguration().getJSONObject(ConfigurationUtil.LOCAL)
+				.getLong(ConfigurationUtil.MAGIC);
+		final SimulatedNetwork network = new SimulatedNetwork(magic, blockBaList, 0, 50);
+		final int peerCount = Integer.parseInt(args[2]);
+		for (int peerIx = 0; peerIx < peerCount; peerIx++) {
+			network.addPeer("10.0.0." + (peerIx + 1), 20, 0, 0);
+		}
+		final JSONObject result = run(network, new File("./benchmark-java-chain"), 600000);
+		LOG.info("SyncBenchmark {}", result.toString(2));
+	}
+
+	/**
+	 * syncs a local controller node from the network, and returns the results.
+	 *
+	 * @param network
+	 *            the network to sync from.
+	 * @param dbDir
+	 *            the directory to put the block database in, which is deleted
+	 *            before and after the run.
+	 * @param timeoutMs
+	 *            the max time to wait for the sync, in milliseconds.
+	 * @return the results, as JSON.
+	 */
+	public static JSONObject run(final SimulatedNetwork network, final File dbDir, final long timeoutMs) {
+		deleteDirectory(dbDir);
+		SimulatedNetwork.setCurrent(network);
+		final LocalControllerNode controller = new LocalControllerNode(getConfiguration(dbDir));
+		final BlockDb blockDb = controller.getLocalNodeData().getBlockDb();
+		try {
+			for (final InetSocketAddress address : network.getPeerAddressList()) {
+				final RemoteNodeData data = controller.getNewRemoteNodeData();
+				data.setConnectionPhase(NodeConnectionPhaseEnum.UNKNOWN);
+				data.setTcpAddressAndPort(address);
+				controller.addToPeerDataSet(data);
+			}
+			final long startMs = System.currentTimeMillis();
+			controller.startThreadPool();
+			controller.startRefreshThread();
+			final long endTimeoutMs = startMs + timeoutMs;
+			while ((blockDb.getBlockCount() < network.getBlockCount())
+					&& (System.currentTimeMillis() < endTimeoutMs)) {
+				try {
+					Thread.sleep(10);
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			final long elapsedMs = Math.max(1, System.currentTimeMillis() - startMs);
+			final long blockCount = blockDb.getBlockCount();
+			final JSONObject result = new JSONObject();
+			result.put(BLOCKS, blockCount);
+			result.put(ELAPSED_MS, elapsedMs);
+			result.put(BLOCKS_PER_SECOND, (blockCount * 1000.0) / elapsedMs);
+			result.put(CONNECTIONS, network.getConnectionCount());
+			result.put(FAILURES, network.getFailureCount());
+			result.put(BLOCKS_SERVED, network.getBlocksServedCount());
+			result.put(HEADERS_SERVED, network.getHeadersServedCount());
+			final JSONObject peerStatsJson = new JSONObject();
+			final List<RemoteNodeData> peerDataList = new ArrayList<>();
+			controller.addPeerDataSetToList(peerDataList);
+			for (final RemoteNodeData data : peerDataList) {
+				peerStatsJson.put(data.getHostAddress(), data.getPeerStats().toJSONObject());
+			}
+			result.put(PEER_STATS, peerStatsJson);
+			return result;
+		} finally {
+			controller.stop();
+			blockDb.close();
+			SimulatedNetwork.setCurrent(null);
+			deleteDirectory(dbDir);
+		}
+	}
+
+	/**
+	 * the constructor.
+	 */
+	private SyncBenchmark() {
+
+	}
+}
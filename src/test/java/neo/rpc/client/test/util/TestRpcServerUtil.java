@@ -1,7 +1,13 @@
 package neo.rpc.client.test.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.NoHttpResponseException;
@@ -108,6 +114,42 @@ public final class TestRpcServerUtil {
 		}
 	}
 
+	/**
+	 * sends the raw bytes of HTTP requests to the RPC server, and returns the raw
+	 * responses, read until the server closes the connection.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param requests
+	 *            the raw requests to send.
+	 * @return the raw responses.
+	 */
+	public static String getRawResponse(final LocalControllerNode controller, final String requests) {
+		return new String(getRawResponseBytes(controller, requests), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * sends the raw bytes of HTTP requests to the RPC server, and returns the raw
+	 * bytes of the responses, read until the server closes the connection.
+	 *
+	 * @param controller
+	 *            the controller to use.
+	 * @param requests
+	 *            the raw requests to send.
+	 * @return the raw bytes of the responses.
+	 */
+	public static byte[] getRawResponseBytes(final LocalControllerNode controller, final String requests) {
+		try (Socket socket = new Socket("localhost", controller.getLocalNodeData().getRpcPort())) {
+			socket.setSoTimeout(TIMEOUT_MILLIS);
+			final OutputStream out = socket.getOutputStream();
+			out.write(requests.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			return IOUtils.toByteArray(socket.getInputStream());
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * returns the response from the RPC server.
 	 *